@@ -34,7 +34,6 @@ import org.w3c.dom.Element;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  */
@@ -120,8 +119,6 @@ public class NGramIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public void backupToArchive(RawDataBackup backup) throws IOException {
-        OutputStream os = backup.newEntry(bf.getFile().getName());
-        bf.backupToStream(os);
-        backup.closeEntry();
+        bf.backupToArchive(backup);
     }
 }
@@ -1008,7 +1008,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                         context.proceed();
                     }
                 }
-                return false;
+                return true;
             } catch (IOException e) {
                 LOG.error(e.getMessage(), e);
                 return true;
@@ -14,7 +14,6 @@ import org.exist.util.LockException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  * SortIndex helps to improve the performance of 'order by' expressions in XQuery.
@@ -101,9 +100,7 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
 
 	@Override
 	public void backupToArchive(RawDataBackup backup) throws IOException {
-        OutputStream os = backup.newEntry(btree.getFile().getName());
-        btree.backupToStream(os);
-        backup.closeEntry();
+        btree.backupToArchive(backup);
 	}
 	
 }
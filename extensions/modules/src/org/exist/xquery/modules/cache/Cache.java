@@ -1,75 +1,283 @@
 package org.exist.xquery.modules.cache;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.log4j.Logger;
 import org.exist.xquery.value.*;
 
 /**
  * Static Global cache model
- * 
+ *
+ * The caches are safe for concurrent use. A cache may be bounded by a maximum
+ * number of entries, a time to live (since the entry was put) and a time to idle
+ * (since the entry was last read). Expired entries are dropped when they are read
+ * and whenever the cache is full; if the cache is still full, the least recently
+ * used entries are evicted. Hits, misses and evictions are counted and published
+ * via JMX.
+ *
  * @author Evgeny Gazdovsky <gazdovsky@gmail.com>
  * @version 1.0
  */
-public class Cache extends HashMap<String, Sequence> {
-	
-	private static final long serialVersionUID = 2560835928124595024L;
+public class Cache {
+
+	private final static Logger LOG = Logger.getLogger(Cache.class);
+
+	/** Fraction of the entries evicted at once if the cache is full */
+	private final static int EVICT_FRACTION = 10;
+
+	private final static ConcurrentMap<String, Cache> globalCache = new ConcurrentHashMap<String, Cache>();
+
+	/**
+	 * Notified when an entry is evicted or expires.
+	 */
+	public interface EvictionListener {
+
+		void evicted(Cache cache, String key, Sequence value, boolean expired);
+	}
+
+	private final String name;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private volatile int maxEntries = 0;
+	private volatile long timeToLive = 0;
+	private volatile long timeToIdle = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+
+	private final List<EvictionListener> listeners = new CopyOnWriteArrayList<EvictionListener>();
 
-	private static HashMap<String, Cache> globalCache = new HashMap<String, Cache>();
-	
     public Cache(String name) {
-    	super();
+    	this.name = name;
     	globalCache.put(name, this);
+    	CacheStatistics.register();
     }
-    
+
 	public static Cache getInstance(String name){
 		Cache cache = globalCache.get(name);
 		if (cache == null){
-			cache = new Cache(name);
+			synchronized (globalCache) {
+				cache = globalCache.get(name);
+				if (cache == null)
+					{cache = new Cache(name);}
+			}
 		}
 		return cache;
 	}
-	
+
+	/**
+	 * @return the caches currently registered
+	 */
+	public static List<Cache> getInstances() {
+		return new ArrayList<Cache>(globalCache.values());
+	}
+
+	/**
+	 * Set the limits of the cache. A value &lt;= 0 disables a limit.
+	 *
+	 * @param maxEntries maximum number of entries
+	 * @param timeToLive maximum time in milliseconds an entry is kept after it was put
+	 * @param timeToIdle maximum time in milliseconds an entry is kept after it was last read
+	 */
+	public void configure(int maxEntries, long timeToLive, long timeToIdle) {
+		this.maxEntries = Math.max(0, maxEntries);
+		this.timeToLive = Math.max(0, timeToLive);
+		this.timeToIdle = Math.max(0, timeToIdle);
+		if (this.maxEntries > 0 && entries.size() > this.maxEntries)
+			{evict();}
+	}
+
+	public void addEvictionListener(EvictionListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeEvictionListener(EvictionListener listener) {
+		listeners.remove(listener);
+	}
+
 	public Sequence put(String key, Sequence value){
-		Sequence v = super.put(key, value); 
-		return (v==null) ? Sequence.EMPTY_SEQUENCE : v;
+		final Entry old = entries.put(key, new Entry(value));
+		if (maxEntries > 0 && entries.size() > maxEntries)
+			{evict();}
+		return (old == null || isExpired(old, System.currentTimeMillis())) ? Sequence.EMPTY_SEQUENCE : old.value;
 	}
-	
+
 	public static Sequence put(String name, String key, Sequence value){
 		return getInstance(name).put(key, value);
 	}
-	
+
 	public Sequence get(String key){
-		Sequence v = super.get(key); 
-		return (v==null) ? Sequence.EMPTY_SEQUENCE : v;
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return Sequence.EMPTY_SEQUENCE;
+		}
+		final long now = System.currentTimeMillis();
+		if (isExpired(entry, now)) {
+			misses.incrementAndGet();
+			if (entries.remove(key, entry))
+				{expired(key, entry);}
+			return Sequence.EMPTY_SEQUENCE;
+		}
+		entry.lastAccess = now;
+		hits.incrementAndGet();
+		return entry.value;
 	}
-	
+
 	public static Sequence get(String name, String key){
 		return getInstance(name).get(key);
 	}
 
     public static Sequence keys(String name) {
         ValueSequence keys = new ValueSequence();
-        for (String key : getInstance(name).keySet()) {
+        for (String key : getInstance(name).entries.keySet()) {
             keys.add(new StringValue(key));
         }
         return keys;
     }
 
 	public Sequence remove(String key){
-		Sequence v = super.remove(key); 
-		return (v==null) ? Sequence.EMPTY_SEQUENCE : v;
+		final Entry old = entries.remove(key);
+		return (old == null) ? Sequence.EMPTY_SEQUENCE : old.value;
 	}
-	
+
 	public static Sequence remove(String name, String key){
 		return getInstance(name).remove(key);
 	}
-	
+
+	public void clear() {
+		entries.clear();
+	}
+
 	public static void clear(String name){
 		getInstance(name).clear();
 	}
-	
+
 	public static void clearGlobal(){
 		globalCache.clear();
 	}
-	
+
+	private boolean isExpired(Entry entry, long now) {
+		return (timeToLive > 0 && now - entry.created > timeToLive) ||
+			(timeToIdle > 0 && now - entry.lastAccess > timeToIdle);
+	}
+
+	/**
+	 * Drop the expired entries. If the cache is still full, drop the least
+	 * recently used entries, so the next puts do not need to evict again.
+	 */
+	private synchronized void evict() {
+		final int max = maxEntries;
+		if (max <= 0 || entries.size() <= max)
+			{return;}
+		final long now = System.currentTimeMillis();
+		for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+			if (isExpired(e.getValue(), now) && entries.remove(e.getKey(), e.getValue()))
+				{expired(e.getKey(), e.getValue());}
+		}
+		final int size = entries.size();
+		if (size <= max)
+			{return;}
+		// find the access time below which entries are dropped
+		final int toEvict = size - max + Math.max(1, max / EVICT_FRACTION);
+		final long[] accessTimes = new long[size];
+		int count = 0;
+		for (final Entry entry : entries.values()) {
+			if (count == accessTimes.length)
+				{break;}
+			accessTimes[count++] = entry.lastAccess;
+		}
+		Arrays.sort(accessTimes, 0, count);
+		final long threshold = accessTimes[Math.min(toEvict, count) - 1];
+		int evicted = 0;
+		for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+			if (evicted >= toEvict)
+				{break;}
+			if (e.getValue().lastAccess <= threshold && entries.remove(e.getKey(), e.getValue())) {
+				evicted++;
+				evictions.incrementAndGet();
+				notifyListeners(e.getKey(), e.getValue(), false);
+			}
+		}
+		if (LOG.isDebugEnabled())
+			{LOG.debug("Evicted " + evicted + " entries from cache " + name);}
+	}
+
+	private void expired(String key, Entry entry) {
+		expirations.incrementAndGet();
+		notifyListeners(key, entry, true);
+	}
+
+	private void notifyListeners(String key, Entry entry, boolean expired) {
+		for (final EvictionListener listener : listeners) {
+			try {
+				listener.evicted(this, key, entry.value, expired);
+			} catch (final RuntimeException e) {
+				LOG.warn("Error in eviction listener of cache " + name + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	public long getTimeToIdle() {
+		return timeToIdle;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Cache[" + name + "]";
+	}
+
+	private final static class Entry {
+
+		final Sequence value;
+		final long created;
+		volatile long lastAccess;
+
+		Entry(Sequence value) {
+			this.value = value;
+			this.created = System.currentTimeMillis();
+			this.lastAccess = created;
+		}
+	}
 }
@@ -29,6 +29,7 @@ import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.JavaObjectValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
@@ -52,7 +53,19 @@ public class CacheFunction extends BasicFunction {
 					new FunctionParameterSequenceType("name", Type.STRING, Cardinality.ONE, "The name of the cache to get/create") 
 				}, 
 		        new FunctionParameterSequenceType("java-object", Type.JAVA_OBJECT, Cardinality.ONE, "the Java cache object with the given name.")
-			) 
+			),
+		new FunctionSignature(
+				new QName("cache", CacheModule.NAMESPACE_URI, CacheModule.PREFIX),
+				"Get/create a cache using the specified name and set its limits. If the cache is full, " +
+				"expired entries and then the least recently used entries are evicted.",
+				new SequenceType[] {
+					new FunctionParameterSequenceType("name", Type.STRING, Cardinality.ONE, "The name of the cache to get/create"),
+					new FunctionParameterSequenceType("max-entries", Type.INTEGER, Cardinality.ONE, "The maximum number of entries, 0 for no limit"),
+					new FunctionParameterSequenceType("time-to-live", Type.INTEGER, Cardinality.ONE, "The time in milliseconds an entry is kept after it was put, 0 for no limit"),
+					new FunctionParameterSequenceType("time-to-idle", Type.INTEGER, Cardinality.ONE, "The time in milliseconds an entry is kept after it was last read, 0 for no limit")
+				},
+		        new FunctionParameterSequenceType("java-object", Type.JAVA_OBJECT, Cardinality.ONE, "the Java cache object with the given name.")
+			)
 	};
 
 	public CacheFunction(XQueryContext context, FunctionSignature signature) {
@@ -65,6 +78,13 @@ public class CacheFunction extends BasicFunction {
 			logger.debug("Get/create cache [" + name + "]");
 		}
 		
-		return new JavaObjectValue(Cache.getInstance(name));
+		final Cache cache = Cache.getInstance(name);
+		if (args.length == 4) {
+			cache.configure(
+				((IntegerValue)args[1].itemAt(0)).getInt(),
+				((IntegerValue)args[2].itemAt(0)).getLong(),
+				((IntegerValue)args[3].itemAt(0)).getLong());
+		}
+		return new JavaObjectValue(cache);
 	}
 }
\ No newline at end of file
@@ -45,10 +45,12 @@ public class CacheModule extends AbstractInternalModule {
         new FunctionDef(PutFunction.signatures[0], PutFunction.class),
         new FunctionDef(GetFunction.signatures[0], GetFunction.class),
         new FunctionDef(CacheFunction.signatures[0], CacheFunction.class),
+        new FunctionDef(CacheFunction.signatures[1], CacheFunction.class),
         new FunctionDef(ClearFunction.signatures[0], ClearFunction.class),
         new FunctionDef(ClearFunction.signatures[1], ClearFunction.class),
         new FunctionDef(RemoveFunction.signatures[0], RemoveFunction.class),
-        new FunctionDef(ListFunction.signature, ListFunction.class)
+        new FunctionDef(ListFunction.signature, ListFunction.class),
+        new FunctionDef(StatisticsFunction.signature, StatisticsFunction.class)
     };
 
     public CacheModule(Map<String, List<? extends Object>> parameters) {
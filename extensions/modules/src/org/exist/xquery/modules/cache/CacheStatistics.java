@@ -0,0 +1,108 @@
+package org.exist.xquery.modules.cache;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.log4j.Logger;
+import org.exist.management.AgentFactory;
+import org.exist.util.DatabaseConfigurationException;
+
+/**
+ * Publishes the statistics of all caches created by the cache module.
+ * The caches are shared by all database instances, so the bean is registered
+ * once, when the first cache is created.
+ */
+public class CacheStatistics implements CacheStatisticsMBean {
+
+    private final static Logger LOG = Logger.getLogger(CacheStatistics.class);
+
+    public final static String OBJECT_NAME = "org.exist.management:type=XQueryCacheModule";
+
+    private final static String[] itemNames = { "name", "size", "maxEntries", "timeToLive", "timeToIdle",
+        "hits", "misses", "evictions", "expirations" };
+    private final static String[] itemDescriptions = {
+        "Name of the cache",
+        "Number of entries",
+        "Maximum number of entries, 0 if unbounded",
+        "Time to live of an entry (ms), 0 if unlimited",
+        "Time to idle of an entry (ms), 0 if unlimited",
+        "Number of reads which found an entry",
+        "Number of reads which did not find an entry",
+        "Number of entries evicted because the cache was full",
+        "Number of entries dropped because they expired"
+    };
+    private final static String[] indexNames = { "name" };
+
+    private static boolean registered = false;
+
+    static synchronized void register() {
+        if (registered)
+            {return;}
+        registered = true;
+        try {
+            AgentFactory.getInstance().addMBean(null, OBJECT_NAME, new CacheStatistics());
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering cache module mbean.", e);
+        }
+    }
+
+    @Override
+    public TabularData getCaches() {
+        final OpenType<?>[] itemTypes = { SimpleType.STRING, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.LONG,
+            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG };
+        try {
+            final CompositeType infoType = new CompositeType("cache", "Statistics of a cache",
+                itemNames, itemDescriptions, itemTypes);
+            final TabularType tabularType = new TabularType("caches", "List of caches", infoType, indexNames);
+            final TabularDataSupport data = new TabularDataSupport(tabularType);
+            for (final Cache cache : Cache.getInstances()) {
+                final Object[] itemValues = { cache.getName(), cache.size(), cache.getMaxEntries(),
+                    cache.getTimeToLive(), cache.getTimeToIdle(), cache.getHits(), cache.getMisses(),
+                    cache.getEvictions(), cache.getExpirations() };
+                data.put(new CompositeDataSupport(infoType, itemNames, itemValues));
+            }
+            return data;
+        } catch (final OpenDataException e) {
+            LOG.warn(e.getMessage(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public long getHits() {
+        long hits = 0;
+        for (final Cache cache : Cache.getInstances()) {
+            hits += cache.getHits();
+        }
+        return hits;
+    }
+
+    @Override
+    public long getMisses() {
+        long misses = 0;
+        for (final Cache cache : Cache.getInstances()) {
+            misses += cache.getMisses();
+        }
+        return misses;
+    }
+
+    @Override
+    public long getEvictions() {
+        long evictions = 0;
+        for (final Cache cache : Cache.getInstances()) {
+            evictions += cache.getEvictions();
+        }
+        return evictions;
+    }
+
+    @Override
+    public void clearAll() {
+        Cache.clearGlobal();
+    }
+}
@@ -0,0 +1,19 @@
+package org.exist.xquery.modules.cache;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * JMX view of the caches of the cache module.
+ */
+public interface CacheStatisticsMBean {
+
+    public TabularData getCaches();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public long getEvictions();
+
+    public void clearAll();
+}
@@ -0,0 +1,62 @@
+package org.exist.xquery.modules.cache;
+
+import org.exist.dom.QName;
+import org.exist.memtree.MemTreeBuilder;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+/**
+ * Global cache module. Statistics function
+ */
+public class StatisticsFunction extends BasicFunction {
+
+    public final static FunctionSignature signature =
+        new FunctionSignature(
+                new QName("statistics", CacheModule.NAMESPACE_URI, CacheModule.PREFIX),
+                "Returns the limits and the hit, miss, eviction and expiration counts of the identified cache.",
+                new SequenceType[] {
+                    new FunctionParameterSequenceType("cache-identity", Type.ITEM, Cardinality.ONE, "Either the Java cache object or the name of the cache")
+                },
+                new FunctionParameterSequenceType("statistics", Type.ELEMENT, Cardinality.EXACTLY_ONE,
+                    "a cache:statistics element with an attribute for each counter")
+        );
+
+    public StatisticsFunction(XQueryContext context) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(Sequence[] args, Sequence contextSequence) throws XPathException {
+        final Item item = args[0].itemAt(0);
+        final Cache cache;
+        if (item.getType() == Type.STRING)
+            {cache = Cache.getInstance(item.getStringValue());}
+        else
+            {cache = item.toJavaObject(Cache.class);}
+
+        final MemTreeBuilder builder = context.getDocumentBuilder();
+        builder.startDocument();
+        builder.startElement(new QName("statistics", CacheModule.NAMESPACE_URI, CacheModule.PREFIX), null);
+        builder.addAttribute(new QName("name", null, null), cache.getName());
+        builder.addAttribute(new QName("size", null, null), String.valueOf(cache.size()));
+        builder.addAttribute(new QName("max-entries", null, null), String.valueOf(cache.getMaxEntries()));
+        builder.addAttribute(new QName("time-to-live", null, null), String.valueOf(cache.getTimeToLive()));
+        builder.addAttribute(new QName("time-to-idle", null, null), String.valueOf(cache.getTimeToIdle()));
+        builder.addAttribute(new QName("hits", null, null), String.valueOf(cache.getHits()));
+        builder.addAttribute(new QName("misses", null, null), String.valueOf(cache.getMisses()));
+        builder.addAttribute(new QName("evictions", null, null), String.valueOf(cache.getEvictions()));
+        builder.addAttribute(new QName("expirations", null, null), String.valueOf(cache.getExpirations()));
+        builder.endElement();
+        builder.endDocument();
+        return (NodeValue)builder.getDocument().getDocumentElement();
+    }
+}
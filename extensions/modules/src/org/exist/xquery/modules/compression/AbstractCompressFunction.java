@@ -21,7 +21,6 @@
  */
 package org.exist.xquery.modules.compression;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.log4j.Logger;
 import org.exist.collections.Collection;
 import org.exist.dom.BinaryDocument;
@@ -33,6 +32,7 @@ import org.exist.storage.lock.Lock;
 import org.exist.storage.serializers.Serializer;
 import org.exist.util.Base64Decoder;
 import org.exist.util.LockException;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 import org.exist.xquery.value.*;
@@ -44,11 +44,18 @@ import java.io.*;
 import java.net.URI;
 import java.util.Iterator;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
  * Compresses a sequence of resources and/or collections
+ *
+ * The archive is written to a temporary file, which backs the returned binary
+ * value, so neither the archive nor its entries are held in memory. Files and
+ * binary resources are copied into the archive from their files, and XML
+ * resources are serialized straight into it, unless the size of the entry has
+ * to be known in advance, in which case they are spooled to a temporary file.
  * 
  * @author Adam Retter <adam@exist-db.org>
  * @author Leif-Jöran Olsson <ljo@exist-db.org>
@@ -100,29 +107,47 @@ public abstract class AbstractCompressFunction extends BasicFunction
 			stripOffset = args[2].getStringValue();
 		}
 
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		OutputStream os = stream(baos);
-
-		// iterate through the argument sequence
-		for (SequenceIterator i = args[0].iterate(); i.hasNext();) {
-			Item item = i.nextItem();
-			
-                        if(item instanceof Element)
-                        {
-                            Element element = (Element) item;
-                            compressElement(os, element, useHierarchy, stripOffset);
-                        }
-                        else
-                        {
-                            compressFromUri(os, ((AnyURIValue)item).toURI(), useHierarchy, stripOffset, "", null);
-                        }
-		}
+		final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+		File archive = null;
+		OutputStream os = null;
+		BinaryValue result = null;
 		try {
+			archive = temporaryFileManager.getTemporaryFile();
+			os = stream(new BufferedOutputStream(new FileOutputStream(archive)));
+
+			// iterate through the argument sequence
+			for (SequenceIterator i = args[0].iterate(); i.hasNext();) {
+				Item item = i.nextItem();
+
+				if(item instanceof Element)
+				{
+					Element element = (Element) item;
+					compressElement(os, element, useHierarchy, stripOffset);
+				}
+				else
+				{
+					compressFromUri(os, ((AnyURIValue)item).toURI(), useHierarchy, stripOffset, "", null);
+				}
+			}
 			os.close();
+			os = null;
+
+			result = TemporaryFileBinaryValue.getInstance(context, new Base64BinaryValueType(), archive);
+			return result;
 		} catch (IOException ioe) {
-			throw new XPathException(this, ioe.getMessage());
+			throw new XPathException(this, ioe.getMessage(), ioe);
+		} finally {
+			if (os != null) {
+				try {
+					os.close();
+				} catch (IOException ioe) {
+					logger.warn("Unable to close archive: " + ioe.getMessage(), ioe);
+				}
+			}
+			if (result == null && archive != null) {
+				temporaryFileManager.returnTemporaryFile(archive);
+			}
 		}
-		return BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), new ByteArrayInputStream(baos.toByteArray()));
 	}
 
     private void compressFromUri(OutputStream os, URI uri, boolean useHierarchy, String stripOffset, String method, String resourceName) throws XPathException
@@ -217,9 +242,6 @@ public abstract class AbstractCompressFunction extends BasicFunction
 
             // create an entry in the Tar for the document
             Object entry = null;
-            byte[] value = new byte[0];
-            CRC32 chksum = new CRC32();
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
             if(name != null)
             {
@@ -231,26 +253,7 @@ public abstract class AbstractCompressFunction extends BasicFunction
                 entry = newEntry(file.getName());
             }
 
-            InputStream is = new FileInputStream(file);
-            byte[] data = new byte[16384];
-            int len = 0;
-            while ((len=is.read(data,0,data.length))>0) {
-                baos.write(data,0,len);
-            }
-            is.close();
-            value = baos.toByteArray();
-            // close the entry
-            if (entry instanceof ZipEntry &&
-                    "store".equals(method)) {
-                ((ZipEntry) entry).setMethod(ZipOutputStream.STORED);
-                chksum.update(value);
-                ((ZipEntry) entry).setCrc(chksum.getValue());
-                ((ZipEntry) entry).setSize(value.length);
-            }
-
-            putEntry(os, entry);
-            os.write(value);
-            closeEntry(os);
+            writeEntry(os, entry, method, file);
 
         } else {
 
@@ -306,18 +309,15 @@ public abstract class AbstractCompressFunction extends BasicFunction
             if("collection".equals(type))
                 name += "/";
             
-            Object entry = null;
-
             try
             {
                 
-                entry = newEntry(name);
+                Object entry = newEntry(name);
 
                 if(!"collection".equals(type))
                 {
                     byte[] value;
-                    CRC32 chksum = new CRC32();
-                    Node content = element.getFirstChild();
+                    final Node content = element.getFirstChild();
 
 
                     if(content == null)
@@ -345,24 +345,17 @@ public abstract class AbstractCompressFunction extends BasicFunction
                         else
                         {
                             //xml
-                            Serializer serializer = context.getBroker().getSerializer();
-                            serializer.setUser(context.getUser());
-                            serializer.setProperty("omit-xml-declaration", "no");
-                            getDynamicSerializerOptions(serializer);
-                            value = serializer.serialize((NodeValue) content).getBytes();
+                            writeEntry(os, entry, element.getAttribute("method"), new XMLContent() {
+                                @Override
+                                public void serialize(Serializer serializer, Writer writer) throws SAXException {
+                                    serializer.serialize((NodeValue) content, writer);
+                                }
+                            });
+                            return;
                         }
                     }
 
-                    if (entry instanceof ZipEntry &&
-                        "store".equals(element.getAttribute("method"))) {
-                        ((ZipEntry) entry).setMethod(ZipOutputStream.STORED);
-                        chksum.update(value);
-                        ((ZipEntry) entry).setCrc(chksum.getValue());
-                        ((ZipEntry) entry).setSize(value.length);
-                    }
-                    putEntry(os, entry);
-                    
-                    os.write(value);
+                    writeEntry(os, entry, element.getAttribute("method"), value);
                 }
             }
             catch(IOException ioe)
@@ -373,18 +366,6 @@ public abstract class AbstractCompressFunction extends BasicFunction
             {
                 throw new XPathException(this, saxe.getMessage(), saxe);
             }
-            finally
-            {
-                if(entry != null)
-                    try
-                    {
-                        closeEntry(os);
-                    }
-                    catch(IOException ioe)
-                    {
-                        throw new XPathException(this, ioe.getMessage(), ioe);
-                    }
-            }
 	}
 
     private void getDynamicSerializerOptions(Serializer serializer) throws SAXException {
@@ -410,12 +391,9 @@ public abstract class AbstractCompressFunction extends BasicFunction
 	 *            Whether to use a folder hierarchy in the archive file that
 	 *            reflects the collection hierarchy
 	 */
-	private void compressResource(OutputStream os, DocumentImpl doc, boolean useHierarchy, String stripOffset, String method, String name) throws IOException, SAXException {
+	private void compressResource(OutputStream os, final DocumentImpl doc, boolean useHierarchy, String stripOffset, String method, String name) throws IOException, SAXException {
 		// create an entry in the Tar for the document
 		Object entry = null;
-        byte[] value = new byte[0];
-        CRC32 chksum = new CRC32();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(); 
 
                 if(name != null)
                 {
@@ -431,36 +409,144 @@ public abstract class AbstractCompressFunction extends BasicFunction
 
 		if (doc.getResourceType() == DocumentImpl.XML_FILE) {
 			// xml file
-			Serializer serializer = context.getBroker().getSerializer();
-			serializer.setUser(context.getUser());
-			serializer.setProperty("omit-xml-declaration", "no");
-            getDynamicSerializerOptions(serializer);
-            String strDoc = serializer.serialize(doc);
-            value = strDoc.getBytes();            
+			writeEntry(os, entry, method, new XMLContent() {
+				@Override
+				public void serialize(Serializer serializer, Writer writer) throws SAXException {
+					serializer.serialize(doc, writer);
+				}
+			});
 		} else if (doc.getResourceType() == DocumentImpl.BINARY_FILE) {
 			// binary file
-            InputStream is = context.getBroker().getBinaryResource((BinaryDocument)doc);
-			byte[] data = new byte[16384];
-            int len = 0;
-            while ((len=is.read(data,0,data.length))>0) {
-            	baos.write(data,0,len);
-            }
-            is.close();
-            value = baos.toByteArray();
+			writeEntry(os, entry, method, context.getBroker().getBinaryFile((BinaryDocument)doc));
+		} else {
+			writeEntry(os, entry, method, new byte[0]);
 		}
-		// close the entry
-        if (entry instanceof ZipEntry &&
-            "store".equals(method)) {
-            ((ZipEntry) entry).setMethod(ZipOutputStream.STORED);
-            chksum.update(value);
-            ((ZipEntry) entry).setCrc(chksum.getValue());
-            ((ZipEntry) entry).setSize(value.length);
-        }
+	}
+
+	/**
+	 * Writes the entry and its content to the archive.
+	 *
+	 * @param os The Output Stream of the archive
+	 * @param entry The entry
+	 * @param method The compression method of the entry, only effective for zip entries
+	 * @param value The content of the entry
+	 */
+	private void writeEntry(OutputStream os, Object entry, String method, byte[] value) throws IOException {
+		if (isSizeRequired(entry, method)) {
+			CRC32 chksum = new CRC32();
+			chksum.update(value);
+			setSize(entry, method, value.length, chksum.getValue());
+		}
+		putEntry(os, entry);
+		os.write(value);
+		closeEntry(os);
+	}
 
+	/**
+	 * Writes the entry to the archive, copying its content from a file.
+	 *
+	 * @param os The Output Stream of the archive
+	 * @param entry The entry
+	 * @param method The compression method of the entry, only effective for zip entries
+	 * @param file The file holding the content of the entry
+	 */
+	private void writeEntry(OutputStream os, Object entry, String method, File file) throws IOException {
+		if (isSizeRequired(entry, method)) {
+			long crc = 0;
+			if (entry instanceof ZipEntry) {
+				// the checksum is needed up front, so read the file twice rather than buffering it
+				CheckedInputStream cis = new CheckedInputStream(new FileInputStream(file), new CRC32());
+				try {
+					byte[] data = new byte[16384];
+					while (cis.read(data, 0, data.length) > -1) {
+						// only computing the checksum
+					}
+				} finally {
+					cis.close();
+				}
+				crc = cis.getChecksum().getValue();
+			}
+			setSize(entry, method, file.length(), crc);
+		}
 		putEntry(os, entry);
-        os.write(value);
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] data = new byte[16384];
+			int len = 0;
+			while ((len=is.read(data,0,data.length))>0) {
+				os.write(data,0,len);
+			}
+		} finally {
+			is.close();
+		}
 		closeEntry(os);
 	}
+
+	/**
+	 * Writes the entry to the archive, serializing XML content into it. If the
+	 * size of the entry has to be known before its content is written, the XML
+	 * is serialized to a temporary file first.
+	 *
+	 * @param os The Output Stream of the archive
+	 * @param entry The entry
+	 * @param method The compression method of the entry, only effective for zip entries
+	 * @param content The XML content of the entry
+	 */
+	private void writeEntry(OutputStream os, Object entry, String method, XMLContent content) throws IOException, SAXException {
+		Serializer serializer = context.getBroker().getSerializer();
+		serializer.setUser(context.getUser());
+		serializer.setProperty("omit-xml-declaration", "no");
+		getDynamicSerializerOptions(serializer);
+
+		if (isSizeRequired(entry, method)) {
+			final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+			File tempFile = temporaryFileManager.getTemporaryFile();
+			try {
+				Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(tempFile)), "UTF-8");
+				try {
+					content.serialize(serializer, writer);
+				} finally {
+					writer.close();
+				}
+				writeEntry(os, entry, method, tempFile);
+			} finally {
+				temporaryFileManager.returnTemporaryFile(tempFile);
+			}
+		} else {
+			putEntry(os, entry);
+			// do not close the writer, that would close the archive
+			Writer writer = new OutputStreamWriter(os, "UTF-8");
+			content.serialize(serializer, writer);
+			writer.flush();
+			closeEntry(os);
+		}
+	}
+
+	/**
+	 * Sets the size of an entry whose content is about to be written. For a
+	 * stored zip entry the checksum is set as well.
+	 */
+	private void setSize(Object entry, String method, long size, long crc) {
+		if (entry instanceof ZipEntry &&
+			"store".equals(method)) {
+			((ZipEntry) entry).setMethod(ZipOutputStream.STORED);
+			((ZipEntry) entry).setCrc(crc);
+			((ZipEntry) entry).setSize(size);
+		} else {
+			setEntrySize(entry, size);
+		}
+	}
+
+	private boolean isSizeRequired(Object entry, String method) {
+		return (entry instanceof ZipEntry && "store".equals(method)) || isSizeRequired(entry);
+	}
+
+	/**
+	 * XML content of an entry, serialized when the entry is written.
+	 */
+	private interface XMLContent {
+		void serialize(Serializer serializer, Writer writer) throws SAXException;
+	}
 	
 	/**
 	 * Adds a Collection and its child collections and resources recursively to
@@ -498,7 +584,18 @@ public abstract class AbstractCompressFunction extends BasicFunction
 		}
 	}
 	
-	protected abstract OutputStream stream(ByteArrayOutputStream baos); 
+	protected abstract OutputStream stream(OutputStream os);
+
+	/**
+	 * Returns true if the size of the entry has to be set before its
+	 * content is written to the archive.
+	 */
+	protected boolean isSizeRequired(Object entry) {
+		return false;
+	}
+
+	protected void setEntrySize(Object entry, long size) {
+	}
 	
 	protected abstract Object newEntry(String name);
 	
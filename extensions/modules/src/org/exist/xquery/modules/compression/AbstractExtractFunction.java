@@ -21,14 +21,16 @@
  */
 package org.exist.xquery.modules.compression;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import org.apache.commons.io.output.ByteArrayOutputStream;
+import java.io.OutputStream;
 
 import org.exist.util.MimeTable;
 import org.exist.util.MimeType;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xmldb.EXistResource;
 import org.exist.xmldb.LocalCollection;
 import org.exist.xquery.BasicFunction;
@@ -41,7 +43,6 @@ import org.exist.xquery.modules.ModuleUtils;
 import org.exist.xquery.value.AnyURIValue;
 import org.exist.xquery.value.Base64BinaryValueType;
 import org.exist.xquery.value.BinaryValue;
-import org.exist.xquery.value.BinaryValueFromInputStream;
 import org.exist.xquery.value.BooleanValue;
 import org.exist.xquery.value.FunctionReference;
 import org.exist.xquery.value.NodeValue;
@@ -147,88 +148,126 @@ public abstract class AbstractExtractFunction extends BasicFunction
             Sequence entryDataFunctionResult;
             Sequence uncompressedData = Sequence.EMPTY_SEQUENCE;
             
-            //copy the input data
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte buf[] = new byte[1024];
-            int read = -1;
-            while((read = is.read(buf)) != -1)
+            //copy the input data into a temporary file, so that large entries are not held in memory
+            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+            final File entryFile = temporaryFileManager.getTemporaryFile();
+            boolean entryFileReleased = false;
+            try
             {
-                baos.write(buf, 0, read);
-            }
-            byte[] entryData = baos.toByteArray();
-
-            if (entryDataFunction.getSignature().getArgumentCount() == 3){
-            	
-                Sequence dataParams[] = new Sequence[3];
-                System.arraycopy(filterParams, 0, dataParams, 0, 2);
-                dataParams[2] = storeParam;
-                entryDataFunctionResult = entryDataFunction.evalFunction(contextSequence, null, dataParams);
-                
-                String path = entryDataFunctionResult.itemAt(0).getStringValue();
-                
-                Collection root = new LocalCollection(context.getUser(), context.getBroker().getBrokerPool(), new AnyURIValue("/db").toXmldbURI(), context.getAccessContext());
-
-    			if (isDirectory){
-                	
-                	XMLDBAbstractCollectionManipulator.createCollection(root, path);
-                	
+                copyToFile(is, entryFile);
+
+                if (entryDataFunction.getSignature().getArgumentCount() == 3){
+
+                    Sequence dataParams[] = new Sequence[3];
+                    System.arraycopy(filterParams, 0, dataParams, 0, 2);
+                    dataParams[2] = storeParam;
+                    entryDataFunctionResult = entryDataFunction.evalFunction(contextSequence, null, dataParams);
+
+                    String path = entryDataFunctionResult.itemAt(0).getStringValue();
+
+                    Collection root = new LocalCollection(context.getUser(), context.getBroker().getBrokerPool(), new AnyURIValue("/db").toXmldbURI(), context.getAccessContext());
+
+                    if (isDirectory){
+
+                        XMLDBAbstractCollectionManipulator.createCollection(root, path);
+
+                    } else {
+
+                        Resource resource;
+
+                        File file = new File(path);
+                        name = file.getName();
+                        path = file.getParent();
+
+                        Collection target = (path==null) ? root : XMLDBAbstractCollectionManipulator.createCollection(root, path);
+
+                        MimeType mime = MimeTable.getInstance().getContentTypeFor(name);
+
+                        try{
+                            NodeValue content = parseXML(entryFile);
+                            resource = target.createResource(name, "XMLResource");
+                            ContentHandler handler = ((XMLResource)resource).setContentAsSAX();
+                            handler.startDocument();
+                            content.toSAX(context.getBroker(), handler, null);
+                            handler.endDocument();
+                        } catch(SAXException e){
+                            resource = target.createResource(name, "BinaryResource");
+                            resource.setContent(entryFile);
+                        }
+
+                        if (resource != null){
+                            if (mime != null){
+                                ((EXistResource)resource).setMimeType(mime.getName());
+                            }
+                            target.storeResource(resource);
+                        }
+
+                    }
+
                 } else {
 
-                    Resource resource;
-                    
-            		File file = new File(path);
-            		name = file.getName();
-            		path = file.getParent();
-            		
-            		Collection target = (path==null) ? root : XMLDBAbstractCollectionManipulator.createCollection(root, path);
-            		
-            	    MimeType mime = MimeTable.getInstance().getContentTypeFor(name);
-            	    
-            		try{
-            			NodeValue content = ModuleUtils.streamToXML(context, new ByteArrayInputStream(baos.toByteArray()));
-            			resource = target.createResource(name, "XMLResource");
-            			ContentHandler handler = ((XMLResource)resource).setContentAsSAX();
-            			handler.startDocument();
-            			content.toSAX(context.getBroker(), handler, null);
-            			handler.endDocument();
-            		} catch(SAXException e){
-            			resource = target.createResource(name, "BinaryResource");
-            			resource.setContent(baos.toByteArray());
+                    //try and parse as xml, fall back to binary
+                    try
+                    {
+                        uncompressedData = parseXML(entryFile);
+                    }
+                    catch(SAXException saxe)
+                    {
+                        if(entryFile.length() > 0)
+                        {
+                            //the binary value returns the file when it is closed
+                            uncompressedData = TemporaryFileBinaryValue.getInstance(context, new Base64BinaryValueType(), entryFile);
+                            entryFileReleased = true;
+                        }
                     }
-            		
-            		if (resource != null){
-            			if (mime != null){
-            				((EXistResource)resource).setMimeType(mime.getName());
-            			}
-            			target.storeResource(resource);
-            		}
-                	
-                }
-                
-            } else {
-            	
-                //try and parse as xml, fall back to binary
-                try
-                {
-                    uncompressedData = ModuleUtils.streamToXML(context, new ByteArrayInputStream(entryData));
-                }
-                catch(SAXException saxe)
-                {
-                    if(entryData.length > 0)
-                        uncompressedData = BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), new ByteArrayInputStream(entryData));
-                }
 
-                //call the entry-data function
-                Sequence dataParams[] = new Sequence[4];
-                System.arraycopy(filterParams, 0, dataParams, 0, 2);
-                dataParams[2] = uncompressedData;
-                dataParams[3] = storeParam;
-                entryDataFunctionResult = entryDataFunction.evalFunction(contextSequence, null, dataParams);
-                
+                    //call the entry-data function
+                    Sequence dataParams[] = new Sequence[4];
+                    System.arraycopy(filterParams, 0, dataParams, 0, 2);
+                    dataParams[2] = uncompressedData;
+                    dataParams[3] = storeParam;
+                    entryDataFunctionResult = entryDataFunction.evalFunction(contextSequence, null, dataParams);
+
+                }
             }
-            
+            finally
+            {
+                if(!entryFileReleased)
+                    temporaryFileManager.returnTemporaryFile(entryFile);
+            }
+
             return entryDataFunctionResult;
         }
     }
     
+    private void copyToFile(InputStream is, File file) throws IOException
+    {
+        OutputStream os = new FileOutputStream(file);
+        try
+        {
+            byte buf[] = new byte[4096];
+            int read = -1;
+            while((read = is.read(buf)) != -1)
+            {
+                os.write(buf, 0, read);
+            }
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    private NodeValue parseXML(File file) throws IOException, SAXException
+    {
+        InputStream fis = new FileInputStream(file);
+        try
+        {
+            return ModuleUtils.streamToXML(context, fis);
+        }
+        finally
+        {
+            fis.close();
+        }
+    }
 }
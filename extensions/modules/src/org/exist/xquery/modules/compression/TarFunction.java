@@ -24,7 +24,6 @@ package org.exist.xquery.modules.compression;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 
@@ -94,8 +93,21 @@ public class TarFunction extends AbstractCompressFunction
     }
 
     @Override
-    protected OutputStream stream(ByteArrayOutputStream baos)
+    protected OutputStream stream(OutputStream os)
     {
-            return new TarArchiveOutputStream(baos);
+            return new TarArchiveOutputStream(os);
+    }
+
+    @Override
+    protected boolean isSizeRequired(Object entry)
+    {
+            // the size is part of the tar header
+            return true;
+    }
+
+    @Override
+    protected void setEntrySize(Object entry, long size)
+    {
+            ((TarArchiveEntry) entry).setSize(size);
     }	
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2014 The eXist-db Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * $Id$
+ */
+package org.exist.xquery.modules.compression;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.BinaryValueFromFile;
+import org.exist.xquery.value.BinaryValueManager;
+import org.exist.xquery.value.BinaryValueType;
+
+/**
+ * A binary value backed by a temporary file, e.g. an archive written by one of
+ * the compression functions. The file is handed back to the
+ * {@link TemporaryFileManager} when the value is closed, which happens at the
+ * latest when the query finishes.
+ */
+public class TemporaryFileBinaryValue extends BinaryValueFromFile
+{
+    private final File tempFile;
+    private boolean released = false;
+
+    protected TemporaryFileBinaryValue(BinaryValueManager manager, BinaryValueType<?> binaryValueType, File tempFile) throws XPathException
+    {
+        super(manager, binaryValueType, tempFile);
+        this.tempFile = tempFile;
+    }
+
+    // the raw type matches BinaryValueFromFile.getInstance, which this method hides
+    @SuppressWarnings("rawtypes")
+    public static TemporaryFileBinaryValue getInstance(BinaryValueManager manager, BinaryValueType binaryValueType, File tempFile) throws XPathException
+    {
+        final TemporaryFileBinaryValue binaryFile = new TemporaryFileBinaryValue(manager, binaryValueType, tempFile);
+        manager.registerBinaryValueInstance(binaryFile);
+        return binaryFile;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            synchronized(this)
+            {
+                if(!released)
+                {
+                    released = true;
+                    TemporaryFileManager.getInstance().returnTemporaryFile(tempFile);
+                }
+            }
+        }
+    }
+}
@@ -21,13 +21,15 @@
  */
 package org.exist.xquery.modules.compression;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
-
 import org.exist.dom.QName;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.BasicFunction;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.FunctionSignature;
@@ -35,7 +37,6 @@ import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.Base64BinaryValueType;
 import org.exist.xquery.value.BinaryValue;
-import org.exist.xquery.value.BinaryValueFromInputStream;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
@@ -75,25 +76,42 @@ public class UnGZipFunction extends BasicFunction
             return Sequence.EMPTY_SEQUENCE;
 
         BinaryValue bin = (BinaryValue) args[0].itemAt(0);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+        File tempFile = null;
+        BinaryValue result = null;
 
-        // ungzip the data
+        // ungzip the data into a temporary file
         try
         {
+            tempFile = temporaryFileManager.getTemporaryFile();
             GZIPInputStream gzis = new GZIPInputStream(bin.getInputStream());
-            int size;
-            byte[] b = new byte[4096];
-            while ((size = gzis.read(b, 0, 4096)) != -1)
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile));
+            try
+            {
+                int size;
+                byte[] b = new byte[4096];
+                while ((size = gzis.read(b, 0, 4096)) != -1)
+                {
+                    os.write(b, 0, size);
+                }
+            }
+            finally
             {
-                baos.write(b, 0, size);
+                os.close();
+                gzis.close();
             }
-            baos.flush();
-            baos.close();
-            return BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), new ByteArrayInputStream(baos.toByteArray()));
+
+            result = TemporaryFileBinaryValue.getInstance(context, new Base64BinaryValueType(), tempFile);
+            return result;
         }
         catch(IOException ioe)
         {
             throw new XPathException(this, ioe.getMessage());
         }
+        finally
+        {
+            if(result == null && tempFile != null)
+                temporaryFileManager.returnTemporaryFile(tempFile);
+        }
     }
 }
\ No newline at end of file
@@ -21,8 +21,6 @@
  */
 package org.exist.xquery.modules.compression;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
-
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.zip.ZipEntry;
@@ -95,8 +93,8 @@ public class ZipFunction extends AbstractCompressFunction {
     }
 
     @Override
-    protected OutputStream stream(ByteArrayOutputStream baos)
+    protected OutputStream stream(OutputStream os)
     {
-        return new ZipOutputStream(baos);
+        return new ZipOutputStream(os);
     }
 }
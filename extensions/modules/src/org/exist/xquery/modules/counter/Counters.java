@@ -1,36 +1,56 @@
 package org.exist.xquery.modules.counter;
 
 import java.io.*;
-import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
 import org.exist.EXistException;
 import org.exist.backup.RawDataBackup;
-import org.exist.indexing.AbstractIndex;
-import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
-import org.exist.storage.DBBroker;
-import org.exist.storage.btree.DBException;
-import org.exist.util.DatabaseConfigurationException;
 
 /**
+ * Named counters, kept in memory and persisted to the counter store file.
+ *
+ * The values are handed out from an in-memory atomic counter. The store does not record
+ * every value: it records a high-water mark for each counter, reserving a block of
+ * {@link #BLOCK_SIZE} values, and is only written when a block is used up. After a restart,
+ * a counter continues after its last reserved block, so values are never handed out twice,
+ * but the unused values of a block are skipped.
+ *
+ * The store is an append-only log of <code>name;mark</code> records; a record
+ * <code>name;</code> removes the counter. The last record of a counter wins. The log is
+ * compacted when the database is started and whenever it has grown large.
+ *
  * @author Jasper Linthorst (jasper.linthorst@gmail.com)
  *
  */
 public class Counters implements RawBackupSupport {
 
     private final static Logger LOG = Logger.getLogger(Counters.class);
-    
+
     private static volatile Counters instance;
 
     public final static String COUNTERSTORE = "counters";
     public final static String DELIMITER = ";";
 
+    /** Number of values reserved at once */
+    public final static int BLOCK_SIZE = 1000;
+
+    /** Number of records appended before the store is compacted */
+    private final static int COMPACT_THRESHOLD = 10000;
+
     private File store = null;
-    private Hashtable<String, Long> counters = new Hashtable<String, Long>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    // guarded by this
+    private FileOutputStream os = null;
+    private Writer writer = null;
+    private int records = 0;
 
     private Counters(String dataDir) throws EXistException {
 
@@ -57,7 +77,12 @@ public class Counters implements RawBackupSupport {
                 while ((line = br.readLine()) != null) {
                     //Use ; as a DELIMITER, counter names must be tested and rejected when they contain this character!
                     String[] tokens = line.split(DELIMITER);
-                    counters.put(tokens[0], Long.parseLong(tokens[1]));
+                    if (tokens.length == 1 && line.endsWith(DELIMITER)) {
+                        counters.remove(tokens[0]);
+                    } else {
+                        // continue after the reserved block
+                        counters.put(tokens[0], new Counter(Long.parseLong(tokens[1])));
+                    }
                 }
 
                 br.close();
@@ -72,6 +97,14 @@ public class Counters implements RawBackupSupport {
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new EXistException("Corrupt counter store file: " + store.getAbsolutePath());
         }
+
+        synchronized (this) {
+            try {
+                compact();
+            } catch (IOException e) {
+                throw new EXistException("Unable to save to counter store file.");
+            }
+        }
     }
 
     /**
@@ -79,8 +112,12 @@ public class Counters implements RawBackupSupport {
      */
     public static Counters getInstance(String dataDir) throws EXistException {
         if (instance == null) {
-            LOG.debug("Initializing counters.");
-            instance = new Counters(dataDir);
+            synchronized (Counters.class) {
+                if (instance == null) {
+                    LOG.debug("Initializing counters.");
+                    instance = new Counters(dataDir);
+                }
+            }
         }
         return instance;
     }
@@ -94,7 +131,7 @@ public class Counters implements RawBackupSupport {
 
     /**
      * Creates a new Counter, initializes it to 0 and returns the current value in a long.
-     * 
+     *
      * @param counterName
      * @return the initial value of the newly created counter
      * @throws EXistException
@@ -106,44 +143,48 @@ public class Counters implements RawBackupSupport {
     /**
      * Creates a new Counter, initializes it to initValue and returns the current value in a long.
      * If there already is a counter with the same name, the current value of this counter is returned.
-     * 
+     *
      * @param counterName
      * @param initValue
      * @return the current value of the named counter
-     * @throws EXistException 
+     * @throws EXistException
      */
-    public synchronized long createCounter(String counterName, long initValue) throws EXistException {
-        if (counters.containsKey(counterName)) {
-            return counters.get(counterName);
-        } else {
-            counters.put(counterName, initValue);
-
+    public long createCounter(String counterName, long initValue) throws EXistException {
+        Counter counter = counters.get(counterName);
+        if (counter != null) {
+            return counter.value.get();
+        }
+        synchronized (this) {
+            counter = counters.get(counterName);
+            if (counter != null) {
+                return counter.value.get();
+            }
+            counter = new Counter(initValue);
             try {
-                serializeTable();
-            } catch (FileNotFoundException e) {
+                append(counterName + DELIMITER + initValue);
+            } catch (IOException e) {
                 throw new EXistException("Unable to save to counter store file.");
             }
-
-            return counters.get(counterName);
+            counters.put(counterName, counter);
+            return initValue;
         }
     }
 
     /**
      * Removes a counter by the specified name.
-     * 
+     *
      * @param counterName
      * @return true if the counter is removed
-     * @throws EXistException 
+     * @throws EXistException
      */
     public synchronized boolean destroyCounter(String counterName) throws EXistException {
         if (counters.containsKey(counterName)) {
-            counters.remove(counterName);
-
             try {
-                serializeTable();
-            } catch (FileNotFoundException e) {
+                append(counterName + DELIMITER);
+            } catch (IOException e) {
                 throw new EXistException("Unable to remove counter from counter store file.");
             }
+            counters.remove(counterName);
 
             return true;
         } else {
@@ -153,25 +194,35 @@ public class Counters implements RawBackupSupport {
 
     /**
      * Retrieves the next value of a counter (specified by name).
-     * 
+     *
      * @param counterName
      * @return the next counter value or -1 if the counter does not exist.
      * @throws EXistException
      */
-    public synchronized long nextValue(String counterName) throws EXistException {
-        if (!counters.containsKey(counterName)) {
+    public long nextValue(String counterName) throws EXistException {
+        final Counter counter = counters.get(counterName);
+        if (counter == null) {
             return -1;
         }
 
-        long c = counters.get(counterName);
-        c++;
-
-        counters.put(counterName, c);
-
-        try {
-            serializeTable();
-        } catch (FileNotFoundException e) {
-            throw new EXistException("Unable to save to counter store file.");
+        final long c = counter.value.incrementAndGet();
+        // the value may only be handed out once its block is in the store
+        if (c > counter.reserved) {
+            synchronized (this) {
+                if (c > counter.reserved) {
+                    if (counters.get(counterName) != counter) {
+                        // destroyed meanwhile
+                        return -1;
+                    }
+                    final long mark = c + BLOCK_SIZE - 1;
+                    try {
+                        append(counterName + DELIMITER + mark);
+                    } catch (IOException e) {
+                        throw new EXistException("Unable to save to counter store file.");
+                    }
+                    counter.reserved = mark;
+                }
+            }
         }
 
         return c;
@@ -179,7 +230,7 @@ public class Counters implements RawBackupSupport {
 
     /**
      * Returns all available counters in a Set of Strings.
-     * 
+     *
      * @return all available counters in a Set of Strings
      */
     public Set<String> availableCounters() {
@@ -187,29 +238,56 @@ public class Counters implements RawBackupSupport {
     }
 
     /**
-     * Serializes the Map with counters to the filesystem.
-     * 
-     * @throws FileNotFoundException
+     * Appends a record to the store and forces it to disk.
      */
-    private synchronized void serializeTable() throws FileNotFoundException {
-
-        PrintWriter p = new PrintWriter(store);
-        Iterator<String> i = counters.keySet().iterator();
+    private void append(String record) throws IOException {
+        if (records >= COMPACT_THRESHOLD) {
+            compact();
+        }
+        writer.write(record);
+        writer.write('\n');
+        writer.flush();
+        os.getChannel().force(false);
+        records++;
+    }
 
-        String k = "";
-        long v = 0;
+    /**
+     * Rewrites the store with one record per counter, recording its reserved block,
+     * and reopens it for appending.
+     */
+    private void compact() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
 
-        while (i.hasNext()) {
-            k = (String) i.next();
-            v = counters.get(k);
-            p.println(k + DELIMITER + v);
+        final File tmp = new File(store.getParentFile(), COUNTERSTORE + ".tmp");
+        final FileOutputStream tmpOs = new FileOutputStream(tmp);
+        final Writer w = new BufferedWriter(new OutputStreamWriter(tmpOs));
+        try {
+            for (final Map.Entry<String, Counter> entry : counters.entrySet()) {
+                w.write(entry.getKey() + DELIMITER + entry.getValue().reserved);
+                w.write('\n');
+            }
+            w.flush();
+            tmpOs.getChannel().force(false);
+        } finally {
+            w.close();
+        }
+        if (!tmp.renameTo(store)) {
+            // renameTo does not replace an existing file on all platforms
+            if (!store.delete() || !tmp.renameTo(store)) {
+                throw new IOException("Unable to replace counter store file " + store.getAbsolutePath());
+            }
         }
 
-        p.close();
+        os = new FileOutputStream(store, true);
+        writer = new BufferedWriter(new OutputStreamWriter(os));
+        records = counters.size();
     }
 
     @Override
-    public void backupToArchive(RawDataBackup backup) throws IOException {
+    public synchronized void backupToArchive(RawDataBackup backup) throws IOException {
         if (!store.exists())
             return;
         OutputStream os = backup.newEntry(store.getName());
@@ -224,4 +302,16 @@ public class Counters implements RawBackupSupport {
         backup.closeEntry();
     }
 
+    private final static class Counter {
+
+        final AtomicLong value;
+
+        /** Highest value persisted in the store, may be handed out without writing */
+        volatile long reserved;
+
+        Counter(long value) {
+            this.value = new AtomicLong(value);
+            this.reserved = value;
+        }
+    }
 }
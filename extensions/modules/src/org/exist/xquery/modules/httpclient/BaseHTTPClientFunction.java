@@ -42,11 +42,15 @@ import org.w3c.dom.NodeList;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import org.exist.Namespaces;
 import org.exist.dom.QName;
+import org.exist.memtree.AppendingSAXAdapter;
 import org.exist.memtree.DocumentBuilderReceiver;
 import org.exist.memtree.MemTreeBuilder;
 import org.exist.memtree.NodeImpl;
+import org.exist.memtree.SAXAdapter;
 import org.exist.util.MimeTable;
 import org.exist.util.MimeType;
 import org.exist.xquery.BasicFunction;
@@ -77,6 +81,7 @@ import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.exist.util.Configuration;
+import org.exist.util.XMLReaderPool;
 import org.exist.util.io.CachingFilterInputStream;
 import org.exist.util.io.FilterInputStreamCache;
 import org.exist.util.io.FilterInputStreamCacheFactory;
@@ -190,28 +195,12 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
                 }
             }
 			
-            final String configFile = System.getProperty("http.configfile");
-            if(configFile != null) {
-                final File f = new File(configFile);
-                if(f.exists()) {
-                    setConfigFromFile(f, http);
-                } else {
-                    logger.warn("http.configfile '" + f.getAbsolutePath() + "' does not exist!");
-                }
-            }
-            
-            // Legacy: set the proxy server (if any)
-            final String proxyHost = System.getProperty("http.proxyHost");
-            if(proxyHost != null) {
-                //TODO: support for http.nonProxyHosts e.g. -Dhttp.nonProxyHosts="*.devonline.gov.uk|*.devon.gov.uk"
-                final ProxyHost proxy = new ProxyHost(proxyHost, Integer.parseInt(System.getProperty("http.proxyPort")));
-                http.getHostConfiguration().setProxyHost(proxy);
-            } 
+            configureClient(http);
 
             //perform the request
             final int statusCode = http.executeMethod(method);
 
-            encodedResponse = encodeResponseAsXML(context, method, statusCode, parserFeatures, parserProperties);
+            encodedResponse = encodeResponseAsXML(context, method, statusCode, parserFeatures, parserProperties, 0);
 
             //persist state?
             if(persistState) {
@@ -219,11 +208,36 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
             }
         } catch(final Exception e) {
             LOG.error(e.getMessage(), e);
-            encodedResponse = encodeErrorResponse(context, e.getMessage());
+            encodedResponse = encodeErrorResponse(context, e.getMessage(), 0);
         }
 
         return encodedResponse;
     }
+
+    /**
+     * Sets the proxy configuration on a client.
+     *
+     * @param   http  The client to configure
+     */
+    protected void configureClient(final HttpClient http) {
+        final String configFile = System.getProperty("http.configfile");
+        if(configFile != null) {
+            final File f = new File(configFile);
+            if(f.exists()) {
+                setConfigFromFile(f, http);
+            } else {
+                logger.warn("http.configfile '" + f.getAbsolutePath() + "' does not exist!");
+            }
+        }
+
+        // Legacy: set the proxy server (if any)
+        final String proxyHost = System.getProperty("http.proxyHost");
+        if(proxyHost != null) {
+            //TODO: support for http.nonProxyHosts e.g. -Dhttp.nonProxyHosts="*.devonline.gov.uk|*.devon.gov.uk"
+            final ProxyHost proxy = new ProxyHost(proxyHost, Integer.parseInt(System.getProperty("http.proxyPort")));
+            http.getHostConfiguration().setProxyHost(proxy);
+        }
+    }
     
     private void setConfigFromFile(final File configFile, final HttpClient http) {
         
@@ -304,19 +318,108 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
      * @param   context     The context of the calling XQuery
      * @param   method      The HTTP Request Method
      * @param   statusCode  The status code returned from the http method invocation
+     * @param   index       The position of the request if several requests are sent at once, 0 otherwise
+     *
+     * @return  The data in XML format
+     *
+     * @throws  XPathException 
+     * @throws  IOException     
+     */
+    protected Sequence encodeResponseAsXML(final XQueryContext context, final HttpMethod method, final int statusCode, final Map<String, Boolean> parserFeatures, final Map<String, String> parserProperties, final int index) throws XPathException, IOException {
+
+        // Head and Options methods never have any response body
+        final InputStream bodyAsStream = (method instanceof HeadMethod || method instanceof OptionsMethod) ? null : method.getResponseBodyAsStream();
+        if(bodyAsStream == null) {
+            try {
+                return encodeResponseAsXML(context, method, statusCode, null, true, parserFeatures, parserProperties, index);
+            } catch(final SAXException se) {
+                throw new XPathException(this, se.getMessage(), se);
+            }
+        }
+
+        CachingFilterInputStream cfis = null;
+        FilterInputStreamCache cache = null;
+        try {
+
+            //we have to cache the input stream, so we can reread it, as we may use it several times (xml, html and text or binary attempts)
+            cache = FilterInputStreamCacheFactory.getCacheInstance(new FilterInputStreamCacheFactory.FilterInputStreamCacheConfiguration(){
+                @Override
+                public String getCacheClass() {
+                    return (String) context.getBroker().getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY);
+                }
+            });
+
+            cfis = new CachingFilterInputStream(cache, bodyAsStream);
+
+            //mark the start of the stream
+            cfis.mark(Integer.MAX_VALUE);
+
+            try {
+                return encodeResponseAsXML(context, method, statusCode, cfis, true, parserFeatures, parserProperties, index);
+            } catch(final SAXException se) {
+                // a body declared as XML is not well-formed: encode the response again and
+                // report the body as text or binary, like any other body which is not XML
+                final String msg = "Request for URI '"
+                    + method.getURI().toString()
+                    + "' Could not parse http response content as XML (will fallback to text or binary): "
+                    + se.getMessage();
+                if(logger.isDebugEnabled()) {
+                    logger.debug(msg, se);
+                } else {
+                    logger.info(msg);
+                }
+                cfis.reset();
+                try {
+                    return encodeResponseAsXML(context, method, statusCode, cfis, false, parserFeatures, parserProperties, index);
+                } catch(final SAXException e) {
+                    throw new XPathException(this, e.getMessage(), e);
+                }
+            }
+        } finally {
+            if(cache != null) {
+                try {
+                    cache.invalidate();
+                } catch(final IOException ioe) {
+                    LOG.error(ioe.getMessage(), ioe);
+                }
+            }
+
+            if(cfis != null) {
+                try {
+                    cfis.close();
+                } catch(final IOException ioe) {
+                    LOG.error(ioe.getMessage(), ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the HTTP Response as an XML structure, reading the body from a stream which can be reset.
+     *
+     * @param   context     The context of the calling XQuery
+     * @param   method      The HTTP Request Method
+     * @param   statusCode  The status code returned from the http method invocation
+     * @param   cfis        The cached response body, or null if there is none
+     * @param   parseXML    Whether a body declared as XML should be parsed
+     * @param   index       The position of the request if several requests are sent at once, 0 otherwise
      *
      * @return  The data in XML format
      *
      * @throws  XPathException 
      * @throws  IOException     
+     * @throws  SAXException    if a body declared as XML is not well-formed
      */
-    private Sequence encodeResponseAsXML(final XQueryContext context, final HttpMethod method, final int statusCode, final Map<String, Boolean> parserFeatures, final Map<String, String> parserProperties) throws XPathException, IOException {
+    private Sequence encodeResponseAsXML(final XQueryContext context, final HttpMethod method, final int statusCode, final CachingFilterInputStream cfis, final boolean parseXML, final Map<String, Boolean> parserFeatures, final Map<String, String> parserProperties, final int index) throws XPathException, IOException, SAXException {
 
         final MemTreeBuilder builder = context.getDocumentBuilder();
 
         builder.startDocument();
         builder.startElement(new QName("response", NAMESPACE_URI, PREFIX), null );
         builder.addAttribute(new QName("statusCode", null, null), String.valueOf(statusCode));
+        if(index > 0) {
+            builder.addAttribute(new QName("index", null, null), String.valueOf(index));
+        }
 
         //Add all the response headers
         builder.startElement(new QName("headers", NAMESPACE_URI, PREFIX), null);
@@ -337,7 +440,9 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
             // Add the response body node
             builder.startElement(new QName("body", NAMESPACE_URI, PREFIX), null);
 
-            insertResponseBody(context, method, builder, parserFeatures, parserProperties);
+            if(cfis != null) {
+                insertResponseBody(context, method, builder, cfis, parseXML, parserFeatures, parserProperties);
+            }
 
             builder.endElement();
         }
@@ -354,19 +459,23 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
      *
      * @param   context  The context of the calling XQuery
      * @param   message  The exception error message
+     * @param   index    The position of the request if several requests are sent at once, 0 otherwise
      *
      * @return  The response in XML format
      *
      * @throws  IOException     
      * @throws  XPathException 
      */
-    private Sequence encodeErrorResponse(final XQueryContext context, final String message) throws IOException, XPathException {
+    protected Sequence encodeErrorResponse(final XQueryContext context, final String message, final int index) throws IOException, XPathException {
 
         final MemTreeBuilder builder = context.getDocumentBuilder();
 
         builder.startDocument();
         builder.startElement(new QName("response", NAMESPACE_URI, PREFIX), null);
         builder.addAttribute(new QName("statusCode", null, null), HTTP_EXCEPTION_STATUS_CODE);
+        if(index > 0) {
+            builder.addAttribute(new QName("index", null, null), String.valueOf(index));
+        }
 
         builder.startElement(new QName("body", NAMESPACE_URI, PREFIX), null);
 
@@ -392,154 +501,131 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
      * <p>Conversion Preference - 1) Try and parse as XML, if successful returns a Node 2) Try and parse as HTML returning as XML compatible HTML, if
      * successful returns a Node 3) Return as base64Binary encoded data</p>
      *
-     * @param   context  The context of the calling XQuery
-     * @param   method   The HTTP Request Method
-     * @param   builder  The MemTreeBuilder that is being used
+     * @param   context   The context of the calling XQuery
+     * @param   method    The HTTP Request Method
+     * @param   builder   The MemTreeBuilder that is being used
+     * @param   cfis      The cached response body, marked at its start
+     * @param   parseXML  Whether a body declared as XML should be parsed
      *
      * @throws  IOException     
      * @throws  XPathException  
+     * @throws  SAXException    if a body declared as XML is not well-formed
      */
-    private void insertResponseBody(final XQueryContext context, final HttpMethod method, final MemTreeBuilder builder, final Map<String, Boolean>parserFeatures, final Map<String, String>parserProperties) throws IOException, XPathException {
+    private void insertResponseBody(final XQueryContext context, final HttpMethod method, final MemTreeBuilder builder, final CachingFilterInputStream cfis, final boolean parseXML, final Map<String, Boolean>parserFeatures, final Map<String, String>parserProperties) throws IOException, XPathException, SAXException {
         NodeImpl responseNode = null;
-        
-        final InputStream bodyAsStream = method.getResponseBodyAsStream();
-
-        // check if there is a response body
-        if(bodyAsStream != null) {
 
-            CachingFilterInputStream cfis = null;
-            FilterInputStreamCache cache = null;
-            try {
-                    
-                //we have to cache the input stream, so we can reread it, as we may use it twice (once for xml attempt and once for string attempt)
-                cache = FilterInputStreamCacheFactory.getCacheInstance(new FilterInputStreamCacheFactory.FilterInputStreamCacheConfiguration(){
-                    @Override
-                    public String getCacheClass() {
-                        return (String) context.getBroker().getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY);
-                    }
-                });
+        // an empty body is no body
+        if(cfis.read() < 0) {
+            return;
+        }
+        cfis.reset();
 
-                cfis = new CachingFilterInputStream(cache, bodyAsStream);
+        // determine the type of the response document
+        final Header responseContentType = method.getResponseHeader("Content-Type");
+        final MimeType responseMimeType = getResponseMimeType(responseContentType);
 
-                //mark the start of the stream
-                cfis.mark(Integer.MAX_VALUE);
+        if(responseContentType != null) {
+            builder.addAttribute(new QName("mimetype", null, null), responseContentType.getValue());
+        }
 
+        if(responseMimeType.isXMLType()) {
+            if(parseXML) {
+                // declared as XML, parse it straight into the response
+                builder.addAttribute(new QName("type", null, null ), "xml");
+                streamXMLBody(context, cfis, builder);
+                return;
+            }
+        } else {
+            //try and parse the response as XML
+            try {
+                //we have to use CloseShieldInputStream otherwise the parser closes the stream and we cant later reread
+                final InputStream shieldedInputStream = new CloseShieldInputStream(cfis);
+                responseNode = (NodeImpl)ModuleUtils.streamToXML(context, shieldedInputStream);
+                builder.addAttribute(new QName("type", null, null ), "xml");
+                responseNode.copyTo(null, new DocumentBuilderReceiver(builder));
+            } catch(final SAXException se) {
+                // could not parse to xml
+                // not an error in itself, it will be treated either as HTML,
+                // text or binary here below
+                final String msg = "Request for URI '"
+                    + method.getURI().toString()
+                    + "' Could not parse http response content as XML (will try html, text or fallback to binary): "
+                    + se.getMessage();
+                if(logger.isDebugEnabled()) {
+                    logger.debug(msg, se);
+                } else {
+                    logger.info(msg);
+                }
+            } catch(final IOException ioe) {
+                final String msg = "Request for URI '" + method.getURI().toString() + "' Could not read http response content: " + ioe.getMessage();
+                logger.error(msg, ioe);
+                throw new XPathException(msg, ioe);
+            }
+        }
 
-                // determine the type of the response document
-                final Header responseContentType = method.getResponseHeader("Content-Type");
+        if(responseNode == null) {
+            //response is NOT parseable as XML
 
-                final MimeType responseMimeType = getResponseMimeType(responseContentType);
-                if(responseContentType != null) {
-                    builder.addAttribute(new QName("mimetype", null, null), responseContentType.getValue());
-                }
+            //is it a html document?
+            if(responseMimeType.getName().equals(MimeType.HTML_TYPE.getName())) {
 
-                //try and parse the response as XML
+                //html document
                 try {
+
+                    //reset the stream to the start, as we need to reuse since attempting to parse to XML
+                    cfis.reset();
+
+                    //parse html to xml(html)
+                    
                     //we have to use CloseShieldInputStream otherwise the parser closes the stream and we cant later reread
                     final InputStream shieldedInputStream = new CloseShieldInputStream(cfis);
-                    responseNode = (NodeImpl)ModuleUtils.streamToXML(context, shieldedInputStream);
-                    builder.addAttribute(new QName("type", null, null ), "xml");
+                    
+                    responseNode = (NodeImpl)ModuleUtils.htmlToXHtml(context, method.getURI().toString(), new InputSource(shieldedInputStream), parserFeatures, parserProperties).getDocumentElement();
+                    builder.addAttribute(new QName("type", null, null), "xhtml" );
                     responseNode.copyTo(null, new DocumentBuilderReceiver(builder));
+                } catch(final URIException ue) {
+                    throw new XPathException(this, ue.getMessage(), ue);
                 } catch(final SAXException se) {
-                    // could not parse to xml
-                    // not an error in itself, it will be treated either as HTML,
-                    // text or binary here below
-                    final String msg = "Request for URI '"
-                        + method.getURI().toString()
-                        + "' Could not parse http response content as XML (will try html, text or fallback to binary): "
-                        + se.getMessage();
-                    if(logger.isDebugEnabled()) {
-                        logger.debug(msg, se);
-                    } else {
-                        logger.info(msg);
-                    }
-                } catch(final IOException ioe) {
-                    final String msg = "Request for URI '" + method.getURI().toString() + "' Could not read http response content: " + ioe.getMessage();
-                    logger.error(msg, ioe);
-                    throw new XPathException(msg, ioe);
+                    //could not parse to xml(html)
+                    logger.debug("Could not parse http response content from HTML to XML: " + se.getMessage(), se);
                 }
+            }
+        }
 
-                if(responseNode == null) {
-                    //response is NOT parseable as XML
-
-                    //is it a html document?
-                    if(responseMimeType.getName().equals(MimeType.HTML_TYPE.getName())) {
-
-                        //html document
-                        try {
-
-                            //reset the stream to the start, as we need to reuse since attempting to parse to XML
-                            cfis.reset();
-
-                            //parse html to xml(html)
-                            
-                            //we have to use CloseShieldInputStream otherwise the parser closes the stream and we cant later reread
-                            final InputStream shieldedInputStream = new CloseShieldInputStream(cfis);
-                            
-                            responseNode = (NodeImpl)ModuleUtils.htmlToXHtml(context, method.getURI().toString(), new InputSource(shieldedInputStream), parserFeatures, parserProperties).getDocumentElement();
-                            builder.addAttribute(new QName("type", null, null), "xhtml" );
-                            responseNode.copyTo(null, new DocumentBuilderReceiver(builder));
-                        } catch(final URIException ue) {
-                            throw new XPathException(this, ue.getMessage(), ue);
-                        } catch(final SAXException se) {
-                            //could not parse to xml(html)
-                            logger.debug("Could not parse http response content from HTML to XML: " + se.getMessage(), se);
-                        }
-                    }
-                }
+        if(responseNode == null) {
 
-                if(responseNode == null) {
+            //reset the stream to the start, as we need to reuse since attempting to parse to HTML->XML
+            cfis.reset();
 
-                    //reset the stream to the start, as we need to reuse since attempting to parse to HTML->XML
-                    cfis.reset();
+            if(responseMimeType.getName().startsWith("text/")) {
 
-                    if(responseMimeType.getName().startsWith("text/")) {
-
-                        // Assume it's a text body and URL encode it
-                        builder.addAttribute(new QName("type", null, null), "text");
-                        builder.addAttribute(new QName("encoding", null, null), "URLEncoded");
-                        
-                        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        final byte buf[] = new byte[4096];
-                        int read = -1;
-                        while((read = cfis.read(buf)) > -1) {
-                            baos.write(buf);
-                        }
-                        
-                        builder.characters(URLEncoder.encode(EncodingUtil.getString(baos.toByteArray(), ((HttpMethodBase)method).getResponseCharSet()), "UTF-8"));
-                        baos.close();
-                    } else {
-
-                        // Assume it's a binary body and Base64 encode it
-                        builder.addAttribute( new QName( "type", null, null ), "binary" );
-                        builder.addAttribute( new QName( "encoding", null, null ), "Base64Encoded" );
-
-                        BinaryValue binary = null;
-                        try {
-                            binary = BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), cfis);
-                            builder.characters(binary.getStringValue());
-                        } finally {
-                            // free resources
-                            if (binary != null) {
-                                binary.destroy(context, null);
-                            }
-                        }
-                    }
-                }
-            } finally {
-                if(cache != null) {
-                    try {
-                        cache.invalidate();
-                    } catch(final IOException ioe) {
-                        LOG.error(ioe.getMessage(), ioe);
-                    }
+                // Assume it's a text body and URL encode it
+                builder.addAttribute(new QName("type", null, null), "text");
+                builder.addAttribute(new QName("encoding", null, null), "URLEncoded");
+                
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                final byte buf[] = new byte[4096];
+                int read = -1;
+                while((read = cfis.read(buf)) > -1) {
+                    baos.write(buf, 0, read);
                 }
+                
+                builder.characters(URLEncoder.encode(EncodingUtil.getString(baos.toByteArray(), ((HttpMethodBase)method).getResponseCharSet()), "UTF-8"));
+                baos.close();
+            } else {
 
-                if(cfis != null) {
-                    try {
-                        cfis.close();
-                    } catch(final IOException ioe) {
-                        LOG.error(ioe.getMessage(), ioe);
+                // Assume it's a binary body and Base64 encode it
+                builder.addAttribute( new QName( "type", null, null ), "binary" );
+                builder.addAttribute( new QName( "encoding", null, null ), "Base64Encoded" );
+
+                BinaryValue binary = null;
+                try {
+                    binary = BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), cfis);
+                    builder.characters(binary.getStringValue());
+                } finally {
+                    // free resources
+                    if (binary != null) {
+                        binary.destroy(context, null);
                     }
                 }
             }
@@ -547,6 +633,36 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
     }
 
 
+    /**
+     * Parses an XML response body and appends it to the response tree we are building, without building
+     * a separate document first. If the body is not well-formed, the caller has to discard the response
+     * tree, as it may already contain part of the body.
+     *
+     * @param   context  The context of the calling XQuery
+     * @param   cfis     The cached response body
+     * @param   builder  The MemTreeBuilder that is being used
+     *
+     * @throws  IOException     
+     * @throws  SAXException    if the body is not well-formed
+     */
+    private void streamXMLBody(final XQueryContext context, final CachingFilterInputStream cfis, final MemTreeBuilder builder) throws IOException, SAXException {
+        final XMLReaderPool parserPool = context.getBroker().getBrokerPool().getParserPool();
+        XMLReader reader = null;
+        try {
+            reader = parserPool.borrowXMLReader();
+            final SAXAdapter adapter = new AppendingSAXAdapter(builder);
+            reader.setContentHandler(adapter);
+            reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
+            //we have to use CloseShieldInputStream otherwise the parser closes the stream and we cant later reread
+            reader.parse(new InputSource(new CloseShieldInputStream(cfis)));
+        } finally {
+            if(reader != null) {
+                parserPool.returnXMLReader(reader);
+            }
+        }
+    }
+
+
     /**
      * Given the Response Header for Content-Type this function returns an appropriate eXist MimeType.
      *
@@ -559,7 +675,7 @@ public abstract class BaseHTTPClientFunction extends BasicFunction
 
         if(responseHeaderContentType != null) {
 
-            if(responseHeaderContentType.getName().equals("Content-Type")) {
+            if(responseHeaderContentType.getName().equalsIgnoreCase("Content-Type")) {
 
                 final String responseContentType = responseHeaderContentType.getValue();
                 int contentTypeEnd = responseContentType.indexOf(";");
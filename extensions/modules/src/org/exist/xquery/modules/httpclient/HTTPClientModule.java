@@ -23,9 +23,18 @@ package org.exist.xquery.modules.httpclient;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.log4j.Logger;
 import org.exist.xquery.AbstractInternalModule;
 import org.exist.xquery.FunctionDef;
 
@@ -50,7 +59,40 @@ public class HTTPClientModule extends AbstractInternalModule
     public final static String         HTTP_MODULE_PERSISTENT_STATE   = "_eXist_httpclient_module_persistent_state";
     public final static String         HTTP_MODULE_PERSISTENT_OPTIONS = "_eXist_httpclient_module_persistent_options";
 
+    /**
+     * Pool of keep-alive connections shared by all queries. The size of the pool may be set by
+     * the module parameters max-connections-per-host and max-total-connections.
+     */
     public final static HttpConnectionManager MANAGER = new MultiThreadedHttpConnectionManager();
+
+    public final static String         PARAM_MAX_CONNECTIONS_PER_HOST = "max-connections-per-host";
+    public final static String         PARAM_MAX_TOTAL_CONNECTIONS    = "max-total-connections";
+    public final static String         PARAM_MAX_CONCURRENT_REQUESTS  = "max-concurrent-requests";
+
+    public final static int            DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    public final static int            DEFAULT_MAX_TOTAL_CONNECTIONS    = 100;
+    public final static int            DEFAULT_MAX_CONCURRENT_REQUESTS  = 20;
+
+    /** Time in ms after which an unused connection is closed */
+    private final static long          IDLE_CONNECTION_TIMEOUT        = 60000;
+
+    private final static Logger        LOG                            = Logger.getLogger( HTTPClientModule.class );
+
+    private static volatile ExecutorService executor               = null;
+
+    static {
+        final HttpConnectionManagerParams params = MANAGER.getParams();
+        params.setDefaultMaxConnectionsPerHost( DEFAULT_MAX_CONNECTIONS_PER_HOST );
+        params.setMaxTotalConnections( DEFAULT_MAX_TOTAL_CONNECTIONS );
+
+        final IdleConnectionTimeoutThread idleTimeout = new IdleConnectionTimeoutThread();
+        idleTimeout.setName( "httpclient-idle-connections" );
+        idleTimeout.setDaemon( true );
+        idleTimeout.addConnectionManager( MANAGER );
+        idleTimeout.setConnectionTimeout( IDLE_CONNECTION_TIMEOUT );
+        idleTimeout.setTimeoutInterval( IDLE_CONNECTION_TIMEOUT / 2 );
+        idleTimeout.start();
+    }
 	
     private final static FunctionDef[] functions                      = {
         new FunctionDef( GETFunction.signatures[0], GETFunction.class ),
@@ -63,13 +105,70 @@ public class HTTPClientModule extends AbstractInternalModule
         new FunctionDef( HEADFunction.signature, HEADFunction.class ),
         new FunctionDef( OPTIONSFunction.signature, OPTIONSFunction.class ),
         new FunctionDef( ClearFunction.signatures[0], ClearFunction.class ),
-        new FunctionDef( SetOptionsFunction.signatures[0], SetOptionsFunction.class)
+        new FunctionDef( SetOptionsFunction.signatures[0], SetOptionsFunction.class),
+        new FunctionDef( SendRequestsFunction.signature, SendRequestsFunction.class )
     };
 	
 
     public HTTPClientModule(Map<String, List<? extends Object>> parameters)
     {
         super( functions, parameters );
+
+        final HttpConnectionManagerParams params = MANAGER.getParams();
+        final int perHost = getIntParameter( PARAM_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS_PER_HOST );
+        if( perHost != params.getDefaultMaxConnectionsPerHost() ) {
+            params.setDefaultMaxConnectionsPerHost( perHost );
+        }
+        final int total = getIntParameter( PARAM_MAX_TOTAL_CONNECTIONS, DEFAULT_MAX_TOTAL_CONNECTIONS );
+        if( total != params.getMaxTotalConnections() ) {
+            params.setMaxTotalConnections( total );
+        }
+
+        if( executor == null ) {
+            synchronized( HTTPClientModule.class ) {
+                if( executor == null ) {
+                    executor = createExecutor( getIntParameter( PARAM_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS ) );
+                }
+            }
+        }
+    }
+
+    private int getIntParameter( String name, int defaultValue )
+    {
+        final List<? extends Object> values = getParameter( name );
+        if( values == null || values.isEmpty() ) {
+            return( defaultValue );
+        }
+        try {
+            return( Integer.parseInt( values.get( 0 ).toString().trim() ) );
+        } catch( final NumberFormatException nfe ) {
+            LOG.warn( "Invalid value for parameter " + name + " of the httpclient module: " + values.get( 0 ) );
+            return( defaultValue );
+        }
+    }
+
+    private static ExecutorService createExecutor( int threads )
+    {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                final Thread thread = new Thread( r, "httpclient-request-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return( thread );
+            }
+        } );
+        pool.allowCoreThreadTimeOut( true );
+        return( pool );
+    }
+
+    /**
+     * @return the threads sending the requests of httpclient:send-requests()
+     */
+    static ExecutorService getExecutor()
+    {
+        return( executor );
     }
 	
 
@@ -0,0 +1,345 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2014 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xquery.modules.httpclient;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.OptionsMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+
+import org.apache.log4j.Logger;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import org.exist.dom.NodeHandle;
+import org.exist.dom.NodeProxy;
+import org.exist.dom.QName;
+import org.exist.util.serializer.SAXSerializer;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.exist.xquery.modules.httpclient.HTTPClientModule.MANAGER;
+
+
+/**
+ * Sends several HTTP requests concurrently.
+ *
+ * The requests are sent by the threads of the module, over the shared connection pool. The
+ * response bodies are read by these threads, so the requests do not wait for each other;
+ * the responses are then encoded in the order they complete. Each response carries the
+ * position of its request in an index attribute.
+ *
+ * The requests do not share HTTP state (cookies, credentials) with other requests of the query.
+ */
+public class SendRequestsFunction extends BaseHTTPClientFunction
+{
+    protected static final Logger         logger    = Logger.getLogger( SendRequestsFunction.class );
+
+    /** Interval in ms at which the query is checked for termination while waiting for responses */
+    private static final long             POLL_INTERVAL = 1000;
+
+    public final static FunctionSignature signature =
+		new FunctionSignature(
+			new QName( "send-requests", NAMESPACE_URI, PREFIX ),
+			"Performs several HTTP requests concurrently. Each request is described by an element of the form " +
+			"<httpclient:request href=\"url\" method=\"get|head|delete|options|post|put\" timeout=\"ms\"><httpclient:headers><httpclient:header name=\"\" value=\"\"/>...</httpclient:headers>" +
+			"<httpclient:body mimetype=\"content mimetype\">content</httpclient:body></httpclient:request>, where the headers, the body and the timeout are optional. " +
+			"The body content is serialized if it is an element, otherwise its string value is sent. " +
+			"This method returns the HTTP responses in the order they are received, encoded as by httpclient:get(). " +
+			"Each response element has an additional attribute index, the position of its request in the $requests sequence.",
+			new SequenceType[] {
+				new FunctionParameterSequenceType( "requests", Type.ELEMENT, Cardinality.ZERO_OR_MORE, "The requests" )
+			},
+			new FunctionReturnSequenceType( Type.ITEM, Cardinality.ZERO_OR_MORE, "the responses" )
+		);
+
+
+    public SendRequestsFunction( XQueryContext context )
+    {
+        super( context, signature );
+    }
+
+
+    @Override
+    public Sequence eval( Sequence[] args, Sequence contextSequence ) throws XPathException
+    {
+        if( args[0].isEmpty() ) {
+            return( Sequence.EMPTY_SEQUENCE );
+        }
+
+        // the requests are set up here, the DOM must not be accessed by other threads
+        final List<HttpMethod> methods = new ArrayList<HttpMethod>( args[0].getItemCount() );
+        for( final SequenceIterator i = args[0].iterate(); i.hasNext(); ) {
+            methods.add( createMethod( ( (NodeValue)i.nextItem() ).getNode() ) );
+        }
+
+        Map<String, Boolean> parserFeatures   = null;
+        Map<String, String>  parserProperties = null;
+        final FeaturesAndProperties defaultFeaturesAndProperties = (FeaturesAndProperties)context.getXQueryContextVar( HTTP_MODULE_PERSISTENT_OPTIONS );
+        if( defaultFeaturesAndProperties != null ) {
+            parserFeatures   = defaultFeaturesAndProperties.getFeatures();
+            parserProperties = defaultFeaturesAndProperties.getProperties();
+        }
+
+        final CompletionService<Request> completion = new ExecutorCompletionService<Request>( HTTPClientModule.getExecutor() );
+        final List<Future<Request>> futures = new ArrayList<Future<Request>>( methods.size() );
+        for( int i = 0; i < methods.size(); i++ ) {
+            final HttpClient http = new HttpClient( MANAGER );
+            configureClient( http );
+            futures.add( completion.submit( new Request( http, methods.get( i ), i + 1 ) ) );
+        }
+
+        final ValueSequence responses = new ValueSequence();
+        try {
+            int received = 0;
+            while( received < methods.size() ) {
+                context.proceed( this );
+
+                final Future<Request> future;
+                try {
+                    future = completion.poll( POLL_INTERVAL, TimeUnit.MILLISECONDS );
+                } catch( final InterruptedException ie ) {
+                    throw( new XPathException( this, "Interrupted while waiting for HTTP responses", ie ) );
+                }
+                if( future == null ) {
+                    continue;
+                }
+                received++;
+
+                Request request = null;
+                try {
+                    request = future.get();
+                    if( request.error != null ) {
+                        logger.error( request.error.getMessage(), request.error );
+                        responses.add( (NodeValue)encodeErrorResponse( context, request.error.getMessage(), request.index ) );
+                    } else {
+                        responses.add( encodeResponse( request, parserFeatures, parserProperties ) );
+                    }
+                } catch( final ExecutionException ee ) {
+                    throw( new XPathException( this, ee.getCause().getMessage(), ee.getCause() ) );
+                } catch( final InterruptedException ie ) {
+                    throw( new XPathException( this, "Interrupted while waiting for HTTP responses", ie ) );
+                } catch( final IOException ioe ) {
+                    throw( new XPathException( this, ioe.getMessage(), ioe ) );
+                } finally {
+                    if( request != null ) {
+                        request.method.releaseConnection();
+                    }
+                }
+            }
+        } catch( final TerminatedException te ) {
+            cancel( futures, methods );
+            throw( te );
+        } catch( final XPathException xpe ) {
+            cancel( futures, methods );
+            throw( xpe );
+        }
+
+        return( responses );
+    }
+
+
+    private NodeValue encodeResponse( Request request, Map<String, Boolean> parserFeatures, Map<String, String> parserProperties ) throws XPathException, IOException
+    {
+        try {
+            return( (NodeValue)encodeResponseAsXML( context, request.method, request.statusCode, parserFeatures, parserProperties, request.index ) );
+        } catch( final XPathException xpe ) {
+            // report a response which could not be read like a failed request, do not fail the others
+            return( (NodeValue)encodeErrorResponse( context, xpe.getMessage(), request.index ) );
+        }
+    }
+
+
+    private void cancel( List<Future<Request>> futures, List<HttpMethod> methods )
+    {
+        for( final Future<Request> future : futures ) {
+            future.cancel( false );
+        }
+        for( final HttpMethod method : methods ) {
+            method.abort();
+            method.releaseConnection();
+        }
+    }
+
+
+    private HttpMethod createMethod( Node request ) throws XPathException
+    {
+        if( !( request instanceof Element ) || !"request".equals( request.getLocalName() ) ) {
+            throw( new XPathException( this, "Expected a request element" ) );
+        }
+
+        final Element element = (Element)request;
+        final String  url     = element.getAttribute( "href" );
+        if( url == null || url.length() == 0 ) {
+            throw( new XPathException( this, "href attribute missing for request" ) );
+        }
+
+        final String methodName = element.hasAttribute( "method" ) ? element.getAttribute( "method" ).toLowerCase() : "get";
+        final HttpMethod method;
+        if( "get".equals( methodName ) ) {
+            method = new GetMethod( url );
+        } else if( "head".equals( methodName ) ) {
+            method = new HeadMethod( url );
+        } else if( "delete".equals( methodName ) ) {
+            method = new DeleteMethod( url );
+        } else if( "options".equals( methodName ) ) {
+            method = new OptionsMethod( url );
+        } else if( "post".equals( methodName ) ) {
+            method = new PostMethod( url );
+        } else if( "put".equals( methodName ) ) {
+            method = new PutMethod( url );
+        } else {
+            throw( new XPathException( this, "Unsupported request method: " + methodName ) );
+        }
+
+        if( element.hasAttribute( "timeout" ) ) {
+            try {
+                method.getParams().setSoTimeout( Integer.parseInt( element.getAttribute( "timeout" ) ) );
+            } catch( final NumberFormatException nfe ) {
+                throw( new XPathException( this, "Invalid timeout for request: " + element.getAttribute( "timeout" ) ) );
+            }
+        }
+
+        for( Node child = element.getFirstChild(); child != null; child = child.getNextSibling() ) {
+            if( child.getNodeType() != Node.ELEMENT_NODE ) {
+                continue;
+            }
+            if( "headers".equals( child.getLocalName() ) ) {
+                setHeaders( method, child );
+            } else if( "body".equals( child.getLocalName() ) ) {
+                if( !( method instanceof EntityEnclosingMethod ) ) {
+                    throw( new XPathException( this, "A " + methodName + " request can not have a body" ) );
+                }
+                setBody( (EntityEnclosingMethod)method, (Element)child );
+            }
+        }
+
+        return( method );
+    }
+
+
+    private void setBody( EntityEnclosingMethod method, Element body ) throws XPathException
+    {
+        Element content = null;
+        for( Node child = body.getFirstChild(); child != null; child = child.getNextSibling() ) {
+            if( child.getNodeType() == Node.ELEMENT_NODE ) {
+                content = (Element)child;
+                break;
+            }
+        }
+
+        String mimeType = body.getAttribute( "mimetype" );
+        try {
+            final byte[] data;
+            if( content != null ) {
+                //serialize the node to SAX
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                final OutputStreamWriter    osw  = new OutputStreamWriter( baos, "UTF-8" );
+                final SAXSerializer         sax  = new SAXSerializer( osw, new Properties() );
+                final NodeValue node = content instanceof NodeValue ? (NodeValue)content : new NodeProxy( (NodeHandle)content );
+                node.toSAX( context.getBroker(), sax, new Properties() );
+                osw.flush();
+                osw.close();
+                data = baos.toByteArray();
+                if( mimeType == null || mimeType.length() == 0 ) {
+                    mimeType = "application/xml; charset=utf-8";
+                }
+            } else {
+                data = body.getTextContent().getBytes( "UTF-8" );
+                if( mimeType == null || mimeType.length() == 0 ) {
+                    mimeType = "text/text; charset=utf-8";
+                }
+            }
+            method.setRequestEntity( new ByteArrayRequestEntity( data, mimeType ) );
+        } catch( final UnsupportedEncodingException uee ) {
+            throw( new XPathException( this, uee.getMessage(), uee ) );
+        } catch( final Exception e ) {
+            throw( new XPathException( this, e.getMessage(), e ) );
+        }
+    }
+
+
+    /**
+     * Sends a request and reads the response body, so the connection can be reused.
+     */
+    private static class Request implements Callable<Request>
+    {
+        final HttpClient http;
+        final HttpMethod method;
+        final int        index;
+        int              statusCode;
+        Exception        error = null;
+
+        Request( HttpClient http, HttpMethod method, int index )
+        {
+            this.http   = http;
+            this.method = method;
+            this.index  = index;
+        }
+
+        @Override
+        public Request call()
+        {
+            try {
+                statusCode = http.executeMethod( method );
+                // buffer the body in the method
+                method.getResponseBody();
+            } catch( final Exception e ) {
+                error = e;
+            }
+            return( this );
+        }
+    }
+}
@@ -211,88 +211,7 @@ public class ExecuteFunction extends BasicFunction
                 builder.addAttribute( new QName( "count", null, null ), String.valueOf( -1 ) );
 
                 while( rs.next() ) {
-                    builder.startElement( new QName( "row", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), null );
-                    builder.addAttribute( new QName( "index", null, null ), String.valueOf( rs.getRow() ) );
-
-                    // get each tuple in the row
-                    for( int i = 0; i < iColumns; i++ ) {
-                        String columnName = rsmd.getColumnLabel( i + 1 );
-
-                        if( columnName != null ) {
-
-                            String colElement = "field";
-
-                            if(makeNodeFromColumnName && columnName.length() > 0 ) {
-                                // use column names as the XML node
-
-                                /**
-                                 * Spaces in column names are replaced with
-                                 * underscore's
-                                 */
-                                colElement = SQLUtils.escapeXmlAttr( columnName.replace( ' ', '_' ) );
-                            }
-
-                            builder.startElement( new QName( colElement, SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), null );
-
-                            if(!makeNodeFromColumnName || columnName.length() <= 0) {
-                                String name;
-
-                                if( columnName.length() > 0 ) {
-                                    name = SQLUtils.escapeXmlAttr( columnName );
-                                } else {
-                                    name = "Column: " + String.valueOf( i + 1 );
-                                }
-
-                                builder.addAttribute( new QName( "name", null, null ), name );
-                            }
-
-                            builder.addAttribute( new QName( TYPE_ATTRIBUTE_NAME, SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), rsmd.getColumnTypeName( i + 1 ) );
-                            builder.addAttribute( new QName( TYPE_ATTRIBUTE_NAME, Namespaces.SCHEMA_NS, "xs" ), Type.getTypeName( SQLUtils.sqlTypeToXMLType( rsmd.getColumnType( i + 1 ) ) ) );
-
-                            //get the content
-                            if(rsmd.getColumnType(i+1) == Types.SQLXML) {
-                                //parse sqlxml value
-                                try {
-                                    final SQLXML sqlXml = rs.getSQLXML(i+1);
-                                    
-                                    if(rs.wasNull()) {
-                                        // Add a null indicator attribute if the value was SQL Null
-                                        builder.addAttribute( new QName( "null", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), "true" );
-                                    } else {
-
-                                        SAXParserFactory factory = SAXParserFactory.newInstance();
-                                        factory.setNamespaceAware(true);
-                                        InputSource src = new InputSource(sqlXml.getCharacterStream());
-                                        SAXParser parser = factory.newSAXParser();
-                                        XMLReader xr = parser.getXMLReader();
-
-                                        SAXAdapter adapter = new AppendingSAXAdapter(builder);
-                                        xr.setContentHandler(adapter);
-                                        xr.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
-                                        xr.parse(src);
-                                    }
-                                } catch(Exception e) {
-                                    throw new XPathException("Could not parse column of type SQLXML: " + e.getMessage(), e);
-                                }
-                            } else {
-                                //otherwise assume string value
-                                final String colValue = rs.getString(i + 1);
-                                
-                                if(rs.wasNull()) {
-                                    // Add a null indicator attribute if the value was SQL Null
-                                    builder.addAttribute( new QName( "null", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), "true" );
-                                } else {
-                                    if(colValue != null) {
-                                        builder.characters(SQLUtils.escapeXmlText( colValue ));
-                                    }
-                                }
-                            }
-
-                            builder.endElement();
-                        }
-                    }
-
-                    builder.endElement();
+                    addRow( builder, rs, rsmd, iColumns, rs.getRow(), makeNodeFromColumnName );
                     iRow++;
                 }
 
@@ -425,7 +344,103 @@ public class ExecuteFunction extends BasicFunction
         }
     }
     
-    private void setParametersOnPreparedStatement( Statement stmt, Element parametersElement ) throws SQLException, XPathException
+    /**
+     * Adds the current row of the result set to the builder as a sql:row element.
+     *
+     * @param  builder                 the builder to add the row to
+     * @param  rs                      the result set, positioned on the row
+     * @param  rsmd                    the meta data of the result set
+     * @param  iColumns                the number of columns
+     * @param  index                   the index of the row, starting at 1
+     * @param  makeNodeFromColumnName  true to name the column elements after the columns
+     */
+    static void addRow( MemTreeBuilder builder, ResultSet rs, ResultSetMetaData rsmd, int iColumns, int index, boolean makeNodeFromColumnName ) throws SQLException, XPathException
+    {
+        builder.startElement( new QName( "row", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), null );
+        builder.addAttribute( new QName( "index", null, null ), String.valueOf( index ) );
+
+        // get each tuple in the row
+        for( int i = 0; i < iColumns; i++ ) {
+            String columnName = rsmd.getColumnLabel( i + 1 );
+
+            if( columnName != null ) {
+
+                String colElement = "field";
+
+                if(makeNodeFromColumnName && columnName.length() > 0 ) {
+                    // use column names as the XML node
+
+                    /**
+                     * Spaces in column names are replaced with
+                     * underscore's
+                     */
+                    colElement = SQLUtils.escapeXmlAttr( columnName.replace( ' ', '_' ) );
+                }
+
+                builder.startElement( new QName( colElement, SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), null );
+
+                if(!makeNodeFromColumnName || columnName.length() <= 0) {
+                    String name;
+
+                    if( columnName.length() > 0 ) {
+                        name = SQLUtils.escapeXmlAttr( columnName );
+                    } else {
+                        name = "Column: " + String.valueOf( i + 1 );
+                    }
+
+                    builder.addAttribute( new QName( "name", null, null ), name );
+                }
+
+                builder.addAttribute( new QName( TYPE_ATTRIBUTE_NAME, SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), rsmd.getColumnTypeName( i + 1 ) );
+                builder.addAttribute( new QName( TYPE_ATTRIBUTE_NAME, Namespaces.SCHEMA_NS, "xs" ), Type.getTypeName( SQLUtils.sqlTypeToXMLType( rsmd.getColumnType( i + 1 ) ) ) );
+
+                //get the content
+                if(rsmd.getColumnType(i+1) == Types.SQLXML) {
+                    //parse sqlxml value
+                    try {
+                        final SQLXML sqlXml = rs.getSQLXML(i+1);
+                        
+                        if(rs.wasNull()) {
+                            // Add a null indicator attribute if the value was SQL Null
+                            builder.addAttribute( new QName( "null", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), "true" );
+                        } else {
+
+                            SAXParserFactory factory = SAXParserFactory.newInstance();
+                            factory.setNamespaceAware(true);
+                            InputSource src = new InputSource(sqlXml.getCharacterStream());
+                            SAXParser parser = factory.newSAXParser();
+                            XMLReader xr = parser.getXMLReader();
+
+                            SAXAdapter adapter = new AppendingSAXAdapter(builder);
+                            xr.setContentHandler(adapter);
+                            xr.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
+                            xr.parse(src);
+                        }
+                    } catch(Exception e) {
+                        throw new XPathException("Could not parse column of type SQLXML: " + e.getMessage(), e);
+                    }
+                } else {
+                    //otherwise assume string value
+                    final String colValue = rs.getString(i + 1);
+                    
+                    if(rs.wasNull()) {
+                        // Add a null indicator attribute if the value was SQL Null
+                        builder.addAttribute( new QName( "null", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ), "true" );
+                    } else {
+                        if(colValue != null) {
+                            builder.characters(SQLUtils.escapeXmlText( colValue ));
+                        }
+                    }
+                }
+
+                builder.endElement();
+            }
+        }
+
+        builder.endElement();
+    }
+
+    static void setParametersOnPreparedStatement( Statement stmt, Element parametersElement ) throws SQLException, XPathException
     {
         if (parametersElement.getNamespaceURI().equals(SQLModule.NAMESPACE_URI) && parametersElement.getLocalName().equals(PARAMETERS_ELEMENT_NAME)) {
             NodeList paramElements = parametersElement.getElementsByTagNameNS(SQLModule.NAMESPACE_URI, PARAM_ELEMENT_NAME);
@@ -0,0 +1,244 @@
+/*
+ *  eXist SQL Module Extension ExecuteStreamingFunction
+ *  Copyright (C) 2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xquery.modules.sql;
+
+import org.apache.log4j.Logger;
+
+import org.w3c.dom.Element;
+
+import org.exist.dom.QName;
+import org.exist.memtree.MemTreeBuilder;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.BooleanValue;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReference;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+
+/**
+ * eXist SQL Module Extension ExecuteStreamingFunction.
+ *
+ * <p>Execute a SQL query and pass the rows one by one to a function, instead of building a document
+ * holding the whole result set. The rows are fetched from the database in blocks of the given fetch
+ * size, and each row is built as a separate document, which can be garbage collected once the
+ * function has processed it.</p>
+ *
+ * @see  ExecuteFunction
+ */
+public class ExecuteStreamingFunction extends BasicFunction
+{
+    private static final Logger             LOG                     = Logger.getLogger( ExecuteStreamingFunction.class );
+
+    private static final String             DESCRIPTION_SUFFIX      = " Each row is passed as a sql:row element to the row function, which is called with the row as its only argument. " +
+                                                                      "The results of the calls are concatenated. " +
+                                                                      "Unlike sql:execute, the result set is not held in memory.";
+
+    public final static FunctionSignature[] signatures = {
+        new FunctionSignature(
+            new QName( "execute-streaming", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ),
+            "Executes a SQL query against a SQL db using the connection indicated by the connection handle." + DESCRIPTION_SUFFIX,
+            new SequenceType[] {
+                new FunctionParameterSequenceType( "connection-handle", Type.LONG, Cardinality.EXACTLY_ONE, "The connection handle" ),
+                new FunctionParameterSequenceType( "sql-statement", Type.STRING, Cardinality.EXACTLY_ONE, "The SQL statement" ),
+                new FunctionParameterSequenceType( "make-node-from-column-name", Type.BOOLEAN, Cardinality.EXACTLY_ONE, "The flag that indicates whether the xml nodes should be formed from the column names (in this mode a space in a Column Name will be replaced by an underscore!)" ),
+                new FunctionParameterSequenceType( "fetch-size", Type.INTEGER, Cardinality.ZERO_OR_ONE, "The number of rows fetched from the database at once. If empty, the default of the JDBC driver is used." ),
+                new FunctionParameterSequenceType( "row-function", Type.FUNCTION_REFERENCE, Cardinality.EXACTLY_ONE, "The function called for each row" )
+            },
+            new FunctionReturnSequenceType( Type.ITEM, Cardinality.ZERO_OR_MORE, "the results of the row function" )
+        ),
+        new FunctionSignature(
+            new QName( "execute-streaming", SQLModule.NAMESPACE_URI, SQLModule.PREFIX ),
+            "Executes a prepared SQL query against a SQL db." + DESCRIPTION_SUFFIX,
+            new SequenceType[] {
+                new FunctionParameterSequenceType( "connection-handle", Type.LONG, Cardinality.EXACTLY_ONE, "The connection handle" ),
+                new FunctionParameterSequenceType( "statement-handle", Type.INTEGER, Cardinality.EXACTLY_ONE, "The prepared statement handle"),
+                new FunctionParameterSequenceType( "parameters", Type.ELEMENT, Cardinality.ZERO_OR_ONE, "Parameters for the prepared statement. e.g. <sql:parameters><sql:param sql:type=\"varchar\">value</sql:param></sql:parameters>"),
+                new FunctionParameterSequenceType( "make-node-from-column-name", Type.BOOLEAN, Cardinality.EXACTLY_ONE, "The flag that indicates whether the xml nodes should be formed from the column names (in this mode a space in a Column Name will be replaced by an underscore!)" ),
+                new FunctionParameterSequenceType( "fetch-size", Type.INTEGER, Cardinality.ZERO_OR_ONE, "The number of rows fetched from the database at once. If empty, the default of the JDBC driver is used." ),
+                new FunctionParameterSequenceType( "row-function", Type.FUNCTION_REFERENCE, Cardinality.EXACTLY_ONE, "The function called for each row" )
+            },
+            new FunctionReturnSequenceType( Type.ITEM, Cardinality.ZERO_OR_MORE, "the results of the row function" )
+        )
+    };
+
+    /**
+     * ExecuteStreamingFunction Constructor.
+     *
+     * @param  context    The Context of the calling XQuery
+     * @param  signature  DOCUMENT ME!
+     */
+    public ExecuteStreamingFunction( XQueryContext context, FunctionSignature signature )
+    {
+        super( context, signature );
+    }
+
+    /**
+     * evaluate the call to the XQuery execute-streaming() function, it is really the main entry point of this class.
+     *
+     * @param   args             arguments from the execute-streaming() function call
+     * @param   contextSequence  the Context Sequence to operate on (not used here internally!)
+     *
+     * @return  the results of the row function
+     *
+     * @throws  XPathException  DOCUMENT ME!
+     *
+     * @see     org.exist.xquery.BasicFunction#eval(org.exist.xquery.value.Sequence[], org.exist.xquery.value.Sequence)
+     */
+    @Override public Sequence eval( Sequence[] args, Sequence contextSequence ) throws XPathException
+    {
+        // was a connection and SQL statement specified?
+        if( args[0].isEmpty() || args[1].isEmpty() ) {
+            return( Sequence.EMPTY_SEQUENCE );
+        }
+
+        // get the Connection
+        long       connectionUID = ( (IntegerValue)args[0].itemAt( 0 ) ).getLong();
+        Connection con           = SQLModule.retrieveConnection( context, connectionUID );
+
+        if( con == null ) {
+            return( Sequence.EMPTY_SEQUENCE );
+        }
+
+        final int         offset       = args.length - 5;
+        final boolean     preparedStmt = args.length == 6;
+        final boolean     makeNodeFromColumnName = ( (BooleanValue)args[2 + offset].itemAt( 0 ) ).effectiveBooleanValue();
+        final FunctionReference rowFunction = (FunctionReference)args[4 + offset].itemAt( 0 );
+
+        if( rowFunction.getSignature().getArgumentCount() != 1 ) {
+            throw( new XPathException( this, "sql:execute-streaming() row function must take 1 argument" ) );
+        }
+
+        String    sql  = null;
+        Statement stmt = null;
+        ResultSet rs   = null;
+
+        try {
+            boolean executeResult;
+
+            if( preparedStmt ) {
+                long                     statementUID = ( (IntegerValue)args[1].itemAt( 0 ) ).getLong();
+                PreparedStatementWithSQL stmtWithSQL  = SQLModule.retrievePreparedStatement( context, statementUID );
+                sql  = stmtWithSQL.getSql();
+                stmt = stmtWithSQL.getStmt();
+
+                if( !args[2].isEmpty() ) {
+                    ExecuteFunction.setParametersOnPreparedStatement( stmt, (Element)args[2].itemAt( 0 ) );
+                }
+                setFetchSize( stmt, args[3 + offset] );
+
+                executeResult = ( (PreparedStatement)stmt ).execute();
+            } else {
+                sql  = args[1].getStringValue();
+                stmt = con.createStatement( ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+                setFetchSize( stmt, args[3 + offset] );
+
+                executeResult = stmt.execute( sql );
+            }
+
+            if( !executeResult ) {
+                throw( new XPathException( this, "sql:execute-streaming() Statement did not return a result set: " + sql ) );
+            }
+
+            rs = stmt.getResultSet();
+            ResultSetMetaData rsmd     = rs.getMetaData();
+            int               iColumns = rsmd.getColumnCount();
+            int               iRow     = 0;
+
+            final ValueSequence result = new ValueSequence();
+            final Sequence[]    params = new Sequence[1];
+
+            while( rs.next() ) {
+                context.proceed( this );
+
+                // build every row as a separate document
+                NodeValue row;
+                context.pushDocumentContext();
+
+                try {
+                    MemTreeBuilder builder = context.getDocumentBuilder();
+                    ExecuteFunction.addRow( builder, rs, rsmd, iColumns, ++iRow, makeNodeFromColumnName );
+                    builder.endDocument();
+                    row = (NodeValue)builder.getDocument().getDocumentElement();
+                }
+                finally {
+                    context.popDocumentContext();
+                }
+
+                params[0] = row;
+                result.addAll( rowFunction.evalFunction( contextSequence, null, params ) );
+            }
+
+            return( result );
+        }
+        catch( SQLException sqle ) {
+            LOG.error( "sql:execute-streaming() Caught SQLException \"" + sqle.getMessage() + "\" for SQL: \"" + sql + "\"", sqle );
+            throw( new XPathException( this, "sql:execute-streaming() " + sqle.getMessage() + " for SQL: " + sql, sqle ) );
+        }
+        finally {
+
+            // close any record set or statement
+            if( rs != null ) {
+
+                try {
+                    rs.close();
+                }
+                catch( SQLException se ) {
+                    LOG.warn( "Unable to cleanup JDBC results", se );
+                }
+            }
+
+            if( !preparedStmt && stmt != null ) {
+
+                try {
+                    stmt.close();
+                }
+                catch( SQLException se ) {
+                    LOG.warn( "Unable to cleanup JDBC results", se );
+                }
+            }
+        }
+    }
+
+    private void setFetchSize( Statement stmt, Sequence fetchSize ) throws SQLException, XPathException
+    {
+        if( !fetchSize.isEmpty() ) {
+            stmt.setFetchSize( ( (IntegerValue)fetchSize.itemAt( 0 ) ).getInt() );
+        }
+    }
+}
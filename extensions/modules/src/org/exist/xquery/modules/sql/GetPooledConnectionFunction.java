@@ -0,0 +1,114 @@
+/*
+ *  eXist SQL Module Extension GetPooledConnectionFunction
+ *  Copyright (C) 2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xquery.modules.sql;
+
+import org.apache.log4j.Logger;
+
+import org.exist.dom.QName;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+
+/**
+ * eXist SQL Module Extension GetPooledConnectionFunction.
+ *
+ * <p>Get a connection from a connection pool configured in conf.xml. The connection is returned to the
+ * pool when the query finishes.</p>
+ *
+ * @see  SQLConnectionPool
+ */
+public class GetPooledConnectionFunction extends BasicFunction
+{
+    private static final Logger             logger     = Logger.getLogger( GetPooledConnectionFunction.class );
+
+    public final static FunctionSignature[] signatures = {
+			new FunctionSignature(
+					new QName("get-pooled-connection", SQLModule.NAMESPACE_URI, SQLModule.PREFIX),
+					"Gets a connection to a SQL Database from a connection pool configured in conf.xml. " +
+					"Prepared statements are cached by the pooled connection.",
+					new SequenceType[] {
+						new FunctionParameterSequenceType("pool-name", Type.STRING, Cardinality.EXACTLY_ONE, "The name of the connection pool")
+					},
+					new FunctionParameterSequenceType("handle", Type.LONG, Cardinality.ZERO_OR_ONE, "an xs:long representing the connection handle"))
+    };
+
+
+    /**
+     * GetPooledConnectionFunction Constructor.
+     *
+     * @param  context    The Context of the calling XQuery
+     * @param  signature  DOCUMENT ME!
+     */
+    public GetPooledConnectionFunction( XQueryContext context, FunctionSignature signature )
+    {
+        super( context, signature );
+    }
+
+    /**
+     * evaluate the call to the xquery get-pooled-connection() function, it is really the main entry point of this class.
+     *
+     * @param   args             arguments from the get-pooled-connection() function call
+     * @param   contextSequence  the Context Sequence to operate on (not used here internally!)
+     *
+     * @return  A xs:long representing a handle to the connection
+     *
+     * @throws  XPathException  DOCUMENT ME!
+     *
+     * @see     org.exist.xquery.BasicFunction#eval(org.exist.xquery.value.Sequence[], org.exist.xquery.value.Sequence)
+     */
+    public Sequence eval( Sequence[] args, Sequence contextSequence ) throws XPathException
+    {
+        // was a pool name specified?
+        if( args[0].isEmpty() ) {
+            return( Sequence.EMPTY_SEQUENCE );
+        }
+
+        String            poolName = args[0].getStringValue();
+        SQLConnectionPool pool     = SQLConnectionPool.getPool( poolName );
+
+        if( pool == null ) {
+            throw( new XPathException( this, "sql:get-pooled-connection() No connection pool configured with name: " + poolName ) );
+        }
+
+        try {
+            Connection con = pool.getConnection();
+
+            // store the connection and return the uid handle of the connection
+            return( new IntegerValue( SQLModule.storeConnection( context, con ) ) );
+        }
+        catch( SQLException sqle ) {
+            logger.error( "sql:get-pooled-connection() Cannot get connection from pool: " + poolName, sqle );
+            throw( new XPathException( this, "sql:get-pooled-connection() Cannot get connection from pool: " + poolName, sqle ) );
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ *  eXist SQL Module Extension SQLConnectionPool
+ *  Copyright (C) 2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xquery.modules.sql;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A named pool of JDBC connections, configured in conf.xml.
+ *
+ * <p>The connections handed out are proxies: closing them returns the physical connection to the pool.
+ * Each physical connection caches its prepared statements by SQL, so preparing the same statement
+ * again on a pooled connection does not parse it again. Closing a cached statement only clears its
+ * parameters.</p>
+ *
+ * <p>A pool is configured as a parameter of the SQL module:</p>
+ * <pre>
+ * &lt;parameter name="pool"&gt;
+ *     &lt;connection name="mydb" driver="org.h2.Driver" url="jdbc:h2:~/mydb" username="sa" password=""
+ *         max-connections="10" statement-cache-size="32" max-wait="10000"/&gt;
+ * &lt;/parameter&gt;
+ * </pre>
+ */
+public class SQLConnectionPool
+{
+    private final static Logger                                  LOG                          = Logger.getLogger( SQLConnectionPool.class );
+
+    public final static int                                      DEFAULT_MAX_CONNECTIONS      = 10;
+    public final static int                                      DEFAULT_STATEMENT_CACHE_SIZE = 32;
+    public final static long                                     DEFAULT_MAX_WAIT             = 10000;
+
+    /** Seconds to wait for a connection to be validated before it is handed out */
+    private final static int                                     VALIDATION_TIMEOUT           = 5;
+
+    private final static Map<String, SQLConnectionPool>          pools                        = new ConcurrentHashMap<String, SQLConnectionPool>();
+
+    private final String                                         name;
+    private final String                                         url;
+    private final Properties                                     connectionProperties;
+    private final int                                            statementCacheSize;
+    private final long                                           maxWait;
+
+    private final BlockingQueue<PooledConnection>                idle                         = new LinkedBlockingQueue<PooledConnection>();
+    private final Semaphore                                      available;
+
+    private SQLConnectionPool( String name, String url, Properties connectionProperties, int maxConnections, int statementCacheSize, long maxWait )
+    {
+        this.name                 = name;
+        this.url                  = url;
+        this.connectionProperties = connectionProperties;
+        this.statementCacheSize   = statementCacheSize;
+        this.maxWait              = maxWait;
+        this.available            = new Semaphore( maxConnections, true );
+    }
+
+    /**
+     * Creates the pool described by the attributes of a connection element, unless a pool of this name already exists.
+     *
+     * @param  config  the attributes of the connection element
+     */
+    static void configure( Properties config )
+    {
+        final String name = config.getProperty( "name" );
+        final String url  = config.getProperty( "url" );
+
+        if( name == null || url == null ) {
+            LOG.warn( "SQL connection pool needs a name and a url" );
+            return;
+        }
+
+        if( pools.containsKey( name ) ) {
+            return;
+        }
+
+        final String driver = config.getProperty( "driver" );
+
+        if( driver != null ) {
+
+            try {
+                Class.forName( driver );
+            }
+            catch( ClassNotFoundException cnfe ) {
+                LOG.error( "Cannot find database driver class " + driver + " for SQL connection pool " + name, cnfe );
+                return;
+            }
+        }
+
+        final Properties props = new Properties();
+
+        if( config.getProperty( "username" ) != null ) {
+            props.setProperty( "user", config.getProperty( "username" ) );
+        }
+
+        if( config.getProperty( "password" ) != null ) {
+            props.setProperty( "password", config.getProperty( "password" ) );
+        }
+
+        final int  maxConnections     = parseInt( config.getProperty( "max-connections" ), DEFAULT_MAX_CONNECTIONS );
+        final int  statementCacheSize = parseInt( config.getProperty( "statement-cache-size" ), DEFAULT_STATEMENT_CACHE_SIZE );
+        final long maxWait            = parseInt( config.getProperty( "max-wait" ), (int)DEFAULT_MAX_WAIT );
+
+        synchronized( pools ) {
+
+            if( !pools.containsKey( name ) ) {
+                pools.put( name, new SQLConnectionPool( name, url, props, Math.max( 1, maxConnections ), statementCacheSize, maxWait ) );
+                LOG.info( "Configured SQL connection pool " + name + " for " + url );
+            }
+        }
+    }
+
+    private static int parseInt( String value, int defaultValue )
+    {
+        if( value == null ) {
+            return( defaultValue );
+        }
+
+        try {
+            return( Integer.parseInt( value.trim() ) );
+        }
+        catch( NumberFormatException nfe ) {
+            LOG.warn( "Invalid number in SQL connection pool configuration: " + value );
+            return( defaultValue );
+        }
+    }
+
+    /**
+     * @param   name  the name of the pool
+     *
+     * @return  the pool or null if there is no pool of this name
+     */
+    public static SQLConnectionPool getPool( String name )
+    {
+        return( pools.get( name ) );
+    }
+
+    public String getName()
+    {
+        return( name );
+    }
+
+    /**
+     * Gets a connection from the pool. The connection must be closed to return it to the pool.
+     *
+     * @return  the connection
+     *
+     * @throws  SQLException  if no connection becomes available or a new connection cannot be opened
+     */
+    public Connection getConnection() throws SQLException
+    {
+        try {
+
+            if( !available.tryAcquire( maxWait, TimeUnit.MILLISECONDS ) ) {
+                throw( new SQLException( "No connection available in SQL connection pool " + name ) );
+            }
+        }
+        catch( InterruptedException ie ) {
+            throw( new SQLException( "Interrupted while waiting for a connection from SQL connection pool " + name, ie ) );
+        }
+
+        try {
+            PooledConnection pooled;
+
+            while( ( pooled = idle.poll() ) != null ) {
+
+                if( pooled.isValid() ) {
+                    break;
+                }
+                pooled.destroy();
+            }
+
+            if( pooled == null ) {
+                pooled = new PooledConnection( DriverManager.getConnection( url, connectionProperties ) );
+            }
+
+            return( (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new ConnectionHandler( pooled ) ) );
+        }
+        catch( SQLException sqle ) {
+            available.release();
+            throw( sqle );
+        }
+        catch( RuntimeException re ) {
+            available.release();
+            throw( re );
+        }
+    }
+
+    private void release( PooledConnection pooled )
+    {
+        try {
+
+            if( pooled.reset() ) {
+                idle.add( pooled );
+            } else {
+                pooled.destroy();
+            }
+        }
+        finally {
+            available.release();
+        }
+    }
+
+    private static Object invoke( Object target, Method method, Object[] args ) throws Throwable
+    {
+        try {
+            return( method.invoke( target, args ) );
+        }
+        catch( InvocationTargetException ite ) {
+            throw( ite.getCause() );
+        }
+    }
+
+    /**
+     * A physical connection with its cache of prepared statements.
+     */
+    private class PooledConnection
+    {
+        private final Connection                         con;
+        private final Map<String, CachedStatement>       statements;
+
+        PooledConnection( Connection con )
+        {
+            this.con        = con;
+            this.statements = new LinkedHashMap<String, CachedStatement>( 16, 0.75f, true );
+        }
+
+        boolean isValid()
+        {
+            try {
+                return( !con.isClosed() && con.isValid( VALIDATION_TIMEOUT ) );
+            }
+            catch( SQLException sqle ) {
+                return( false );
+            }
+            catch( AbstractMethodError ame ) {
+                // pre JDBC 4 driver
+                return( true );
+            }
+        }
+
+        PreparedStatement prepareStatement( String sql ) throws SQLException
+        {
+            if( statementCacheSize <= 0 ) {
+                return( con.prepareStatement( sql ) );
+            }
+
+            CachedStatement cached = statements.get( sql );
+
+            if( cached == null ) {
+                cached = new CachedStatement( con.prepareStatement( sql ) );
+                cached.inUse = true;
+                statements.put( sql, cached );
+                evictStatements();
+            } else if( cached.inUse ) {
+                // the same statement prepared twice, do not share it
+                return( con.prepareStatement( sql ) );
+            } else {
+                cached.inUse = true;
+            }
+
+            return( (PreparedStatement)Proxy.newProxyInstance( PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, new StatementHandler( cached ) ) );
+        }
+
+        /**
+         * Removes the least recently used statements until the cache is within its size.
+         * Idle statements are removed first. If only statements in use are left, they
+         * are removed as well and closed when their user releases them.
+         */
+        private void evictStatements()
+        {
+            for( final Iterator<CachedStatement> i = statements.values().iterator(); i.hasNext() && statements.size() > statementCacheSize; ) {
+                final CachedStatement cached = i.next();
+
+                if( !cached.inUse ) {
+                    cached.closeQuietly();
+                    i.remove();
+                }
+            }
+
+            for( final Iterator<CachedStatement> i = statements.values().iterator(); i.hasNext() && statements.size() > statementCacheSize; ) {
+                i.next().evicted = true;
+                i.remove();
+            }
+        }
+
+        /**
+         * Prepares the connection for the next user.
+         *
+         * @return  false if the connection cannot be used again
+         */
+        boolean reset()
+        {
+            try {
+
+                if( !con.getAutoCommit() ) {
+                    con.rollback();
+                    con.setAutoCommit( true );
+                }
+                con.clearWarnings();
+
+                for( final Iterator<CachedStatement> i = statements.values().iterator(); i.hasNext(); ) {
+                    final CachedStatement cached = i.next();
+
+                    if( cached.inUse ) {
+                        // still referenced by its user, do not hand it out again
+                        cached.closeQuietly();
+                        i.remove();
+                    }
+                }
+                return( true );
+            }
+            catch( SQLException sqle ) {
+                LOG.warn( "Discarding connection of SQL connection pool " + name + ": " + sqle.getMessage() );
+                return( false );
+            }
+        }
+
+        void destroy()
+        {
+            for( final CachedStatement cached : statements.values() ) {
+                cached.closeQuietly();
+            }
+            statements.clear();
+
+            try {
+                con.close();
+            }
+            catch( SQLException sqle ) {
+                LOG.warn( "Unable to close JDBC Connection: " + sqle.getMessage(), sqle );
+            }
+        }
+    }
+
+    private static class CachedStatement
+    {
+        final PreparedStatement stmt;
+        boolean                 inUse   = false;
+        boolean                 evicted = false;
+
+        CachedStatement( PreparedStatement stmt )
+        {
+            this.stmt = stmt;
+        }
+
+        void closeQuietly()
+        {
+            try {
+                stmt.close();
+            }
+            catch( SQLException sqle ) {
+                LOG.warn( "Unable to close JDBC PreparedStatement: " + sqle.getMessage(), sqle );
+            }
+        }
+    }
+
+    /**
+     * Handles the calls to a connection handed out by the pool.
+     */
+    private class ConnectionHandler implements InvocationHandler
+    {
+        private PooledConnection pooled;
+
+        ConnectionHandler( PooledConnection pooled )
+        {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public synchronized Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+        {
+            final String methodName = method.getName();
+
+            if( "close".equals( methodName ) ) {
+
+                if( pooled != null ) {
+                    final PooledConnection released = pooled;
+                    pooled = null;
+                    release( released );
+                }
+                return( null );
+            }
+
+            if( "isClosed".equals( methodName ) ) {
+                return( pooled == null || pooled.con.isClosed() );
+            }
+
+            if( "equals".equals( methodName ) ) {
+                return( proxy == args[0] );
+            }
+
+            if( "hashCode".equals( methodName ) ) {
+                return( System.identityHashCode( proxy ) );
+            }
+
+            if( "toString".equals( methodName ) ) {
+                return( "Pooled connection of " + name );
+            }
+
+            if( pooled == null ) {
+                throw( new SQLException( "Connection is closed" ) );
+            }
+
+            if( "prepareStatement".equals( methodName ) && args.length == 1 ) {
+                return( pooled.prepareStatement( (String)args[0] ) );
+            }
+
+            return( SQLConnectionPool.invoke( pooled.con, method, args ) );
+        }
+    }
+
+    /**
+     * Handles the calls to a cached prepared statement.
+     */
+    private static class StatementHandler implements InvocationHandler
+    {
+        private CachedStatement cached;
+
+        StatementHandler( CachedStatement cached )
+        {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+        {
+            final String methodName = method.getName();
+
+            if( "close".equals( methodName ) ) {
+
+                if( cached != null ) {
+                    final CachedStatement released = cached;
+                    cached = null;
+
+                    if( released.evicted ) {
+                        // no longer in the cache
+                        released.closeQuietly();
+                        return( null );
+                    }
+
+                    try {
+                        released.stmt.clearParameters();
+                        released.inUse = false;
+                    }
+                    catch( SQLException sqle ) {
+                        released.closeQuietly();
+                    }
+                }
+                return( null );
+            }
+
+            if( "isClosed".equals( methodName ) ) {
+                return( cached == null );
+            }
+
+            if( "equals".equals( methodName ) ) {
+                return( proxy == args[0] );
+            }
+
+            if( "hashCode".equals( methodName ) ) {
+                return( System.identityHashCode( proxy ) );
+            }
+
+            if( cached == null ) {
+                throw( new SQLException( "Statement is closed" ) );
+            }
+
+            return( SQLConnectionPool.invoke( cached.stmt, method, args ) );
+        }
+    }
+}
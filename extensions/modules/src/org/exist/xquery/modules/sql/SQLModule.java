@@ -33,6 +33,7 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import org.exist.xquery.modules.ModuleUtils;
 import org.exist.xquery.modules.ModuleUtils.ContextMapEntryModifier;
 
@@ -61,16 +62,46 @@ public class SQLModule extends AbstractInternalModule {
         new FunctionDef(GetConnectionFunction.signatures[2], GetConnectionFunction.class),
         new FunctionDef(GetJNDIConnectionFunction.signatures[0], GetJNDIConnectionFunction.class),
         new FunctionDef(GetJNDIConnectionFunction.signatures[1], GetJNDIConnectionFunction.class),
+        new FunctionDef(GetPooledConnectionFunction.signatures[0], GetPooledConnectionFunction.class),
         new FunctionDef(ExecuteFunction.signatures[0], ExecuteFunction.class),
         new FunctionDef(ExecuteFunction.signatures[1], ExecuteFunction.class),
+        new FunctionDef(ExecuteStreamingFunction.signatures[0], ExecuteStreamingFunction.class),
+        new FunctionDef(ExecuteStreamingFunction.signatures[1], ExecuteStreamingFunction.class),
         new FunctionDef(PrepareFunction.signatures[0], PrepareFunction.class)
     };
     private static final long currentUID = System.currentTimeMillis();
     public final static String CONNECTIONS_CONTEXTVAR = "_eXist_sql_connections";
     public final static String PREPARED_STATEMENTS_CONTEXTVAR = "_eXist_sql_prepared_statements";
+    public final static String POOL_PARAMETER = "pool";
+    public final static String POOL_CONNECTION_ELEMENT = "connection";
 
     public SQLModule(Map<String, List<? extends Object>> parameters) {
         super(functions, parameters);
+        configurePools(parameters);
+    }
+
+    /**
+     * Creates the connection pools configured by the pool parameters of the module.
+     *
+     * @param parameters the module parameters
+     */
+    @SuppressWarnings("unchecked")
+    private static void configurePools(Map<String, List<? extends Object>> parameters) {
+        if (parameters == null || parameters.get(POOL_PARAMETER) == null) {
+            return;
+        }
+        for (final Object value : parameters.get(POOL_PARAMETER)) {
+            if (!(value instanceof Map)) {
+                LOG.warn("Parameter " + POOL_PARAMETER + " of the SQL module expects " + POOL_CONNECTION_ELEMENT + " elements");
+                continue;
+            }
+            final List<Properties> connections = ((Map<String, List<Properties>>) value).get(POOL_CONNECTION_ELEMENT);
+            if (connections != null) {
+                for (final Properties connection : connections) {
+                    SQLConnectionPool.configure(connection);
+                }
+            }
+        }
     }
 
     @Override
@@ -120,6 +120,8 @@ public class ExistDocument extends ExistResource {
             // Get (estimated) file size
             contentLength = document.getContentLength();
 
+            documentId = document.getDocId();
+
         } catch (EXistException | PermissionDeniedException e) {
             LOG.error(e);
 
@@ -149,6 +151,12 @@ public class ExistDocument extends ExistResource {
         return contentLength;
     }
     
+    private int documentId;
+
+    public int getDocumentId() {
+        return documentId;
+    }
+    
     private boolean isXmlDocument = false;
 
     public boolean isXmlDocument() {
@@ -159,6 +167,14 @@ public class ExistDocument extends ExistResource {
      * Stream document to framework.
      */
     public void stream(OutputStream os) throws IOException, PermissionDeniedException {
+        stream(os, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Stream a part of a binary document to framework. XML documents are
+     * always streamed completely.
+     */
+    public void stream(OutputStream os, long offset, long length) throws IOException, PermissionDeniedException {
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Stream started");
@@ -200,7 +216,7 @@ public class ExistDocument extends ExistResource {
 
             } else {
                 // Stream NON-XML document
-                broker.readBinaryResource((BinaryDocument) document, os);
+                broker.readBinaryResource((BinaryDocument) document, os, offset, length);
                 os.flush();
             }
 
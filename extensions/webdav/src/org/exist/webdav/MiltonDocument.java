@@ -204,7 +204,12 @@ public class MiltonDocument extends MiltonResource
         try {
             if(vtf==null){
                 LOG.debug("Serializing from database");
-                existDocument.stream(out);
+                if (range != null && !existDocument.isXmlDocument()) {
+                    // Partial GET: Milton has set the Content-Range header
+                    existDocument.stream(out, range.getStart(), range.getFinish() - range.getStart() + 1);
+                } else {
+                    existDocument.stream(out);
+                }
                 
             } else {
                 // Experimental. Does not work right, the virtual file
@@ -230,7 +235,19 @@ public class MiltonDocument extends MiltonResource
 
     @Override
     public Long getMaxAgeSeconds(Auth auth) {
-        return null;
+        // A max age enables the If-Modified-Since and If-None-Match checks
+        // of Milton, zero makes clients revalidate their copy on every GET.
+        // XML documents are serialized on every request, so they are left out.
+        return existDocument.isXmlDocument() ? null : 0L;
+    }
+
+    @Override
+    public String getUniqueId() {
+        // Milton combines the id with the modification date to the ETag
+        if (existDocument.isXmlDocument()) {
+            return null;
+        }
+        return Integer.toHexString(existDocument.getDocumentId()) + "-" + Long.toHexString(existDocument.getContentLength());
     }
 
     @Override
@@ -52,6 +52,7 @@ public class ExportMain
     private final static int                  ZIP_OPT           = 'z';
     private final static int                  CHECK_DOCS_OPT    = 's';
     private final static int                  VERBOSE_OPT       = 'v';
+    private final static int                  THREADS_OPT       = 't';
 
     private final static CLOptionDescriptor[] OPTIONS           = new CLOptionDescriptor[] {
         new CLOptionDescriptor( "help", CLOptionDescriptor.ARGUMENT_DISALLOWED, HELP_OPT, "print help on command line options and exit." ),
@@ -65,10 +66,18 @@ public class ExportMain
                 "the nodes stored (costs time)" ),
         new CLOptionDescriptor( "zip", CLOptionDescriptor.ARGUMENT_DISALLOWED, ZIP_OPT, "write output to a ZIP instead of a file system directory" ),
         new CLOptionDescriptor( "verbose", CLOptionDescriptor.ARGUMENT_DISALLOWED, VERBOSE_OPT, "print processed resources " +
-                "to stdout" )
+                "to stdout" ),
+        new CLOptionDescriptor( "threads", CLOptionDescriptor.ARGUMENT_REQUIRED, THREADS_OPT, "the number of threads exporting collections " +
+                "in parallel. Ignored if --zip is used." )
     };
 
     protected static BrokerPool startDB( String configFile )
+    {
+        return( startDB( configFile, 5 ) );
+    }
+
+
+    protected static BrokerPool startDB( String configFile, int maxBrokers )
     {
         try {
             Configuration config;
@@ -79,7 +88,7 @@ public class ExportMain
                 config = new Configuration( configFile, null );
             }
             config.setProperty(BrokerPool.PROPERTY_EXPORT_ONLY, Boolean.TRUE);
-            BrokerPool.configure( 1, 5, config );
+            BrokerPool.configure( 1, maxBrokers, config );
             return( BrokerPool.getInstance() );
         }
         catch( final DatabaseConfigurationException e ) {
@@ -108,6 +117,7 @@ public class ExportMain
         boolean        nocheck      = false;
         boolean        verbose      = false;
         boolean        checkDocs    = false;
+        int            threads      = 1;
         String         exportTarget = "export/";
         String         dbConfig     = null;
 
@@ -168,10 +178,23 @@ public class ExportMain
                     verbose = true;
                     break;
                 }
+
+                case THREADS_OPT: {
+
+                    try {
+                        threads = Integer.parseInt( option.getArgument() );
+                    }
+                    catch( final NumberFormatException e ) {
+                        System.err.println( "ERROR: --threads requires a number: " + option.getArgument() );
+                        return;
+                    }
+                    break;
+                }
             }
         }
 
-        final BrokerPool pool = startDB( dbConfig );
+        // one broker for the main thread plus one per export thread
+        final BrokerPool pool = startDB( dbConfig, Math.max( 5, threads + 1 ) );
 
         if( pool == null ) {
             System.exit( 1 );
@@ -202,6 +225,7 @@ public class ExportMain
                     dir.mkdirs();
                 }
                 final SystemExport sysexport = new SystemExport( broker, new Callback(verbose), null, direct );
+                sysexport.setWorkers( threads );
                 sysexport.export( exportTarget, incremental, zip, errors );
             }
         }
@@ -47,6 +47,7 @@ public class FileSystemWriter implements BackupWriter
     private Writer       currentContentsOut;
     private OutputStream currentOut;
     private boolean      dataWritten = false;
+    private boolean      clean       = true;
 
     public FileSystemWriter( String path )
     {
@@ -56,7 +57,20 @@ public class FileSystemWriter implements BackupWriter
 
     public FileSystemWriter( File file )
     {
-        if( file.exists() ) {
+        this( file, true );
+    }
+
+
+    /**
+     * @param  file   the root directory of the backup
+     * @param  clean  if false, existing directories are kept. Required if several writers
+     *                write collections into the same root directory concurrently.
+     */
+    public FileSystemWriter( File file, boolean clean )
+    {
+        this.clean = clean;
+
+        if( clean && file.exists() ) {
 
             //removing "path"
             file.delete();
@@ -75,7 +89,7 @@ public class FileSystemWriter implements BackupWriter
             file = new File( currentDir, name );
     	}
 
-        if( file.exists() ) {
+        if( clean && file.exists() ) {
             file.delete();
         }
         file.mkdirs();
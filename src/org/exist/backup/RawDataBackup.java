@@ -34,4 +34,10 @@ public interface RawDataBackup
 
 
     void closeEntry() throws IOException;
+
+
+    /**
+     * @return  true if files which support it should only write the changes since the previous backup
+     */
+    boolean isIncremental();
 }
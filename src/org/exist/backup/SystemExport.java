@@ -31,7 +31,10 @@ import org.exist.security.ACLPermission;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.internal.AccountImpl;
+import org.exist.EXistException;
 import org.exist.stax.EmbeddedXMLStreamReader;
+import org.exist.storage.BrokerLease;
+import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.DataBackup;
 import org.exist.storage.NativeBroker;
@@ -39,8 +42,10 @@ import org.exist.storage.ProcessMonitor;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.Value;
 import org.exist.storage.index.CollectionStore;
+import org.exist.storage.lock.Lock;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.serializers.EXistOutputKeys;
+import org.exist.util.LockException;
 import org.exist.util.UTF8;
 import org.exist.util.serializer.AttrList;
 import org.exist.util.serializer.Receiver;
@@ -65,6 +70,7 @@ import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -102,6 +108,8 @@ public class SystemExport
     private boolean                 directAccess            = false;
     private ProcessMonitor.Monitor  monitor                 = null;
     private BackupHandler bh = null;
+    private int                     workers                 = 1;
+    private int                     documentCount           = 0;
 
     {
         defaultOutputProperties.setProperty( OutputKeys.INDENT, "no" );
@@ -125,6 +133,19 @@ public class SystemExport
     	bh = broker.getDatabase().getPluginsManager().getBackupHandler(LOG);
     }
 
+    /**
+     * Set the number of threads which export collections in parallel, each
+     * using its own broker. Only exports into a directory can be parallelized,
+     * a zip archive is always written by a single thread.
+     *
+     * @param  workers  the number of threads, 1 to export sequentially
+     */
+    public void setWorkers( int workers )
+    {
+        this.workers = workers;
+    }
+
+
     public File export( String targetDir, boolean incremental, boolean zip, List<ErrorReport> errorList )
     {
         return( export( targetDir, incremental, -1, zip, errorList ) );
@@ -213,8 +234,16 @@ public class SystemExport
 
             final Date date = ( prevBackup == null ) ? null : prevBackup.getDate();
             final CollectionCallback cb   = new CollectionCallback( output, date, prevBackup, errorList, true );
+
+            if( ( workers > 1 ) && !zip ) {
+                cb.parallel = new ParallelExport( this, backupFile, date, errorList );
+            }
             broker.getCollectionsFailsafe( cb );
 
+            if( cb.parallel != null ) {
+                cb.parallel.run( cb.docs );
+            }
+
             exportOrphans( output, cb.getDocs(), errorList );
 
             output.close();
@@ -342,6 +371,26 @@ public class SystemExport
     }
 
 
+    /**
+     * Read a collection which has been found while scanning the collection store.
+     */
+    private Collection readCollection( String uri, long pointer ) throws IOException, LockException, PermissionDeniedException
+    {
+        final CollectionStore store = (CollectionStore)( (NativeBroker)broker ).getStorage( NativeBroker.COLLECTIONS_DBX_ID );
+        final Lock            lock  = store.getLock();
+        lock.acquire( Lock.READ_LOCK );
+
+        try {
+            final Collection collection = new Collection( broker, XmldbURI.createInternal( uri ) );
+            collection.read( broker, store.getAsStream( pointer ) );
+            return( collection );
+        }
+        finally {
+            lock.release( Lock.READ_LOCK );
+        }
+    }
+
+
     /**
      * Export a collection. Write out the collection metadata and save the resources stored in the collection.
      *
@@ -479,6 +528,7 @@ public class SystemExport
             throw( new TerminatedException( "system export terminated by db" ) );
         }
         final boolean needsBackup = ( prevBackup == null ) || ( date.getTime() < doc.getMetadata().getLastModified() );
+        documentCount++;
 
         if( needsBackup ) {
             final OutputStream os = output.newEntry( Backup.encode( URIUtils.urlDecodeUtf8( doc.getFileURI() ) ) );
@@ -735,6 +785,7 @@ public class SystemExport
         private boolean            exportCollection;
         private int                lastPercentage   = -1;
         private Agent              jmxAgent         = AgentFactory.getInstance();
+        private ParallelExport     parallel         = null;
 
         private CollectionCallback( BackupWriter writer, Date date, BackupDescriptor prevBackup, List<ErrorReport> errorList, boolean exportCollection )
         {
@@ -760,6 +811,11 @@ public class SystemExport
                         return( true );
                     }
 
+                    if( parallel != null ) {
+                        parallel.submit( uri, pointer, ( prevBackup == null ) ? null : prevBackup.getBackupDescriptor( uri ) );
+                        return( true );
+                    }
+
                     if( callback != null ) {
                         callback.startCollection( uri );
                     }
@@ -912,4 +968,220 @@ public class SystemExport
             }
         }
     }
+
+
+    /**
+     * Exports collections on a number of worker threads, each using its own broker and its own
+     * {@link FileSystemWriter} on the backup directory. As collections are written to a directory
+     * named after their absolute path, the workers do not depend on each other.
+     *
+     * The collection store is locked while it is scanned, so the scan only records the collections
+     * and the workers read and export them afterwards.
+     */
+    private static class ParallelExport
+    {
+        private final SystemExport           parent;
+        private final File                   backupDir;
+        private final Date                   date;
+        private final List<ErrorReport>      errorList;
+        private final List<Object[]>         tasks      = new ArrayList<Object[]>();
+        private final AtomicInteger          next       = new AtomicInteger();
+        private final AtomicInteger          done       = new AtomicInteger();
+        private final Agent                  jmxAgent   = AgentFactory.getInstance();
+        private int                          lastPercentage = -1;
+        private volatile TerminatedException terminated = null;
+
+        private ParallelExport( SystemExport parent, File backupDir, Date date, List<ErrorReport> errorList )
+        {
+            this.parent    = parent;
+            this.backupDir = backupDir;
+            this.date      = date;
+            this.errorList = errorList;
+        }
+
+        void submit( String uri, long pointer, BackupDescriptor prevBackup )
+        {
+            tasks.add( new Object[] { uri, Long.valueOf( pointer ), prevBackup } );
+        }
+
+        /**
+         * Export the recorded collections and add the exported documents to the given set.
+         * Brokers are leased without waiting, so the export never blocks other users of the
+         * database. If less than two brokers are available, the collections are exported by
+         * the current thread.
+         */
+        void run( MutableDocumentSet docs ) throws TerminatedException
+        {
+            final BrokerPool     pool     = parent.broker.getBrokerPool();
+            final StatusCallback callback = ( parent.callback == null ) ? null : new SynchronizedCallback( parent.callback );
+            final List<Worker>   workers  = new ArrayList<Worker>();
+
+            for( int i = 0; i < Math.min( parent.workers, tasks.size() ); i++ ) {
+                final BrokerLease lease;
+
+                try {
+                    lease = pool.lease( parent.broker.getSubject(), 0 );
+                }
+                catch( final EXistException e ) {
+                    break;
+                }
+                final SystemExport exporter = new SystemExport( lease.getBroker(), callback, parent.monitor, parent.directAccess );
+                workers.add( new Worker( i, lease, exporter, new FileSystemWriter( backupDir, false ) ) );
+            }
+
+            if( workers.size() < 2 ) {
+
+                for( final Worker worker : workers ) {
+                    worker.lease.close();
+                }
+                LOG.info( "Not enough brokers available for a parallel export. Exporting sequentially." );
+                final FileSystemWriter output = new FileSystemWriter( backupDir, false );
+                Object[]               task;
+
+                while( ( task = nextTask() ) != null ) {
+                    export( parent, output, task, docs );
+                }
+                return;
+            }
+            LOG.info( "Exporting " + tasks.size() + " collections on " + workers.size() + " threads" );
+
+            for( final Worker worker : workers ) {
+                worker.start();
+            }
+
+            for( final Worker worker : workers ) {
+
+                while( worker.isAlive() ) {
+
+                    try {
+                        worker.join();
+                    }
+                    catch( final InterruptedException e ) {
+                        // continue
+                    }
+                }
+                docs.addAll( worker.docs );
+                parent.documentCount += worker.exporter.documentCount;
+            }
+
+            if( terminated != null ) {
+                throw( terminated );
+            }
+        }
+
+        private Object[] nextTask()
+        {
+            if( terminated != null ) {
+                return( null );
+            }
+            final int i = next.getAndIncrement();
+            return( ( i < tasks.size() ) ? tasks.get( i ) : null );
+        }
+
+        private void export( SystemExport exporter, BackupWriter output, Object[] task, MutableDocumentSet docs ) throws TerminatedException
+        {
+            final String uri = (String)task[0];
+
+            try {
+
+                if( exporter.callback != null ) {
+                    exporter.callback.startCollection( uri );
+                }
+                final Collection collection = exporter.readCollection( uri, ( (Long)task[1] ).longValue() );
+                exporter.export( exporter.bh, collection, output, date, (BackupDescriptor)task[2], errorList, docs );
+            }
+            catch( final TerminatedException e ) {
+                exporter.reportError( "Terminating system export upon request", e );
+                terminated = e;
+                throw( e );
+            }
+            catch( final Exception e ) {
+                exporter.reportError( "Caught exception while exporting collection: " + uri, e );
+            }
+            updateStatus();
+        }
+
+        private synchronized void updateStatus()
+        {
+            final int percentage = ( 100 * done.incrementAndGet() ) / tasks.size();
+
+            if( ( jmxAgent != null ) && ( percentage != lastPercentage ) ) {
+                lastPercentage = percentage;
+                jmxAgent.updateStatus( parent.broker.getBrokerPool(), percentage );
+            }
+        }
+
+        private class Worker extends Thread
+        {
+            private final BrokerLease        lease;
+            private final SystemExport       exporter;
+            private final BackupWriter       output;
+            private final MutableDocumentSet docs = new DefaultDocumentSet();
+
+            private Worker( int id, BrokerLease lease, SystemExport exporter, BackupWriter output )
+            {
+                super( "exist-export-" + id );
+                this.lease    = lease;
+                this.exporter = exporter;
+                this.output   = output;
+            }
+
+            @Override
+            public void run()
+            {
+                final long start       = System.currentTimeMillis();
+                int        collections = 0;
+
+                try {
+                    lease.attach();
+                    Object[] task;
+
+                    while( ( task = nextTask() ) != null ) {
+                        export( exporter, output, task, docs );
+                        collections++;
+                    }
+                }
+                catch( final TerminatedException e ) {
+                    // reported by export
+                }
+                catch( final EXistException e ) {
+                    exporter.reportError( "Failed to start export thread", e );
+                }
+                finally {
+                    lease.close();
+                }
+
+                final long elapsed = System.currentTimeMillis() - start;
+                LOG.info( getName() + ": exported " + collections + " collections and " + exporter.documentCount + " documents in " + elapsed + "ms (" + ( ( exporter.documentCount * 1000L ) / Math.max( 1, elapsed ) ) + " documents/s)" );
+            }
+        }
+    }
+
+
+    private static class SynchronizedCallback implements StatusCallback
+    {
+        private final StatusCallback callback;
+
+        private SynchronizedCallback( StatusCallback callback )
+        {
+            this.callback = callback;
+        }
+
+        public synchronized void startCollection( String path ) throws TerminatedException
+        {
+            callback.startCollection( path );
+        }
+
+
+        public synchronized void startDocument( String name, int current, int count ) throws TerminatedException
+        {
+            callback.startDocument( name, current, count );
+        }
+
+
+        public synchronized void error( String message, Throwable exception )
+        {
+            callback.error( message, exception );
+        }
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ *  $Id$
+ */
+package org.exist.collections.triggers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnListener;
+import org.exist.xmldb.XmldbURI;
+
+/**
+ * Delivers the "after" events of asynchronous {@link XQueryTrigger}s.
+ *
+ * Events are collected per transaction and handed to the worker threads when
+ * the transaction commits; the events of an aborted transaction are discarded.
+ * The events of one transaction are delivered in batches, one batch per collection
+ * the triggers are configured on, so a worker needs only one broker per batch and
+ * the trigger query is compiled at most once.
+ *
+ * Each collection is assigned to one worker, so the events of a collection are delivered
+ * in the order their transactions committed. If more than {@link #MAX_PENDING} events
+ * are waiting for delivery, threads raising new events are slowed down. The wait is limited,
+ * because the worker may need a lock held by the waiting thread.
+ *
+ * The queue is kept in memory only: events not yet delivered when the database
+ * is killed are lost.
+ */
+public class AsyncTriggerQueue {
+
+    private final static Logger LOG = Logger.getLogger(AsyncTriggerQueue.class);
+
+    public final static int WORKERS = 2;
+
+    /** Maximum number of events waiting for delivery before producers are slowed down */
+    public final static int MAX_PENDING = 10000;
+
+    /** Maximum time a producer waits for the queue to shrink below {@link #MAX_PENDING} */
+    private final static long MAX_PRODUCER_WAIT = 1000;
+
+    private final static ThreadLocal<Boolean> workerThread = new ThreadLocal<Boolean>();
+
+    private final BrokerPool pool;
+    private final Map<Long, TxnEvents> transactions = new ConcurrentHashMap<Long, TxnEvents>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private Worker[] workers = null;
+    private volatile boolean shutdown = false;
+
+    public AsyncTriggerQueue(BrokerPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return true if the current thread is a worker delivering events
+     */
+    public static boolean isWorkerThread() {
+        return workerThread.get() != null;
+    }
+
+    /**
+     * Queue an event. It will be delivered after the transaction committed, or immediately
+     * if there is no transaction.
+     */
+    void add(DBBroker broker, Txn transaction, XQueryTrigger trigger, QName function, XmldbURI[] urls) {
+        waitForCapacity();
+        final Event event = new Event(broker.getSubject(), trigger, function, urls);
+        pending.incrementAndGet();
+        if (transaction == null) {
+            final List<Event> events = new ArrayList<Event>(1);
+            events.add(event);
+            submit(events);
+            return;
+        }
+        TxnEvents txnEvents = transactions.get(transaction.getId());
+        if (txnEvents == null) {
+            txnEvents = new TxnEvents(transaction.getId());
+            transactions.put(transaction.getId(), txnEvents);
+            transaction.registerListener(txnEvents);
+        }
+        txnEvents.add(event);
+    }
+
+    private void waitForCapacity() {
+        if (pending.get() < MAX_PENDING)
+            {return;}
+        final long start = System.currentTimeMillis();
+        synchronized (pending) {
+            long wait;
+            while (pending.get() >= MAX_PENDING && !shutdown &&
+                    (wait = MAX_PRODUCER_WAIT - (System.currentTimeMillis() - start)) > 0) {
+                try {
+                    pending.wait(wait);
+                } catch (final InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void submit(List<Event> events) {
+        if (shutdown) {
+            LOG.warn("Database is shutting down. Discarding " + events.size() + " trigger events.");
+            delivered(events.size());
+            return;
+        }
+        final Worker[] w = getWorkers();
+        final XmldbURI collection = events.get(0).trigger.getCollectionURI();
+        final int idx = (collection.hashCode() & Integer.MAX_VALUE) % w.length;
+        w[idx].queue.add(events);
+    }
+
+    private synchronized Worker[] getWorkers() {
+        if (workers == null) {
+            workers = new Worker[WORKERS];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(pool.getId() + ".async-trigger-" + i);
+                workers[i].start();
+            }
+        }
+        return workers;
+    }
+
+    private void delivered(int count) {
+        if (pending.addAndGet(-count) < MAX_PENDING) {
+            synchronized (pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of events waiting for delivery
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Deliver the queued events and stop the worker threads.
+     *
+     * @param maxWait maximum time to wait for the workers, -1 to wait until all events are delivered
+     */
+    public void shutdown(long maxWait) {
+        final Worker[] w;
+        synchronized (this) {
+            shutdown = true;
+            w = workers;
+            workers = null;
+        }
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+        if (w == null)
+            {return;}
+        final long start = System.currentTimeMillis();
+        for (final Worker worker : w) {
+            worker.queue.add(new ArrayList<Event>(0));
+        }
+        for (final Worker worker : w) {
+            try {
+                if (maxWait < 0)
+                    {worker.join();}
+                else
+                    {worker.join(Math.max(1, maxWait - (System.currentTimeMillis() - start)));}
+            } catch (final InterruptedException e) {
+                // continue shutdown
+            }
+            if (worker.isAlive()) {
+                LOG.warn("Trigger worker " + worker.getName() + " did not finish. " + pending.get() + " events not delivered.");
+                worker.interrupt();
+            }
+        }
+    }
+
+    private final static class Event {
+        final Subject subject;
+        final XQueryTrigger trigger;
+        final QName function;
+        final XmldbURI[] urls;
+
+        Event(Subject subject, XQueryTrigger trigger, QName function, XmldbURI[] urls) {
+            this.subject = subject;
+            this.trigger = trigger;
+            this.function = function;
+            this.urls = urls;
+        }
+    }
+
+    /**
+     * Collects the events of a transaction until it is committed or aborted.
+     */
+    private class TxnEvents implements TxnListener {
+
+        private final long txnId;
+        private final List<Event> events = new ArrayList<Event>();
+
+        TxnEvents(long txnId) {
+            this.txnId = txnId;
+        }
+
+        void add(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public void commit() {
+            transactions.remove(txnId);
+            // one batch per collection, keeping the order of events
+            final Map<XmldbURI, List<Event>> batches = new LinkedHashMap<XmldbURI, List<Event>>();
+            for (final Event event : events) {
+                final XmldbURI collection = event.trigger.getCollectionURI();
+                List<Event> batch = batches.get(collection);
+                if (batch == null) {
+                    batch = new ArrayList<Event>();
+                    batches.put(collection, batch);
+                }
+                batch.add(event);
+            }
+            for (final List<Event> batch : batches.values()) {
+                submit(batch);
+            }
+        }
+
+        @Override
+        public void abort() {
+            transactions.remove(txnId);
+            delivered(events.size());
+        }
+    }
+
+    private class Worker extends Thread {
+
+        private final BlockingQueue<List<Event>> queue = new LinkedBlockingQueue<List<Event>>();
+
+        Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            workerThread.set(Boolean.TRUE);
+            while (true) {
+                final List<Event> batch;
+                try {
+                    batch = queue.poll(1, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                if (batch == null)
+                    {continue;}
+                // an empty batch signals shutdown
+                if (batch.isEmpty())
+                    {return;}
+                try {
+                    deliver(batch);
+                } finally {
+                    delivered(batch.size());
+                }
+            }
+        }
+
+        private void deliver(List<Event> batch) {
+            DBBroker broker = null;
+            try {
+                for (final Event event : batch) {
+                    if (broker == null || broker.getSubject() != event.subject) {
+                        if (broker != null)
+                            {pool.release(broker);}
+                        broker = null;
+                        broker = pool.get(event.subject);
+                    }
+                    try {
+                        event.trigger.deliver(broker, event.function, event.urls);
+                    } catch (final TriggerException e) {
+                        LOG.warn("Error in asynchronous trigger for " + event.urls[0] + ": " + e.getMessage(), e);
+                    }
+                }
+            } catch (final EXistException e) {
+                LOG.error("Unable to deliver trigger events: " + e.getMessage(), e);
+            } finally {
+                pool.release(broker);
+            }
+        }
+    }
+}
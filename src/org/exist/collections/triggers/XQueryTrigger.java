@@ -44,6 +44,7 @@ import org.exist.source.SourceFactory;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
 import org.exist.storage.ProcessMonitor;
+import org.exist.storage.XQueryPool;
 import org.exist.storage.txn.Txn;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.AnalyzeContextInfo;
@@ -77,6 +78,13 @@ import org.xml.sax.SAXException;
  * <code>xxx:event</code> : the kind of triggered event
  * xxx is the namespace prefix within the XQuery, can be set by the variable "bindingPrefix"
  * 
+ * If the parameter "async" is set to "yes", the "after" functions of the trigger module
+ * are not called within the transaction which caused the event. Instead, the events are
+ * collected and handed to the {@link AsyncTriggerQueue} of the database once the
+ * transaction has been committed. Events of an aborted transaction are discarded.
+ * 
+ * Compiled trigger queries are cached in the {@link XQueryPool}.
+ * 
  * @author Pierrick Brihaye <pierrick.brihaye@free.fr>
  * @author Adam Retter <adam.retter@devon.gov.uk>
  * @author Evgeny Gazdovsky <gazdovsky@gmail.com>
@@ -144,7 +152,8 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 	
 	/** Namespace prefix associated to trigger */
 	private String bindingPrefix = null;
-	private XQuery service;
+	/** Deliver "after" events asynchronously once the transaction committed */
+	private boolean async = false;
 	private ContentHandler originalOutputHandler;
 
     public final static String PEPARE_EXCEIPTION_MESSAGE = "Error during trigger prepare";
@@ -206,6 +215,13 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
  					strQuery = (String)parameters.get("query").get(0);
  				}
  				
+ 				//deliver events asynchronously?
+ 				else if("async".equals(paramName))
+ 				{
+ 					final String value = (String)parameters.get("async").get(0);
+ 					async = "yes".equalsIgnoreCase(value) || "true".equalsIgnoreCase(value);
+ 				}
+ 				
  				//make any other parameters available as external variables for the query
  				else
  				{
@@ -223,8 +239,6 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
  			//old
  			if(urlQuery != null || strQuery != null)
  			{
-				service = broker.getXQueryService();
-				
 				return;
  			}
  		}
@@ -233,6 +247,13 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
  		LOG.error("XQuery Trigger for: '" + parent.getURI() + "' is missing its XQuery parameter");
 	}
 	
+	/**
+	 * @return the uri of the collection the trigger is configured for
+	 */
+	XmldbURI getCollectionURI() {
+		return collection == null ? XmldbURI.ROOT_COLLECTION_URI : collection.getURI();
+	}
+	
 	/**
 	 * Get's a Source for the Trigger's XQuery
 	 * 
@@ -258,6 +279,28 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		return querySource;
 	}
 	
+	/**
+	 * Get the compiled query from the {@link XQueryPool} or compile it.
+	 * The compiled query should be returned to the pool via
+	 * {@link #returnScript(DBBroker, Source, CompiledXQuery)} after use.
+	 */
+	private CompiledXQuery compile(DBBroker broker, Source query) throws XPathException, IOException, PermissionDeniedException {
+		final XQuery service = broker.getXQueryService();
+		final CompiledXQuery compiled = service.getXQueryPool().borrowCompiledXQuery(broker, query);
+		if (compiled != null)
+			{return compiled;}
+		
+		final XQueryContext context = service.newContext(AccessContext.TRIGGER);
+		if (query instanceof DBSource) {
+			context.setModuleLoadPath(XmldbURI.EMBEDDED_SERVER_URI_PREFIX + ((DBSource)query).getDocumentPath().removeLastSegment().toString());
+		}
+		return service.compile(context, query);
+	}
+	
+	private void returnScript(DBBroker broker, Source query, CompiledXQuery compiledQuery) {
+		broker.getXQueryService().getXQueryPool().returnCompiledXQuery(query, compiledQuery);
+	}
+	
 	private void prepare(int event, DBBroker broker, Txn transaction,
 			XmldbURI src, XmldbURI dst, boolean isCollection) throws TriggerException {
 		
@@ -272,13 +315,14 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		}
 		TriggerStatePerThread.setTransaction(transaction);
 		
-		final XQueryContext context = service.newContext(AccessContext.TRIGGER);
          //TODO : further initialisations ?
         CompiledXQuery compiledQuery;
+        XQueryContext context;
         try
         {
         	//compile the XQuery
-        	compiledQuery = service.compile(context, query);
+        	compiledQuery = compile(broker, query);
+        	context = compiledQuery.getContext();
 
         	//declare external variables
         	context.declareVariable(bindingPrefix + "type", EVENT_TYPE_PREPARE);
@@ -333,7 +377,7 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
         try {
         	//TODO : should we provide another contextSet ?
 	        final NodeSet contextSet = NodeSet.EMPTY_SET;
-			service.execute(compiledQuery, contextSet);
+			broker.getXQueryService().execute(compiledQuery, contextSet);
 			//TODO : should we have a special processing ?
 			LOG.debug("Trigger fired for prepare");
         } catch(final XPathException e) {
@@ -344,6 +388,8 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
     		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
     		TriggerStatePerThread.setTransaction(null);
         	throw new TriggerException(PEPARE_EXCEIPTION_MESSAGE, e);
+        } finally {
+        	returnScript(broker, query, compiledQuery);
         }
     }
     
@@ -358,11 +404,11 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		if(!TriggerStatePerThread.verifyUniqueTriggerPerThreadBeforeFinish(this, src))
 			{return;}
 		
-        final XQueryContext context = service.newContext(AccessContext.TRIGGER);
         CompiledXQuery compiledQuery = null;
         try {
         	//compile the XQuery
-        	compiledQuery = service.compile(context, query);
+        	compiledQuery = compile(broker, query);
+        	final XQueryContext context = compiledQuery.getContext();
         	
         	//declare external variables
         	context.declareVariable(bindingPrefix + "type", EVENT_TYPE_FINISH);
@@ -410,17 +456,21 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		}
 
 	    //execute the XQuery
-        try {
-        	//TODO : should we provide another contextSet ?
-	        final NodeSet contextSet = NodeSet.EMPTY_SET;	        
-			service.execute(compiledQuery, contextSet);
-			//TODO : should we have a special processing ?
-        } catch (final XPathException e) {
-        	//Should never be reached
-			LOG.error("Error during trigger finish", e);
-        } catch (final PermissionDeniedException e) {
-        	//Should never be reached
-        	LOG.error(e);
+        if (compiledQuery != null) {
+	        try {
+	        	//TODO : should we provide another contextSet ?
+		        final NodeSet contextSet = NodeSet.EMPTY_SET;	        
+				broker.getXQueryService().execute(compiledQuery, contextSet);
+				//TODO : should we have a special processing ?
+	        } catch (final XPathException e) {
+	        	//Should never be reached
+				LOG.error("Error during trigger finish", e);
+	        } catch (final PermissionDeniedException e) {
+	        	//Should never be reached
+	        	LOG.error(e);
+	        } finally {
+	        	returnScript(broker, query, compiledQuery);
+	        }
         }
         
 		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
@@ -429,10 +479,8 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		
 	}
 
-	private CompiledXQuery getScript(boolean isBefore, DBBroker broker, Txn transaction, XmldbURI src) throws TriggerException {
+	private CompiledXQuery getScript(boolean isBefore, DBBroker broker, Txn transaction, Source query, XmldbURI src) throws TriggerException {
 		
-		//get the query
-		final Source query = getQuerySource(broker);
 		if(query == null)
 			{return null;}        
                         
@@ -444,15 +492,11 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		}
 		TriggerStatePerThread.setTransaction(transaction);
 		
-		final XQueryContext context = service.newContext(AccessContext.TRIGGER);
-        if (query instanceof DBSource) {
-            context.setModuleLoadPath(XmldbURI.EMBEDDED_SERVER_URI_PREFIX + ((DBSource)query).getDocumentPath().removeLastSegment().toString());
-        }
-
         CompiledXQuery compiledQuery;
         try {
         	//compile the XQuery
-        	compiledQuery = service.compile(context, query);
+        	compiledQuery = compile(broker, query);
+        	final XQueryContext context = compiledQuery.getContext();
 
         	//declare user defined parameters as external variables
         	for(final Iterator itUserVarName = userDefinedVariables.keySet().iterator(); itUserVarName.hasNext();) {
@@ -490,7 +534,24 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 	
 	private void execute(boolean isBefore, DBBroker broker, Txn transaction, QName functionName, XmldbURI ... urls) throws TriggerException {
 		final XmldbURI src = urls[0];
-		final CompiledXQuery compiledQuery = getScript(isBefore, broker, transaction, src);
+		if (!isBefore && async && !AsyncTriggerQueue.isWorkerThread()) {
+			// the "before" event has put the trigger into prepare state: check and leave it,
+			// the event is delivered by a worker thread after the transaction committed
+			if (!TriggerStatePerThread.verifyUniqueTriggerPerThreadBeforeFinish(this, src))
+				{return;}
+			TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
+			TriggerStatePerThread.setTransaction(null);
+			broker.getBrokerPool().getAsyncTriggerQueue().add(broker, transaction, this, functionName, urls);
+			return;
+		}
+		// another trigger is running in this thread: do not even load the query, as
+		// this may need a collection lock while the caller holds a document lock
+		if (isBefore && TriggerStatePerThread.getTriggerRunningState() != TriggerStatePerThread.NO_TRIGGER_RUNNING)
+			{return;}
+		if (!isBefore && TriggerStatePerThread.getRunningTrigger() != this)
+			{return;}
+		final Source query = getQuerySource(broker);
+		final CompiledXQuery compiledQuery = getScript(isBefore, broker, transaction, query, src);
 		
 		if (compiledQuery == null) {return;}
 		
@@ -526,7 +587,9 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
         		pm.queryCompleted(context.getWatchDog());
         	}
     		compiledQuery.reset();
-    		context.reset();
+    		// keep the global variables declared while compiling the module
+    		context.reset(true);
+    		returnScript(broker, query, compiledQuery);
         }
 
         if (!isBefore) {
@@ -602,6 +665,22 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 //		//TODO : Stream result to originalOutputHandler 
 //	}
     
+	/**
+	 * Call the "after" function for an event queued by an asynchronous trigger.
+	 * Called by the worker threads of {@link AsyncTriggerQueue}.
+	 */
+	void deliver(DBBroker broker, QName functionName, XmldbURI[] urls) throws TriggerException {
+		// the event has passed the "before" phase in the thread which caused it
+		if (!TriggerStatePerThread.verifyUniqueTriggerPerThreadBeforePrepare(this, urls[0]))
+			{return;}
+		try {
+			execute(false, broker, null, functionName, urls);
+		} finally {
+			TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
+			TriggerStatePerThread.setTransaction(null);
+		}
+	}
+	
 	/**
 	 * Returns a String representation of the Trigger event
 	 * 
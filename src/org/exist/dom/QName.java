@@ -174,6 +174,9 @@ public class QName implements Comparable<QName> {
      */
     @Override
     public boolean equals(Object obj) {
+        if(obj == this) {
+            return true;
+        }
         if(obj == null || !(obj instanceof QName)) {
             return false;
         }
@@ -36,12 +36,12 @@ import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteInputStream;
 import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.util.Configuration;
-import org.exist.util.hashtable.Object2IntHashMap;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains a global symbol table shared by a database instance. The symbol
@@ -51,6 +51,11 @@ import java.util.Iterator;
  * 
  * The global SymbolTable singleton can be retrieved from {@link org.exist.storage.BrokerPool#getSymbols()}.
  * It is saved into the database file "symbols.dbx".
+ *
+ * Lookups do not lock: known symbols are found in a concurrent map (name to id)
+ * and an array (id to name) which is only replaced by a larger copy. Only threads
+ * registering a new symbol synchronize on the symbol collection. New symbols are
+ * appended to symbols.dbx.
  * 
  * @author wolf
  * @author Adam Retter <adam@exist-db.org>
@@ -102,12 +107,17 @@ public class SymbolTable {
     protected final SymbolCollection mimeTypeSymbols = new SymbolCollection(SymbolType.MIMETYPE, 32);
 
     /**
-     * Temporary name pool to share QName instances during indexing.
+     * Temporary name pools to share QName instances during indexing, one per thread.
      */
-    private QNamePool namePool = new QNamePool();
+    private final ThreadLocal<QNamePool> namePool = new ThreadLocal<QNamePool>() {
+        @Override
+        protected QNamePool initialValue() {
+            return new QNamePool();
+        }
+    };
 
     /** set to true if the symbol table needs to be saved */
-    private boolean changed = false;
+    private volatile boolean changed = false;
 
     /** the underlying symbols.dbx file */
     private final File file;
@@ -132,19 +142,18 @@ public class SymbolTable {
     }
 
     /**
-     * Retrieve a shared QName instance from the temporary pool.
-     *
-     * TODO: make the namePool thread-local to avoid synchronization.
+     * Retrieve a shared QName instance from the temporary pool of the current thread.
      *
      * @param namespaceURI
      * @param localName
      * @param prefix
      */
-    public synchronized QName getQName(short type, String namespaceURI, String localName, String prefix) {
+    public QName getQName(short type, String namespaceURI, String localName, String prefix) {
         final byte itype = type == Node.ATTRIBUTE_NODE ? ElementValue.ATTRIBUTE : ElementValue.ELEMENT;
-        QName qn = namePool.get(itype, namespaceURI, localName, prefix);
+        final QNamePool pool = namePool.get();
+        QName qn = pool.get(itype, namespaceURI, localName, prefix);
         if(qn == null) {
-            qn = namePool.add(itype, namespaceURI, localName, prefix);
+            qn = pool.add(itype, namespaceURI, localName, prefix);
         }
         return qn;
     }
@@ -155,7 +164,7 @@ public class SymbolTable {
      * @param element
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(Element element) {
+    public short getSymbol(Element element) {
         return (short) localNameSymbols.getId(element.getLocalName());
     }
 
@@ -165,7 +174,7 @@ public class SymbolTable {
      * @param attr
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(Attr attr) {
+    public short getSymbol(Attr attr) {
         final String key = ATTR_NAME_PREFIX + attr.getLocalName();
         return (short)localNameSymbols.getId(key);
     }
@@ -177,7 +186,7 @@ public class SymbolTable {
      * @param name
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(String name) {
+    public short getSymbol(String name) {
         if(name.length() == 0) {
             throw new IllegalArgumentException("name is empty");
         }
@@ -190,14 +199,14 @@ public class SymbolTable {
      * @param ns
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getNSSymbol(String ns) {
+    public short getNSSymbol(String ns) {
         if(ns == null || ns.length() == 0) {
             return 0;
         }
         return (short)namespaceSymbols.getId(ns);
     }
 
-    public synchronized int getMimeTypeId(String mimeType) {
+    public int getMimeTypeId(String mimeType) {
         return mimeTypeSymbols.getId(mimeType);
     }
 
@@ -206,7 +215,7 @@ public class SymbolTable {
      * to persistent storage.
      * 
      */
-    public synchronized boolean hasChanged() {
+    public boolean hasChanged() {
         return changed;
     }
 
@@ -216,11 +225,11 @@ public class SymbolTable {
      * 
      * @param id
      */
-    public synchronized String getName(short id) {
+    public String getName(short id) {
         return localNameSymbols.getSymbol(id);
     }
 
-    public synchronized String getMimeType(int id) {
+    public String getMimeType(int id) {
         return mimeTypeSymbols.getSymbol(id);
     }
 
@@ -231,7 +240,7 @@ public class SymbolTable {
      *
      * @param id
      */
-    public synchronized String getNamespace(short id) {
+    public String getNamespace(short id) {
         return namespaceSymbols.getSymbol(id);
     }
 
@@ -425,18 +434,21 @@ public class SymbolTable {
 
         private final SymbolType symbolType;
 
-        /** Maps mimetype names to an integer id (persisted to disk) */
-        private final Object2IntHashMap<String> symbolsByName;
+        /** Maps symbol names to an integer id (persisted to disk) */
+        private final Map<String, Integer> symbolsByName;
 
-        /** Maps int ids to mimetype names (transient map for fast reverse lookup of symbolsByName) */
-        private String[] symbolsById;
+        /**
+         * Maps int ids to symbol names (transient map for fast reverse lookup of symbolsByName).
+         * The array is never shrunk; if it is full, it is replaced by a larger copy.
+         */
+        private volatile String[] symbolsById;
 
         /** contains the offset of the last symbol */
-        protected short offset = 0;
+        protected volatile short offset = 0;
 
         public SymbolCollection(SymbolType symbolType, int initialSize) {
              this.symbolType = symbolType;
-             symbolsByName = new Object2IntHashMap<String>(initialSize);
+             symbolsByName = new ConcurrentHashMap<String, Integer>(initialSize);
              symbolsById = new String[initialSize];
         }
 
@@ -444,22 +456,27 @@ public class SymbolTable {
             return symbolType;
         }
 
-        private int add(int id, String name) {
-            symbolsById = ensureCapacity(symbolsById, id);
-            addSymbolById(id, name);
-            addSymbolByName(name, id);
+        /**
+         * Register a symbol. The reverse mapping is published first, so a
+         * reader which found the id of a name can always look up the name.
+         */
+        private synchronized int add(int id, String name) {
+            final String[] ids = ensureCapacity(symbolsById, id);
+            addSymbolById(ids, id, name);
+            symbolsById = ids;
             if(id > offset) {
                 offset = (short) id;
             }
+            addSymbolByName(name, id);
             return id;
         }
 
-        protected void addSymbolById(int id, String name) {
-            symbolsById[id] = name;
+        protected void addSymbolById(String[] ids, int id, String name) {
+            ids[id] = name;
         }
 
         protected void addSymbolByName(String name, int id) {
-            symbolsByName.put(name, id);
+            symbolsByName.put(name, Integer.valueOf(id));
         }
 
         /* Apparently unused. Commented out -pb
@@ -481,30 +498,40 @@ public class SymbolTable {
             return array;
         }
 
-        private void clear() {
+        private synchronized void clear() {
+            symbolsByName.clear();
             offset = 0;
         }
 
-        public synchronized String getSymbol(int id) {
+        public String getSymbol(int id) {
+            // read offset first: the name of an id up to offset is always visible
             if (id <= 0 || id > offset) {
                 return ""; //TODO : raise an exception ? -pb
             }
             return symbolsById[id];
         }
 
-        public synchronized int getId(String name) {
-            int id = symbolsByName.get(name);
-            if (id != -1) {
-                return id;
+        public int getId(String name) {
+            final Integer known = symbolsByName.get(name);
+            if (known != null) {
+                return known.intValue();
+            }
+            return register(name);
+        }
+
+        private synchronized int register(String name) {
+            // another thread may have registered the name in the meantime
+            final Integer known = symbolsByName.get(name);
+            if (known != null) {
+                return known.intValue();
             }
             // symbol space exceeded. return -1 to indicate.
             if (offset == Short.MAX_VALUE) {
                 return -1;
             }
 
-            id = add(++offset, name);
-            //we use "++offset" here instead of "offset++", 
-            //because the system expects id's to start at 1, not 0
+            //ids start at 1, not 0
+            final int id = add(offset + 1, name);
             write(id, name);
             changed = true;
             return id;
@@ -513,9 +540,9 @@ public class SymbolTable {
         protected final void write(VariableByteOutputStream os) throws IOException {
             String symbol;
             int id;
-            for(final Iterator<String> i = symbolsByName.iterator(); i.hasNext();) {
-                symbol = i.next();
-                id = symbolsByName.get(symbol);
+            for(final Map.Entry<String, Integer> entry : symbolsByName.entrySet()) {
+                symbol = entry.getKey();
+                id = entry.getValue().intValue();
                 if (id < 0) {
                     LOG.error("Symbol Table: symbolTypeId=" + getSymbolType() +
                         ", symbol='" + symbol + "', id=" + id);
@@ -532,17 +559,20 @@ public class SymbolTable {
          * @param key
          */
         private void write(int id, String key) {
-            outBuffer.clear();
-            try {
-                writeEntry(id, key, outBuffer);
-                getOutputStream().write(outBuffer.toByteArray());
-                getOutputStream().flush();
-            } catch(final FileNotFoundException e) {
-                LOG.error("Symbol table: file not found!", e);
-                //TODO :throw exception -pb
-            } catch(final IOException e) {
-                LOG.error("Symbol table: caught exception while writing!", e);
-                //TODO : throw exception -pb
+            // the symbol collections share the output buffer and file
+            synchronized (outBuffer) {
+                outBuffer.clear();
+                try {
+                    writeEntry(id, key, outBuffer);
+                    getOutputStream().write(outBuffer.toByteArray());
+                    getOutputStream().flush();
+                } catch(final FileNotFoundException e) {
+                    LOG.error("Symbol table: file not found!", e);
+                    //TODO :throw exception -pb
+                } catch(final IOException e) {
+                    LOG.error("Symbol table: caught exception while writing!", e);
+                    //TODO : throw exception -pb
+                }
             }
         }
 
@@ -571,15 +601,15 @@ public class SymbolTable {
         }
 
         @Override
-        protected void addSymbolById(int id, String name) {
+        protected void addSymbolById(String[] ids, int id, String name) {
             /*
              For attributes, Don't store '@' in in-memory mapping of id -> attrName
              enables faster retrieval
              */
             if(name.charAt(0) == ATTR_NAME_PREFIX) {
-                super.addSymbolById(id, name.substring(1));
+                super.addSymbolById(ids, id, name.substring(1));
             } else {
-                super.addSymbolById(id, name);
+                super.addSymbolById(ids, id, name);
             }
         }
     }
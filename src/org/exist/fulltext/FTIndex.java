@@ -23,7 +23,6 @@ package org.exist.fulltext;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 
 import org.apache.log4j.Logger;
 import org.exist.Database;
@@ -127,8 +126,6 @@ public class FTIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public void backupToArchive(RawDataBackup backup) throws IOException {
-        final OutputStream os = backup.newEntry(bf.getFile().getName());
-        bf.backupToStream(os);
-        backup.closeEntry();
+        bf.backupToArchive(backup);
     }
 }
\ No newline at end of file
@@ -568,6 +568,10 @@ public class RESTServer {
                 // must be set so
                 response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
                 setCreatedAndLastModifiedHeaders(response, metadata.getCreated(), metadata.getLastModified());
+                if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
+                    response.setHeader("ETag", getETag(resource));
+                    response.setHeader("Accept-Ranges", "bytes");
+                }
             } else {
                 final Collection col = broker.getCollection(pathUri);
                 //no resource or collection
@@ -1605,6 +1609,122 @@ public class RESTServer {
         }
     }
 
+    /**
+     * Entity tag of a binary resource. It changes whenever the resource is
+     * replaced or modified.
+     */
+    private static String getETag(final DocumentImpl resource) {
+        return "\"" + Integer.toHexString(resource.getDocId()) + "-"
+                + Long.toHexString(resource.getMetadata().getLastModified()) + "-"
+                + Long.toHexString(resource.getContentLength()) + "\"";
+    }
+
+    /**
+     * Check if the value of an If-None-Match or If-Range header matches
+     * the given entity tag, using the weak comparison function.
+     */
+    private static boolean matchesETag(final String header, final String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A byte range requested by a client, first and last byte inclusive.
+     */
+    private static final class ByteRange {
+
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        final long first;
+        final long last;
+
+        ByteRange(final long first, final long last) {
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    /**
+     * HTTP 1.1 RFC 2616 Section 14.35 and 14.27
+     *
+     * Get the byte range requested by the Range header, if any. Only a single
+     * range is supported: a request for several ranges, or an invalid header,
+     * is answered with the complete resource, as the RFC permits.
+     *
+     * @return the range to send, {@link ByteRange#UNSATISFIABLE} if the range
+     *         lies beyond the end of the resource, or null if the complete
+     *         resource should be sent
+     */
+    private ByteRange getByteRange(final HttpServletRequest request, final String etag,
+            final long lastModified, final long contentLength) {
+        final String header = request.getHeader("Range");
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') > -1) {
+            return null;
+        }
+
+        // only send a part if the client's copy is still current
+        final String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!matchesETag(ifRange, etag)) {
+                    return null;
+                }
+            } else {
+                try {
+                    if (lastModified > request.getDateHeader("If-Range")) {
+                        return null;
+                    }
+                } catch (final IllegalArgumentException iae) {
+                    LOG.warn("Illegal If-Range HTTP Header sent on request, ignoring. " + iae.getMessage(), iae);
+                    return null;
+                }
+            }
+        }
+
+        final String spec = header.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        long first;
+        long last;
+        try {
+            if (dash == 0) {
+                // suffix range: the last n bytes
+                final long suffix = Long.parseLong(spec.substring(1));
+                if (suffix < 0) {
+                    return null;
+                }
+                if (suffix == 0 || contentLength == 0) {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                first = Math.max(0, contentLength - suffix);
+                last = contentLength - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if (first < 0 || last < first) {
+                    return null;
+                }
+                if (first >= contentLength) {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                last = Math.min(last, contentLength - 1);
+            }
+        } catch (final NumberFormatException nfe) {
+            return null;
+        }
+        return new ByteRange(first, last);
+    }
+
     public void setCreatedAndLastModifiedHeaders(
         final HttpServletResponse response, long created, long lastModified) {
 
@@ -1645,13 +1765,34 @@ public class RESTServer {
         setCreatedAndLastModifiedHeaders(response, metadata.getCreated(), lastModified);
 
 
+        // binary resources are sent as stored, so they can be identified
+        // by an entity tag and requested in parts
+        final String etag;
+        if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
+            etag = getETag(resource);
+            response.setHeader("ETag", etag);
+            response.setHeader("Accept-Ranges", "bytes");
+        } else {
+            etag = null;
+        }
+
+        /**
+         * HTTP 1.1 RFC 2616 Section 14.26 *
+         */
+        //handle If-None-Match request header, which takes precedence over If-Modified-Since
+        final String ifNoneMatch = etag == null ? null : request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && matchesETag(ifNoneMatch, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
         /**
          * HTTP 1.1 RFC 2616 Section 14.25 *
          */
         //handle If-Modified-Since request header
         try {
             final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
-            if (ifModifiedSince > -1) {
+            if (ifNoneMatch == null && ifModifiedSince > -1) {
 
                 /*
                  a) A date which is later than the server's
@@ -1697,10 +1838,27 @@ public class RESTServer {
             // next sentence:
             //	response.setContentLength(resource.getContentLength());
             // must be set so
-            response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
-            final OutputStream os = response.getOutputStream();
-            broker.readBinaryResource((BinaryDocument) resource, os);
-            os.flush();
+            final long contentLength = resource.getContentLength();
+            final ByteRange range = getByteRange(request, etag, lastModified, contentLength);
+            if (range == null) {
+                response.addHeader("Content-Length", Long.toString(contentLength));
+                final OutputStream os = response.getOutputStream();
+                broker.readBinaryResource((BinaryDocument) resource, os);
+                os.flush();
+            } else if (range == ByteRange.UNSATISFIABLE) {
+                response.setHeader("Content-Range", "bytes */" + contentLength);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            } else {
+                /**
+                 * HTTP 1.1 RFC 2616 Section 10.2.7 *
+                 */
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + range.first + "-" + range.last + "/" + contentLength);
+                response.addHeader("Content-Length", Long.toString(range.last - range.first + 1));
+                final OutputStream os = response.getOutputStream();
+                broker.readBinaryResource((BinaryDocument) resource, os, range.first, range.last - range.first + 1);
+                os.flush();
+            }
         } else {
             // xml resource
 
@@ -46,12 +46,38 @@ public interface StructuralIndex {
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent);
 
+    /**
+     * Like {@link #findElementsByTagName(byte, DocumentSet, QName, NodeSelector, Expression)}, but
+     * stops scanning once <code>limit</code> nodes have been found. The returned set contains at least
+     * the first <code>limit</code> nodes of the full result in document order.
+     *
+     * @param limit the number of nodes the caller needs, or -1 to return all nodes
+     */
+    public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent, int limit);
+
+    /**
+     * Count the nodes with the given name in the documents, without creating the nodes
+     * themselves. The result is the same as the length of the set returned by
+     * {@link #findElementsByTagName(byte, DocumentSet, QName, NodeSelector)} without a selector.
+     */
+    public long countElementsByTagName(byte type, DocumentSet docs, QName qname, Expression parent);
+
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
         DocumentSet docs, NodeSet contextSet,  int contextId);
 
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
                                             DocumentSet docs, NodeSet contextSet,  int contextId, Expression parent);
 
+    /**
+     * Like {@link #findDescendantsByTagName(byte, QName, int, DocumentSet, NodeSet, int, Expression)}, but
+     * stops scanning once <code>limit</code> distinct nodes have been found. For the descendant axes, the
+     * returned set contains at least the first <code>limit</code> nodes of the full result in document order.
+     *
+     * @param limit the number of nodes the caller needs, or -1 to return all nodes
+     */
+    public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
+                                            DocumentSet docs, NodeSet contextSet,  int contextId, Expression parent, int limit);
+
     public NodeSet findAncestorsByTagName(byte type, QName qname, int axis,
             DocumentSet docs, NodeSet contextSet, int contextId);
 
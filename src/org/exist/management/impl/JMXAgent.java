@@ -108,6 +108,12 @@ public class JMXAgent implements Agent {
 
             addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=ProcessReport",
                     new ProcessReport(instance));
+
+            addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=TemplatesCache",
+                    new TemplatesCacheInfo(instance));
+
+            addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=ObjectPools",
+                    new ObjectPoolsInfo(instance));
                         
         } catch (final DatabaseConfigurationException e) {
             LOG.warn("Exception while registering database mbean.", e);
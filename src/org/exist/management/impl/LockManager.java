@@ -23,6 +23,7 @@ package org.exist.management.impl;
 
 import org.exist.storage.lock.DeadlockDetection;
 import org.exist.storage.lock.LockInfo;
+import org.exist.storage.lock.LockStatistics;
 
 import javax.management.openmbean.*;
 import java.util.Map;
@@ -47,6 +48,62 @@ public class LockManager implements LockManagerMBean {
         }
     }
 
+    @Override
+    public TabularData getLockStatistics() {
+        try {
+            final CompositeType statsType = new CompositeType("lockStatistics", "Wait and hold times of locks",
+                statsItemNames, statsItemDescriptions, statsItemTypes);
+            final TabularType tabularType = new TabularType("lockStatistics", "Lists wait and hold times by lock type",
+                statsType, new String[] { "lockType" });
+            final TabularDataSupport data = new TabularDataSupport(tabularType);
+            for (final LockStatistics stats : new LockStatistics[] { LockStatistics.COLLECTION, LockStatistics.RESOURCE }) {
+                final Object[] itemValues = {
+                    stats.getLockType(), stats.getWaits(), stats.getWaitTime(), stats.getMaxWaitTime(),
+                    stats.getExclusiveHolds(), stats.getExclusiveHoldTime(), stats.getMaxExclusiveHoldTime(),
+                    stats.getDeadlocks()
+                };
+                data.put(new CompositeDataSupport(statsType, statsItemNames, itemValues));
+            }
+            return data;
+        } catch (final OpenDataException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public void resetLockStatistics() {
+        LockStatistics.COLLECTION.reset();
+        LockStatistics.RESOURCE.reset();
+    }
+
+    @Override
+    public boolean isLockStatisticsEnabled() {
+        return LockStatistics.isEnabled();
+    }
+
+    @Override
+    public void setLockStatisticsEnabled(boolean enabled) {
+        LockStatistics.setEnabled(enabled);
+    }
+
+    private static final String[] statsItemNames = {"lockType", "waits", "waitTime", "maxWaitTime",
+        "exclusiveHolds", "exclusiveHoldTime", "maxExclusiveHoldTime", "deadlocks"};
+    private static final String[] statsItemDescriptions = {
+            "Type of the lock (COLLECTION or RESOURCE)",
+            "Number of lock requests which had to wait",
+            "Total time spent waiting for locks (ms)",
+            "Longest wait for a lock (ms)",
+            "Number of released exclusive locks",
+            "Total time exclusive locks were held (ms)",
+            "Longest time an exclusive lock was held (ms)",
+            "Number of circular waits detected and resolved"
+    };
+    private static final OpenType<?>[] statsItemTypes = {
+        SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+        SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG
+    };
+
     private static final String[] itemNames = {"waitingThread", "lockType", "lockMode", "id", "owner", "waitingForRead", "waitingForWrite"};
     private static final String[] itemDescriptions = {            "Name of the thread waiting for the lock",
             "Type of the lock (COLLECTION or RESOURCE)",
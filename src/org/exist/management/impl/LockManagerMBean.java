@@ -29,4 +29,12 @@ import javax.management.openmbean.TabularData;
 public interface LockManagerMBean {
 
     public TabularData getWaitingThreads();
+
+    public TabularData getLockStatistics();
+
+    public void resetLockStatistics();
+
+    public boolean isLockStatisticsEnabled();
+
+    public void setLockStatisticsEnabled(boolean enabled);
 }
@@ -0,0 +1,94 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * $Id$
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.BrokerPool;
+import org.exist.util.XMLReaderPool;
+import org.exist.util.serializer.SerializerPool;
+
+public class ObjectPoolsInfo implements ObjectPoolsInfoMBean {
+
+    private final BrokerPool pool;
+
+    public ObjectPoolsInfo(BrokerPool pool) {
+        this.pool = pool;
+    }
+
+    private XMLReaderPool getParserPool() {
+        return pool.getParserPool();
+    }
+
+    @Override
+    public int getParsersIdle() {
+        final XMLReaderPool parsers = getParserPool();
+        return parsers == null ? 0 : parsers.getNumIdle();
+    }
+
+    @Override
+    public int getParsersActive() {
+        final XMLReaderPool parsers = getParserPool();
+        return parsers == null ? 0 : parsers.getNumActive();
+    }
+
+    @Override
+    public long getParsersBorrowed() {
+        final XMLReaderPool parsers = getParserPool();
+        return parsers == null ? 0 : parsers.getBorrowedCount();
+    }
+
+    @Override
+    public long getParsersCreated() {
+        final XMLReaderPool parsers = getParserPool();
+        return parsers == null ? 0 : parsers.getCreatedCount();
+    }
+
+    @Override
+    public long getParsersDiscarded() {
+        final XMLReaderPool parsers = getParserPool();
+        return parsers == null ? 0 : parsers.getDiscardedCount();
+    }
+
+    @Override
+    public int getSerializersIdle() {
+        return SerializerPool.getInstance().getNumIdle();
+    }
+
+    @Override
+    public int getSerializersActive() {
+        return SerializerPool.getInstance().getNumActive();
+    }
+
+    @Override
+    public long getSerializersBorrowed() {
+        return SerializerPool.getInstance().getBorrowedCount();
+    }
+
+    @Override
+    public long getSerializersCreated() {
+        return SerializerPool.getInstance().getCreatedCount();
+    }
+
+    @Override
+    public long getSerializersDiscarded() {
+        return SerializerPool.getInstance().getDiscardedCount();
+    }
+}
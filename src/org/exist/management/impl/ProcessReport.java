@@ -53,21 +53,31 @@ public class ProcessReport implements ProcessReportMBean {
     private static String[] pIndexNames = { "id" };
 
 
-    private static String[] qItemNames = { "id", "sourceType", "sourceKey", "terminating" };
+    private static String[] qItemNames = { "id", "sourceType", "sourceKey", "terminating",
+        "cpuTime", "pagesRead", "constructedNodes", "killReason" };
     private static String[] qItemDescriptions = {
         "XQuery ID",
         "Type of the query source",
         "Description of the source",
-        "Is query terminating?"
+        "Is query terminating?",
+        "CPU time used by the query (ms)",
+        "Pages read from the database files",
+        "Nodes in constructed in-memory fragments",
+        "Reason why the query was terminated"
     };
     private static String[] qIndexNames = { "id" };
 
-    private static String[] qhItemNames = { "sourceKey", "recentInvocationCount", "mostRecentExecutionTime", "mostRecentExecutionDuration" };
+    private static String[] qhItemNames = { "sourceKey", "recentInvocationCount", "mostRecentExecutionTime", "mostRecentExecutionDuration",
+        "mostRecentCpuTime", "mostRecentPagesRead", "mostRecentConstructedNodes", "mostRecentKillReason" };
     private static String[] qhItemDescriptions = {
         "Description of the source",
         "Recent invocation count",
         "Most recent query invocation start time",
         "Most recent query invocation duration",
+        "CPU time used by the most recent invocation (ms)",
+        "Pages read from the database files by the most recent invocation",
+        "Nodes constructed by the most recent invocation",
+        "Reason why the most recent invocation was terminated",
     };
     private static String[] qhIndexNames = { "sourceKey" };
     
@@ -126,7 +136,8 @@ public class ProcessReport implements ProcessReportMBean {
 
     @Override
     public TabularData getRunningQueries() {
-        final OpenType<?>[] itemTypes = { SimpleType.INTEGER, SimpleType.STRING, SimpleType.STRING, SimpleType.BOOLEAN };
+        final OpenType<?>[] itemTypes = { SimpleType.INTEGER, SimpleType.STRING, SimpleType.STRING, SimpleType.BOOLEAN,
+                SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.STRING };
         CompositeType infoType;
         try {
             infoType = new CompositeType("runningQueries", "Lists currently running XQueries",
@@ -135,7 +146,9 @@ public class ProcessReport implements ProcessReportMBean {
             final TabularDataSupport data = new TabularDataSupport(tabularType);
             final XQueryWatchDog[] watchdogs = processMonitor.getRunningXQueries();
             for (XQueryWatchDog watchdog : watchdogs) {
-                final Object[] itemValues = {new Integer(watchdog.getContext().hashCode()), watchdog.getContext().getXacmlSource().getType(), watchdog.getContext().getXacmlSource().getKey(), Boolean.valueOf(watchdog.isTerminating())};
+                final XQueryWatchDog.KillReason reason = watchdog.getKillReason();
+                final Object[] itemValues = {new Integer(watchdog.getContext().hashCode()), watchdog.getContext().getXacmlSource().getType(), watchdog.getContext().getXacmlSource().getKey(), Boolean.valueOf(watchdog.isTerminating()),
+                        watchdog.getCpuTime(), watchdog.getPagesRead(), watchdog.getConstructedNodes(), reason == null ? "" : reason.name()};
                 data.put(new CompositeDataSupport(infoType, qItemNames, itemValues));
             }
             return data;
@@ -161,7 +174,8 @@ public class ProcessReport implements ProcessReportMBean {
 
     @Override
     public TabularData getRecentQueryHistory() {
-        final OpenType<?>[] itemTypes = { SimpleType.STRING, SimpleType.INTEGER, SimpleType.LONG, SimpleType.LONG };
+        final OpenType<?>[] itemTypes = { SimpleType.STRING, SimpleType.INTEGER, SimpleType.LONG, SimpleType.LONG,
+                SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.STRING };
         CompositeType infoType;
         try {
             infoType = new CompositeType("recentQueryHistory", "Lists recently completed XQueries", qhItemNames, qhItemDescriptions, itemTypes);
@@ -170,7 +184,9 @@ public class ProcessReport implements ProcessReportMBean {
             final TabularDataSupport data = new TabularDataSupport(tabularType);
             final QueryHistory[] queryHistories = processMonitor.getRecentQueryHistory();
             for(final QueryHistory queryHistory : queryHistories) {
-                final Object[] itemValues = { queryHistory.getSource(), queryHistory.getInvocationCount(), queryHistory.getMostRecentExecutionTime(), queryHistory.getMostRecentExecutionDuration()};
+                final XQueryWatchDog.KillReason reason = queryHistory.getMostRecentKillReason();
+                final Object[] itemValues = { queryHistory.getSource(), queryHistory.getInvocationCount(), queryHistory.getMostRecentExecutionTime(), queryHistory.getMostRecentExecutionDuration(),
+                        queryHistory.getMostRecentCpuTime(), queryHistory.getMostRecentPagesRead(), queryHistory.getMostRecentConstructedNodes(), reason == null ? "" : reason.name()};
                 data.put(new CompositeDataSupport(infoType, qhItemNames, itemValues));
             }
             return data;
@@ -0,0 +1,75 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * $Id$
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.BrokerPool;
+import org.exist.xslt.TemplatesCache;
+
+public class TemplatesCacheInfo implements TemplatesCacheInfoMBean {
+
+    private final BrokerPool pool;
+
+    public TemplatesCacheInfo(BrokerPool pool) {
+        this.pool = pool;
+    }
+
+    private TemplatesCache getCache() {
+        return pool.getTemplatesCache();
+    }
+
+    @Override
+    public int getSize() {
+        final TemplatesCache cache = getCache();
+        return cache == null ? 0 : cache.getSize();
+    }
+
+    @Override
+    public int getMaxEntries() {
+        final TemplatesCache cache = getCache();
+        return cache == null ? 0 : cache.getMaxEntries();
+    }
+
+    @Override
+    public long getHits() {
+        final TemplatesCache cache = getCache();
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @Override
+    public long getCompilations() {
+        final TemplatesCache cache = getCache();
+        return cache == null ? 0 : cache.getCompilations();
+    }
+
+    @Override
+    public long getInvalidations() {
+        final TemplatesCache cache = getCache();
+        return cache == null ? 0 : cache.getInvalidations();
+    }
+
+    @Override
+    public void clear() {
+        final TemplatesCache cache = getCache();
+        if (cache != null)
+            {cache.clear();}
+    }
+}
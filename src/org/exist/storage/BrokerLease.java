@@ -0,0 +1,128 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ *  $Id$
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+
+/**
+ * A broker taken from the {@link BrokerPool} which is not bound to the
+ * thread that acquired it. Use {@link BrokerPool#lease(org.exist.security.Subject, long)}
+ * to obtain a lease.
+ *
+ * A lease can be handed over between threads, e.g. from a servlet container
+ * thread to an async worker. Before working with the broker, a thread calls
+ * {@link #attach()}, which makes the broker the active broker of the thread,
+ * so {@link BrokerPool#get(org.exist.security.Subject)} and
+ * {@link BrokerPool#getActiveBroker()} return it as usual. Afterwards the thread
+ * calls {@link #detach()}. At most one thread can be attached at any time.
+ * The broker is returned to the pool by {@link #close()}.
+ *
+ * <pre>
+ * final BrokerLease lease = pool.lease(subject, 5000);
+ * // ... hand over to another thread ...
+ * try {
+ *     final DBBroker broker = lease.attach();
+ *     ...
+ * } finally {
+ *     lease.close();
+ * }
+ * </pre>
+ */
+public class BrokerLease {
+
+    private final BrokerPool pool;
+    private final DBBroker broker;
+    private final long created;
+
+    private Thread owner = null;
+    private boolean closed = false;
+
+    BrokerLease(BrokerPool pool, DBBroker broker) {
+        this.pool = pool;
+        this.broker = broker;
+        this.created = System.currentTimeMillis();
+    }
+
+    /**
+     * Bind the leased broker to the current thread.
+     *
+     * @return the broker
+     * @throws EXistException if the lease is closed, attached to another thread or
+     *  the current thread already holds a different broker
+     */
+    public DBBroker attach() throws EXistException {
+        pool.attachLease(this);
+        return broker;
+    }
+
+    /**
+     * Unbind the leased broker from the current thread, so another thread
+     * can attach it. Does nothing if the lease is not attached.
+     */
+    public void detach() {
+        pool.detachLease(this);
+    }
+
+    /**
+     * Return the broker to the pool. The lease is detached first if necessary.
+     * Closing a lease more than once has no effect.
+     */
+    public void close() {
+        pool.closeLease(this);
+    }
+
+    public DBBroker getBroker() {
+        return broker;
+    }
+
+    /**
+     * @return the thread the lease is attached to, or null
+     */
+    public synchronized Thread getOwner() {
+        return owner;
+    }
+
+    synchronized void setOwner(Thread owner) {
+        this.owner = owner;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    synchronized void setClosed() {
+        this.closed = true;
+    }
+
+    /**
+     * @return the time the lease was acquired
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    @Override
+    public String toString() {
+        final Thread t = getOwner();
+        return "lease of " + broker.getId() + (t == null ? " (detached)" : " (attached to " + t.getName() + ")");
+    }
+}
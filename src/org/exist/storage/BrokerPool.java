@@ -62,11 +62,10 @@ import org.exist.storage.txn.TransactionManager;
 import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.util.Configuration.StartupTriggerConfig;
-import org.exist.util.hashtable.MapRWLock;
-import org.exist.util.hashtable.MapRWLock.LongOperation;
 import org.exist.xmldb.ShutdownListener;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.PerformanceStats;
+import org.exist.xslt.TemplatesCache;
 import org.expath.pkg.repo.PackageException;
 
 import java.io.File;
@@ -75,6 +74,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map.Entry;
 
 /**
@@ -463,9 +463,17 @@ public class BrokerPool implements Database {
     private Stack<DBBroker> inactiveBrokers = new Stack<>();
 
     /**
-     * The number of active brokers for the database instance
+     * The active brokers of the database instance by the thread using them.
+     * Each thread only looks up and changes its own entry, so the map is read
+     * without locking on the frequent calls to {@link #getActiveBroker()}.
      */
-    private MapRWLock<Thread, DBBroker> activeBrokers = new MapRWLock<>(new IdentityHashMap<Thread, DBBroker>());
+    private final ConcurrentHashMap<Thread, DBBroker> activeBrokers = new ConcurrentHashMap<>();
+
+    /**
+     * The number of brokers handed out as {@link BrokerLease}s. A leased broker is
+     * only contained in activeBrokers while a thread is attached to it.
+     */
+    private int leasedBrokers = 0;
 
     /**
      * The configuration object for the database instance
@@ -577,6 +585,16 @@ public class BrokerPool implements Database {
      */
     private ProcessMonitor processMonitor;
 
+    /**
+     * The queue delivering the events of asynchronous triggers.
+     */
+    private AsyncTriggerQueue asyncTriggerQueue;
+
+    /**
+     * The cache of compiled XSL stylesheets shared by all queries.
+     */
+    private TemplatesCache templatesCache;
+
     /**
      * Global performance stats to gather function execution statistics
      * from all queries running on this database instance.
@@ -829,6 +847,7 @@ public class BrokerPool implements Database {
                     xQueryPool = new XQueryPool(conf);
                     //REFACTOR : construct then... configure
                     processMonitor = new ProcessMonitor(maxShutdownWait);
+                    asyncTriggerQueue = new AsyncTriggerQueue(this);
                     xqueryStats = new PerformanceStats(this);
 
                     //REFACTOR : construct then... configure
@@ -851,6 +870,9 @@ public class BrokerPool implements Database {
 
                     notificationService = new NotificationService();
 
+                    templatesCache = new TemplatesCache();
+                    notificationService.subscribe(templatesCache);
+
                     //REFACTOR : construct then... configure
                     //TODO : journal directory *may* be different from BrokerPool.PROPERTY_DATA_DIR
                     transactionManager = new TransactionManager(this, new File((String) conf.getProperty(BrokerPool.PROPERTY_DATA_DIR)), isTransactional());
@@ -1220,17 +1242,13 @@ public class BrokerPool implements Database {
         return activeBrokers.size();
     }
 
+    /**
+     * Returns a snapshot of the active brokers by the thread using them.
+     *
+     * @return The active brokers
+     */
     public Map<Thread, DBBroker> getActiveBrokers() {
-        final Map<Thread, DBBroker> res = new HashMap<>(activeBrokers.size());
-
-        activeBrokers.readOperation(new LongOperation<Thread, DBBroker>() {
-            @Override
-            public void execute(final Map<Thread, DBBroker> map) {
-                res.putAll(map);
-            }
-        });
-
-        return res;
+        return new HashMap<>(activeBrokers);
     }
 
     /**
@@ -1424,6 +1442,24 @@ public class BrokerPool implements Database {
         return processMonitor;
     }
 
+    /**
+     * Returns the queue which delivers the events of asynchronous triggers.
+     *
+     * @return The queue
+     */
+    public AsyncTriggerQueue getAsyncTriggerQueue() {
+        return asyncTriggerQueue;
+    }
+
+    /**
+     * Returns the cache of compiled XSL stylesheets.
+     *
+     * @return The cache
+     */
+    public TemplatesCache getTemplatesCache() {
+        return templatesCache;
+    }
+
     /**
      * Returns the global profiler used to gather execution statistics
      * from all XQueries running on this db instance.
@@ -1529,21 +1565,12 @@ public class BrokerPool implements Database {
             sb.append(Thread.currentThread());
             sb.append("'.");
             sb.append(System.getProperty("line.separator"));
-            activeBrokers.readOperation(new LongOperation<Thread, DBBroker>() {
-                @Override
-                public void execute(Map<Thread, DBBroker> map) {
-                    for(final Entry<Thread, DBBroker> entry : map.entrySet()) {
-
-//							if (entry.getKey().equals(Thread.currentThread()))
-//								return entry.getValue();
-
-                        sb.append(entry.getKey());
-                        sb.append(" = ");
-                        sb.append(entry.getValue());
-                        sb.append(System.getProperty("line.separator"));
-                    }
-                }
-            });
+            for(final Entry<Thread, DBBroker> entry : activeBrokers.entrySet()) {
+                sb.append(entry.getKey());
+                sb.append(" = ");
+                sb.append(entry.getValue());
+                sb.append(System.getProperty("line.separator"));
+            }
             LOG.debug(sb.toString());
             throw new RuntimeException(sb.toString());
         }
@@ -1598,41 +1625,16 @@ public class BrokerPool implements Database {
 
         //No active broker : get one ASAP
 
-        while(serviceModeUser != null && user != null && !user.equals(serviceModeUser)) {
-            try {
+        synchronized(this) {
+            while(serviceModeUser != null && user != null && !user.equals(serviceModeUser)) {
                 LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
-                wait();
-            } catch(final InterruptedException e) {
+                waitForBroker(-1, -1);
             }
-        }
 
-        synchronized(this) {
-            //Are there any available brokers ?
-            if(inactiveBrokers.isEmpty()) {
-                //There are no available brokers. If allowed...
-                if(brokersCount < maxBrokers)
-                //... create one
-                {
-                    createBroker();
-                } else
-                    //... or wait until there is one available
-                    while(inactiveBrokers.isEmpty()) {
-                        LOG.debug("waiting for a broker to become available");
-                        try {
-                            this.wait();
-                        } catch(final InterruptedException e) {
-                            //nothing to be done!
-                        }
-                    }
-            }
-            broker = inactiveBrokers.pop();
+            broker = takeInactiveBroker(-1, -1);
             //activate the broker
             activeBrokers.put(Thread.currentThread(), broker);
 
-            if(watchdog != null) {
-                watchdog.add(broker);
-            }
-
             broker.incReferenceCount();
             if(user != null) {
                 broker.setSubject(user);
@@ -1642,7 +1644,158 @@ public class BrokerPool implements Database {
             //Inform the other threads that we have a new-comer
             // TODO: do they really need to be informed here???????
             this.notifyAll();
-            return broker;
+        }
+
+        // the watchdog records the acquiring stack, no need to hold the monitor
+        if(watchdog != null) {
+            watchdog.add(broker);
+        }
+        return broker;
+    }
+
+    /**
+     * Returns a broker which is not bound to the current thread. The lease
+     * has to be attached to a thread before the broker is used there and
+     * must be closed to return the broker to the pool.
+     *
+     * @param user The subject to use with the broker, or null to use the guest user
+     * @param timeout Maximum time in milliseconds to wait for a broker to become
+     *  available, or -1 to wait without limit
+     * @return The lease
+     * @throws EXistException If the instance is not available or no broker became
+     *  available within the timeout
+     */
+    public BrokerLease lease(final Subject user, final long timeout) throws EXistException {
+        if(!isInstanceConfigured()) {
+            throw new EXistException("database instance '" + instanceName + "' is not available");
+        }
+
+        final DBBroker broker;
+        synchronized(this) {
+            final long waitUntil = timeout < 0 ? -1 : System.currentTimeMillis() + timeout;
+            while(serviceModeUser != null && user != null && !user.equals(serviceModeUser)) {
+                LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
+                waitForBroker(waitUntil, timeout);
+            }
+
+            broker = takeInactiveBroker(waitUntil, timeout);
+            leasedBrokers++;
+
+            broker.incReferenceCount();
+            if(user != null) {
+                broker.setSubject(user);
+            } else {
+                broker.setSubject(securityManager.getGuestSubject());
+            }
+        }
+
+        // the lease is not visible to other threads yet, no need to hold the monitor
+        if(watchdog != null) {
+            watchdog.add(broker);
+            watchdog.setOwner(broker, null);
+        }
+        return new BrokerLease(this, broker);
+    }
+
+    /**
+     * Returns the number of brokers currently handed out as leases.
+     *
+     * @return The leased brokers count
+     */
+    public synchronized int countLeasedBrokers() {
+        return leasedBrokers;
+    }
+
+    synchronized void attachLease(final BrokerLease lease) throws EXistException {
+        final DBBroker broker = lease.getBroker();
+        if(lease.isClosed()) {
+            throw new EXistException("Lease of broker " + broker.getId() + " has already been closed");
+        }
+        final Thread current = Thread.currentThread();
+        final Thread owner = lease.getOwner();
+        if(owner == current) {
+            return;
+        }
+        if(owner != null) {
+            throw new EXistException("Lease of broker " + broker.getId() + " is attached to thread '" + owner.getName() + "'");
+        }
+        if(activeBrokers.get(current) != null) {
+            throw new EXistException("Thread '" + current.getName() + "' already holds a broker");
+        }
+        activeBrokers.put(current, broker);
+        lease.setOwner(current);
+        if(watchdog != null) {
+            watchdog.setOwner(broker, current);
+        }
+    }
+
+    synchronized void detachLease(final BrokerLease lease) {
+        final Thread owner = lease.getOwner();
+        if(owner == null) {
+            return;
+        }
+        final DBBroker broker = lease.getBroker();
+        if(broker.getReferenceCount() > 1) {
+            LOG.warn("Lease of broker " + broker.getId() + " detached while still in use by thread '" + owner.getName() + "'");
+        }
+        activeBrokers.remove(owner);
+        lease.setOwner(null);
+        if(watchdog != null) {
+            watchdog.setOwner(broker, null);
+        }
+    }
+
+    synchronized void closeLease(final BrokerLease lease) {
+        if(lease.isClosed()) {
+            return;
+        }
+        detachLease(lease);
+        lease.setClosed();
+        final DBBroker broker = lease.getBroker();
+        broker.decReferenceCount();
+        leasedBrokers--;
+        deactivate(broker);
+    }
+
+    /**
+     * Takes a broker from the inactive brokers, creating a new one if the
+     * maximum has not been reached yet. Must be called while holding the monitor.
+     *
+     * @param waitUntil Time in milliseconds until which to wait, -1 to wait without limit
+     * @param timeout The timeout the deadline was computed from, for the error message
+     */
+    private DBBroker takeInactiveBroker(final long waitUntil, final long timeout) throws EXistException {
+        //Are there any available brokers ?
+        if(inactiveBrokers.isEmpty()) {
+            //There are no available brokers. If allowed...
+            if(brokersCount < maxBrokers)
+            //... create one
+            {
+                createBroker();
+            } else {
+                //... or wait until there is one available
+                while(inactiveBrokers.isEmpty()) {
+                    LOG.debug("waiting for a broker to become available");
+                    waitForBroker(waitUntil, timeout);
+                }
+            }
+        }
+        return inactiveBrokers.pop();
+    }
+
+    private void waitForBroker(final long waitUntil, final long timeout) throws EXistException {
+        long wait = 0;
+        if(waitUntil > -1) {
+            wait = waitUntil - System.currentTimeMillis();
+            if(wait <= 0) {
+                throw new EXistException("No broker became available within " + timeout + "ms");
+            }
+        }
+        try {
+            this.wait(wait);
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EXistException("Interrupted while waiting for a broker", e);
         }
     }
 
@@ -1681,44 +1834,47 @@ public class BrokerPool implements Database {
                 LOG.error("release() has been called from the wrong thread for broker " + broker.getId());
                 // Cleanup the state of activeBrokers
 
-                activeBrokers.writeOperation(new LongOperation<Thread, DBBroker>() {
-                    @Override
-                    public void execute(Map<Thread, DBBroker> map) {
-                        for(final Object t : map.keySet()) {
-                            if(map.get(t) == broker) {
-                                final EXistException ex = new EXistException();
-                                LOG.error("release() has been called from '" + Thread.currentThread() + "', but occupied at '" + t + "'.", ex);
+                for(final Entry<Thread, DBBroker> entry : activeBrokers.entrySet()) {
+                    if(entry.getValue() == broker) {
+                        final EXistException ex = new EXistException();
+                        LOG.error("release() has been called from '" + Thread.currentThread() + "', but occupied at '" + entry.getKey() + "'.", ex);
 
-                                map.remove(t);
-                                break;
-                            }
-                        }
+                        activeBrokers.remove(entry.getKey(), broker);
+                        break;
                     }
-                });
-            }
-            final Subject lastUser = broker.getSubject();
-            broker.setSubject(securityManager.getGuestSubject());
-            inactiveBrokers.push(broker);
-            if(watchdog != null) {
-                watchdog.remove(broker);
+                }
             }
+            deactivate(broker);
+        }
+    }
 
-            //If the database is now idle, do some useful stuff
-            if(activeBrokers.size() == 0) {
-                //TODO : use a "clean" dedicated method (we have some below) ?
-                if(syncRequired) {
-                    //Note that the broker is not yet really inactive ;-)
-                    sync(broker, syncEvent);
-                    this.syncRequired = false;
-                    this.checkpoint = false;
-                }
-                if(serviceModeUser != null && !lastUser.equals(serviceModeUser)) {
-                    inServiceMode = true;
-                }
+    /**
+     * Puts a broker which is no longer used back to the inactive brokers.
+     * Must be called while holding the monitor.
+     */
+    private void deactivate(final DBBroker broker) {
+        final Subject lastUser = broker.getSubject();
+        broker.setSubject(securityManager.getGuestSubject());
+        inactiveBrokers.push(broker);
+        if(watchdog != null) {
+            watchdog.remove(broker);
+        }
+
+        //If the database is now idle, do some useful stuff
+        if(activeBrokers.size() == 0 && leasedBrokers == 0) {
+            //TODO : use a "clean" dedicated method (we have some below) ?
+            if(syncRequired) {
+                //Note that the broker is not yet really inactive ;-)
+                sync(broker, syncEvent);
+                this.syncRequired = false;
+                this.checkpoint = false;
+            }
+            if(serviceModeUser != null && !lastUser.equals(serviceModeUser)) {
+                inServiceMode = true;
             }
-            //Inform the other threads that someone is gone
-            this.notifyAll();
         }
+        //Inform the other threads that someone is gone
+        this.notifyAll();
     }
 
     public DBBroker enterServiceMode(final Subject user) throws PermissionDeniedException {
@@ -1728,7 +1884,7 @@ public class BrokerPool implements Database {
 
         serviceModeUser = user;
         synchronized(this) {
-            if(activeBrokers.size() != 0) {
+            if(activeBrokers.size() != 0 || leasedBrokers != 0) {
                 while(!inServiceMode) {
                     try {
                         wait();
@@ -1898,6 +2054,11 @@ public class BrokerPool implements Database {
 
         LOG.info("Database is shutting down ...");
 
+        // deliver pending trigger events while brokers are still available
+        if(asyncTriggerQueue != null) {
+            asyncTriggerQueue.shutdown(maxShutdownWait);
+        }
+
         status = SHUTDOWN;
 
         processMonitor.stopRunningJobs();
@@ -1955,10 +2116,10 @@ public class BrokerPool implements Database {
 
                 final long waitStart = System.currentTimeMillis();
                 //Are there active brokers ?
-                if(activeBrokers.size() > 0) {
+                if(activeBrokers.size() > 0 || leasedBrokers > 0) {
                     printSystemInfo();
                     LOG.info("Waiting " + maxShutdownWait + "ms for remaining threads to shut down...");
-                    while(activeBrokers.size() > 0) {
+                    while(activeBrokers.size() > 0 || leasedBrokers > 0) {
                         try {
                             //Wait until they become inactive...
                             this.wait(1000);
@@ -2065,6 +2226,12 @@ public class BrokerPool implements Database {
             collectionCacheMgr = null;
             xQueryPool = null;
             processMonitor = null;
+            asyncTriggerQueue = null;
+            templatesCache = null;
+            if(watchdog != null) {
+                watchdog.shutdown();
+                watchdog = null;
+            }
             collectionConfigurationManager = null;
             notificationService = null;
             indexManager = null;
@@ -4,35 +4,48 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.exist.EXistException;
 
+/**
+ * Records where brokers were acquired, enabled by the system property trace.brokers.
+ * Brokers not returned within {@link #TIMEOUT} are reported by a background timer,
+ * so acquiring a broker only records the stack of the current thread.
+ */
 public class BrokerWatchdog {
 
 	private final static Logger LOG = Logger.getLogger(BrokerWatchdog.class);
 	
 	private final static DateFormat df = DateFormat.getDateTimeInstance();
 	
+	/** Time in milliseconds after which a broker not returned is reported */
+	public final static long TIMEOUT = 30000;
+	
+	private final static long CHECK_INTERVAL = 5000;
+	
 	private class WatchedBroker {
 		
 		DBBroker broker;
 		StringBuilder trace;
-		long timeAdded;
+		volatile long timeAdded;
+		volatile String owner;
+		volatile boolean reported = false;
 		
 		WatchedBroker(DBBroker broker) {
 			this.broker = broker;
 			this.timeAdded = System.currentTimeMillis();
+			this.owner = Thread.currentThread().getName();
 			
 			this.trace = new StringBuilder();
 			trace();
 		}
 		
-		void trace() {
+		synchronized void trace() {
 			trace.append("Reference count: ").append(broker.getReferenceCount()).append("\n");
 			final StackTraceElement[] stack = Thread.currentThread().getStackTrace();
 			final int showElementCount = stack.length > 20 ? 20 : stack.length;
@@ -41,21 +54,54 @@ public class BrokerWatchdog {
 			}
 			trace.append("\n");
 		}
+		
+		synchronized String getTrace() {
+			return trace.toString();
+		}
 	}
 	
-	private Map<DBBroker, WatchedBroker> watched = new IdentityHashMap<DBBroker, WatchedBroker>();
+	private final Map<DBBroker, WatchedBroker> watched = new ConcurrentHashMap<DBBroker, WatchedBroker>();
+	
+	private final Timer timer;
+	
+	public BrokerWatchdog() {
+		timer = new Timer("BrokerWatchdog", true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					checkForTimeout();
+				} catch (final EXistException e) {
+					LOG.error(e.getMessage());
+				}
+			}
+		}, CHECK_INTERVAL, CHECK_INTERVAL);
+	}
 	
-	public void add(DBBroker broker) throws EXistException {
+	public void add(DBBroker broker) {
 		final WatchedBroker old = watched.get(broker);
 		if (old == null) {
-			checkForTimeout();
 			watched.put(broker, new WatchedBroker(broker));
 		} else {
 			old.timeAdded = System.currentTimeMillis();
+			old.reported = false;
 			old.trace();
 		}
 	}
 	
+	/**
+	 * Record the thread currently using a leased broker.
+	 * 
+	 * @param broker the broker
+	 * @param owner the thread the lease is attached to, or null if it is detached
+	 */
+	public void setOwner(DBBroker broker, Thread owner) {
+		final WatchedBroker w = watched.get(broker);
+		if (w != null) {
+			w.owner = owner == null ? "detached lease" : "lease attached to " + owner.getName();
+		}
+	}
+	
 	public void remove(DBBroker broker) {
 		watched.remove(broker);
 	}
@@ -63,27 +109,42 @@ public class BrokerWatchdog {
 	public String get(DBBroker broker) {
 		final WatchedBroker w = watched.get(broker);
 		if (w != null) {
-			return w.trace.toString();
+			return w.getTrace();
 		}
 		return "";
 	}
 	
+	/**
+	 * Check for brokers which have not been returned within {@link #TIMEOUT}.
+	 * Each broker is reported once.
+	 * 
+	 * @throws EXistException listing the first broker found
+	 */
 	public void checkForTimeout() throws EXistException {
 		for (final WatchedBroker broker : watched.values()) {
-			if (System.currentTimeMillis() - broker.timeAdded > 30000) {
+			if (!broker.reported && System.currentTimeMillis() - broker.timeAdded > TIMEOUT) {
+				broker.reported = true;
 				throw new EXistException("Broker: " + broker.broker.getId() + 
-						" did not return for 30sec.\n\n" + broker.trace.toString());
+						" did not return for 30sec.\n\n" + broker.getTrace());
 			}
 		}
 	}
 	
+	/**
+	 * Stop the background check.
+	 */
+	public void shutdown() {
+		timer.cancel();
+	}
+	
 	public void dump(PrintWriter writer) {
 		writer.println("Active brokers:");
 		for (final WatchedBroker broker: watched.values()) {
 			writer.format("%20s: %s\n", "Broker", broker.broker.getId());
+			writer.format("%20s: %s\n", "Owner", broker.owner);
 			writer.format("%20s: %s\n", "Active since", df.format(new Date(broker.timeAdded)));
 			writer.println("\nStack:");
-			writer.println(broker.trace);
+			writer.println(broker.getTrace());
 			writer.println("----------------------------------------------------------------");
 		}
 	}
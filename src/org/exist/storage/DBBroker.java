@@ -598,6 +598,20 @@ public abstract class DBBroker extends Observable implements AutoCloseable {
     public abstract void readBinaryResource(final BinaryDocument blob,
         final OutputStream os) throws IOException;
 
+    /**
+     * Write a part of the binary data stored under the resource descriptor
+     * BinaryDocument to the given output stream, e.g. to serve an HTTP
+     * range request.
+     *
+     * @param blob the binary document descriptor
+     * @param os the stream to write to
+     * @param offset the position of the first byte to write
+     * @param length the number of bytes to write. Bytes beyond the
+     *            end of the resource are ignored.
+     */
+    public abstract void readBinaryResource(final BinaryDocument blob,
+        final OutputStream os, final long offset, final long length) throws IOException;
+
     public abstract File getBinaryFile(final BinaryDocument blob) throws IOException;
 
 	public abstract InputStream getBinaryResource(final BinaryDocument blob)
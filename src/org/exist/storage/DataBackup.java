@@ -26,11 +26,14 @@ package org.exist.storage;
 import org.apache.log4j.Logger;
 import org.exist.EXistException;
 import org.exist.backup.RawDataBackup;
+import org.exist.storage.btree.Paged;
 import org.exist.util.Configuration;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -38,8 +41,18 @@ import java.util.Date;
 import java.util.Properties;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * System task which archives the raw data files. If parameter "incremental" is set to
+ * "yes", only the first backup after startup copies all files. The following backups only
+ * contain the pages of the paged files which changed since the previous backup. Parameter
+ * "max-incremental" limits the number of incremental backups following a full backup.
+ *
+ * Use {@link #restore(File, File[])} to recreate the data directory from a full backup
+ * and the following incremental backups.
+ */
 public class DataBackup implements SystemTask {
 
     private final static Logger LOG = Logger.getLogger(DataBackup.class);
@@ -47,6 +60,12 @@ public class DataBackup implements SystemTask {
     public final static SimpleDateFormat creationDateFormat = new SimpleDateFormat("yyyyMMddHHmmssS");
     
 	private String dest;
+
+    private boolean incremental = false;
+    private int maxIncremental = -1;
+
+    /** Number of incremental backups since the last full backup, -1 if there was no full backup yet */
+    private int incrementalCount = -1;
 	
     public DataBackup() {
     }
@@ -78,6 +97,16 @@ public class DataBackup implements SystemTask {
             {f.mkdirs();}
         dest = f.getAbsolutePath();
         LOG.debug("Setting backup data directory: " + dest);
+
+        incremental = "yes".equals(properties.getProperty("incremental", "no"));
+        final String max = properties.getProperty("max-incremental");
+        if (max != null) {
+            try {
+                maxIncremental = Integer.parseInt(max);
+            } catch (final NumberFormatException e) {
+                throw new EXistException("Parameter max-incremental should be a number: " + max);
+            }
+        }
     }
     
 	public void execute(DBBroker broker) throws EXistException {
@@ -88,30 +117,105 @@ public class DataBackup implements SystemTask {
 		
 		LOG.debug("Backing up data files ...");
 		
+		final boolean incrementalBackup = incremental && incrementalCount > -1 &&
+            (maxIncremental < 0 || incrementalCount < maxIncremental);
 		final String creationDate = creationDateFormat.format(Calendar.getInstance().getTime());
-        final String outFilename = dest + File.separatorChar + creationDate + ".zip";
+        final String outFilename = dest + File.separatorChar + creationDate +
+            (incrementalBackup ? "-inc.zip" : ".zip");
         
         // Create the ZIP file
         LOG.debug("Archiving data files into: " + outFilename);
         
+        ZipOutputStream out = null;
+        boolean success = false;
         try {
-			final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(outFilename));
+			out = new ZipOutputStream(new FileOutputStream(outFilename));
             out.setLevel(Deflater.NO_COMPRESSION);
-            final Callback cb = new Callback(out);
+            final Callback cb = new Callback(out, incrementalBackup);
             broker.backupToArchive(cb);
             // close the zip file
 			out.close();
+            out = null;
+            incrementalCount = incrementalBackup ? incrementalCount + 1 : 0;
+            success = true;
 		} catch (final IOException e) {
 			LOG.warn("An IO error occurred while backing up data files: " + e.getMessage(), e);
-		}
+		} finally {
+            if (!success) {
+                // the changed pages written so far are no longer tracked, so the
+                // next backup has to be a full one
+                incrementalCount = -1;
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (final IOException e) {
+                        // ignore, the archive is deleted anyway
+                    }
+                }
+                final File partial = new File(outFilename);
+                if (partial.exists() && !partial.delete())
+                    {LOG.warn("Failed to delete incomplete backup file " + outFilename);}
+            }
+        }
 	}
 
+    /**
+     * Extract a full backup and apply the following incremental backups to
+     * the extracted files.
+     *
+     * @param targetDir the directory to extract to
+     * @param archives the full backup, followed by incremental backups in the order they were created
+     * @throws IOException
+     */
+    public static void restore(File targetDir, File[] archives) throws IOException {
+        targetDir.mkdirs();
+        for (final File archive : archives) {
+            LOG.info("Restoring data files from " + archive.getAbsolutePath());
+            final ZipInputStream zin = new ZipInputStream(new FileInputStream(archive));
+            try {
+                ZipEntry entry;
+                while ((entry = zin.getNextEntry()) != null) {
+                    final String name = entry.getName();
+                    if (name.endsWith(Paged.CHANGED_PAGES_SUFFIX)) {
+                        final File target = new File(targetDir, name.substring(0, name.length() - Paged.CHANGED_PAGES_SUFFIX.length()));
+                        if (!target.exists())
+                            {throw new IOException("Changed pages found for " + target.getName() +
+                                ", but the file is missing. Restore the full backup first.");}
+                        Paged.applyChangedPages(zin, target);
+                    } else {
+                        final File target = new File(targetDir, name);
+                        target.getParentFile().mkdirs();
+                        copy(zin, target);
+                    }
+                    zin.closeEntry();
+                }
+            } finally {
+                zin.close();
+            }
+        }
+    }
+
+    private static void copy(InputStream is, File target) throws IOException {
+        final OutputStream os = new FileOutputStream(target);
+        try {
+            final byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) > 0) {
+                os.write(buf, 0, len);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
     private class Callback implements RawDataBackup {
 
         private ZipOutputStream zout;
+        private boolean incremental;
 
-        private Callback(ZipOutputStream out) {
+        private Callback(ZipOutputStream out, boolean incremental) {
             zout = out;
+            this.incremental = incremental;
         }
 
         public OutputStream newEntry(String name) throws IOException {
@@ -122,6 +226,10 @@ public class DataBackup implements SystemTask {
         public void closeEntry() throws IOException {
             zout.closeEntry();
         }
+
+        public boolean isIncremental() {
+            return incremental;
+        }
     }
 }
 
@@ -71,6 +71,8 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -493,9 +495,7 @@ public class NativeBroker extends DBBroker {
                 LOG.warn("Storage file is null: " + i);
                 continue;
             }
-            final OutputStream os = backup.newEntry(paged.getFile().getName());
-            paged.backupToStream(os);
-            backup.closeEntry();
+            paged.backupToArchive(backup);
         }
         pool.getSymbols().backupToArchive(backup);
         backupBinary(backup, fsDir, "");
@@ -2222,17 +2222,41 @@ public class NativeBroker extends DBBroker {
     @Override
     public void readBinaryResource(final BinaryDocument blob, final OutputStream os)
         throws IOException {
-        InputStream is = null;
-        try {
-            is = getBinaryResource(blob);
-            final byte[] buffer = new byte[BINARY_RESOURCE_BUF_SIZE];
-            int len;
-            while((len = is.read(buffer)) >= 0) {
-                os.write(buffer, 0, len);
-            }
-        } finally {
-            if(is != null) {
-                is.close();
+        readBinaryResource(blob, os, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * If the target is a {@link FileOutputStream}, the data is transferred with
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so it is not copied
+     * through the java heap. Other streams are written from a buffer of
+     * {@link #BINARY_RESOURCE_BUF_SIZE} bytes.
+     */
+    @Override
+    public void readBinaryResource(final BinaryDocument blob, final OutputStream os,
+        final long offset, final long length) throws IOException {
+        final File binFile = getCollectionFile(fsDir, blob.getURI(), false);
+        try (final FileInputStream is = new FileInputStream(binFile)) {
+            final FileChannel src = is.getChannel();
+            long position = offset;
+            final long end = length > src.size() - offset ? src.size() : offset + length;
+            if (os instanceof FileOutputStream) {
+                final WritableByteChannel dest = ((FileOutputStream) os).getChannel();
+                while (position < end) {
+                    final long count = src.transferTo(position, end - position, dest);
+                    if (count <= 0) {
+                        break;
+                    }
+                    position += count;
+                }
+            } else if (position < end) {
+                src.position(position);
+                final byte[] buffer = new byte[BINARY_RESOURCE_BUF_SIZE];
+                int len;
+                while (position < end &&
+                        (len = is.read(buffer, 0, (int) Math.min(buffer.length, end - position))) >= 0) {
+                    os.write(buffer, 0, len);
+                    position += len;
+                }
             }
         }
     }
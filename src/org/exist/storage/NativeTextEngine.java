@@ -37,7 +37,6 @@ import org.exist.storage.btree.DBException;
 import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.index.BFile;
-import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.storage.lock.Lock;
@@ -613,6 +612,9 @@ public class NativeTextEngine extends TextSearchEngine implements ContentLoading
                 lock.release(Lock.READ_LOCK);
             }
         }
+        //Sort once, after all matching terms have been collected
+        if (contextSet != null)
+            {((NewArrayNodeSet) result).sort();}
         return result;
     }
 
@@ -1205,11 +1207,12 @@ public class NativeTextEngine extends TextSearchEngine implements ContentLoading
                     os.clear();
                     try {
                         lock.acquire(Lock.WRITE_LOCK);
-                        final Value value = dbTokens.get(key);
-                        if (value == null)
+                        //Stream the stored data, rather than loading it into one array
+                        final VariableByteInput is = dbTokens.getAsStream(key);
+                        if (is == null)
                             {continue;}
+                        final long address = ((BFile.PageInputStream) is).getAddress();
                         //Add its data to the new list
-                        final VariableByteArrayInput is = new VariableByteArrayInput(value.getData());
                         while (is.available() > 0) {
                             final int storedDocId = is.readInt();
                             final byte storedSection = is.readByte();
@@ -1273,7 +1276,7 @@ public class NativeTextEngine extends TextSearchEngine implements ContentLoading
                         //Store the data
                         if(os.data().size() == 0)
                             {dbTokens.remove(key);}
-                        else if (dbTokens.update(value.getAddress(), key, 
+                        else if (dbTokens.update(address, key,
                                 os.data()) == BFile.UNKNOWN_ADDRESS) {
                             LOG.error("Could not update index data for token '" +
                                 token + "' in '" + dbTokens.getFile().getName() +
@@ -1351,19 +1354,20 @@ public class NativeTextEngine extends TextSearchEngine implements ContentLoading
         }
 
         public boolean indexInfo(Value key, long pointer) throws TerminatedException {
-            VariableByteInput is;
-            try {
-                is = dbTokens.getAsStream(pointer);
-            } catch (final IOException e) {
-                LOG.error(e.getMessage(), e);
-                return true;
-            } 
             word.reuse();
             if (qname == null)
                 {WordRef.decode(key, word);}
             else
                 {QNameWordRef.decode(key, word);}
+            //Only read the occurrences of matching terms
             if (matcher.matches(word)) {
+                VariableByteInput is;
+                try {
+                    is = dbTokens.getAsStream(pointer);
+                } catch (final IOException e) {
+                    LOG.error(e.getMessage(), e);
+                    return true;
+                }
                 try {
                     while (is.available() > 0) {
                         if(context != null)
@@ -1448,9 +1452,6 @@ public class NativeTextEngine extends TextSearchEngine implements ContentLoading
                     //TODO : throw exception ? -pb
                 }
             }
-            //TOUNDERSTAND : why sort here ? -pb
-            if (contextSet != null)
-                {((NewArrayNodeSet) result).sort();}
             return true;
         }
     }
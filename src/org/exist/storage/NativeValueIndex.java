@@ -42,7 +42,6 @@ import org.exist.storage.btree.DBException;
 import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.index.BFile;
-import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.storage.lock.Lock;
@@ -513,13 +512,14 @@ public class NativeValueIndex implements ContentLoadingObserver {
                         final QNameKey qnk = ( QNameKey )key;
                         searchKey = new QNameValue( collectionId, qnk.qname, qnk.value, broker.getBrokerPool().getSymbols() );
                     }
-                    final Value value = dbValues.get( searchKey );
+                    //Stream the stored data, rather than loading it into one array
+                    final VariableByteInput is = dbValues.getAsStream( searchKey );
 
                     //Does the value already has data in the index ?
-                    if( value != null ) {
+                    if( is != null ) {
+                        final long address = ( ( BFile.PageInputStream )is ).getAddress();
 
                         //Add its data to the new list
-                        final VariableByteArrayInput is = new VariableByteArrayInput( value.getData() );
 
                         while( is.available() > 0 ) {
                             final int storedDocId = is.readInt();
@@ -585,7 +585,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
 //                        if(os.data().size() == 0)
 //                            dbValues.remove(value);
-                        if( dbValues.update( value.getAddress(), searchKey, os.data() ) == BFile.UNKNOWN_ADDRESS ) {
+                        if( dbValues.update( address, searchKey, os.data() ) == BFile.UNKNOWN_ADDRESS ) {
                             LOG.error( "Could not update index data for value '" + searchKey + "'" );
                             //TODO: throw exception ?
                         }
@@ -692,12 +692,11 @@ public class NativeValueIndex implements ContentLoadingObserver {
                         final QNameKey qnk = ( QNameKey )key;
                         v = new QNameValue( collectionId, qnk.qname, qnk.value, broker.getBrokerPool().getSymbols() );
                     }
-                    final Value value = dbValues.get( v );
+                    final VariableByteInput is = dbValues.getAsStream( v );
 
-                    if( value == null ) {
+                    if( is == null ) {
                         continue;
                     }
-                    final VariableByteArrayInput is      = new VariableByteArrayInput( value.getData() );
                     boolean                changed = false;
                     os.clear();
 
@@ -1594,7 +1593,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
             catch( final IOException e ) {
                 LOG.error( e.getMessage(), e );
             }
-            return( false );
+            return( true );
         }
     }
 
@@ -1665,7 +1664,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 }
 
                 if( atomic.getType() != type ) {
-                    return( false );
+                    return( true );
                 }
             }
             catch( final EXistException e ) {
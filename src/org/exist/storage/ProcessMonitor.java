@@ -136,6 +136,7 @@ public class ProcessMonitor {
     }
 	
     public void queryCompleted(XQueryWatchDog watchdog) {
+        watchdog.sample();
         synchronized (runningQueries) {
             runningQueries.remove(watchdog);
         }
@@ -150,6 +151,8 @@ public class ProcessMonitor {
             qh.setMostRecentExecutionTime(watchdog.getStartTime());
             qh.setMostRecentExecutionDuration(System.currentTimeMillis() - watchdog.getStartTime());
             qh.incrementInvocationCount();
+            qh.setMostRecentResources(watchdog.getCpuTime(), watchdog.getPagesRead(), watchdog.getConstructedNodes());
+            qh.setMostRecentKillReason(watchdog.getKillReason());
 
             queryHistories.put(sourceKey, qh);
         }
@@ -183,6 +186,10 @@ public class ProcessMonitor {
         private long mostRecentExecutionTime;
         private long mostRecentExecutionDuration;
         private int invocationCount = 0;
+        private long mostRecentCpuTime;
+        private long mostRecentPagesRead;
+        private long mostRecentConstructedNodes;
+        private XQueryWatchDog.KillReason mostRecentKillReason;
 
         public QueryHistory(String source) {
             this.source = source;
@@ -215,6 +222,32 @@ public class ProcessMonitor {
         public void setMostRecentExecutionDuration(long mostRecentExecutionDuration) {
             this.mostRecentExecutionDuration = mostRecentExecutionDuration;
         }
+
+        public void setMostRecentResources(long cpuTime, long pagesRead, long constructedNodes) {
+            this.mostRecentCpuTime = cpuTime;
+            this.mostRecentPagesRead = pagesRead;
+            this.mostRecentConstructedNodes = constructedNodes;
+        }
+
+        public long getMostRecentCpuTime() {
+            return mostRecentCpuTime;
+        }
+
+        public long getMostRecentPagesRead() {
+            return mostRecentPagesRead;
+        }
+
+        public long getMostRecentConstructedNodes() {
+            return mostRecentConstructedNodes;
+        }
+
+        public XQueryWatchDog.KillReason getMostRecentKillReason() {
+            return mostRecentKillReason;
+        }
+
+        public void setMostRecentKillReason(XQueryWatchDog.KillReason killReason) {
+            this.mostRecentKillReason = killReason;
+        }
     }
 
     public QueryHistory[] getRecentQueryHistory() {
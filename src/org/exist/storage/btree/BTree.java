@@ -359,7 +359,8 @@ public class BTree extends Paged implements Lockable {
 
     /**
      *  query performs a query against the BTree and performs callback
-     *  operations to report the search results.
+     *  operations to report the search results. The query stops as soon
+     *  as the callback returns false.
      *
      *@param  query               The IndexQuery to use (or null for everything)
      *@param  callback            The callback instance
@@ -397,16 +398,21 @@ public class BTree extends Paged implements Lockable {
         getRootNode().query(query, prefix, callback);
     }
 
-    protected void scanSequential(BTreeNode page, IndexQuery query, Value keyPrefix, BTreeCallback callback) throws TerminatedException {
+    /**
+     * Report the matching keys on the given page and its right siblings.
+     *
+     * @return false if the callback cancelled the enumeration
+     */
+    protected boolean scanSequential(BTreeNode page, IndexQuery query, Value keyPrefix, BTreeCallback callback) throws TerminatedException {
         while (page != null) {
             for (int i = 0; i < page.nKeys; i++) {
                 if (keyPrefix != null && page.keys[i].comparePrefix(keyPrefix) > 0)
-                    {return;}
+                    {return true;}
                 boolean test = query.testValue(page.keys[i]);
                 if (query.getOperator() != IndexQuery.NEQ && !test)
-                    {return;}
-                if (test)
-                    {callback.indexInfo(page.keys[i], page.ptrs[i]);}
+                    {return true;}
+                if (test && !callback.indexInfo(page.keys[i], page.ptrs[i]))
+                    {return false;}
             }
             final long next = page.pageHeader.getNextPage();
             if (next != Page.NO_PAGE) {
@@ -414,6 +420,7 @@ public class BTree extends Paged implements Lockable {
             } else
                 {page = null;}
         }
+        return true;
     }
 
     /**
@@ -1729,9 +1736,10 @@ public class BTree extends Paged implements Lockable {
          * @param callback
          * @throws IOException
          * @throws BTreeException
+         * @return false if the callback cancelled the enumeration
          * @throws TerminatedException
          */
-        private void query(IndexQuery query, BTreeCallback callback)
+        private boolean query(IndexQuery query, BTreeCallback callback)
                 throws IOException, BTreeException, TerminatedException {
             if (query != null
                     && query.getOperator() != IndexQuery.ANY
@@ -1756,38 +1764,45 @@ public class BTree extends Paged implements Lockable {
                         case IndexQuery.RANGE :
                             for (int i = 0; i < nPtrs; i++)
                                 if ((i >= leftIdx && i <= rightIdx) == pos) {
-                                    getChildNode(i).query(query, callback);
+                                    if (!getChildNode(i).query(query, callback))
+                                        {return false;}
                                     if (query.getOperator() == IndexQuery.TRUNC_RIGHT ||
                                         query.getOperator() == IndexQuery.RANGE)
                                         {break;}
                                 }
                             break;
                         case IndexQuery.NEQ :
-                            getChildNode(0).query(query, callback);
+                            if (!getChildNode(0).query(query, callback))
+                                {return false;}
                             break;
                         case IndexQuery.EQ :
-                            getChildNode(leftIdx).query(query, callback);
+                            if (!getChildNode(leftIdx).query(query, callback))
+                                {return false;}
                             break;
                         case IndexQuery.LT :
                             for (int i = 0; i < nPtrs; i++) {
                                 if ((pos && (i <= leftIdx)) || (!pos && (i >= leftIdx)))
-                                    {getChildNode(i).query(query, callback);}
+                                    {if (!getChildNode(i).query(query, callback))
+                                        return false;}
                             }
                             break;
                         case IndexQuery.GEQ :
                         case IndexQuery.GT :
-                            getChildNode(leftIdx).query(query, callback);
+                            if (!getChildNode(leftIdx).query(query, callback))
+                                {return false;}
                             break;
                         case IndexQuery.LEQ :
                             for (int i = 0; i < nPtrs; i++) {
                                 if ((pos && (i >= leftIdx)) || (!pos && (i <= leftIdx)))
-                                    {getChildNode(i).query(query, callback);}
+                                    {if (!getChildNode(i).query(query, callback))
+                                        return false;}
                             }
                             break;
                         default :
                             // If it's not implemented, we walk the tree
                             for (int i = 0; i < nPtrs; i++) {
-                                getChildNode(i).query(query, callback);
+                                if (!getChildNode(i).query(query, callback))
+                                    {return false;}
                             }
                             break;
                         }
@@ -1795,15 +1810,16 @@ public class BTree extends Paged implements Lockable {
                     case LEAF :
                         switch (query.getOperator()) {
                         case IndexQuery.EQ :
-                            if (leftIdx >= 0)
-                                {callback.indexInfo(keys[leftIdx], ptrs[leftIdx]);}
+                            if (leftIdx >= 0 && !callback.indexInfo(keys[leftIdx], ptrs[leftIdx]))
+                                {return false;}
                             break;
                         case IndexQuery.NEQ :
                             for (int i = 0; i < nPtrs; i++) {
-                                if (i != leftIdx)
-                                    {callback.indexInfo(keys[i], ptrs[i]);}
+                                if (i != leftIdx && !callback.indexInfo(keys[i], ptrs[i]))
+                                    {return false;}
                             }
-                            scanNextPage(query, null, callback);
+                            if (!scanNextPage(query, null, callback))
+                                {return false;}
                             break;
                         case IndexQuery.BWX :
                         case IndexQuery.NBWX :
@@ -1816,8 +1832,8 @@ public class BTree extends Paged implements Lockable {
                             for (int i = 0; i < nPtrs; i++) {
                                 if ((pos && (i >= leftIdx && i <= rightIdx))
                                     || (!pos && (i <= leftIdx || i >= rightIdx))) {
-                                    if (query.testValue(keys[i]))
-                                        {callback.indexInfo(keys[i], ptrs[i]);}
+                                    if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                        {return false;}
                                 }
                             }
                             break;
@@ -1828,11 +1844,11 @@ public class BTree extends Paged implements Lockable {
                             if (rightIdx < 0)
                                 {rightIdx = - (rightIdx + 1);}
                             for (int i = leftIdx; i < rightIdx && i < nPtrs; i++) {
-                                if (query.testValue(keys[i]))
-                                        {callback.indexInfo(keys[i], ptrs[i]);}
+                                if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                        {return false;}
                             }
                             if (rightIdx >= nPtrs)
-                                {scanNextPage(query, null, callback);}
+                                {return scanNextPage(query, null, callback);}
                             break;
                         case IndexQuery.IN :
                         case IndexQuery.NIN :
@@ -1842,8 +1858,8 @@ public class BTree extends Paged implements Lockable {
                                 {rightIdx = - (rightIdx + 1);}
                             for (int i = 0; i < nPtrs; i++) {
                                 if (!pos || (i >= leftIdx && i <= rightIdx))
-                                    {if (query.testValue(keys[i]))
-                                        callback.indexInfo(keys[i], ptrs[i]);}
+                                    {if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                        return false;}
                             }
                             break;
                         case IndexQuery.LT :
@@ -1851,8 +1867,8 @@ public class BTree extends Paged implements Lockable {
                                 {leftIdx = - (leftIdx + 1);}
                             for (int i = 0; i < nPtrs; i++) {
                                 if ((pos && (i <= leftIdx)) || (!pos && (i >= leftIdx)))
-                                    {if (query.testValue(keys[i]))
-                                        callback.indexInfo(keys[i], ptrs[i]);}
+                                    {if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                        return false;}
                             }
                             break;
                         case IndexQuery.GEQ :
@@ -1860,19 +1876,21 @@ public class BTree extends Paged implements Lockable {
                             if (leftIdx < 0)
                                 {leftIdx = - (leftIdx + 1);}
                             for (int i = leftIdx; i < nPtrs; i++) {
-                                if (query.testValue(keys[i]))
-                                    {callback.indexInfo(keys[i], ptrs[i]);}
+                                if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                    {return false;}
                             }
-                            scanNextPage(query, null, callback);
+                            if (!scanNextPage(query, null, callback))
+                                {return false;}
                             break;
                         case IndexQuery.LEQ :
                             if (leftIdx < 0)
                                 {leftIdx = - (leftIdx + 1);}
                             for (int i = 0; i < nPtrs; i++) {
                                 if ((pos && (i >= leftIdx)) || (!pos && (i <= leftIdx))) {
-                                    if (query.testValue(keys[i]))
-                                        {callback.indexInfo(keys[i], ptrs[i]);}
-                                    else if (query.getOperator() == IndexQuery.TRUNC_RIGHT)
+                                    if (query.testValue(keys[i])) {
+                                        if (!callback.indexInfo(keys[i], ptrs[i]))
+                                            {return false;}
+                                    } else if (query.getOperator() == IndexQuery.TRUNC_RIGHT)
                                         {break;}
                                 }
                             }
@@ -1880,8 +1898,8 @@ public class BTree extends Paged implements Lockable {
                         default :
                             // If it's not implemented, it falls right through
                             for (int i = 0; i < nPtrs; i++) {
-                                if (query.testValue(keys[i]))
-                                    {callback.indexInfo(keys[i], ptrs[i]);}
+                                if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                    {return false;}
                             }
                             break;
                         }
@@ -1894,20 +1912,22 @@ public class BTree extends Paged implements Lockable {
                 switch (pageHeader.getStatus()) {
                 case BRANCH :
                     for (int i = 0; i < nPtrs; i++) {
-                        getChildNode(i).query(query, callback);
+                        if (!getChildNode(i).query(query, callback))
+                            {return false;}
                     }
                     break;
                 case LEAF :
                     for (int i = 0; i < nKeys; i++) {
-                        if (query == null || query.getOperator() != IndexQuery.TRUNC_LEFT
-                                || query.testValue(keys[i]))
-                            {callback.indexInfo(keys[i], ptrs[i]);}
+                        if ((query == null || query.getOperator() != IndexQuery.TRUNC_LEFT
+                                || query.testValue(keys[i])) && !callback.indexInfo(keys[i], ptrs[i]))
+                            {return false;}
                     }
                     break;
                 default :
                     throw new BTreeException("Invalid Page Type In query");
                 }
             }
+            return true;
         }
 
         /**
@@ -1919,9 +1939,10 @@ public class BTree extends Paged implements Lockable {
          * @param callback
          * @throws IOException
          * @throws BTreeException
+         * @return false if the callback cancelled the enumeration
          * @throws TerminatedException
          */
-        private void query(IndexQuery query, Value keyPrefix, BTreeCallback callback)
+        private boolean query(IndexQuery query, Value keyPrefix, BTreeCallback callback)
                 throws IOException, BTreeException, TerminatedException {
             if (query != null
                     && query.getOperator() != IndexQuery.ANY
@@ -1935,24 +1956,29 @@ public class BTree extends Paged implements Lockable {
                     pfxIdx = pfxIdx < 0 ? - (pfxIdx + 1) : pfxIdx + 1;
                     switch (query.getOperator()) {
                     case IndexQuery.EQ :
-                        getChildNode(leftIdx).query(query, keyPrefix, callback);
+                        if (!getChildNode(leftIdx).query(query, keyPrefix, callback))
+                            {return false;}
                         break;
                     case IndexQuery.NEQ :
-                        getChildNode(pfxIdx).query(query, keyPrefix, callback);
+                        if (!getChildNode(pfxIdx).query(query, keyPrefix, callback))
+                            {return false;}
                         break;
                     case IndexQuery.LT :
                         for (int i = pfxIdx; i <= leftIdx && i < nPtrs; i++) {
-                            getChildNode(i).query(query, keyPrefix, callback);
+                            if (!getChildNode(i).query(query, keyPrefix, callback))
+                                {return false;}
                         }
                         break;
                     case IndexQuery.LEQ :
                         for (int i = pfxIdx; i <= leftIdx && i < nPtrs; i++) {
-                            getChildNode(i).query(query, keyPrefix, callback);
+                            if (!getChildNode(i).query(query, keyPrefix, callback))
+                                {return false;}
                         }
                         break;
                     case IndexQuery.GEQ :
                     case IndexQuery.GT :
-                        getChildNode(leftIdx).query(query, keyPrefix, callback);
+                        if (!getChildNode(leftIdx).query(query, keyPrefix, callback))
+                            {return false;}
                         break;
                     }
                     break;
@@ -1960,32 +1986,33 @@ public class BTree extends Paged implements Lockable {
                     pfxIdx = pfxIdx < 0 ? - (pfxIdx + 1) : pfxIdx + 1;
                     switch (query.getOperator()) {
                     case IndexQuery.EQ :
-                        if (leftIdx >= 0)
-                            {callback.indexInfo(keys[leftIdx], ptrs[leftIdx]);}
+                        if (leftIdx >= 0 && !callback.indexInfo(keys[leftIdx], ptrs[leftIdx]))
+                            {return false;}
                         break;
                     case IndexQuery.NEQ :
                         for (int i = pfxIdx; i < nPtrs; i++) {
                             if (keys[i].comparePrefix(keyPrefix) > 0)
                                 {break;}
-                            if (i != leftIdx)
-                                {callback.indexInfo(keys[i], ptrs[i]);}
+                            if (i != leftIdx && !callback.indexInfo(keys[i], ptrs[i]))
+                                {return false;}
                         }
-                        scanNextPage(query, keyPrefix, callback);
+                        if (!scanNextPage(query, keyPrefix, callback))
+                            {return false;}
                         break;
                     case IndexQuery.LT :
                         if (leftIdx < 0)
                             {leftIdx = - (leftIdx + 1);}
                         for (int i = pfxIdx; i < leftIdx; i++) {
-                            if (query.testValue(keys[i]))
-                                {callback.indexInfo(keys[i], ptrs[i]);}
+                            if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                {return false;}
                         }
                         break;
                     case IndexQuery.LEQ :
                         if (leftIdx < 0)
                             {leftIdx = - (leftIdx + 1);}
                         for (int i = pfxIdx; i <= leftIdx && i < nPtrs; i++) {
-                            if (query.testValue(keys[i]))
-                                {callback.indexInfo(keys[i], ptrs[i]);}
+                            if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                {return false;}
                         }
                         break;
                     case IndexQuery.GT :
@@ -1994,11 +2021,12 @@ public class BTree extends Paged implements Lockable {
                             {leftIdx = - (leftIdx + 1);}
                         for (int i = leftIdx; i < nPtrs; i++) {
                             if (keys[i].comparePrefix(keyPrefix) > 0)
-                                {return;}
-                            if (query.testValue(keys[i]))
-                                {callback.indexInfo(keys[i], ptrs[i]);}
+                                {return true;}
+                            if (query.testValue(keys[i]) && !callback.indexInfo(keys[i], ptrs[i]))
+                                {return false;}
                         }
-                        scanNextPage(query, keyPrefix, callback);
+                        if (!scanNextPage(query, keyPrefix, callback))
+                            {return false;}
                         break;
                     }
                     break;
@@ -2010,34 +2038,39 @@ public class BTree extends Paged implements Lockable {
                 switch (pageHeader.getStatus()) {
                 case BRANCH :
                     for (int i = 0; i < nPtrs; i++) {
-                        getChildNode(i).query(query, callback);
+                        if (!getChildNode(i).query(query, callback))
+                            {return false;}
                     }
                     break;
                 case LEAF :
                     for (int i = 0; i < nKeys; i++) {
-                        if (query.getOperator() != IndexQuery.TRUNC_LEFT || query.testValue(keys[i]))
-                            {callback.indexInfo(keys[i], ptrs[i]);}
+                        if ((query.getOperator() != IndexQuery.TRUNC_LEFT || query.testValue(keys[i]))
+                                && !callback.indexInfo(keys[i], ptrs[i]))
+                            {return false;}
                     }
                     break;
                 default :
                     throw new BTreeException("Invalid Page Type In query");
                 }
             }
+            return true;
         }
 
-        protected void scanRaw(IndexQuery query, BTreeCallback callback) throws TerminatedException {
+        protected boolean scanRaw(IndexQuery query, BTreeCallback callback) throws TerminatedException {
             for (int i = 0; i < nKeys; i++) {
-                if (query == null || query.testValue(keys[i]))
-                    {callback.indexInfo(keys[i], ptrs[i]);}
+                if ((query == null || query.testValue(keys[i])) && !callback.indexInfo(keys[i], ptrs[i]))
+                    {return false;}
             }
+            return true;
         }
 
-        protected void scanNextPage(IndexQuery query, Value keyPrefix, BTreeCallback callback) throws TerminatedException {
+        protected boolean scanNextPage(IndexQuery query, Value keyPrefix, BTreeCallback callback) throws TerminatedException {
             final long next = pageHeader.getNextPage();
             if (next != Page.NO_PAGE) {
                 final BTreeNode nextPage = getBTreeNode(next);
-                scanSequential(nextPage, query, keyPrefix, callback);
+                return scanSequential(nextPage, query, keyPrefix, callback);
             }
+            return true;
         }
 
         /**
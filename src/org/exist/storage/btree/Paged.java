@@ -73,18 +73,23 @@ package org.exist.storage.btree;
 
 import org.apache.log4j.Logger;
 import org.exist.Database;
+import org.exist.backup.RawDataBackup;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
 import org.exist.xquery.Constants;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.NonWritableChannelException;
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
@@ -124,6 +129,17 @@ public abstract class Paged {
 
     protected static int PAGE_SIZE = 4096;
 
+    /** Suffix of archive entries containing only the pages changed since the previous backup */
+    public final static String CHANGED_PAGES_SUFFIX = ".pages";
+
+    /** Number of pages read from disk by the current thread, used for accounting query costs */
+    private final static ThreadLocal<long[]> pagesRead = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
     private RandomAccessFile raf;
     private File file;
     private FileHeader fileHeader;
@@ -132,6 +148,10 @@ public abstract class Paged {
 
     private byte[] tempPageData = null;
     private byte[] tempHeaderData = null;
+
+    /** Pages written since the last backup. Only valid if trackChanges is set. */
+    private final BitSet changedPages = new BitSet();
+    private boolean trackChanges = false;
 	
     public Paged(Database db) {
         fileHeader = createFileHeader(db.getPageSize());
@@ -224,11 +244,100 @@ public abstract class Paged {
      * @throws IOException
      */
     public void backupToStream(OutputStream os) throws IOException {
+        synchronized (changedPages) {
+            raf.seek(0);
+            final byte[] buf = new byte[4096];
+            int len;
+            while ((len = raf.read(buf)) > 0) {
+                os.write(buf, 0, len);
+            }
+            changedPages.clear();
+            trackChanges = true;
+        }
+    }
+
+    /**
+     * Backup the file to an archive. For an incremental backup, only the pages
+     * changed since the previous backup are written to an entry with suffix
+     * {@link #CHANGED_PAGES_SUFFIX}. Changes are only known after a backup has been
+     * taken since the file was opened, otherwise the entire file is written.
+     *
+     * @param backup
+     * @throws IOException
+     */
+    public void backupToArchive(RawDataBackup backup) throws IOException {
+        synchronized (changedPages) {
+            if (backup.isIncremental() && trackChanges) {
+                final OutputStream os = backup.newEntry(file.getName() + CHANGED_PAGES_SUFFIX);
+                backupChangedPagesToStream(os);
+            } else {
+                final OutputStream os = backup.newEntry(file.getName());
+                backupToStream(os);
+            }
+            backup.closeEntry();
+        }
+    }
+
+    /**
+     * Write the file header and all pages changed since the previous backup.
+     * The stream can be applied to a copy of the file taken by the previous
+     * backup with {@link #applyChangedPages(InputStream, File)}.
+     */
+    private void backupChangedPagesToStream(OutputStream os) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(os);
+        final byte[] buf = new byte[fileHeader.headerSize];
         raf.seek(0);
-        final byte[] buf = new byte[4096];
-        int len;
-        while ((len = raf.read(buf)) > 0) {
-            os.write(buf, 0, len);
+        raf.readFully(buf);
+        dos.writeInt(buf.length);
+        dos.write(buf);
+
+        final byte[] page = new byte[fileHeader.pageSize];
+        dos.writeInt(page.length);
+        for (int i = changedPages.nextSetBit(0); i >= 0; i = changedPages.nextSetBit(i + 1)) {
+            raf.seek(fileHeader.headerSize + ((long) i * fileHeader.pageSize));
+            raf.readFully(page);
+            dos.writeLong(i);
+            dos.write(page);
+        }
+        dos.writeLong(Page.NO_PAGE);
+        dos.flush();
+        changedPages.clear();
+    }
+
+    /**
+     * Apply the changed pages written by an incremental backup to a
+     * copy of the file.
+     *
+     * @param is the changed pages
+     * @param target the copy of the file to update
+     * @throws IOException
+     */
+    public static void applyChangedPages(InputStream is, File target) throws IOException {
+        final DataInputStream dis = new DataInputStream(is);
+        final RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try {
+            final int headerSize = dis.readInt();
+            final byte[] header = new byte[headerSize];
+            dis.readFully(header);
+            out.seek(0);
+            out.write(header);
+
+            final byte[] page = new byte[dis.readInt()];
+            long pageNum;
+            while ((pageNum = dis.readLong()) != Page.NO_PAGE) {
+                dis.readFully(page);
+                out.seek(headerSize + (pageNum * page.length));
+                out.write(page);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void pageChanged(long pageNum) {
+        synchronized (changedPages) {
+            if (trackChanges)
+                {changedPages.set((int) pageNum);}
         }
     }
 
@@ -322,6 +431,14 @@ public abstract class Paged {
         return new Page(pageNum);
     }
 
+    /**
+     * Returns the number of pages the current thread read from disk
+     * since it was started. Pages found in a cache are not counted.
+     */
+    public static long getPagesRead() {
+        return pagesRead.get()[0];
+    }
+
     /**
      *  Gets the opened attribute of the Paged object
      *
@@ -921,6 +1038,7 @@ public abstract class Paged {
                 }
                 Arrays.fill(tempHeaderData, (byte)0);
                 raf.read(tempHeaderData);
+                pagesRead.get()[0]++;
                 // Read in the header
                 header.read(tempHeaderData, 0);
                 // Read the working data
@@ -962,6 +1080,7 @@ public abstract class Paged {
             if (raf.getFilePointer() != offset)
                 {raf.seek(offset);}
             raf.write(tempPageData);
+            pageChanged(pageNum);
         }
 
         /* (non-Javadoc)
@@ -456,7 +456,10 @@ public class BFile extends BTree {
 
     /**
      * Get the value data for the given key as a variable byte
-     * encoded input stream.
+     * encoded input stream. Unlike {@link #get(Value)}, a value
+     * spanning several overflow pages is not assembled into a
+     * single array, but read page by page. The address of the
+     * value is available through {@link PageInputStream#getAddress()}.
      * 
      * @param key
      * @throws IOException
@@ -1821,7 +1824,7 @@ public class BFile extends BTree {
             } catch (final IOException e) {
                 LOG.error(e.getMessage(), e);
             }
-            return false;
+            return true;
         }
     }
 
@@ -2318,9 +2321,18 @@ public class BFile extends BTree {
         }
 
         public final void skipBytes(long count) throws IOException {
-            for(long i = 0; i < count; i++) {
+            // skip page-wise: pages which are skipped completely are not read
+            // beyond their header
+            while (count > 0) {
                 if (offset == pageLen) {advance();}
-                offset++;
+                final int avail = pageLen - offset;
+                if (count >= avail) {
+                    count -= avail;
+                    offset = (short) pageLen;
+                } else {
+                    offset += count;
+                    count = 0;
+                }
             }
         }
 
@@ -2375,7 +2387,8 @@ public class BFile extends BTree {
          */
         public final int read(byte[] b, int off, int len) throws IOException {
             if (pageLen < 0) {return -1;}
-            for (int i = 0; i < len; i++) {
+            int i = 0;
+            while (i < len) {
                 if (offset == pageLen) {
                     final long next = nextPage.getPageHeader().getNextInChain();
                     if (next < 1) {
@@ -2388,7 +2401,11 @@ public class BFile extends BTree {
                     offset = 0;
                     dataCache.add(nextPage);
                 }
-                b[off + i] = nextPage.data[offset++];
+                // copy as much as possible from the current page
+                final int n = Math.min(len - i, pageLen - offset);
+                System.arraycopy(nextPage.data, offset, b, off + i, n);
+                offset += n;
+                i += n;
             }
             return len;
         }
@@ -2435,7 +2452,7 @@ public class BFile extends BTree {
                     if (offset == pageLen) {advance();}
                     more = nextPage.data[offset++];
                     os.writeByte(more);
-                } while ((more & 0x200) > 0);
+                } while ((more & 0200) > 0);
             }
         }
 
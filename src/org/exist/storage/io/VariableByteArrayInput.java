@@ -156,7 +156,7 @@ public class VariableByteArrayInput extends AbstractVariableByteInput {
             do {
                 more = data[position++];
                 os.buf.append(more);
-            } while ((more & 0x200) > 0);
+            } while ((more & 0200) > 0);
         }
     }
 
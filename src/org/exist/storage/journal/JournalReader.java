@@ -33,7 +33,9 @@ import org.exist.storage.DBBroker;
 
 /**
  * Read log entries from the journal file. This class is used during recovery to scan the
- * last journal file. It uses a memory-mapped byte buffer on the file.
+ * last journal file. Entries are read through a large buffer, so scanning the journal
+ * only needs one read per {@link #READ_AHEAD_SIZE} bytes instead of two small reads
+ * per entry.
  * Journal entries can be read forward (during redo) or backward (during undo). 
  * 
  * @author wolf
@@ -43,9 +45,18 @@ public class JournalReader {
 
     private static final Logger LOG = Logger.getLogger(JournalReader.class);
 
+    /** Size of the read-ahead buffer. Must be larger than the largest possible entry. */
+    public static final int READ_AHEAD_SIZE = 1024 * 1024;
+
     private FileChannel fc;
-    private ByteBuffer header = ByteBuffer.allocateDirect(Journal.LOG_ENTRY_HEADER_LEN);
-    private ByteBuffer payload = ByteBuffer.allocateDirect(8192);
+    private long size;
+
+    /** Journal data read ahead, starting at file offset bufferStart */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(READ_AHEAD_SIZE);
+    private long bufferStart = 0;
+
+    /** Current position in the journal file */
+    private long position = 0;
 
     private int fileNumber;
     private DBBroker broker;
@@ -64,9 +75,11 @@ public class JournalReader {
         try {
             final FileInputStream is = new FileInputStream(file);
             fc = is.getChannel();
+            size = fc.size();
         } catch (final IOException e) {
             throw new LogException("Failed to read log file " + file.getAbsolutePath(), e);
         }
+        buffer.limit(0);
     }
 
     /**
@@ -76,13 +89,12 @@ public class JournalReader {
      * @throws LogException if an entry could not be read due to an inconsistency on disk.
      */
     public Loggable nextEntry() throws LogException {
-        try {
-            if (fc.position() + Journal.LOG_ENTRY_BASE_LEN > fc.size())
-                {return null;}
-            return readEntry();
-        } catch (final IOException e) {
-            return null;
-        }
+        if (position + Journal.LOG_ENTRY_BASE_LEN > size)
+            {return null;}
+        final Loggable loggable = readEntry(position, false);
+        if (loggable != null)
+            {position = bufferStart + buffer.position();}
+        return loggable;
     }
 
     /**
@@ -93,75 +105,66 @@ public class JournalReader {
      * @throws LogException 
      */
     public Loggable previousEntry() throws LogException {
+        if (position == 0)
+            {return null;}
+        // read the back-link of the last entry
+        final short prevLink;
         try {
-            if (fc.position() == 0)
-                {return null;}
-            // go back two bytes and read the back-link of the last entry
-            fc.position(fc.position() - 2);
-            header.clear().limit(2);
-            final int bytes = fc.read(header);
-            if (bytes < 2)
+            if (fill(position - 2, 2, true) < 2)
                 {throw new LogException("Incomplete log entry found!");}
-            header.flip();
-            final short prevLink = header.getShort();
-            // position the channel to the start of the previous entry and mark it
-            final long prevStart = fc.position() - 2 -prevLink;
-            fc.position(prevStart);
-            final Loggable loggable = readEntry();
-            // reset to the mark
-            fc.position(prevStart);
-            return loggable;
+            prevLink = buffer.getShort();
         } catch (final IOException e) {
             throw new LogException("Fatal error while reading journal entry: " + e.getMessage(), e);
         }
+        // position to the start of the previous entry
+        final long prevStart = position - 2 - prevLink;
+        final Loggable loggable = readEntry(prevStart, true);
+        position = prevStart;
+        return loggable;
     }
 
     public Loggable lastEntry() throws LogException {
-        try {
-            fc.position(fc.size());
-            return previousEntry();
-        } catch (final IOException e) {
-            throw new LogException("Fatal error while reading journal entry: " + e.getMessage(), e);
-        }
+        position = size;
+        return previousEntry();
     }
 
     /**
-     * Read a single entry.
+     * Read a single entry. On return, the position of the buffer points
+     * to the end of the entry.
      * 
+     * @param start the offset of the entry in the file
+     * @param backwards true if the journal is scanned backwards
      * @return The entry
      * @throws LogException
      */
-    private Loggable readEntry() throws LogException {
+    private Loggable readEntry(long start, boolean backwards) throws LogException {
         try {
-            final long lsn = Lsn.create(fileNumber, (int) fc.position() + 1);
-            header.clear();
-            int bytes = fc.read(header);
+            final long lsn = Lsn.create(fileNumber, (int) start + 1);
+            int bytes = fill(start, Journal.LOG_ENTRY_HEADER_LEN, backwards);
             if (bytes <= 0)
                 {return null;}
             if (bytes < Journal.LOG_ENTRY_HEADER_LEN)
                 {throw new LogException("Incomplete log entry header found: " + bytes);}
-            header.flip();
-            final byte entryType = header.get();
-            final long transactId = header.getLong();
-            final short size = header.getShort();
-            if (fc.position() + size > fc.size())
+            final byte entryType = buffer.get();
+            final long transactId = buffer.getLong();
+            final short size = buffer.getShort();
+            if (start + Journal.LOG_ENTRY_HEADER_LEN + size > this.size)
                 {throw new LogException("Invalid length");}
             final Loggable loggable = LogEntryTypes.create(entryType, broker, transactId);
             if (loggable == null)
                 {throw new LogException("Invalid log entry: " + entryType + "; size: " + size + "; id: " +
                         transactId + "; at: " + Lsn.dump(lsn));}
             loggable.setLsn(lsn);
-            if (size + 2 > payload.capacity()) {
-                // resize the payload buffer
-                payload = ByteBuffer.allocate(size + 2);
-            }
-            payload.clear().limit(size + 2);
-            bytes = fc.read(payload);
+            bytes = fill(start + Journal.LOG_ENTRY_HEADER_LEN, size + 2, backwards);
             if (bytes < size + 2)
                 {throw new LogException("Incomplete log entry found!");}
-            payload.flip();
-            loggable.read(payload);
-            final short prevLink = payload.getShort();
+            final int end = buffer.position() + size + 2;
+            final int limit = buffer.limit();
+            buffer.limit(end);
+            loggable.read(buffer);
+            buffer.limit(limit);
+            buffer.position(end - 2);
+            final short prevLink = buffer.getShort();
             if (prevLink != size + Journal.LOG_ENTRY_HEADER_LEN) {
                 LOG.warn("Bad pointer to previous: prevLink = " + prevLink + "; size = " + size + 
                         "; transactId = " + transactId);
@@ -173,6 +176,33 @@ public class JournalReader {
         }
     }
 
+    /**
+     * Make sure the buffer contains the given range of the file and position
+     * it at the start of the range. If the range is not in the buffer, the buffer
+     * is refilled, so it starts at the range when reading forward, or ends with the
+     * range when reading backwards.
+     *
+     * @return the number of bytes of the range available, which is less than len
+     *  only at the end of the file
+     * @throws IOException
+     */
+    private int fill(long start, int len, boolean backwards) throws IOException {
+        if (start < bufferStart || start + len > bufferStart + buffer.limit()) {
+            if (backwards)
+                {bufferStart = Math.max(0, start + len - buffer.capacity());}
+            else
+                {bufferStart = start;}
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer, bufferStart + buffer.position()) < 0)
+                    {break;}
+            }
+            buffer.flip();
+        }
+        buffer.position((int) (start - bufferStart));
+        return (int) Math.min(len, bufferStart + buffer.limit() - start);
+    }
+
     /**
      * Re-position the file position so it points to the start of the entry
      * with the given LSN.
@@ -181,11 +211,7 @@ public class JournalReader {
      * @throws LogException 
      */
     public void position(long lsn) throws LogException {
-        try {
-            fc.position((int) Lsn.getOffset(lsn) - 1);
-        } catch (final IOException e) {
-            throw new LogException("Fatal error while reading journal: " + e.getMessage(), e);
-        }
+        position = (int) Lsn.getOffset(lsn) - 1;
     }
 
     public void close() {
@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Deadlock detection for resource and collection locks. The static methods in this class
@@ -52,13 +53,15 @@ import java.util.Map;
  * the meantime, DeadlockDetection is used to detect deadlock situations as the one described
  * above. The lock classes can
  * then try to resolve the deadlock by suspending one thread.
+ *
+ * The waiting threads are kept in concurrent maps, so threads registering or checking
+ * a wait do not block each other. The checks thus see a live view of the wait-for graph,
+ * which is sufficient as they are repeated while a thread is waiting.
  */
 public class DeadlockDetection {
 
-    private final static Object latch = new Object();
-
-    private final static Map<Thread, WaitingThread> waitForResource = new HashMap<Thread, WaitingThread>();
-    private final static Map<Thread, Lock> waitForCollection = new HashMap<Thread, Lock>();
+    private final static Map<Thread, WaitingThread> waitForResource = new ConcurrentHashMap<Thread, WaitingThread>();
+    private final static Map<Thread, Lock> waitForCollection = new ConcurrentHashMap<Thread, Lock>();
 
     /**
      * Register a thread as waiting for a resource lock.
@@ -67,9 +70,7 @@ public class DeadlockDetection {
      * @param waiter the WaitingThread object which wraps around the thread
      */
     public static void addResourceWaiter(Thread thread, WaitingThread waiter) {
-        synchronized (latch) {
-            waitForResource.put(thread, waiter);
-        }
+        waitForResource.put(thread, waiter);
     }
 
     /**
@@ -79,18 +80,16 @@ public class DeadlockDetection {
      * @return lock
      */
     public static Lock clearResourceWaiter(Thread thread) {
-        synchronized (latch) {
-            final WaitingThread waiter = waitForResource.remove(thread);
-            if (waiter != null)
-                {return waiter.getLock();}
-            return null;
-        }
+        final WaitingThread waiter = waitForResource.remove(thread);
+        if (waiter != null)
+            {return waiter.getLock();}
+        return null;
     }
 
     public static WaitingThread getResourceWaiter(Thread thread) {
-        synchronized (latch) {
-            return waitForResource.get(thread);
-        }
+        if (thread == null)
+            {return null;}
+        return waitForResource.get(thread);
     }
 
     /**
@@ -105,15 +104,15 @@ public class DeadlockDetection {
      * @return waiting thread
      */
     public static WaitingThread deadlockCheckResource(Thread threadA, Thread threadB) {
-        synchronized (latch) {
-            //Check if threadB is waiting for a resource lock
-            final WaitingThread waitingThread = waitForResource.get(threadB);
-            //If lock != null, check if thread B waits for a resource lock currently held by thread A
-            if (waitingThread != null) {
-                return waitingThread.getLock().hasLock(threadA) ? waitingThread : null;
-            }
-            return null;
+        if (threadB == null)
+            {return null;}
+        //Check if threadB is waiting for a resource lock
+        final WaitingThread waitingThread = waitForResource.get(threadB);
+        //If lock != null, check if thread B waits for a resource lock currently held by thread A
+        if (waitingThread != null) {
+            return waitingThread.getLock().hasLock(threadA) ? waitingThread : null;
         }
+        return null;
     }
 
     /**
@@ -125,53 +124,53 @@ public class DeadlockDetection {
      * @return true if threadB is currently blocked by a lock held by threadA
      */
     public static boolean isBlockedBy(Thread threadA, Thread threadB) {
-        synchronized (latch) {
-            //Check if threadB is waiting for a resource lock
-            final WaitingThread waitingThread = waitForResource.get(threadB);
-            //If lock != null, check if thread B waits for a resource lock currently held by thread A
-            if (waitingThread != null) {
-                return waitingThread.getLock().hasLock(threadA);
-            }
-            return false;
+        if (threadB == null)
+            {return false;}
+        //Check if threadB is waiting for a resource lock
+        final WaitingThread waitingThread = waitForResource.get(threadB);
+        //If lock != null, check if thread B waits for a resource lock currently held by thread A
+        if (waitingThread != null) {
+            return waitingThread.getLock().hasLock(threadA);
         }
+        return false;
     }
 
     public static boolean wouldDeadlock(Thread waiter, Thread owner, List<WaitingThread> waiters) {
-        synchronized (latch) {
-            final WaitingThread wt = waitForResource.get(owner);
-            if (wt != null) {
-                if (waiters.contains(wt)) {
-                    // probably a deadlock, but not directly connected to the current thread
-                    // return to avoid endless loop
-                    return false;
-                }
-                waiters.add(wt);
-                final Lock l = wt.getLock();
-                final Thread t = ((MultiReadReentrantLock) l).getWriteLockedThread();
-                if (t == owner) {
-                    return false;
-                }
-                if (t != null) {
-                    if (t == waiter)
-                        {return true;}
-                    return wouldDeadlock(waiter, t, waiters);
-                }
+        if (owner == null)
+            {return false;}
+        final WaitingThread wt = waitForResource.get(owner);
+        if (wt != null) {
+            if (waiters.contains(wt)) {
+                // probably a deadlock, but not directly connected to the current thread
+                // return to avoid endless loop
                 return false;
             }
-            final Lock l = waitForCollection.get(owner);
-            if (l != null) {
-                final Thread t = ((ReentrantReadWriteLock) l).getOwner();
-                if (t == owner) {
-                    return false;
-                }
-                if (t != null) {
-                    if (t == waiter)
-                        {return true;}
-                    return wouldDeadlock(waiter, t, waiters);
-                }
+            waiters.add(wt);
+            final Lock l = wt.getLock();
+            final Thread t = ((MultiReadReentrantLock) l).getWriteLockedThread();
+            if (t == owner) {
+                return false;
+            }
+            if (t != null) {
+                if (t == waiter)
+                    {return true;}
+                return wouldDeadlock(waiter, t, waiters);
             }
             return false;
         }
+        final Lock l = waitForCollection.get(owner);
+        if (l != null) {
+            final Thread t = ((ReentrantReadWriteLock) l).getOwner();
+            if (t == owner) {
+                return false;
+            }
+            if (t != null) {
+                if (t == waiter)
+                    {return true;}
+                return wouldDeadlock(waiter, t, waiters);
+            }
+        }
+        return false;
     }
 
     /**
@@ -181,21 +180,17 @@ public class DeadlockDetection {
      * @param lock the lock object
      */
     public static void addCollectionWaiter(Thread waiter, Lock lock) {
-        synchronized (latch) {
-            waitForCollection.put(waiter, lock);
-        }
+        waitForCollection.put(waiter, lock);
     }
 
     public static Lock clearCollectionWaiter(Thread waiter) {
-        synchronized (latch) {
-            return waitForCollection.remove(waiter);
-        }
+        return waitForCollection.remove(waiter);
     }
 
     public static Lock isWaitingFor(Thread waiter) {
-        synchronized (latch) {
-            return waitForCollection.get(waiter);
-        }
+        if (waiter == null)
+            {return null;}
+        return waitForCollection.get(waiter);
     }
 
     public static Map<String, LockInfo> getWaitingThreads() {
@@ -0,0 +1,169 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * $Id$
+ */
+package org.exist.storage.lock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects wait and hold times of locks. Collecting statistics reads the clock and
+ * updates shared counters on every lock acquisition and release, so it is disabled
+ * by default. It can be enabled by setting the system property
+ * <code>exist.lock.statistics</code> to true, or at runtime via the JMX management
+ * interface, which also reports the statistics. While disabled, locks only check
+ * {@link #isEnabled()}.
+ */
+public class LockStatistics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("exist.lock.statistics");
+
+    /** Statistics for {@link ReentrantReadWriteLock}, used for collections and paged files */
+    public final static LockStatistics COLLECTION = new LockStatistics(LockInfo.COLLECTION_LOCK);
+
+    /** Statistics for {@link MultiReadReentrantLock}, used for documents */
+    public final static LockStatistics RESOURCE = new LockStatistics(LockInfo.RESOURCE_LOCK);
+
+    private final String lockType;
+
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    private final AtomicLong exclusiveHolds = new AtomicLong();
+    private final AtomicLong exclusiveHoldTime = new AtomicLong();
+    private final AtomicLong maxExclusiveHoldTime = new AtomicLong();
+
+    private final AtomicLong deadlocks = new AtomicLong();
+
+    private LockStatistics(String lockType) {
+        this.lockType = lockType;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public String getLockType() {
+        return lockType;
+    }
+
+    /**
+     * Returns the start time of a wait or hold to be passed to {@link #waited(long)}
+     * or {@link #releasedExclusive(long)}.
+     *
+     * @return the current time in nanoseconds, or 0 if statistics are disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record that a thread had to wait for the lock.
+     *
+     * @param start the time the wait started, as returned by {@link #start()}
+     */
+    void waited(long start) {
+        if (start == 0)
+            {return;}
+        final long nanos = System.nanoTime() - start;
+        waits.incrementAndGet();
+        waitTime.addAndGet(nanos);
+        updateMax(maxWaitTime, nanos);
+    }
+
+    /**
+     * Record that a thread released an exclusive lock.
+     *
+     * @param start the time the lock was acquired, as returned by {@link #start()}
+     */
+    void releasedExclusive(long start) {
+        if (start == 0)
+            {return;}
+        final long nanos = System.nanoTime() - start;
+        exclusiveHolds.incrementAndGet();
+        exclusiveHoldTime.addAndGet(nanos);
+        updateMax(maxExclusiveHoldTime, nanos);
+    }
+
+    /**
+     * Record that a circular wait was detected and resolved.
+     */
+    void deadlockDetected() {
+        if (enabled)
+            {deadlocks.incrementAndGet();}
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value))
+                {break;}
+        }
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * @return the total time threads waited for the lock in milliseconds
+     */
+    public long getWaitTime() {
+        return waitTime.get() / 1000000;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get() / 1000000;
+    }
+
+    public long getExclusiveHolds() {
+        return exclusiveHolds.get();
+    }
+
+    /**
+     * @return the total time exclusive locks were held in milliseconds
+     */
+    public long getExclusiveHoldTime() {
+        return exclusiveHoldTime.get() / 1000000;
+    }
+
+    public long getMaxExclusiveHoldTime() {
+        return maxExclusiveHoldTime.get() / 1000000;
+    }
+
+    public long getDeadlocks() {
+        return deadlocks.get();
+    }
+
+    public void reset() {
+        waits.set(0);
+        waitTime.set(0);
+        maxWaitTime.set(0);
+        exclusiveHolds.set(0);
+        exclusiveHoldTime.set(0);
+        maxExclusiveHoldTime.set(0);
+        deadlocks.set(0);
+    }
+}
@@ -79,6 +79,11 @@ public class MultiReadReentrantLock implements Lock {
      */
     private int outstandingWriteLocks = 0;
 
+    /**
+     * Time at which writeLockedThread acquired the write lock.
+     */
+    private long writeLockedAt = 0;
+
     /**
      * Threads waiting to get a write lock are tracked in this ArrayList to
      * ensure that write locks are issued in the same order they are requested.
@@ -152,12 +157,14 @@ public class MultiReadReentrantLock implements Lock {
            if (!waitIfNecessary) {return false;}
             final WaitingThread waiter = new WaitingThread(thisThread, this, this, Lock.READ_LOCK);
             DeadlockDetection.addResourceWaiter(thisThread, waiter);
+            final long waitStart = LockStatistics.start();
             while (writeLockedThread != null) {
                 //LOG.debug("readLock wait by " + thisThread.getName() + " for " + getId());
                 waiter.doWait();
                 //LOG.debug("wake up from readLock wait");
             }
             DeadlockDetection.clearResourceWaiter(thisThread);
+            LockStatistics.RESOURCE.waited(waitStart);
         }        waitingForReadLock--;
         //Add acquired lock to the current list of read locks
         outstandingReadLocks.add(new LockOwner(thisThread));
@@ -180,6 +187,7 @@ public class MultiReadReentrantLock implements Lock {
             }
             if (writeLockedThread == null && grantWriteLock()) {
                 writeLockedThread = thisThread;
+                writeLockedAt = LockStatistics.start();
                 outstandingWriteLocks++;
                 return true;
             }
@@ -194,6 +202,7 @@ public class MultiReadReentrantLock implements Lock {
         }
         List<WaitingThread> deadlockedThreads = null;
         LockException exceptionCaught = null;
+        final long waitStart = LockStatistics.start();
         synchronized (thisThread) {
             if (thisThread != writeLockedThread) {
                 while (thisThread != writeLockedThread && deadlockedThreads == null) {
@@ -227,7 +236,9 @@ public class MultiReadReentrantLock implements Lock {
         }
         if (exceptionCaught != null)
             {throw exceptionCaught;}
+        LockStatistics.RESOURCE.waited(waitStart);
         if (deadlockedThreads != null) {
+            LockStatistics.RESOURCE.deadlockDetected();
             for (final WaitingThread wt : deadlockedThreads) {
                 wt.signalDeadlock();
             }
@@ -290,6 +301,7 @@ public class MultiReadReentrantLock implements Lock {
             if (outstandingWriteLocks > 0) {
                 return;
             }
+            LockStatistics.RESOURCE.releasedExclusive(writeLockedAt);
             //If another thread is waiting for a write lock, we immediately 
             //pass control to it. No further checks should be required here.
             if (grantWriteLockAfterRead()) {
@@ -297,6 +309,7 @@ public class MultiReadReentrantLock implements Lock {
                 removeWaitingWrite(waiter);
                 DeadlockDetection.clearResourceWaiter(waiter.getThread());
                 writeLockedThread = waiter.getThread();
+                writeLockedAt = LockStatistics.start();
                 synchronized (writeLockedThread) {
                     writeLockedThread.notifyAll();
                 }
@@ -329,6 +342,7 @@ public class MultiReadReentrantLock implements Lock {
                 removeWaitingWrite(waiter);
                 DeadlockDetection.clearResourceWaiter(waiter.getThread());
                 writeLockedThread = waiter.getThread();
+                writeLockedAt = LockStatistics.start();
                 synchronized (writeLockedThread) {
                     writeLockedThread.notifyAll();
                 }
@@ -76,6 +76,8 @@ public class ReentrantReadWriteLock implements Lock {
     private boolean DEBUG = false;
     private Stack<StackTraceElement[]> seStack;
     private LockListener listener = null;
+    /** Time at which the current owner acquired the lock */
+    private long acquiredAt = 0;
 
     public ReentrantReadWriteLock(Object id) {
         id_ = id;
@@ -118,6 +120,7 @@ public class ReentrantReadWriteLock implements Lock {
             } else if (owner_ == null) {
                 owner_ = caller;
                 holds_ = 1;
+                acquiredAt = LockStatistics.start();
                 modeStack.push(Integer.valueOf(mode));
                 if (mode== Lock.WRITE_LOCK)
                     {writeLocks++;}
@@ -130,10 +133,12 @@ public class ReentrantReadWriteLock implements Lock {
             } else if ((waitingOnResource = 
                     DeadlockDetection.deadlockCheckResource(caller, owner_)) != null) {
                 waitingOnResource.suspendWaiting();
+                LockStatistics.COLLECTION.deadlockDetected();
                 final SuspendedWaiter suspended = new SuspendedWaiter(owner_, mode_, holds_);
                 suspendedThreads.push(suspended);
                 owner_ = caller;
                 holds_ = 1;
+                acquiredAt = LockStatistics.start();
                 modeStack.push(Integer.valueOf(mode));
                 if (mode== Lock.WRITE_LOCK)
                     {writeLocks++;}
@@ -142,21 +147,25 @@ public class ReentrantReadWriteLock implements Lock {
                 return true;
             } else {
                 DeadlockDetection.addCollectionWaiter(caller, this);
+                final long waitStart = LockStatistics.start();
                 try {
                     for (;;) {
                         wait(WAIT_CHECK_PERIOD);
                         if ((waitingOnResource = DeadlockDetection.deadlockCheckResource(caller, owner_)) != null) {
                             waitingOnResource.suspendWaiting();
+                            LockStatistics.COLLECTION.deadlockDetected();
                             final SuspendedWaiter suspended = new SuspendedWaiter(owner_, mode_, holds_);
                             suspendedThreads.push(suspended);
                             owner_ = caller;
                             holds_ = 1;
+                            acquiredAt = LockStatistics.start();
                             modeStack.push(Integer.valueOf(mode));
                             if (mode== Lock.WRITE_LOCK)
                                 {writeLocks++;}
                             mode_ = mode;
                             listener = waitingOnResource;
                             DeadlockDetection.clearCollectionWaiter(owner_);
+                            LockStatistics.COLLECTION.waited(waitStart);
                             return true;
                         } else if (caller == owner_) {
                             ++holds_;
@@ -169,10 +178,12 @@ public class ReentrantReadWriteLock implements Lock {
                             }
                             mode_ = mode;
                             DeadlockDetection.clearCollectionWaiter(owner_);
+                            LockStatistics.COLLECTION.waited(waitStart);
                             return true;
                         } else if (owner_ == null) {
                             owner_ = caller;
                             holds_ = 1;
+                            acquiredAt = LockStatistics.start();
                             modeStack.push(Integer.valueOf(mode));
                             if (mode == Lock.WRITE_LOCK)
                                 {writeLocks++;}
@@ -182,6 +193,7 @@ public class ReentrantReadWriteLock implements Lock {
                             }
                             mode_ = mode;
                             DeadlockDetection.clearCollectionWaiter(owner_);
+                            LockStatistics.COLLECTION.waited(waitStart);
                             return true;
                         }
                     }
@@ -214,6 +226,7 @@ public class ReentrantReadWriteLock implements Lock {
             } else if (owner_ == null) {
                 owner_ = caller;
                 holds_ = 1;
+                acquiredAt = LockStatistics.start();
                 modeStack.push(Integer.valueOf(mode));
                 if (mode == Lock.WRITE_LOCK)
                     {writeLocks++;}
@@ -290,11 +303,13 @@ public class ReentrantReadWriteLock implements Lock {
             seStack.pop();
         }
         if (--holds_ == 0) {
+            LockStatistics.COLLECTION.releasedExclusive(acquiredAt);
             if (!suspendedThreads.isEmpty()) {
                 final SuspendedWaiter suspended = suspendedThreads.pop();
                 owner_ = suspended.thread;
                 mode_ = suspended.lockMode;
                 holds_ = suspended.lockCount;
+                acquiredAt = LockStatistics.start();
             } else {
                 owner_ = null;
                 mode_ = Lock.NO_LOCK;
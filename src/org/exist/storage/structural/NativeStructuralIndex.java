@@ -21,7 +21,6 @@ package org.exist.storage.structural;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 
 import org.apache.log4j.Logger;
 import org.exist.Database;
@@ -127,8 +126,6 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
 
 	@Override
 	public void backupToArchive(RawDataBackup backup) throws IOException {
-        final OutputStream os = backup.newEntry(btree.getFile().getName());
-        btree.backupToStream(os);
-        backup.closeEntry();
+        btree.backupToArchive(backup);
 	}
 }
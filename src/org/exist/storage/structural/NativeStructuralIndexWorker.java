@@ -48,6 +48,9 @@ import org.exist.security.PermissionDeniedException;
  * Internal default implementation of the structural index. It uses a single btree, in which
  * each key represents a sequence of: [type, qname, documentId, nodeId]. The btree value is just a
  * long pointing to the storage address of the actual node in dom.dbx.
+ *
+ * The keys of a stored document are sorted and written to the btree in one ordered pass
+ * when the document is flushed, while the document is still locked.
  */
 public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex {
 
@@ -87,28 +90,18 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     }
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent) {
+        return findElementsByTagName(type, docs, qname, selector, parent, -1);
+    }
+
+    public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent, int limit) {
         final Lock lock = index.btree.getLock();
         final NewArrayNodeSet result = new NewArrayNodeSet(docs.getDocumentCount(), 256);
-        final FindElementsCallback callback = new FindElementsCallback(type, result, docs, selector, parent);
-        // scan the document set to find document id ranges to query
-        final List<Range> ranges = new ArrayList<Range>();
-        Range next = null;
-        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
-            final DocumentImpl doc = i.next();
-            if (next == null)
-                {next = new Range(doc.getDocId());}
-            else if (next.end + 1 == doc.getDocId())
-                {next.end++;}
-            else {
-                ranges.add(next);
-                next = new Range(doc.getDocId());
-            }
-        }
-        if (next != null)
-            {ranges.add(next);}
-
+        final FindElementsCallback callback = new FindElementsCallback(type, result, docs, selector, parent, limit);
+        final List<Range> ranges = getDocumentRanges(docs, limit > 0);
         // for each document id range, scan the index to find matches
         for (final Range range : ranges) {
+            if (callback.isLimitReached())
+                {break;}
             final byte[] fromKey = computeKey(type, qname, range.start);
             final byte[] toKey = computeKey(type, qname, range.end + 1);
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
@@ -128,6 +121,62 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         return result;
     }
 
+    public long countElementsByTagName(byte type, DocumentSet docs, QName qname, Expression parent) {
+        final Lock lock = index.btree.getLock();
+        final CountElementsCallback callback = new CountElementsCallback(docs, parent);
+        for (final Range range : getDocumentRanges(docs, false)) {
+            final byte[] fromKey = computeKey(type, qname, range.start);
+            final byte[] toKey = computeKey(type, qname, range.end + 1);
+            final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+            try {
+                lock.acquire(Lock.READ_LOCK);
+                index.btree.query(query, callback);
+            } catch (final LockException e) {
+                NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
+            } catch (final TerminatedException e) {
+                NativeStructuralIndex.LOG.warn("Query was terminated while searching structural index: " + e.getMessage(), e);
+            } catch (final Exception e) {
+                NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
+            } finally {
+                lock.release(Lock.READ_LOCK);
+            }
+        }
+        return callback.count;
+    }
+
+    /**
+     * Scan the document set to find document id ranges to query. Document ids are
+     * sorted, so the ranges are scanned in document order.
+     *
+     * @param docs the documents to query
+     * @param singleDocs if true, return one range per document, so a scan can stop
+     *                   after any document
+     * @return the ranges of document ids
+     */
+    private List<Range> getDocumentRanges(DocumentSet docs, boolean singleDocs) {
+        final int[] docIds = new int[docs.getDocumentCount()];
+        int count = 0;
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            docIds[count++] = i.next().getDocId();
+        }
+        Arrays.sort(docIds, 0, count);
+        final List<Range> ranges = new ArrayList<Range>();
+        Range next = null;
+        for (int i = 0; i < count; i++) {
+            if (next == null)
+                {next = new Range(docIds[i]);}
+            else if (!singleDocs && next.end + 1 == docIds[i])
+                {next.end++;}
+            else {
+                ranges.add(next);
+                next = new Range(docIds[i]);
+            }
+        }
+        if (next != null)
+            {ranges.add(next);}
+        return ranges;
+    }
+
     /**
      * Internal helper class used by
      * {@link NativeStructuralIndexWorker#findElementsByTagName(byte, org.exist.dom.DocumentSet, org.exist.dom.QName, org.exist.xquery.NodeSelector)}.
@@ -154,12 +203,19 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     }
 
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis, DocumentSet docs, NodeSet contextSet, int contextId, Expression parent) {
+        return findDescendantsByTagName(type, qname, axis, docs, contextSet, contextId, parent, -1);
+    }
+
+    public NodeSet findDescendantsByTagName(byte type, QName qname, int axis, DocumentSet docs, NodeSet contextSet, int contextId, Expression parent, int limit) {
         final Lock lock = index.btree.getLock();
         final NewArrayNodeSet result = new NewArrayNodeSet(docs.getDocumentCount(), 256);
         final FindDescendantsCallback callback = new FindDescendantsCallback(type, axis, contextId, result, parent);
+        callback.limit = limit;
         try {
             lock.acquire(Lock.READ_LOCK);
             for (final NodeProxy ancestor : contextSet) {
+                if (callback.isLimitReached())
+                    {break;}
                 final DocumentImpl doc = ancestor.getDocument();
                 final NodeId ancestorId = ancestor.getNodeId();
                 callback.setAncestor(doc, ancestor);
@@ -278,16 +334,26 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         NewArrayNodeSet result;
         NodeSelector selector;
         Expression parent;
+        int limit;
+        int count = 0;
 
-        FindElementsCallback(byte type, NewArrayNodeSet result, DocumentSet docs, NodeSelector selector, Expression parent) {
+        FindElementsCallback(byte type, NewArrayNodeSet result, DocumentSet docs, NodeSelector selector, Expression parent, int limit) {
             this.type = type;
             this.result = result;
             this.docs = docs;
             this.selector = selector;
             this.parent = parent;
+            this.limit = limit;
+        }
+
+        boolean isLimitReached() {
+            return limit > 0 && count >= limit;
         }
 
         public boolean indexInfo(Value value, long pointer) throws TerminatedException {
+            // stop the index scan once enough nodes have been found
+            if (isLimitReached())
+                {return false;}
             if (parent != null) {
                 parent.getContext().proceed(parent);
             }
@@ -299,15 +365,37 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                     final NodeProxy storedNode = new NodeProxy(doc, nodeId,
                         type == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE, pointer);
                     result.add(storedNode);
+                    count++;
                 } else {
                     final NodeProxy storedNode = selector.match(doc, nodeId);
                     if (storedNode != null) {
                         storedNode.setNodeType(type == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
                         storedNode.setInternalAddress(pointer);
                         result.add(storedNode);
+                        count++;
                     }
                 }
             }
+            return !isLimitReached();
+        }
+    }
+
+    private class CountElementsCallback implements BTreeCallback {
+        DocumentSet docs;
+        Expression parent;
+        long count = 0;
+
+        CountElementsCallback(DocumentSet docs, Expression parent) {
+            this.docs = docs;
+            this.parent = parent;
+        }
+
+        public boolean indexInfo(Value value, long pointer) throws TerminatedException {
+            if (parent != null) {
+                parent.getContext().proceed(parent);
+            }
+            if (docs.getDoc(readDocId(value.getData())) != null)
+                {count++;}
             return true;
         }
     }
@@ -321,6 +409,9 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         NewArrayNodeSet result;
         boolean selfAsContext = false;
         Expression parent;
+        int limit = -1;
+        int count = 0;
+        NodeProxy lastCounted = null;
 
         FindDescendantsCallback(byte type, int axis, int contextId, NewArrayNodeSet result, Expression parent) {
         	this(type, axis, contextId, false, result, parent);
@@ -340,7 +431,14 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             this.ancestor = ancestor;
         }
 
+        boolean isLimitReached() {
+            return limit > 0 && count >= limit;
+        }
+
         public boolean indexInfo(Value value, long pointer) throws TerminatedException {
+            // stop the index scan once enough nodes have been found
+            if (isLimitReached())
+                {return false;}
             if (parent != null) {
                 parent.getContext().proceed(parent);
             }
@@ -365,8 +463,14 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             		storedNode.copyContext(ancestor);
                 }
                 storedNode.addMatches(ancestor);
+                // nested context nodes report the same descendants again: only count
+                // nodes following the last one counted
+                if (limit > 0 && (lastCounted == null || storedNode.compareTo(lastCounted) > 0)) {
+                    count++;
+                    lastCounted = storedNode;
+                }
             }
-            return true;
+            return !isLimitReached();
         }
     }
     
@@ -632,36 +736,40 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
 
     /**
      * Process the map of pending entries and store them into the btree.
+     * The keys are sorted first, so they are written in a single ordered pass.
      */
     private void processPending() {
         if (pending.size() == 0)
             {return;}
 
         try {
-            final Lock lock = index.btree.getLock();
+            final TreeMap<Value, Long> keys = new TreeMap<Value, Long>();
+            final TreeSet<Value> docKeys = new TreeSet<Value>();
             for (final Map.Entry<QName,List<NodeProxy>> entry: pending.entrySet()) {
                 final QName qname = entry.getKey();
-                try {
-                    lock.acquire(Lock.WRITE_LOCK);
-                    final List<NodeProxy> nodes = entry.getValue();
-                    for (final NodeProxy proxy : nodes) {
-                        final NodeId nodeId = proxy.getNodeId();
-                        final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
-                        index.btree.addValue(new Value(key), computeValue(proxy));
-                    }
-                    final Value docKey = new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname));
+                for (final NodeProxy proxy : entry.getValue()) {
+                    final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), proxy.getNodeId());
+                    keys.put(new Value(key), computeValue(proxy));
+                }
+                docKeys.add(new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname)));
+            }
+            final Lock lock = index.btree.getLock();
+            try {
+                lock.acquire(Lock.WRITE_LOCK);
+                for (final Map.Entry<Value, Long> entry : keys.entrySet()) {
+                    index.btree.addValue(entry.getKey(), entry.getValue().longValue());
+                }
+                for (final Value docKey : docKeys) {
                     if (index.btree.findValue(docKey) == -1) {
                         index.btree.addValue(docKey, 0);
                     }
-                } catch (final LockException e) {
-                    NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
-                // } catch (ReadOnlyException e) {
-                //    NativeStructuralIndex.LOG.warn("Read-only error: " + e.getMessage(), e);
-                } catch (final Exception e) {
-                    NativeStructuralIndex.LOG.warn("Exception caught while writing to structural index: " + e.getMessage(), e);
-                } finally {
-                    lock.release(Lock.WRITE_LOCK);
                 }
+            } catch (final LockException e) {
+                NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
+            } catch (final Exception e) {
+                NativeStructuralIndex.LOG.warn("Exception caught while writing to structural index: " + e.getMessage(), e);
+            } finally {
+                lock.release(Lock.WRITE_LOCK);
             }
         } finally {
             pending.clear();
@@ -1123,6 +1123,45 @@ public class Configuration implements ErrorHandler
                 LOG.warn( e );
             }
         }
+
+        final String cpuLimit = getConfigAttributeValue( watchDog, "cpu-limit" );
+
+        if( cpuLimit != null ) {
+
+            try {
+                config.put( XQueryWatchDog.PROPERTY_CPU_LIMIT, Long.valueOf(cpuLimit) );
+                LOG.debug( XQueryWatchDog.PROPERTY_CPU_LIMIT + ": " + config.get( XQueryWatchDog.PROPERTY_CPU_LIMIT ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String pagesReadLimit = getConfigAttributeValue( watchDog, "pages-read-limit" );
+
+        if( pagesReadLimit != null ) {
+
+            try {
+                config.put( XQueryWatchDog.PROPERTY_PAGES_READ_LIMIT, Long.valueOf(pagesReadLimit) );
+                LOG.debug( XQueryWatchDog.PROPERTY_PAGES_READ_LIMIT + ": " + config.get( XQueryWatchDog.PROPERTY_PAGES_READ_LIMIT ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String constructedNodesLimit = getConfigAttributeValue( watchDog, "constructed-nodes-limit" );
+
+        if( constructedNodesLimit != null ) {
+
+            try {
+                config.put( XQueryWatchDog.PROPERTY_CONSTRUCTED_NODES_LIMIT, Long.valueOf(constructedNodesLimit) );
+                LOG.debug( XQueryWatchDog.PROPERTY_CONSTRUCTED_NODES_LIMIT + ": " + config.get( XQueryWatchDog.PROPERTY_CONSTRUCTED_NODES_LIMIT ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
     }
 
 
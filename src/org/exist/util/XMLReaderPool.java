@@ -20,8 +20,13 @@
  */
 package org.exist.util;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool.BaseObjectPool;
 import org.apache.commons.pool.PoolableObjectFactory;
-import org.apache.commons.pool.impl.StackObjectPool;
 import org.apache.log4j.Logger;
 import org.exist.Namespaces;
 import org.exist.storage.BrokerPool;
@@ -34,10 +39,15 @@ import org.xml.sax.ext.DefaultHandler2;
 /**
  * Maintains a pool of XMLReader objects. The pool is available through
  * {@link BrokerPool#getParserPool()}.
+ *
+ * Idle readers are kept in a non-blocking queue, so borrowing and returning
+ * a reader never locks. If no idle reader is available, a new one is created
+ * by the factory. At most maxIdle readers are kept when they are returned,
+ * any others are discarded.
  * 
  * @author wolf
  */
-public class XMLReaderPool extends StackObjectPool<XMLReader> {
+public class XMLReaderPool extends BaseObjectPool<XMLReader> {
 
     private final static Logger LOG = Logger.getLogger(XMLReaderPool.class);
 
@@ -45,6 +55,17 @@ public class XMLReaderPool extends StackObjectPool<XMLReader> {
 
 	private final Configuration config;
 
+    private final PoolableObjectFactory<XMLReader> factory;
+    private final int maxIdle;
+
+    private final Queue<XMLReader> idle = new ConcurrentLinkedQueue<XMLReader>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
     /**
      * 
      * 
@@ -53,53 +74,131 @@ public class XMLReaderPool extends StackObjectPool<XMLReader> {
      * @param initIdleCapacity 
      */
     public XMLReaderPool(Configuration config, PoolableObjectFactory<XMLReader> factory, int maxIdle, int initIdleCapacity) {
-        super(factory, maxIdle, initIdleCapacity);
         this.config = config;
+        this.factory = factory;
+        this.maxIdle = maxIdle;
     }
 
-    public synchronized XMLReader borrowXMLReader() {
+    public XMLReader borrowXMLReader() {
         try {
-            return super.borrowObject();
+            return borrowObject();
         } catch (final Exception e) {
             throw new IllegalStateException("error while returning XMLReader: " + e.getMessage(), e );
         }
     }
 
     @Override
-    public synchronized XMLReader borrowObject() throws Exception {
-        return borrowXMLReader();
+    public XMLReader borrowObject() throws Exception {
+        assertOpen();
+        XMLReader reader = idle.poll();
+        if (reader == null) {
+            reader = factory.makeObject();
+            created.incrementAndGet();
+        } else {
+            idleCount.decrementAndGet();
+        }
+        factory.activateObject(reader);
+        borrowed.incrementAndGet();
+        activeCount.incrementAndGet();
+        return reader;
     }
     
    
-    public synchronized void returnXMLReader(XMLReader reader) {
+    public void returnXMLReader(XMLReader reader) {
         if (reader == null) {
             return;
         }
         
         try {            
-            reader.setContentHandler(DUMMY_HANDLER);
-            reader.setErrorHandler(DUMMY_HANDLER);
-            reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, DUMMY_HANDLER);
-            
-            // DIZZZ; workaround Xerces bug. Cached DTDs cause for problems during validation parsing.
-            final GrammarPool grammarPool =
-               (GrammarPool) getReaderProperty(reader,
-                                    XMLReaderObjectFactory.APACHE_PROPERTIES_INTERNAL_GRAMMARPOOL);
-            if(grammarPool!=null){
-                grammarPool.clearDTDs();
-            }
-            
-            super.returnObject(reader);
-            
+            returnObject(reader);
         } catch (final Exception e) {
             throw new IllegalStateException("error while returning XMLReader: " + e.getMessage(), e);
         }
     }
 
     @Override
-    public synchronized void returnObject(XMLReader obj) throws Exception {
-        returnXMLReader(obj);
-    }   
+    public void returnObject(XMLReader reader) throws Exception {
+        activeCount.decrementAndGet();
+
+        reader.setContentHandler(DUMMY_HANDLER);
+        reader.setErrorHandler(DUMMY_HANDLER);
+        reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, DUMMY_HANDLER);
+
+        // DIZZZ; workaround Xerces bug. Cached DTDs cause for problems during validation parsing.
+        final GrammarPool grammarPool =
+           (GrammarPool) getReaderProperty(reader,
+                                XMLReaderObjectFactory.APACHE_PROPERTIES_INTERNAL_GRAMMARPOOL);
+        if(grammarPool!=null){
+            grammarPool.clearDTDs();
+        }
+
+        factory.passivateObject(reader);
+
+        final boolean closed = isClosed();
+        if (!closed && idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(reader);
+        } else {
+            if (!closed)
+                {idleCount.decrementAndGet();}
+            discarded.incrementAndGet();
+            factory.destroyObject(reader);
+        }
+    }
+
+    @Override
+    public void invalidateObject(XMLReader reader) throws Exception {
+        activeCount.decrementAndGet();
+        factory.destroyObject(reader);
+    }
+
+    @Override
+    public int getNumIdle() {
+        return idleCount.get();
+    }
+
+    @Override
+    public int getNumActive() {
+        return activeCount.get();
+    }
+
+    @Override
+    public void clear() throws Exception {
+        XMLReader reader;
+        while ((reader = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            factory.destroyObject(reader);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        clear();
+    }
+
+    /**
+     * Returns the number of readers handed out by this pool since
+     * it was created.
+     */
+    public long getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    /**
+     * Returns the number of readers created because no idle reader was
+     * available when one was borrowed.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Returns the number of readers dropped on return because the pool
+     * already held maxIdle readers.
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
 
     private Object getReaderProperty(XMLReader xmlReader, String propertyName){
 
@@ -65,7 +65,7 @@ public class ByteBufferInputStream extends InputStream {
             return END_OF_STREAM;
         }
 
-        return bufAccessor.getBuffer().get();
+        return bufAccessor.getBuffer().get() & 0xff;
     }
 
     @Override
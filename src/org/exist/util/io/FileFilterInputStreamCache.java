@@ -103,7 +103,9 @@ public class FileFilterInputStreamCache implements FilterInputStreamCache {
             raf.seek(off);
             this.offset = off;
         }
-        return raf.readByte();
+        final byte data = raf.readByte();
+        this.offset++;
+        return data;
     }
 
     @Override
@@ -113,6 +115,7 @@ public class FileFilterInputStreamCache implements FilterInputStreamCache {
             this.offset = cacheOffset;
         }
         raf.readFully(b, off, len);
+        this.offset += len;
     }
 
     @Override
@@ -27,7 +27,7 @@ import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
  * @author wolf
  *
  */
-public class SerializerObjectFactory extends BaseKeyedPoolableObjectFactory {
+public class SerializerObjectFactory extends BaseKeyedPoolableObjectFactory<Object, Object> {
 
     /**
      * 
@@ -21,32 +21,63 @@
  */
 package org.exist.util.serializer;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool.BaseKeyedObjectPool;
 import org.apache.commons.pool.KeyedPoolableObjectFactory;
-import org.apache.commons.pool.impl.StackKeyedObjectPool;
 import org.exist.storage.serializers.Serializer;
 
 /**
+ * Pool of serializers, keyed by their class. Idle objects are kept in
+ * non-blocking queues, one for each key, so borrowing or returning
+ * a serializer does not lock the pool. Objects are reset by the factory
+ * when they are returned. At most max idle objects are kept per key.
+ *
  * @author wolf
  *
  */
-public class SerializerPool extends StackKeyedObjectPool {
+public class SerializerPool extends BaseKeyedObjectPool<Object, Object> {
 
     private final static SerializerPool instance = new SerializerPool(new SerializerObjectFactory(), 10, 1);
     
     public final static SerializerPool getInstance() {
         return instance;
     }
+
+    private final KeyedPoolableObjectFactory<Object, Object> factory;
+    private final int maxIdle;
+
+    private final ConcurrentMap<Object, IdleObjects> pools = new ConcurrentHashMap<Object, IdleObjects>();
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
     
     /**
      * 
      */
-    public SerializerPool(KeyedPoolableObjectFactory factory, int max, int init) {
-        super(factory, max, init);
+    public SerializerPool(KeyedPoolableObjectFactory<Object, Object> factory, int max, int init) {
+        this.factory = factory;
+        this.maxIdle = max;
     }
     
-    public synchronized Object borrowObject(Object key) {
+    public Object borrowObject(Object key) {
         try {
-            return super.borrowObject(key);
+            Object obj = getIdleObjects(key).poll();
+            if (obj == null) {
+                obj = factory.makeObject(key);
+                created.incrementAndGet();
+            }
+            factory.activateObject(key, obj);
+            borrowed.incrementAndGet();
+            activeCount.incrementAndGet();
+            return obj;
         } catch (final Exception e) {
             throw new IllegalStateException("Error while creating serializer: " + e.getMessage());
         }
@@ -62,13 +93,129 @@ public class SerializerPool extends StackKeyedObjectPool {
         }
     }
     
-    public synchronized void returnObject(Object obj) {
+    public void returnObject(Object obj) {
         if (obj == null)
             {return;}
+        returnObject(obj.getClass(), obj);
+    }
+
+    public void returnObject(Object key, Object obj) {
+        activeCount.decrementAndGet();
         try {
-            super.returnObject(obj.getClass(), obj);
+            factory.passivateObject(key, obj);
+            if (!getIdleObjects(key).offer(obj)) {
+                discarded.incrementAndGet();
+                factory.destroyObject(key, obj);
+            }
         } catch (final Exception e) {
             throw new IllegalStateException("Error while returning serializer: " + e.getMessage());
         }
     }
+
+    public void invalidateObject(Object key, Object obj) throws Exception {
+        activeCount.decrementAndGet();
+        factory.destroyObject(key, obj);
+    }
+
+    public int getNumIdle(Object key) {
+        final IdleObjects idle = pools.get(key);
+        return idle == null ? 0 : idle.size();
+    }
+
+    public int getNumIdle() {
+        int count = 0;
+        for (final IdleObjects idle : pools.values()) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    public int getNumActive() {
+        return activeCount.get();
+    }
+
+    public void clear() throws Exception {
+        for (final Object key : pools.keySet()) {
+            clear(key);
+        }
+    }
+
+    public void clear(Object key) throws Exception {
+        final IdleObjects idle = pools.get(key);
+        if (idle == null)
+            {return;}
+        Object obj;
+        while ((obj = idle.poll()) != null) {
+            factory.destroyObject(key, obj);
+        }
+    }
+
+    /**
+     * Returns the number of objects handed out by this pool since
+     * it was created.
+     */
+    public long getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    /**
+     * Returns the number of objects created because no idle object was
+     * available when one was borrowed.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Returns the number of objects dropped on return because the pool
+     * already held the maximum number of idle objects for their key.
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    private IdleObjects getIdleObjects(Object key) {
+        IdleObjects idle = pools.get(key);
+        if (idle == null) {
+            idle = new IdleObjects(maxIdle);
+            final IdleObjects existing = pools.putIfAbsent(key, idle);
+            if (existing != null)
+                {idle = existing;}
+        }
+        return idle;
+    }
+
+    /**
+     * Bounded, non-blocking queue of the idle objects for one key.
+     */
+    private final static class IdleObjects {
+
+        private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+        private final AtomicInteger count = new AtomicInteger();
+        private final int max;
+
+        IdleObjects(int max) {
+            this.max = max;
+        }
+
+        Object poll() {
+            final Object obj = queue.poll();
+            if (obj != null)
+                {count.decrementAndGet();}
+            return obj;
+        }
+
+        boolean offer(Object obj) {
+            if (count.incrementAndGet() > max) {
+                count.decrementAndGet();
+                return false;
+            }
+            queue.offer(obj);
+            return true;
+        }
+
+        int size() {
+            return count.get();
+        }
+    }
 }
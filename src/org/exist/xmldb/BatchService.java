@@ -0,0 +1,73 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2014 The eXist-db Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xmldb;
+
+import java.util.concurrent.Future;
+
+import org.xmldb.api.base.Resource;
+import org.xmldb.api.base.Service;
+import org.xmldb.api.base.XMLDBException;
+
+/**
+ * Stores many resources into a collection at once.
+ *
+ * Resources passed to {@link #storeResource(Resource)} are collected into
+ * batches. Each batch is stored in the background, within a single transaction,
+ * while the caller prepares the next one. If a resource cannot be stored, the
+ * rest of its batch is skipped and the futures of the whole batch fail; resources
+ * of the batch stored before the failing one are kept, as an aborted transaction
+ * is not rolled back. A resource must not be modified before its future has
+ * completed.
+ *
+ * Only available for the embedded (local) database.
+ */
+public interface BatchService extends Service {
+
+    /**
+     * Adds the resource to the current batch. The batch is handed over for
+     * storing as soon as it is full.
+     *
+     * @param resource the resource to store
+     * @return a future which completes when the batch containing the resource
+     *     has been stored, and fails if storing the batch failed
+     * @throws XMLDBException
+     */
+    public Future<Resource> storeResource(Resource resource) throws XMLDBException;
+
+    /**
+     * Hands over the current batch, even if it is not full, and waits until
+     * all batches have been stored.
+     *
+     * @throws XMLDBException if storing one of the batches failed since the
+     *     last flush
+     */
+    public void flush() throws XMLDBException;
+
+    /**
+     * Sets the maximum number of resources stored within one transaction.
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize);
+
+    public int getBatchSize();
+}
@@ -0,0 +1,279 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2014 The eXist-db Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xmldb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.ErrorCodes;
+import org.xmldb.api.base.Resource;
+import org.xmldb.api.base.XMLDBException;
+
+/**
+ * {@link BatchService} for the embedded database.
+ *
+ * Batches are stored one after the other by a single background thread, which
+ * terminates when it has been idle for a while. At most {@link #MAX_PENDING_BATCHES}
+ * full batches wait to be stored; beyond that, {@link #storeResource(Resource)}
+ * blocks until the thread catches up, so a fast producer cannot fill the memory.
+ */
+public class LocalBatchService implements BatchService {
+
+    public final static int DEFAULT_BATCH_SIZE = 100;
+
+    /** The number of batches waiting to be stored, besides the one being stored */
+    public final static int MAX_PENDING_BATCHES = 2;
+
+    private final static long IDLE_TIMEOUT = 60;
+
+    private LocalCollection parent;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private List<Resource> batch = null;
+    private List<ResourceFuture> batchFutures = null;
+    private FutureTask<Void> batchTask = null;
+    private final List<Future<Void>> submitted = new ArrayList<Future<Void>>();
+    private final Semaphore permits = new Semaphore(MAX_PENDING_BATCHES + 1);
+
+    private final ExecutorService executor = new ThreadPoolExecutor(0, 1, IDLE_TIMEOUT, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new BatchThreadFactory());
+
+    public LocalBatchService(final LocalCollection parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public synchronized Future<Resource> storeResource(final Resource resource) throws XMLDBException {
+        if(!(resource instanceof LocalXMLResource || resource instanceof LocalBinaryResource)) {
+            throw new XMLDBException(ErrorCodes.UNKNOWN_RESOURCE_TYPE, "unknown resource type: " + resource.getResourceType());
+        }
+        if(batch == null) {
+            final LocalCollection collection = parent;
+            final List<Resource> resources = new ArrayList<Resource>(batchSize);
+            final List<ResourceFuture> futures = new ArrayList<ResourceFuture>(batchSize);
+            batch = resources;
+            batchFutures = futures;
+            batchTask = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws XMLDBException {
+                    final List<Resource> stored = new ArrayList<Resource>(resources.size());
+                    Throwable failure = null;
+                    try {
+                        collection.storeResources(resources, stored);
+                        return null;
+                    } catch(final Throwable t) {
+                        failure = t;
+                        throw t;
+                    } finally {
+                        // the resources stored before a failure stay stored
+                        for(int i = 0; i < futures.size(); i++) {
+                            futures.get(i).done(i < stored.size() ? null : failure);
+                        }
+                        permits.release();
+                    }
+                }
+            });
+        }
+        batch.add(resource);
+        final ResourceFuture future = new ResourceFuture(resource);
+        batchFutures.add(future);
+        if(batch.size() >= batchSize) {
+            submit();
+        }
+        return future;
+    }
+
+    @Override
+    public synchronized void flush() throws XMLDBException {
+        if(batch != null) {
+            submit();
+        }
+        XMLDBException failure = null;
+        try {
+            for(final Future<Void> task : submitted) {
+                try {
+                    task.get();
+                } catch(final ExecutionException e) {
+                    if(failure == null) {
+                        failure = toXMLDBException(e);
+                    }
+                }
+            }
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "Interrupted while waiting for batches to be stored", e);
+        }
+        submitted.clear();
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    private void submit() throws XMLDBException {
+        try {
+            permits.acquire();
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "Interrupted while waiting to store batch", e);
+        }
+        executor.execute(batchTask);
+        submitted.add(batchTask);
+        batch = null;
+        batchFutures = null;
+        batchTask = null;
+    }
+
+    private static XMLDBException toXMLDBException(final ExecutionException e) {
+        if(e.getCause() instanceof XMLDBException) {
+            return (XMLDBException)e.getCause();
+        }
+        return new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getCause().getMessage(), e.getCause());
+    }
+
+    @Override
+    public synchronized void setBatchSize(final int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String getName() throws XMLDBException {
+        return "BatchService";
+    }
+
+    @Override
+    public String getVersion() throws XMLDBException {
+        return "1.0";
+    }
+
+    @Override
+    public synchronized void setCollection(final Collection col) throws XMLDBException {
+        if(!(col instanceof LocalCollection)) {
+            throw new XMLDBException(ErrorCodes.INVALID_COLLECTION, "incompatible collection type: " + col.getClass().getName());
+        }
+        if(batch != null) {
+            submit();
+        }
+        parent = (LocalCollection) col;
+    }
+
+    @Override
+    public String getProperty(final String name) throws XMLDBException {
+        return null;
+    }
+
+    @Override
+    public void setProperty(final String name, final String value) throws XMLDBException {
+    }
+
+    /**
+     * The future of a single resource, which completes when the batch
+     * containing the resource has stored it or has failed before.
+     */
+    private static class ResourceFuture implements Future<Resource> {
+
+        private final Resource resource;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Throwable failure = null;
+
+        ResourceFuture(final Resource resource) {
+            this.resource = resource;
+        }
+
+        void done(final Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            // the batch is stored as a whole
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Resource get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResource();
+        }
+
+        @Override
+        public Resource get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if(!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResource();
+        }
+
+        private Resource getResource() throws ExecutionException {
+            if(failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return resource;
+        }
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+        private static int id = 0;
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "BatchService-" + getId());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private static synchronized int getId() {
+            return id++;
+        }
+    }
+}
@@ -567,18 +567,22 @@ public class LocalCollection extends Observable implements CollectionImpl {
         if("IndexQueryService".equals(name)) {
             return new LocalIndexQueryService(user, brokerPool, this);
         }
+        if("BatchService".equals(name)) {
+            return new LocalBatchService(this);
+        }
         throw new XMLDBException(ErrorCodes.NO_SUCH_SERVICE);
     }
 
     @Override
     public Service[] getServices() throws XMLDBException {
-        final Service[] services = new Service[6];
+        final Service[] services = new Service[7];
         services[0] = new LocalXPathQueryService(user, brokerPool, this, accessCtx);
         services[1] = new LocalCollectionManagementService(user, brokerPool, this, accessCtx);
         services[2] = new LocalUserManagementService(user, brokerPool, this);
         services[3] = new LocalDatabaseInstanceManager(user, brokerPool);
         services[4] = new LocalXUpdateQueryService(user, brokerPool, this);
         services[5] = new LocalIndexQueryService(user, brokerPool, this);
+        services[6] = new LocalBatchService(this);
         return services;
     }
 
@@ -780,24 +784,32 @@ public class LocalCollection extends Observable implements CollectionImpl {
     }
 
     private void storeBinaryResource(final LocalBinaryResource res) throws XMLDBException {
-        final XmldbURI resURI;
-        try {
-            resURI = XmldbURI.xmldbUriFor(res.getId());
-        } catch(final URISyntaxException e) {
-            throw new XMLDBException(ErrorCodes.INVALID_URI,e);
-        }
+        final XmldbURI resURI = getResourceURI(res);
         
     	final Subject subject = brokerPool.getSubject();
         final TransactionManager transact = brokerPool.getTransactionManager();
         final Txn txn = transact.beginTransaction();
         
-        Collection collection = null;
         DBBroker broker = null;
         try {
             broker = brokerPool.get(user);
+            storeBinaryResource(broker, txn, resURI, res);
+            transact.commit(txn);
+        } catch(final Exception e) {
+            transact.abort(txn);
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "Exception while storing binary resource: " + e.getMessage(), e);
+        } finally {
+            transact.close(txn);
+            brokerPool.release(broker);
+            brokerPool.setSubject(subject);
+        }
+    }
+
+    private void storeBinaryResource(final DBBroker broker, final Txn txn, final XmldbURI resURI, final LocalBinaryResource res) throws Exception {
+        Collection collection = null;
+        try {
             collection = broker.openCollection(path, Lock.WRITE_LOCK);
             if(collection == null) {
-                transact.abort(txn);
                 throw new XMLDBException(ErrorCodes.INVALID_COLLECTION, "Collection " + path + " not found");
             }
             
@@ -807,90 +819,137 @@ public class LocalCollection extends Observable implements CollectionImpl {
             } else {
                 collection.addBinaryResource(txn, broker, resURI, (byte[])res.getContent(), res.getMimeType(), res.datecreated, res.datemodified);
             }
-            
+        } finally {
+            if(collection != null) {
+                collection.getLock().release(Lock.WRITE_LOCK);
+            }
+        }
+    }
+
+    private void storeXMLResource(final LocalXMLResource res) throws XMLDBException {
+        final XmldbURI resURI = getResourceURI(res);
+        
+    	final Subject subject = brokerPool.getSubject();
+        final TransactionManager transact = brokerPool.getTransactionManager();
+        final Txn txn = transact.beginTransaction();
+        
+        DBBroker broker = null;
+        try {
+            broker = brokerPool.get(user);
+            storeXMLResource(broker, txn, resURI, res);
             transact.commit(txn);
         } catch(final Exception e) {
             transact.abort(txn);
-            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "Exception while storing binary resource: " + e.getMessage(), e);
+            LOG.error(e);
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
         } finally {
             transact.close(txn);
-            if(collection != null) {
-                collection.getLock().release(Lock.WRITE_LOCK);
-            }
             brokerPool.release(broker);
             brokerPool.setSubject(subject);
         }
     }
 
-    private void storeXMLResource(final LocalXMLResource res) throws XMLDBException {
-        final XmldbURI resURI;
+    private void storeXMLResource(final DBBroker broker, final Txn txn, final XmldbURI resURI, final LocalXMLResource res) throws Exception {
+        String uri = null;
+        if(res.file != null) {
+            uri = res.file.toURI().toASCIIString();
+        }
+        
+        Collection collection = null;
+        final IndexInfo info;
         try {
-            resURI = XmldbURI.xmldbUriFor(res.getId());
+            collection = broker.openCollection(path, Lock.WRITE_LOCK);
+            if(collection == null) {
+                throw new XMLDBException(ErrorCodes.INVALID_COLLECTION, "Collection " + path + " not found");
+            }
+            for(final Observer observer : observers) {
+                collection.addObserver(observer);
+            }
+            if (uri != null || res.inputSource!=null) {
+                setupParser(collection, res);
+                info = collection.validateXMLResource(txn, broker, resURI, (uri != null) ? new InputSource(uri) : res.inputSource);
+            } else if (res.root != null) {
+                info = collection.validateXMLResource(txn, broker, resURI, res.root);
+            } else {
+                info = collection.validateXMLResource(txn, broker, resURI, res.content);
+            }
+            //Notice : the document should now have a Lock.WRITE_LOCK update lock
+            //TODO : check that no exception occurs in order to allow it to be released
+            info.getDocument().getMetadata().setMimeType(res.getMimeType());
+            if (res.datecreated  != null) {
+                info.getDocument().getMetadata().setCreated(res.datecreated.getTime());
+            }
+            if (res.datemodified != null) {
+                info.getDocument().getMetadata().setLastModified(res.datemodified.getTime());
+            }
+        } finally {
+            if(collection != null) {
+                collection.release(Lock.WRITE_LOCK);
+            }
+        }
+        
+        if (uri != null || res.inputSource!=null) {
+            collection.store(txn, broker, info, (uri!=null) ? new InputSource(uri):res.inputSource, false);
+        } else if (res.root != null) {
+            collection.store(txn, broker, info, res.root, false);
+        } else {
+            collection.store(txn, broker, info, res.content, false);
+        }
+        
+        //Notice : the document should now have its update lock released
+        collection.deleteObservers();
+    }
+
+    private XmldbURI getResourceURI(final Resource res) throws XMLDBException {
+        try {
+            return XmldbURI.xmldbUriFor(res.getId());
         } catch(final URISyntaxException e) {
             throw new XMLDBException(ErrorCodes.INVALID_URI,e);
         }
-        
+    }
+
+    /**
+     * Stores the resources within a single transaction, using a single broker.
+     * Stops at the first resource which cannot be stored; the resources stored
+     * before it are not removed again.
+     *
+     * @param resources the resources to store
+     * @param stored receives each resource once it has been stored
+     *
+     * @see LocalBatchService
+     */
+    void storeResources(final List<Resource> resources, final List<Resource> stored) throws XMLDBException {
+        final List<XmldbURI> resURIs = new ArrayList<XmldbURI>(resources.size());
+        for(final Resource resource : resources) {
+            if(!"XMLResource".equals(resource.getResourceType()) && !"BinaryResource".equals(resource.getResourceType())) {
+                throw new XMLDBException(ErrorCodes.UNKNOWN_RESOURCE_TYPE, "unknown resource type: " + resource.getResourceType());
+            }
+            resURIs.add(getResourceURI(resource));
+        }
+
     	final Subject subject = brokerPool.getSubject();
         final TransactionManager transact = brokerPool.getTransactionManager();
         final Txn txn = transact.beginTransaction();
-        
+
         DBBroker broker = null;
         try {
             broker = brokerPool.get(user);
-            String uri = null;
-            if(res.file != null) {
-                uri = res.file.toURI().toASCIIString();
-            }
-            
-            Collection collection = null;
-            final IndexInfo info;
-            try {
-                collection = broker.openCollection(path, Lock.WRITE_LOCK);
-                if(collection == null) {
-                    transact.abort(txn);
-                    throw new XMLDBException(ErrorCodes.INVALID_COLLECTION, "Collection " + path + " not found");
-                }
-                for(final Observer observer : observers) {
-                    collection.addObserver(observer);
-                }
-                if (uri != null || res.inputSource!=null) {
-                    setupParser(collection, res);
-                    info = collection.validateXMLResource(txn, broker, resURI, (uri != null) ? new InputSource(uri) : res.inputSource);
-                } else if (res.root != null) {
-                    info = collection.validateXMLResource(txn, broker, resURI, res.root);
+            for(int i = 0; i < resources.size(); i++) {
+                final Resource resource = resources.get(i);
+                if(resource instanceof LocalXMLResource) {
+                    storeXMLResource(broker, txn, resURIs.get(i), (LocalXMLResource)resource);
                 } else {
-                    info = collection.validateXMLResource(txn, broker, resURI, res.content);
-                }
-                //Notice : the document should now have a Lock.WRITE_LOCK update lock
-                //TODO : check that no exception occurs in order to allow it to be released
-                info.getDocument().getMetadata().setMimeType(res.getMimeType());
-                if (res.datecreated  != null) {
-                    info.getDocument().getMetadata().setCreated(res.datecreated.getTime());
-                }
-                if (res.datemodified != null) {
-                    info.getDocument().getMetadata().setLastModified(res.datemodified.getTime());
-                }
-            } finally {
-                if(collection != null) {
-                    collection.release(Lock.WRITE_LOCK);
+                    storeBinaryResource(broker, txn, resURIs.get(i), (LocalBinaryResource)resource);
                 }
+                ((AbstractEXistResource)resource).isNewResource = false;
+                needsSync = true;
+                stored.add(resource);
             }
-            
-            if (uri != null || res.inputSource!=null) {
-                collection.store(txn, broker, info, (uri!=null) ? new InputSource(uri):res.inputSource, false);
-            } else if (res.root != null) {
-                collection.store(txn, broker, info, res.root, false);
-            } else {
-                collection.store(txn, broker, info, res.content, false);
-            }
-            
-            //Notice : the document should now have its update lock released
             transact.commit(txn);
-            collection.deleteObservers();
         } catch(final Exception e) {
             transact.abort(txn);
             LOG.error(e);
-            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "Exception while storing resources: " + e.getMessage(), e);
         } finally {
             transact.close(txn);
             brokerPool.release(broker);
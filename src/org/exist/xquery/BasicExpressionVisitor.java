@@ -116,6 +116,25 @@ public class BasicExpressionVisitor implements ExpressionVisitor {
         return visitor.firstStep;
     }
 
+    /**
+     * Returns the location step producing the result of the given expression:
+     * the expression itself if it is a location step, or the last step of a
+     * (nested) path expression. Cardinality checks are skipped, so the caller
+     * must not rely on them. Returns null if the result is not produced
+     * by a location step.
+     */
+    public static LocationStep findLastStep(Expression expr) {
+        while (true) {
+            if (expr instanceof DynamicCardinalityCheck)
+                {expr = expr.getSubExpression(0);}
+            else if (expr != null && expr.getClass() == PathExpr.class)
+                {expr = ((PathExpr) expr).getLastExpression();}
+            else
+                {break;}
+        }
+        return expr instanceof LocationStep ? (LocationStep) expr : null;
+    }
+
     public static List<LocationStep> findLocationSteps(Expression expr) {
         final List<LocationStep> steps = new ArrayList<LocationStep>(5);
         if (expr instanceof LocationStep) {
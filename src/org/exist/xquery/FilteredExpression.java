@@ -80,6 +80,17 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+            // (path)[n]: the path only needs to produce its first n nodes
+            if (!abbreviated && predicates.get(0).getLength() == 1 &&
+                    predicates.get(0).getExpression(0) instanceof LiteralValue) {
+                final AtomicValue position = ((LiteralValue) predicates.get(0).getExpression(0)).getValue();
+                final LocationStep step = BasicExpressionVisitor.findLastStep(expression);
+                if (step != null && Type.subTypeOf(position.getType(), Type.INTEGER)) {
+                    final long n = ((IntegerValue) position).getLong();
+                    if (n > 0 && n <= Integer.MAX_VALUE)
+                        {step.setResultLimit((int) n);}
+                }
+            }
         }
     }
 
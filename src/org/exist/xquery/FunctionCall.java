@@ -312,8 +312,9 @@ public class FunctionCall extends Function {
             //XXX: should we have it? org.exist.xquery.UserDefinedFunction do a call -shabanovd
             context.stackEnter(this);
 
-            long start = System.currentTimeMillis();
+            long start = 0;
             if(context.getProfiler().traceFunctions()) {
+                start = System.currentTimeMillis();
                 if (context.tailRecursiveCall(getSignature()))
                     {start = -1;}
                 context.getProfiler().traceFunctionStart(this);
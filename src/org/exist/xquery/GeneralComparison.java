@@ -522,6 +522,7 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
         final Sequence rs       = getRight().eval( contextSequence, contextItem );
         final Collator collator = getCollator( contextSequence );
         Sequence       result   = BooleanValue.FALSE;
+        HashJoinTable  table;
 
         if( ls.isEmpty() && rs.isEmpty() ) {
             result = BooleanValue.valueOf( compareAtomic( collator, AtomicValue.EMPTY_VALUE, AtomicValue.EMPTY_VALUE ) );
@@ -546,6 +547,15 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
             }
         } else if( ls.hasOne() && rs.hasOne() ) {
             result = BooleanValue.valueOf( compareAtomic( collator, ls.itemAt( 0 ).atomize(), rs.itemAt( 0 ).atomize() ) );
+        } else if( ls.hasMany() && ( ( table = buildJoinTable( rs, collator ) ) != null ) ) {
+
+            for( final SequenceIterator i1 = ls.iterate(); i1.hasNext(); ) {
+
+                if( compareJoined( collator, i1.nextItem().atomize(), table ) ) {
+                    result = BooleanValue.TRUE;
+                    break;
+                }
+            }
         } else {
 
             for( final SequenceIterator i1 = ls.iterate(); i1.hasNext(); ) {
@@ -605,6 +615,11 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
         if( LOG.isTraceEnabled() ) {
             LOG.trace( "No index: fall back to nodeSetCompare" );
         }
+
+        // nothing to compare: do not evaluate the right operand
+        if( nodes.isEmpty() ) {
+            return( NodeSet.EMPTY_SET );
+        }
         final long           start    = System.currentTimeMillis();
         final NodeSet        result   = new NewArrayNodeSet();
         final Collator collator = getCollator( contextSequence );
@@ -632,18 +647,34 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
                 } while( ( context = context.getNextDirect() ) != null );
             }
         } else {
+            final Sequence      rs    = getRight().eval( contextSequence );
+            final HashJoinTable table = ( nodes.getLength() > 1 ) ? buildJoinTable( rs, collator ) : null;
 
-            for( final NodeProxy item : nodes ) {
-                final AtomicValue lv = item.atomize();
-                final Sequence    rs = getRight().eval( contextSequence );
+            if( table != null ) {
+
+                if( context.getProfiler().isEnabled() ) {
+                    context.getProfiler().message( this, Profiler.OPTIMIZATIONS, "OPTIMIZATION", "Using hash join on " + table.getItemCount() + " items" );
+                }
 
-                for( final SequenceIterator i2 = rs.iterate(); i2.hasNext(); ) {
-                    final AtomicValue rv = i2.nextItem().atomize();
+                for( final NodeProxy item : nodes ) {
 
-                    if( compareAtomic( collator, lv, rv ) ) {
+                    if( compareJoined( collator, item.atomize(), table ) ) {
                         result.add( item );
                     }
                 }
+            } else {
+
+                for( final NodeProxy item : nodes ) {
+                    final AtomicValue lv = item.atomize();
+
+                    for( final SequenceIterator i2 = rs.iterate(); i2.hasNext(); ) {
+                        final AtomicValue rv = i2.nextItem().atomize();
+
+                        if( compareAtomic( collator, lv, rv ) ) {
+                            result.add( item );
+                        }
+                    }
+                }
             }
         }
 
@@ -654,6 +685,50 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
     }
 
 
+    /**
+     * Build a hash table on the atomized right operand if the comparison is an equality
+     * join which is large enough to benefit from it.
+     *
+     * @param   rs        the evaluated right operand
+     * @param   collator  the collator to use for string values
+     *
+     * @return  the table or null if the nested loop should be used
+     *
+     * @throws  XPathException
+     */
+    private HashJoinTable buildJoinTable( Sequence rs, Collator collator ) throws XPathException
+    {
+        if( ( relation != Constants.EQ ) || ( truncation != Constants.TRUNC_NONE ) || ( rs.getItemCount() < HashJoinTable.MIN_BUILD_SIZE ) ) {
+            return( null );
+        }
+        return( HashJoinTable.build( rs, collator ) );
+    }
+
+
+    /**
+     * Compare a value from the left operand against the right operand values hashed into the given table.
+     * Only the values in the matching bucket need to be compared.
+     *
+     * @param   collator  the collator to use for string values
+     * @param   lv        the atomized value from the left operand
+     * @param   table     the right operand values
+     *
+     * @return  true if lv matches any of the values in the table
+     *
+     * @throws  XPathException
+     */
+    private boolean compareJoined( Collator collator, AtomicValue lv, HashJoinTable table ) throws XPathException
+    {
+        for( final AtomicValue rv : table.candidates( lv ) ) {
+
+            if( compareAtomic( collator, lv, rv ) ) {
+                return( true );
+            }
+        }
+        return( false );
+    }
+
+
     /**
      * Optimized implementation: first checks if a range index is defined on the nodes in the left argument. If that fails, check if we can use the
      * fulltext index to speed up the search. Otherwise, fall back to {@link #nodeSetCompare(NodeSet, Sequence)}.
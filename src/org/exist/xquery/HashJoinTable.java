@@ -0,0 +1,157 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xquery;
+
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.NumericValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash table over the atomized values of one operand of a general
+ * comparison. Used by {@link GeneralComparison} to replace the nested
+ * loop over both operands with a single build pass and one lookup per
+ * item of the other operand when evaluating an equality join.
+ *
+ * The table only partitions values into buckets: two values which compare
+ * as equal under the comparison rules always end up in the same bucket,
+ * but values within a bucket still have to be checked by the caller.
+ * If an item cannot be hashed consistently with the values in the table,
+ * {@link #candidates(AtomicValue)} returns all values, so the caller
+ * degrades to the generic nested loop for that item.
+ */
+public class HashJoinTable {
+
+    /**
+     * Minimum number of items in the build operand before a hash join
+     * is considered.
+     */
+    public final static int MIN_BUILD_SIZE = 8;
+
+    private final static int STRING_VALUES = 0;
+    private final static int NUMERIC_VALUES = 1;
+
+    private final Collator collator;
+    private final int valueClass;
+    private final Map<Object, List<AtomicValue>> buckets;
+    private final List<AtomicValue> values;
+
+    private HashJoinTable(Collator collator, int valueClass, int size) {
+        this.collator = collator;
+        this.valueClass = valueClass;
+        this.buckets = new HashMap<Object, List<AtomicValue>>(size);
+        this.values = new ArrayList<AtomicValue>(size);
+    }
+
+    /**
+     * Atomize the given sequence and build a hash table from its items.
+     *
+     * @param seq the sequence to build the table from
+     * @param collator the collator used for string comparisons, may be null
+     * @return the table or null if the sequence contains values which
+     * can not be hashed, e.g. a mix of strings and numbers
+     * @throws XPathException
+     */
+    public static HashJoinTable build(Sequence seq, Collator collator) throws XPathException {
+        HashJoinTable table = null;
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            final AtomicValue v = i.nextItem().atomize();
+            final int valueClass = getValueClass(v.getType());
+            if (valueClass < 0)
+                {return null;}
+            if (table == null)
+                {table = new HashJoinTable(collator, valueClass, seq.getItemCount());}
+            else if (table.valueClass != valueClass)
+                {return null;}
+            table.add(v);
+        }
+        return table;
+    }
+
+    private void add(AtomicValue v) throws XPathException {
+        values.add(v);
+        final Object key = getKey(v);
+        List<AtomicValue> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<AtomicValue>(1);
+            buckets.put(key, bucket);
+        }
+        bucket.add(v);
+    }
+
+    /**
+     * Returns the values in the table which may compare as equal to the
+     * given value.
+     *
+     * @param v an atomic value from the probing operand
+     * @return the candidate values, never null
+     * @throws XPathException
+     */
+    public List<AtomicValue> candidates(AtomicValue v) throws XPathException {
+        final int type = v.getType();
+        if (valueClass == NUMERIC_VALUES && type == Type.UNTYPED_ATOMIC) {
+            // untyped values are compared as xs:double against numbers.
+            // If the cast fails, let the caller report the error.
+            try {
+                v = v.convertTo(Type.DOUBLE);
+            } catch (final XPathException e) {
+                return values;
+            }
+        } else if (getValueClass(type) != valueClass)
+            {return values;}
+        final List<AtomicValue> bucket = buckets.get(getKey(v));
+        if (bucket == null)
+            {return Collections.emptyList();}
+        return bucket;
+    }
+
+    public int getItemCount() {
+        return values.size();
+    }
+
+    private Object getKey(AtomicValue v) throws XPathException {
+        if (valueClass == NUMERIC_VALUES) {
+            final double d = ((NumericValue) v).getDouble();
+            // +0 and -0 are equal, but not as Double keys
+            return d == 0.0 ? Double.valueOf(0.0) : Double.valueOf(d);
+        }
+        final String s = v.getStringValue();
+        return collator == null ? s : collator.getCollationKey(s);
+    }
+
+    private static int getValueClass(int type) {
+        if (type == Type.UNTYPED_ATOMIC || Type.subTypeOf(type, Type.STRING) ||
+                Type.subTypeOf(type, Type.ANY_URI))
+            {return STRING_VALUES;}
+        if (Type.subTypeOf(type, Type.NUMBER))
+            {return NUMERIC_VALUES;}
+        return -1;
+    }
+}
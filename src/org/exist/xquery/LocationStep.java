@@ -81,6 +81,9 @@ public class LocationStep extends Step {
 	// Cache for the current NodeTest type
 	private Integer nodeTestType = null;
 
+	// Number of nodes the consumer of this step needs, -1 if all nodes are needed
+	private int resultLimit = -1;
+
 	/**
 	 * Creates a new <code>LocationStep</code> instance.
 	 * 
@@ -136,6 +139,76 @@ public class LocationStep extends Step {
 		return deps;
 	}
 
+	/**
+	 * Tell the step that the consumer of its result will only look at the
+	 * first <code>limit</code> nodes in document order, e.g. because it is
+	 * the argument to fn:exists or is followed by a positional predicate.
+	 * The step may then stop scanning the structural index early. The limit
+	 * is ignored if the step has predicates of its own.
+	 * 
+	 * @param limit
+	 *            the number of nodes needed, or -1 for all nodes
+	 */
+	public void setResultLimit(int limit) {
+		this.resultLimit = limit;
+	}
+
+	public int getResultLimit() {
+		return resultLimit;
+	}
+
+	private int getIndexScanLimit() {
+		// within a predicate, all nodes are needed to find the matching context nodes
+		if (hasPredicates() || contextId != Expression.NO_CONTEXT_ID)
+			{return -1;}
+		return resultLimit;
+	}
+
+	/**
+	 * Returns true if the nodes selected by this step could be counted from
+	 * the structural index, depending on the context: the step has no
+	 * predicates and selects elements or attributes by name along a
+	 * descendant axis.
+	 */
+	public boolean isCountableFromIndex() {
+		if (hasPredicates() || test.isWildcardTest())
+			{return false;}
+		if (test.getType() == Type.ELEMENT)
+			{return axis == Constants.DESCENDANT_AXIS || axis == Constants.DESCENDANT_SELF_AXIS;}
+		return test.getType() == Type.ATTRIBUTE && axis == Constants.DESCENDANT_ATTRIBUTE_AXIS;
+	}
+
+	/**
+	 * Count the nodes this step selects from the given context without
+	 * creating them, using the structural index. This is only possible if
+	 * the step has no predicates, selects elements or attributes by name
+	 * along a descendant axis and the context consists of stored document
+	 * nodes.
+	 * 
+	 * @param contextSequence
+	 *            the context sequence
+	 * @return the number of nodes or -1 if the step cannot be counted from
+	 *         the index
+	 */
+	public long countFromIndex(Sequence contextSequence) throws XPathException {
+		if (!isCountableFromIndex() || preloadedData
+				|| !contextSequence.isPersistentSet())
+			{return -1;}
+		final byte type = test.getType() == Type.ELEMENT ? ElementValue.ELEMENT : ElementValue.ATTRIBUTE;
+		final NodeSet contextSet = contextSequence.toNodeSet();
+		for (final NodeProxy p : contextSet) {
+			if (p.getNodeId() != NodeId.DOCUMENT_NODE)
+				{return -1;}
+		}
+		final StructuralIndex index = context.getBroker().getStructuralIndex();
+		if (context.getProfiler().isEnabled())
+			{context.getProfiler().message(this, Profiler.OPTIMIZATIONS,
+					"OPTIMIZATION", "Counting nodes from structural index '"
+							+ index.toString() + "'");}
+		return index.countElementsByTagName(type, contextSet.getDocumentSet(),
+				test.getName(), this);
+	}
+
 	/**
 	 * If the current path expression depends on local variables from a for
 	 * expression, we can optimize by preloading entire element or attribute
@@ -821,10 +894,16 @@ public class LocationStep extends Step {
 						"OPTIMIZATION",
 						"Using structural index '" + index.toString() + "'");
 			}
+			final int limit = getIndexScanLimit();
+			if (limit > 0 && context.getProfiler().isEnabled()) {
+				context.getProfiler().message(this, Profiler.OPTIMIZATIONS,
+						"OPTIMIZATION",
+						"Stopping index scan after " + limit + " nodes");
+			}
 			if (!contextSet.getProcessInReverseOrder() && (contextSet instanceof VirtualNodeSet || contextSet.getLength() < INDEX_SCAN_THRESHOLD)) {
 				return index.findDescendantsByTagName(ElementValue.ELEMENT,
 						test.getName(), axis, docs, contextSet,
-						contextId, this);
+						contextId, this, limit);
 			} else {
 				NodeSelector selector;
 				switch (axis) {
@@ -840,7 +919,7 @@ public class LocationStep extends Step {
 							"Unsupported axis specified");
 				}
 				return index.findElementsByTagName(ElementValue.ELEMENT, docs,
-						test.getName(), selector, this);
+						test.getName(), selector, this, limit);
 			}
 
 		}
@@ -55,4 +55,13 @@ public class TerminatedException extends XPathException {
             super(line, column, message);
         }
     }
+
+    public final static class ResourceLimitException extends TerminatedException {
+
+		private static final long serialVersionUID = 3478829157316539622L;
+
+		public ResourceLimitException(int line, int column, String message) {
+            super(line, column, message);
+        }
+    }
 }
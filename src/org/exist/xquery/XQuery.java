@@ -307,11 +307,12 @@ public class XQuery {
                 return result;
             } finally {
                 context.getProfiler().traceQueryEnd(context);
+                // record the query before the context reset clears the watchdog
+                broker.getBrokerPool().getProcessMonitor().queryCompleted(context.getWatchDog());
                 expression.reset();
                 if(resetContext) {
                     context.reset();
                 }
-                broker.getBrokerPool().getProcessMonitor().queryCompleted(context.getWatchDog());
             }
             
         } finally {
@@ -2339,6 +2339,9 @@ public class XQueryContext implements BinaryValueManager, Context
     public void popDocumentContext()
     {
         if( !fragmentStack.isEmpty() ) {
+            if( documentBuilder != null && watchdog != null ) {
+                watchdog.fragmentConstructed( documentBuilder.getSize() );
+            }
             setDocumentBuilder(fragmentStack.pop());
         }
     }
@@ -2490,19 +2493,19 @@ public class XQueryContext implements BinaryValueManager, Context
     public void pushInScopeNamespaces( boolean inherit )
     {
         //TODO : push into an inheritedInScopeNamespaces HashMap... and return an empty HashMap
-        final HashMap<String, String> m = (HashMap)inScopeNamespaces.clone();
-        final HashMap<String, String> p = (HashMap)inScopePrefixes.clone();
         namespaceStack.push( inheritedInScopeNamespaces );
         namespaceStack.push( inheritedInScopePrefixes );
         namespaceStack.push( inScopeNamespaces );
         namespaceStack.push( inScopePrefixes );
 
-        //Current namespaces now become inherited just like the previous inherited ones
+        //Current namespaces now become inherited just like the previous inherited ones.
+        //The current maps are not modified while they are on the stack, so they need not be copied.
+        //This is called for every function call, mostly with inherit == false.
         if( inherit ) {
             inheritedInScopeNamespaces = (HashMap)inheritedInScopeNamespaces.clone();
-            inheritedInScopeNamespaces.putAll( m );
+            inheritedInScopeNamespaces.putAll( inScopeNamespaces );
             inheritedInScopePrefixes = (HashMap)inheritedInScopePrefixes.clone();
-            inheritedInScopePrefixes.putAll( p );
+            inheritedInScopePrefixes.putAll( inScopePrefixes );
         } else {
             inheritedInScopeNamespaces = new HashMap<String, String>();
             inheritedInScopePrefixes   = new HashMap<String, String>();
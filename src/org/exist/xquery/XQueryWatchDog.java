@@ -21,6 +21,8 @@
  */
 package org.exist.xquery;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.NumberFormat;
 
 import org.apache.log4j.Logger;
@@ -28,11 +30,21 @@ import org.exist.config.annotation.ConfigurationClass;
 import org.exist.config.annotation.ConfigurationFieldAsAttribute;
 import org.exist.memtree.MemTreeBuilder;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.Paged;
 import org.exist.util.Configuration;
 import org.exist.xquery.util.ExpressionDumper;
 
 
 /**
+ * Monitors a running query and kills it if it exceeds one of the configured limits.
+ *
+ * Besides the wall-clock timeout and the size of constructed fragments, the watchdog
+ * accounts for the CPU time used by the query thread, the number of pages the thread
+ * read from the database files and the total number of nodes in all in-memory
+ * fragments constructed by the query. The counters are sampled every
+ * {@link #SAMPLE_INTERVAL} calls to {@link #proceed(Expression)} and can be read by
+ * monitoring tools while the query is running.
+ *
  * @author wolf
  */
 @ConfigurationClass("watchdog")
@@ -44,6 +56,37 @@ public class XQueryWatchDog {
     
     public final static String PROPERTY_QUERY_TIMEOUT = "db-connection.watchdog.query-timeout";
     public final static String PROPERTY_OUTPUT_SIZE_LIMIT = "db-connection.watchdog.output-size-limit";
+    public final static String PROPERTY_CPU_LIMIT = "db-connection.watchdog.cpu-limit";
+    public final static String PROPERTY_PAGES_READ_LIMIT = "db-connection.watchdog.pages-read-limit";
+    public final static String PROPERTY_CONSTRUCTED_NODES_LIMIT = "db-connection.watchdog.constructed-nodes-limit";
+
+    /** Number of calls to {@link #proceed(Expression)} between two samples of the resource counters */
+    public final static int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The reason why a query was terminated.
+     */
+    public enum KillReason {
+        /** killed by a user or administrator */
+        KILLED,
+        TIMEOUT,
+        OUTPUT_SIZE_LIMIT,
+        CPU_LIMIT,
+        PAGES_READ_LIMIT,
+        CONSTRUCTED_NODES_LIMIT
+    }
+
+    private final static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final static boolean cpuTimeSupported;
+    static {
+        boolean supported = false;
+        try {
+            supported = threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+        } catch (final UnsupportedOperationException e) {
+            // not supported by the JVM
+        }
+        cpuTimeSupported = supported;
+    }
 
     private final XQueryContext context;
     
@@ -52,10 +95,31 @@ public class XQueryWatchDog {
     
     @ConfigurationFieldAsAttribute("output-size-limit")
     private int maxNodesLimit = Integer.MAX_VALUE;
-    
+
+    @ConfigurationFieldAsAttribute("cpu-limit")
+    private long cpuLimit = Long.MAX_VALUE;
+
+    @ConfigurationFieldAsAttribute("pages-read-limit")
+    private long pagesReadLimit = Long.MAX_VALUE;
+
+    @ConfigurationFieldAsAttribute("constructed-nodes-limit")
+    private long constructedNodesLimit = Long.MAX_VALUE;
+
     private long startTime;
     
     private boolean terminate = false;
+
+    private volatile KillReason killReason = null;
+
+    /** the thread which started the query */
+    private Thread thread;
+    private long startCpuTime;
+    private long startPagesRead;
+    private int calls = 0;
+
+    private volatile long cpuTime = 0;
+    private volatile long pagesRead = 0;
+    private volatile long constructedNodes = 0;
     
     /**
      * 
@@ -77,6 +141,17 @@ public class XQueryWatchDog {
         option = conf.getProperty(PROPERTY_OUTPUT_SIZE_LIMIT);
         if(option != null)
             {maxNodesLimit = ((Integer)option).intValue();}
+        cpuLimit = getLimit(conf, PROPERTY_CPU_LIMIT);
+        pagesReadLimit = getLimit(conf, PROPERTY_PAGES_READ_LIMIT);
+        constructedNodesLimit = getLimit(conf, PROPERTY_CONSTRUCTED_NODES_LIMIT);
+    }
+
+    private static long getLimit(Configuration conf, String property) {
+        final Object option = conf.getProperty(property);
+        if (option == null)
+            {return Long.MAX_VALUE;}
+        final long limit = ((Long)option).longValue();
+        return limit <= 0 ? Long.MAX_VALUE : limit;
     }
     
     public void setTimeoutFromOption(Option option) throws XPathException {
@@ -101,6 +176,27 @@ public class XQueryWatchDog {
     public void setMaxNodes(int maxNodes) {
     	maxNodesLimit = maxNodes;
     }
+
+    /**
+     * @param limit maximum CPU time in milliseconds, a value &lt;= 0 disables the limit
+     */
+    public void setCpuLimit(long limit) {
+        cpuLimit = limit <= 0 ? Long.MAX_VALUE : limit;
+    }
+
+    /**
+     * @param limit maximum number of pages read from the database files, a value &lt;= 0 disables the limit
+     */
+    public void setPagesReadLimit(long limit) {
+        pagesReadLimit = limit <= 0 ? Long.MAX_VALUE : limit;
+    }
+
+    /**
+     * @param limit maximum number of nodes in all constructed fragments, a value &lt;= 0 disables the limit
+     */
+    public void setConstructedNodesLimit(long limit) {
+        constructedNodesLimit = limit <= 0 ? Long.MAX_VALUE : limit;
+    }
     
     public void setMaxNodesFromOption(Option option) throws XPathException {
     	final String[] contents = option.tokenizeContents();
@@ -133,11 +229,20 @@ public class XQueryWatchDog {
                 final NumberFormat nf = NumberFormat.getNumberInstance();
                 LOG.warn("Query exceeded predefined timeout (" + nf.format(elapsed) + " ms.): " +
                         ExpressionDumper.dump(expr));
+                killReason = KillReason.TIMEOUT;
                 cleanUp();
                 throw new TerminatedException.TimeoutException(expr.getLine(), expr.getColumn(),
                         "The query exceeded the predefined timeout and has been killed.");
             }
         }
+        if (++calls == SAMPLE_INTERVAL) {
+            calls = 0;
+            sample();
+            if (cpuTime > cpuLimit)
+                {limitExceeded(expr, KillReason.CPU_LIMIT, "cpu-limit", cpuTime, cpuLimit);}
+            if (pagesRead > pagesReadLimit)
+                {limitExceeded(expr, KillReason.PAGES_READ_LIMIT, "pages-read-limit", pagesRead, pagesReadLimit);}
+        }
     }
     
     public void proceed(Expression expr, MemTreeBuilder builder) throws TerminatedException {
@@ -148,18 +253,61 @@ public class XQueryWatchDog {
             final NumberFormat nf = NumberFormat.getNumberInstance();
             LOG.warn("Query exceeded predefined output-size-limit (" +  nf.format(maxNodesLimit) + ") for document fragments: " + 
                     ExpressionDumper.dump(expr));
+            killReason = KillReason.OUTPUT_SIZE_LIMIT;
             cleanUp();
             throw new TerminatedException.SizeLimitException(expr.getLine(), expr.getColumn(),
                     "The constructed document fragment exceeded the predefined output-size-limit (current: " +
                     nf.format(builder.getSize()) + "; allowed: " + nf.format(maxNodesLimit) +
                     "). The query has been killed.");
         }
+        if (constructedNodesLimit != Long.MAX_VALUE) {
+            final long nodes = constructedNodes + builder.getSize();
+            if (nodes > constructedNodesLimit)
+                {limitExceeded(expr, KillReason.CONSTRUCTED_NODES_LIMIT, "constructed-nodes-limit", nodes, constructedNodesLimit);}
+        }
     }
-    
+
+    private void limitExceeded(Expression expr, KillReason reason, String limitName, long current, long allowed)
+            throws TerminatedException {
+        if(expr == null)
+            {expr = context.getRootExpression();}
+        final NumberFormat nf = NumberFormat.getNumberInstance();
+        LOG.warn("Query exceeded predefined " + limitName + " (current: " + nf.format(current) +
+                "; allowed: " + nf.format(allowed) + "): " + ExpressionDumper.dump(expr));
+        killReason = reason;
+        cleanUp();
+        throw new TerminatedException.ResourceLimitException(expr.getLine(), expr.getColumn(),
+                "The query exceeded the predefined " + limitName + " (current: " + nf.format(current) +
+                "; allowed: " + nf.format(allowed) + ") and has been killed.");
+    }
+
+    /**
+     * Update the resource counters. Only the thread which started the query is accounted.
+     */
+    public void sample() {
+        if (Thread.currentThread() != thread)
+            {return;}
+        if (cpuTimeSupported)
+            {cpuTime = (threadMXBean.getCurrentThreadCpuTime() - startCpuTime) / 1000000;}
+        pagesRead = Paged.getPagesRead() - startPagesRead;
+    }
+
+    /**
+     * Add the nodes of a constructed fragment which is no longer extended to the total
+     * number of constructed nodes.
+     *
+     * @param nodes the number of nodes in the fragment
+     */
+    public void fragmentConstructed(int nodes) {
+        constructedNodes += nodes;
+    }
+
     public void cleanUp() {
     }
     
     public void kill(long waitTime) {
+        if (killReason == null)
+            {killReason = KillReason.KILLED;}
     	terminate = true;
     }
     
@@ -174,6 +322,52 @@ public class XQueryWatchDog {
     public void reset() {
         startTime = System.currentTimeMillis();
         terminate = false;
+        killReason = null;
+        thread = Thread.currentThread();
+        startCpuTime = cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : 0;
+        startPagesRead = Paged.getPagesRead();
+        calls = 0;
+        cpuTime = 0;
+        pagesRead = 0;
+        constructedNodes = 0;
+    }
+
+    /**
+     * Clear the termination flag, so the query can go on after an exception was caught.
+     * Unlike {@link #reset()}, this keeps the start time and the resource counters,
+     * so a caught exception does not extend the limits of the query.
+     */
+    public void resume() {
+        terminate = false;
+        killReason = null;
+    }
+
+    /**
+     * @return the CPU time used by the query in milliseconds, as sampled last
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return the number of pages read from the database files, as sampled last
+     */
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+    /**
+     * @return the number of nodes in all constructed fragments which are no longer extended
+     */
+    public long getConstructedNodes() {
+        return constructedNodes;
+    }
+
+    /**
+     * @return the reason why the query was terminated or null if it was not
+     */
+    public KillReason getKillReason() {
+        return killReason;
     }
     
     public boolean isTerminating()
@@ -172,24 +172,10 @@ public class ExtFulltext extends Function implements Optimizable {
         } catch (final EXistException e) {
             throw new XPathException(e.getMessage());
         }
-        //Lookup the terms in the full-text index. returns one node set for each term
-        final NodeSet[] hits = getMatches(contextSequence.getDocumentSet(),
+        //Lookup the terms in the full-text index and compute the combined node set
+        preselectResult = getCombinedMatches(contextSequence.getDocumentSet(),
                 useContext ? contextSequence.toNodeSet() : null,
                 NodeSet.DESCENDANT, contextQName, terms);
-        //Walk through the matches and compute the combined node set
-        if (hits.length > 0)
-        	{preselectResult = hits[0];}
-        if (preselectResult != null) {
-            for(int k = 1; k < hits.length; k++) {
-                if(hits[k] != null) {
-                    preselectResult = (type == Constants.FULLTEXT_AND ?
-                        preselectResult.deepIntersection(hits[k]) :
-                        preselectResult.union(hits[k]));
-                }
-            }
-        } else {
-            preselectResult = NodeSet.EMPTY_SET;
-        }
         if (context.getProfiler().traceFunctions())
             {context.getProfiler().traceIndexUsage(context, FTIndex.ID, this,
                 PerformanceStats.OPTIMIZED_INDEX, System.currentTimeMillis() - start);}
@@ -342,30 +328,43 @@ public class ExtFulltext extends Function implements Optimizable {
         }
         if (terms.length == 0)
             {return NodeSet.EMPTY_SET;}
-        final NodeSet[] hits = getMatches(contextSet.getDocumentSet(), contextSet,
+        return getCombinedMatches(contextSet.getDocumentSet(), contextSet,
             NodeSet.ANCESTOR, contextQName, terms);
-        NodeSet result = hits[0];
-        if (result != null) {
-            for(int k = 1; k < hits.length; k++) {
-                if (hits[k] != null) {
-                    result = type == Constants.FULLTEXT_AND ? 
-                        result.deepIntersection(hits[k]) : result.union(hits[k]);
-                }
-            }
-            return result;
-        } else {
-            return NodeSet.EMPTY_SET;
-        }
     }
 
-    protected NodeSet[] getMatches(DocumentSet docs, NodeSet contextSet,
+    /**
+     * Looks up the terms one after the other and combines their matches.
+     * For an AND query, a term is only looked up in the documents matching
+     * all of the previous terms, so the occurrences of the other documents are
+     * skipped without being decoded. The lookup stops as soon as no document
+     * is left.
+     */
+    protected NodeSet getCombinedMatches(DocumentSet docs, NodeSet contextSet,
             int axis, QName qname, String[] terms) throws XPathException {
-        final NodeSet hits[] = new NodeSet[terms.length];
+        NodeSet result = null;
         for (int k = 0; k < terms.length; k++) {
-            hits[k] = context.getBroker().getTextEngine().getNodesContaining(
-                context, docs, contextSet, axis, qname, terms[k], DBBroker.MATCH_EXACT);
+            final NodeSet hits = getMatches(docs, contextSet, axis, qname, terms[k]);
+            if (k == 0) {
+                if (hits == null)
+                    {return NodeSet.EMPTY_SET;}
+                result = hits;
+            } else if (hits != null) {
+                result = type == Constants.FULLTEXT_AND ?
+                    result.deepIntersection(hits) : result.union(hits);
+            }
+            if (type == Constants.FULLTEXT_AND) {
+                if (result.isEmpty())
+                    {return NodeSet.EMPTY_SET;}
+                docs = result.getDocumentSet();
+            }
         }
-        return hits;
+        return result == null ? NodeSet.EMPTY_SET : result;
+    }
+
+    protected NodeSet getMatches(DocumentSet docs, NodeSet contextSet,
+            int axis, QName qname, String term) throws XPathException {
+        return context.getBroker().getTextEngine().getNodesContaining(
+            context, docs, contextSet, axis, qname, term, DBBroker.MATCH_EXACT);
     }
 
     public int returnsType() {
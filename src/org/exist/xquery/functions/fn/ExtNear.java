@@ -95,21 +95,10 @@ public class ExtNear extends ExtFulltext {
         } catch (final EXistException e) {
             throw new XPathException(e.getMessage());
         }
-        //Lookup the terms in the full-text index. returns one node set for each term
-        final NodeSet[] hits = getMatches(contextSequence.getDocumentSet(),
+        //Lookup the terms in the full-text index and compute the combined node set
+        preselectResult = getCombinedMatches(contextSequence.getDocumentSet(),
                 useContext ? contextSequence.toNodeSet() : null,
                 NodeSet.DESCENDANT, contextQName, terms);
-        //Walk through the matches and compute the combined node set
-        preselectResult = hits[0];
-        if (preselectResult != null) {
-            for (int k = 1; k < hits.length; k++) {
-                if (hits[k] != null) {
-                    preselectResult = preselectResult.deepIntersection(hits[k]);
-                }
-            }
-        } else {
-            preselectResult = NodeSet.EMPTY_SET;
-        }
         if (terms.length > 1) {
             boolean hasWildcards = false;
             for (int i = 0; i < terms.length; i++) {
@@ -22,11 +22,18 @@
 package org.exist.xquery.functions.fn;
 
 import org.exist.dom.QName;
+import org.exist.xquery.AnalyzeContextInfo;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.Dependency;
+import org.exist.xquery.DynamicCardinalityCheck;
+import org.exist.xquery.Expression;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.InternalFunctionCall;
+import org.exist.xquery.LocationStep;
+import org.exist.xquery.PathExpr;
 import org.exist.xquery.Profiler;
+import org.exist.xquery.RootNode;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionReturnSequenceType;
@@ -51,10 +58,40 @@ public class FunCount extends Function {
                 "The number of items in the argument sequence")
         );
 
+    /** the documents to count in, if the argument can be counted from the index */
+    private Expression indexDocs = null;
+    private LocationStep indexStep = null;
+
     public FunCount(XQueryContext context) {
         super(context, signature);
     }
 
+    @Override
+    public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+        indexDocs = null;
+        indexStep = null;
+        if (getArgumentCount() == 0)
+            {return;}
+        // count(//a) or count(collection(...)//a) can be answered from the
+        // structural index without loading the nodes
+        Expression arg = getArgument(0);
+        if (arg instanceof DynamicCardinalityCheck)
+            {arg = arg.getSubExpression(0);}
+        if (arg.getClass() == PathExpr.class && ((PathExpr) arg).getLength() == 2) {
+            final Expression first = ((PathExpr) arg).getExpression(0);
+            final Expression last = ((PathExpr) arg).getLastExpression();
+            final boolean documents = first instanceof RootNode ||
+                (first instanceof InternalFunctionCall &&
+                    ((InternalFunctionCall) first).getFunction() instanceof ExtCollection);
+            if (documents && last instanceof LocationStep
+                    && ((LocationStep) last).isCountableFromIndex()) {
+                indexDocs = first;
+                indexStep = (LocationStep) last;
+            }
+        }
+    }
+
     public int returnsType() {
         return Type.INTEGER;
     }
@@ -83,10 +120,31 @@ public class FunCount extends Function {
         Sequence result;
         if (getArgumentCount() == 0)
             {result = IntegerValue.ZERO;}
-        else
-            {result = new IntegerValue(getArgument(0).eval(contextSequence).getItemCount());}
+        else {
+            long count;
+            if (indexStep != null) {
+                // evaluate the documents only once, even if the index cannot be used
+                final Sequence docs = indexDocs.eval(contextSequence);
+                count = indexStep.countFromIndex(docs);
+                if (count < 0)
+                    {count = countNodes(docs);}
+            } else
+                {count = getArgument(0).eval(contextSequence).getItemCount();}
+            result = new IntegerValue(count);
+        }
         if (context.getProfiler().isEnabled()) 
             {context.getProfiler().end(this, "", result);}
         return result;
     }
+
+    /**
+     * Evaluates the counted step on the given stored documents, the way the
+     * path expression would, if its nodes cannot be counted from the index.
+     */
+    private long countNodes(Sequence docs) throws XPathException {
+        indexStep.setContextDocSet(null);
+        final Sequence nodes = indexStep.eval(docs);
+        nodes.removeDuplicates();
+        return nodes.getItemCount();
+    }
 }
@@ -25,9 +25,11 @@ import org.exist.dom.ExtArrayNodeSet;
 import org.exist.dom.NodeSet;
 import org.exist.dom.QName;
 import org.exist.xquery.*;
+import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.DoubleValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
@@ -87,6 +89,32 @@ public class FunSubSequence extends Function {
             if (i == 0)
                 {contextInfo.setStaticReturnType(argContextInfo.getStaticReturnType());}
         }
+        // if the requested range is known, the source only needs to produce
+        // the nodes up to its end
+        if (getArgumentCount() == 3) {
+            final long start = getIntegerLiteral(getArgument(1));
+            final long length = getIntegerLiteral(getArgument(2));
+            final LocationStep step = BasicExpressionVisitor.findLastStep(getArgument(0));
+            if (step != null && start > 0 && length > 0 && start + length - 1 <= Integer.MAX_VALUE)
+                {step.setResultLimit((int) (start + length - 1));}
+        }
+    }
+
+    /**
+     * Returns the value of the given argument if it is an integer literal,
+     * -1 otherwise.
+     */
+    private static long getIntegerLiteral(Expression expr) throws XPathException {
+        while (expr instanceof DynamicCardinalityCheck || expr instanceof UntypedValueCheck ||
+                (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1)) {
+            expr = expr.getSubExpression(0);
+        }
+        if (expr instanceof LiteralValue) {
+            final AtomicValue value = ((LiteralValue) expr).getValue();
+            if (Type.subTypeOf(value.getType(), Type.INTEGER))
+                {return ((IntegerValue) value).getLong();}
+        }
+        return -1;
     }
 
     /*
@@ -112,6 +112,12 @@ public class GetRunningXQueries extends BasicFunction
 		builder.addAttribute( new QName( "sourceType", null, null ), context.getXacmlSource().getType() );
                 builder.addAttribute( new QName( "started", null, null), new DateTimeValue(new Date(watchdog.getStartTime())).getStringValue());
 		builder.addAttribute( new QName( "terminating", null, null ), ( watchdog.isTerminating() ? "true" : "false" ) );
+		builder.addAttribute( new QName( "cpuTime", null, null ), String.valueOf( watchdog.getCpuTime() ) );
+		builder.addAttribute( new QName( "pagesRead", null, null ), String.valueOf( watchdog.getPagesRead() ) );
+		builder.addAttribute( new QName( "constructedNodes", null, null ), String.valueOf( watchdog.getConstructedNodes() ) );
+		if( watchdog.getKillReason() != null ) {
+			builder.addAttribute( new QName( "killReason", null, null ), watchdog.getKillReason().name() );
+		}
 		
 		builder.startElement( new QName( "sourceKey", NAMESPACE_URI, PREFIX ), null );
 		builder.characters( context.getXacmlSource().getKey() );
@@ -211,21 +211,9 @@ public class MatchRegexp extends Function implements Optimizable {
         final boolean matchAll = getMatchFlag(flagsExpr, contextSequence);
         final List<String> terms = getSearchTerms(termsExpr, contextSequence);
 
-        // lookup the terms in the fulltext index. returns one node set for each term
-        final NodeSet[] hits = getMatches(contextSequence.getDocumentSet(),
+        // lookup the terms in the fulltext index and compute the combined node set
+        preselectResult = getCombinedMatches(contextSequence.getDocumentSet(),
                 useContext ? contextSequence.toNodeSet() : null, NodeSet.DESCENDANT, contextQName, terms, matchAll);
-        // walk through the matches and compute the combined node set
-        preselectResult = hits[0];
-        if (preselectResult != null) {
-            for(int k = 1; k < hits.length; k++) {
-                if(hits[k] != null) {
-                    preselectResult = (type == Constants.FULLTEXT_AND ? preselectResult.deepIntersection(hits[k])
-                            : preselectResult.union(hits[k]));
-                }
-            }
-        } else {
-            preselectResult = NodeSet.EMPTY_SET;
-        }
         return preselectResult;
     }
 
@@ -358,24 +346,20 @@ public class MatchRegexp extends Function implements Optimizable {
 		throws XPathException {
 		if(terms == null || terms.size() == 0)
 			{return Sequence.EMPTY_SEQUENCE;}	// no search terms
-        final NodeSet[] hits = getMatches(nodes.getDocumentSet(), nodes, NodeSet.ANCESTOR, contextQName, terms, matchAll);
-		NodeSet result = hits[0];
-		if(result != null) {
-			for(int k = 1; k < hits.length; k++) {
-				if(hits[k] != null)
-					{result = (type == Constants.FULLTEXT_AND ?
-							result.deepIntersection(hits[k]) : result.union(hits[k]));}
-			}
-			return result;
-		} else
-			{return NodeSet.EMPTY_SET;}
+        return getCombinedMatches(nodes.getDocumentSet(), nodes, NodeSet.ANCESTOR, contextQName, terms, matchAll);
 	}
 
-    protected NodeSet[] getMatches(DocumentSet docs, NodeSet contextSet, int axis, QName qname, List<String> terms, boolean matchAll)
+    /**
+     * Looks up the terms one after the other and combines their matches.
+     * For text:match-all, a term is only looked up in the documents matching
+     * all of the previous terms, and the lookup stops as soon as no document
+     * is left.
+     */
+    protected NodeSet getCombinedMatches(DocumentSet docs, NodeSet contextSet, int axis, QName qname, List<String> terms, boolean matchAll)
     throws XPathException {
-        final NodeSet hits[] = new NodeSet[terms.size()];
+        NodeSet result = null;
         for (int k = 0; k < terms.size(); k++) {
-            hits[k] =
+            final NodeSet hits =
                     context.getBroker().getTextEngine().getNodesContaining(
                             context,
                             docs,
@@ -383,9 +367,22 @@ public class MatchRegexp extends Function implements Optimizable {
                             qname, terms.get(k),
                             DBBroker.MATCH_REGEXP, matchAll);
             if (LOG.isDebugEnabled())
-            	{LOG.debug("Matches for " + terms.get(k) + ": " + hits[k].getLength());}
+            	{LOG.debug("Matches for " + terms.get(k) + ": " + (hits == null ? 0 : hits.getLength()));}
+            if (k == 0) {
+                if (hits == null)
+                    {return NodeSet.EMPTY_SET;}
+                result = hits;
+            } else if (hits != null) {
+                result = type == Constants.FULLTEXT_AND ?
+                    result.deepIntersection(hits) : result.union(hits);
+            }
+            if (type == Constants.FULLTEXT_AND) {
+                if (result.isEmpty())
+                    {return NodeSet.EMPTY_SET;}
+                docs = result.getDocumentSet();
+            }
         }
-        return hits;
+        return result == null ? NodeSet.EMPTY_SET : result;
     }
 
 	protected int getTermDependencies() throws XPathException {
@@ -33,10 +33,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Iterator;
+import java.util.Set;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
@@ -87,6 +88,7 @@ import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
 import org.exist.xquery.value.Type;
 import org.exist.xquery.value.ValueSequence;
+import org.exist.xslt.TemplatesCache;
 import org.exist.xslt.TransformerFactoryAllocator;
 import org.exist.util.serializer.ReceiverToSAX;
 import org.exist.util.serializer.Receiver;
@@ -173,7 +175,6 @@ public class Transform extends BasicFunction {
             new SequenceType(Type.ITEM, Cardinality.EMPTY))
     };
 
-	private final Map<String, CachedStylesheet> cache = new HashMap<String, CachedStylesheet>();
     private boolean caching = true;
 
     private boolean stopOnError = true;
@@ -384,7 +385,7 @@ public class Transform extends BasicFunction {
 						factory.setURIResolver(new EXistURIResolver(root.getDocument().getCollection().getURI().toString()));
 					
 						final String uri = XmldbURI.XMLDB_URI_PREFIX + context.getBroker().getBrokerPool().getId() + "://" + root.getDocument().getURI();
-						templates = getSource(factory, uri);
+						templates = getSource(factory, uri, attributes);
 					}
 				}
 				if(templates == null)
@@ -420,7 +421,7 @@ public class Transform extends BasicFunction {
 				}
 
 				final String stylesheet = stylesheetItem.getStringValue();
-				templates = getSource(factory, stylesheet);
+				templates = getSource(factory, stylesheet, attributes);
 			}
 			handler = factory.newTransformerHandler(templates);
 			
@@ -495,7 +496,11 @@ public class Transform extends BasicFunction {
         }
     }
 
-	private Templates getSource(SAXTransformerFactory factory, String stylesheet) 
+	/**
+	 * Get the compiled stylesheet from the {@link TemplatesCache} of the database
+	 * or compile and cache it.
+	 */
+	private Templates getSource(SAXTransformerFactory factory, String stylesheet, Properties attributes) 
 	throws XPathException, TransformerConfigurationException {
 		String base;
 		if(stylesheet.indexOf(':') == Constants.STRING_NOT_FOUND) {
@@ -514,13 +519,56 @@ public class Transform extends BasicFunction {
 			{base = stylesheet.substring(0, p);}
 		else
 			{base = stylesheet;}
-		CachedStylesheet cached = (CachedStylesheet)cache.get(stylesheet);
+		final TemplatesCache cache = context.getBroker().getBrokerPool().getTemplatesCache();
+		final String key = TemplatesCache.getKey(factory, attributes, stylesheet);
 		try {
-			if(cached == null) {
-				cached = new CachedStylesheet(factory, stylesheet, base);
-				cache.put(stylesheet, cached);
+			if (stylesheet.startsWith(XmldbURI.EMBEDDED_SERVER_URI_PREFIX)) {
+				final String docPath = stylesheet.substring(XmldbURI.EMBEDDED_SERVER_URI_PREFIX.length());
+				DocumentImpl doc = null;
+				try {
+					doc = context.getBroker().getXMLResource(XmldbURI.create(docPath), Lock.READ_LOCK);
+					if (doc == null)
+						{throw new XPathException(this, "Stylesheet not found: " + stylesheet);}
+					final long lastModified = doc.getMetadata().getLastModified();
+					Templates templates = caching ? cache.get(key, lastModified) : null;
+					if (templates == null) {
+						final Set<XmldbURI> dependencies = new HashSet<XmldbURI>();
+						dependencies.add(doc.getURI());
+						templates = getSource(factory, doc, dependencies);
+						if (caching)
+							{cache.put(key, templates, lastModified, dependencies);}
+						else
+							{cache.compiled();}
+					}
+					return templates;
+				} catch (final PermissionDeniedException e) {
+					throw new XPathException(this, "Permission denied to read stylesheet: " + stylesheet);
+				} finally {
+					if (doc != null) {doc.getUpdateLock().release(Lock.READ_LOCK);}
+				}
+			} else {
+				final URL url = new URL(stylesheet);
+				final URLConnection connection = url.openConnection();
+				final long modified = connection.getLastModified();
+				// a modification time of 0 means unknown
+				Templates templates = caching && modified != 0 ? cache.get(key, modified) : null;
+				if (templates == null) {
+					LOG.debug("compiling stylesheet " + url.toString());
+					if (!base.startsWith(XmldbURI.EMBEDDED_SERVER_URI_PREFIX))
+						{factory.setURIResolver(new ExternalResolver(base));}
+					final InputStream is = connection.getInputStream();
+					try {
+						templates = factory.newTemplates(new StreamSource(is));
+					} finally {
+						is.close();
+					}
+					if (caching && modified != 0)
+						{cache.put(key, templates, modified, null);}
+					else
+						{cache.compiled();}
+				}
+				return templates;
 			}
-			return cached.getTemplates();
 		} catch (final MalformedURLException e) {
 			LOG.debug(e.getMessage(), e);
 			throw new XPathException(this, "Malformed URL for stylesheet: " + stylesheet, e);
@@ -529,6 +577,35 @@ public class Transform extends BasicFunction {
 		}
 	}
 	
+	/**
+	 * Compile a stylesheet stored in the database, recording the database
+	 * resources it includes or imports in dependencies.
+	 */
+	private Templates getSource(SAXTransformerFactory factory, DocumentImpl stylesheet, Set<XmldbURI> dependencies)
+	throws XPathException, TransformerConfigurationException {
+		factory.setURIResolver(new EXistURIResolver(stylesheet.getCollection().getURI().toString(), dependencies));
+        final TransformErrorListener errorListener = new TransformErrorListener();
+        factory.setErrorListener(errorListener);
+		final TemplatesHandler handler = factory.newTemplatesHandler();
+		try {
+			handler.startDocument();
+			final Serializer serializer = context.getBroker().getSerializer();
+			serializer.reset();
+			serializer.setSAXHandlers(handler, null);
+			serializer.toSAX(stylesheet);
+			handler.endDocument();
+			final Templates t = handler.getTemplates();
+            errorListener.checkForErrors();
+            return t;
+		} catch (final Exception e) {
+            if (e instanceof XPathException)
+                {throw (XPathException) e;}
+			throw new XPathException(this,
+				"An exception occurred while compiling the stylesheet: " + stylesheet.getURI() +
+                    ": " + e.getMessage(), e);
+		}
+	}
+	
 	private Templates getSource(SAXTransformerFactory factory, NodeValue stylesheetRoot) throws XPathException, TransformerConfigurationException
 	{
 		final TemplatesHandler handler = factory.newTemplatesHandler();
@@ -543,81 +620,6 @@ public class Transform extends BasicFunction {
 		}
 	}
 	
-	//TODO: revisit this class with XmldbURI in mind
-	private class CachedStylesheet {
-		
-		SAXTransformerFactory factory;
-		long lastModified = -1;
-		Templates templates = null;
-		String uri;
-		
-		public CachedStylesheet(SAXTransformerFactory factory, String uri, String baseURI) 
-		throws TransformerConfigurationException, IOException, XPathException {
-			this.factory = factory;
-			this.uri = uri;
-			if (!baseURI.startsWith(XmldbURI.EMBEDDED_SERVER_URI_PREFIX))
-				{factory.setURIResolver(new ExternalResolver(baseURI));}
-			getTemplates();
-		}
-		
-		public Templates getTemplates() throws TransformerConfigurationException, IOException, XPathException {
-			if (uri.startsWith(XmldbURI.EMBEDDED_SERVER_URI_PREFIX)) {
-				final String docPath = uri.substring(XmldbURI.EMBEDDED_SERVER_URI_PREFIX.length());
-				DocumentImpl doc = null;
-				try {
-					doc = context.getBroker().getXMLResource(XmldbURI.create(docPath), Lock.READ_LOCK);
-					if (!caching || (doc != null && (templates == null || doc.getMetadata().getLastModified() > lastModified)))
-						{templates = getSource(doc);}
-					lastModified = doc.getMetadata().getLastModified();
-				} catch (final PermissionDeniedException e) {
-					throw new XPathException(Transform.this, "Permission denied to read stylesheet: " + uri);
-				} finally {
-					if (doc != null) {doc.getUpdateLock().release(Lock.READ_LOCK);}
-				}
-			} else {
-				final URL url = new URL(uri);
-				final URLConnection connection = url.openConnection();
-				long modified = connection.getLastModified();
-				if(!caching || (templates == null || modified > lastModified || modified == 0)) {
-					LOG.debug("compiling stylesheet " + url.toString());
-                    final InputStream is = connection.getInputStream();
-                    try {
-                        templates = factory.newTemplates(new StreamSource(is));
-                    } finally {
-                        is.close();
-                    }
-				}
-				lastModified = modified;
-			}
-			return templates;
-		}
-		
-		private Templates getSource(DocumentImpl stylesheet)
-		throws XPathException, TransformerConfigurationException {
-			factory.setURIResolver(new EXistURIResolver(stylesheet.getCollection().getURI().toString()));
-            final TransformErrorListener errorListener = new TransformErrorListener();
-            factory.setErrorListener(errorListener);
-			final TemplatesHandler handler = factory.newTemplatesHandler();
-			try {
-				handler.startDocument();
-				final Serializer serializer = context.getBroker().getSerializer();
-				serializer.reset();
-				serializer.setSAXHandlers(handler, null);
-				serializer.toSAX(stylesheet);
-				handler.endDocument();
-				final Templates t = handler.getTemplates();
-                errorListener.checkForErrors();
-                return t;
-			} catch (final Exception e) {
-                if (e instanceof XPathException)
-                    {throw (XPathException) e;}
-				throw new XPathException(Transform.this,
-					"An exception occurred while compiling the stylesheet: " + stylesheet.getURI() +
-                        ": " + e.getMessage(), e);
-			}
-		}
-	}
-	
 	private class ExternalResolver implements URIResolver {
 		
 		private String baseURI;
@@ -650,8 +652,16 @@ public class Transform extends BasicFunction {
 		// Base path
 		String  	basePath;
 		
+		// Collects the database resources resolved, may be null
+		Set<XmldbURI> dependencies;
+		
 		public EXistURIResolver(String docPath) {
+			this(docPath, null);
+		}
+		
+		public EXistURIResolver(String docPath, Set<XmldbURI> dependencies) {
 			basePath = docPath;
+			this.dependencies = dependencies;
 			
 			LOG.debug("Database Resolver base path set to " + basePath);
 		}
@@ -763,6 +773,8 @@ public class Transform extends BasicFunction {
 				LOG.debug("Document " + path + " not found");
 			    throw new TransformerException("Resource " + path + " not found in database.");
 			}
+			if (dependencies != null)
+				{dependencies.add(xslDoc.getURI());}
 
 			final DOMSource source = new DOMSource(xslDoc);
 			source.setSystemId(uri.toASCIIString());
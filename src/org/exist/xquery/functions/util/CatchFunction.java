@@ -107,7 +107,7 @@ public class CatchFunction extends Function {
             }
 
 //            context.popDocumentContext();
-            context.getWatchDog().reset();
+            context.getWatchDog().resume();
 
             // Iterate over all exception parameters
             for (final SequenceIterator i = exceptionClasses.iterate(); i.hasNext();) {
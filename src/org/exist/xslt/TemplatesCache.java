@@ -0,0 +1,225 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2014 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ *  $Id$
+ */
+package org.exist.xslt;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+
+import org.apache.log4j.Logger;
+import org.exist.dom.DocumentImpl;
+import org.exist.dom.StoredNode;
+import org.exist.numbering.NodeId;
+import org.exist.storage.UpdateListener;
+import org.exist.xmldb.XmldbURI;
+
+/**
+ * Database-wide cache for compiled XSL stylesheets, shared by all queries.
+ *
+ * Entries are keyed by the stylesheet URI, the transformer factory and the factory
+ * attributes. For stylesheets stored in the database, the cache records every database
+ * resource read while compiling, i.e. the stylesheet and its xsl:include and xsl:import
+ * dependencies. The cache is subscribed to the {@link org.exist.storage.NotificationService}
+ * and drops an entry as soon as one of its resources is updated or removed.
+ *
+ * The number of entries is bounded; the least recently used entry is dropped if the
+ * cache is full.
+ */
+public class TemplatesCache implements UpdateListener {
+
+    private final static Logger LOG = Logger.getLogger(TemplatesCache.class);
+
+    public final static int DEFAULT_MAX_ENTRIES = 128;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final int maxEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public TemplatesCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public TemplatesCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Create the cache key for a stylesheet.
+     *
+     * @param factory the factory used to compile the stylesheet
+     * @param attributes the attributes set on the factory, may be null
+     * @param uri the absolute uri of the stylesheet
+     */
+    public static String getKey(TransformerFactory factory, Properties attributes, String uri) {
+        final StringBuilder key = new StringBuilder(uri);
+        key.append('|').append(factory.getClass().getName());
+        if (attributes != null && !attributes.isEmpty()) {
+            // sort to get the same key for the same attributes
+            for (final Map.Entry<Object, Object> attribute : new TreeMap<Object, Object>(attributes).entrySet()) {
+                key.append('|').append(attribute.getKey()).append('=').append(attribute.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get a compiled stylesheet.
+     *
+     * @param key the key created by {@link #getKey(TransformerFactory, Properties, String)}
+     * @param lastModified the last modification time of the stylesheet. A cached stylesheet
+     *  compiled from an older version is not returned.
+     * @return the compiled stylesheet or null if it needs to be compiled
+     */
+    public Templates get(String key, long lastModified) {
+        final Entry entry = entries.get(key);
+        if (entry == null || entry.lastModified < lastModified)
+            {return null;}
+        entry.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        return entry.templates;
+    }
+
+    /**
+     * Add a freshly compiled stylesheet.
+     *
+     * @param key the key created by {@link #getKey(TransformerFactory, Properties, String)}
+     * @param templates the compiled stylesheet
+     * @param lastModified the last modification time of the stylesheet
+     * @param dependencies the database resources read while compiling the stylesheet,
+     *  may be null for stylesheets loaded from outside the database
+     */
+    public void put(String key, Templates templates, long lastModified, Set<XmldbURI> dependencies) {
+        compilations.incrementAndGet();
+        if (maxEntries <= 0)
+            {return;}
+        if (entries.size() >= maxEntries && !entries.containsKey(key))
+            {evict();}
+        entries.put(key, new Entry(templates, lastModified, dependencies));
+    }
+
+    /**
+     * Count a compilation of a stylesheet which is not cached.
+     */
+    public void compiled() {
+        compilations.incrementAndGet();
+    }
+
+    private void evict() {
+        String oldest = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().lastAccess < oldestAccess) {
+                oldest = e.getKey();
+                oldestAccess = e.getValue().lastAccess;
+            }
+        }
+        if (oldest != null)
+            {entries.remove(oldest);}
+    }
+
+    /**
+     * Drop all stylesheets which depend on the given resource.
+     *
+     * @param uri the uri of a database resource
+     */
+    public void invalidate(XmldbURI uri) {
+        for (final Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+            final Entry entry = i.next();
+            if (entry.dependencies != null && entry.dependencies.contains(uri)) {
+                i.remove();
+                invalidations.incrementAndGet();
+                if (LOG.isDebugEnabled())
+                    {LOG.debug("Removed compiled stylesheet depending on " + uri);}
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public void documentUpdated(DocumentImpl document, int event) {
+        if (!entries.isEmpty())
+            {invalidate(document.getURI());}
+    }
+
+    @Override
+    public void nodeMoved(NodeId oldNodeId, StoredNode newNode) {
+        // not relevant
+    }
+
+    @Override
+    public void unsubscribe() {
+        clear();
+    }
+
+    @Override
+    public void debug() {
+        LOG.debug("TemplatesCache: " + entries.size() + " stylesheets");
+    }
+
+    private final static class Entry {
+
+        final Templates templates;
+        final long lastModified;
+        final Set<XmldbURI> dependencies;
+        volatile long lastAccess;
+
+        Entry(Templates templates, long lastModified, Set<XmldbURI> dependencies) {
+            this.templates = templates;
+            this.lastModified = lastModified;
+            this.dependencies = dependencies;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+}
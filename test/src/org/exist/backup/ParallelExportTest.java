@@ -0,0 +1,136 @@
+package org.exist.backup;
+
+import org.apache.commons.io.FileUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exports the same data sequentially and on several threads
+ * and compares the created backup directories.
+ */
+public class ParallelExportTest {
+
+    private final static XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("test-parallel-export");
+
+    private static BrokerPool pool;
+    private static File target;
+
+    @Test
+    public void exportParallel() throws Exception {
+        final File sequential = export(1);
+        final File parallel = export(3);
+        assertNotNull(sequential);
+        assertNotNull(parallel);
+
+        final List<String> expected = listFiles(sequential, "");
+        final List<String> actual = listFiles(parallel, "");
+        assertEquals(expected, actual);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(actual.contains("/db/test-parallel-export/c" + i + "/__contents__.xml"));
+            assertTrue(actual.contains("/db/test-parallel-export/c" + i + "/sub/doc.xml"));
+        }
+
+        final File contents = new File(parallel, "db/test-parallel-export/c3/doc1.xml");
+        assertEquals(FileUtils.readFileToString(new File(sequential, "db/test-parallel-export/c3/doc1.xml")),
+            FileUtils.readFileToString(contents));
+    }
+
+    private File export(int workers) throws Exception {
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            final SystemExport export = new SystemExport(broker, null, null, true);
+            export.setWorkers(workers);
+            return export.export(target.getAbsolutePath(), false, false, null);
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    private static List<String> listFiles(File dir, String path) {
+        final List<String> files = new ArrayList<String>();
+        final File[] children = dir.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                if (child.isDirectory())
+                    {files.addAll(listFiles(child, path + "/" + child.getName()));}
+                else if (path.length() > 0)
+                    {files.add(path + "/" + child.getName());}
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        target = new File(System.getProperty("java.io.tmpdir"), "exist-parallel-export");
+        FileUtils.deleteDirectory(target);
+
+        BrokerPool.configure(1, 5, new Configuration());
+        pool = BrokerPool.getInstance();
+
+        final TransactionManager transact = pool.getTransactionManager();
+        DBBroker broker = null;
+        Txn transaction = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            transaction = transact.beginTransaction();
+            for (int i = 0; i < 6; i++) {
+                final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI.append("c" + i));
+                broker.saveCollection(transaction, collection);
+                for (int j = 0; j < 5; j++) {
+                    final String xml = "<doc n='" + i + "-" + j + "'><p>Text " + j + "</p></doc>";
+                    final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc" + j + ".xml"), xml);
+                    collection.store(transaction, broker, info, xml, false);
+                }
+                final Collection sub = broker.getOrCreateCollection(transaction, collection.getURI().append("sub"));
+                broker.saveCollection(transaction, sub);
+                final IndexInfo info = sub.validateXMLResource(transaction, broker, XmldbURI.create("doc.xml"), "<sub/>");
+                sub.store(transaction, broker, info, "<sub/>", false);
+            }
+            transact.commit(transaction);
+        } catch (final Exception e) {
+            transact.abort(transaction);
+            throw e;
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    @AfterClass
+    public static void shutdownDB() throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        DBBroker broker = null;
+        Txn transaction = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            transaction = transact.beginTransaction();
+            final Collection collection = broker.getCollection(TEST_COLLECTION_URI);
+            if (collection != null)
+                {broker.removeCollection(transaction, collection);}
+            transact.commit(transaction);
+        } finally {
+            pool.release(broker);
+        }
+        BrokerPool.stopAll(false);
+        pool = null;
+        FileUtils.deleteDirectory(target);
+    }
+}
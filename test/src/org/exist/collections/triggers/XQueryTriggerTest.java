@@ -77,6 +77,19 @@ public class XQueryTriggerTest {
 		"  </exist:triggers>" +
         "</exist:collection>";    
 
+    private final static String ASYNC_COLLECTION_CONFIG =
+    	"<exist:collection xmlns:exist='http://exist-db.org/collection-config/1.0'>" +
+	    "  <exist:triggers>" +
+		"     <exist:trigger class='org.exist.collections.triggers.XQueryTrigger'>" +
+		"	     <exist:parameter " +
+		"			name='url' " +
+		"			value='" +XmldbURI.LOCAL_DB +  "/" + TEST_COLLECTION + "/" + MODULE_NAME + "' " +
+		"        />" +
+		"	     <exist:parameter name='async' value='yes'/>" +
+		"     </exist:trigger>" +
+		"  </exist:triggers>" +
+        "</exist:collection>";    
+
     private final static String EMPTY_COLLECTION_CONFIG =
     	"<exist:collection xmlns:exist='http://exist-db.org/collection-config/1.0'>" +
         "</exist:collection>";    
@@ -340,6 +353,41 @@ public class XQueryTriggerTest {
 //	        assertXMLEqual(DOCUMENT_CONTENT, ((XMLResource)result.getResource(0)).getContent().toString());
     }
 
+    /** test an asynchronous trigger fired by storing new Documents */
+    @Test
+    public void documentCreateAsync() throws XMLDBException, InterruptedException {
+        final IndexQueryService idxConf = (IndexQueryService)
+        testCollection.getService("IndexQueryService", "1.0");
+        idxConf.configureCollection(ASYNC_COLLECTION_CONFIG);
+
+        for (int i = 0; i < 3; i++) {
+            final XMLResource doc = (XMLResource) testCollection.createResource("async" + i + ".xml", "XMLResource" );
+            doc.setContent(DOCUMENT_CONTENT);
+            testCollection.storeResource(doc);
+        }
+
+        final XPathQueryService service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+
+        // "before" events are still fired synchronously
+        ResourceSet result = service.query(BEFORE+CREATE+DOCUMENT);
+        assertEquals(3, result.getSize());
+
+        // wait for the "after" events to be delivered
+        for (int i = 0; i < 50; i++) {
+            result = service.query(AFTER+CREATE+DOCUMENT);
+            if (result.getSize() == 3)
+                {break;}
+            Thread.sleep(100);
+        }
+        idxConf.configureCollection(EMPTY_COLLECTION_CONFIG);
+
+        assertEquals(3, result.getSize());
+        for (int i = 0; i < 3; i++) {
+            result = service.query(AFTER+CREATE+DOCUMENT+"[uri/text() = '/db/testXQueryTrigger/async" + i + ".xml']");
+            assertEquals(1, result.getSize());
+        }
+    }
+
     /** test a trigger fired by a Document Update */
     @Test
     public void documentUpdate() throws XMLDBException {
@@ -12,9 +12,11 @@ import static org.easymock.EasyMock.captureInt;
 import static org.easymock.EasyMock.capture;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 import org.exist.EXistException;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * @author Adam Retter <adam@exist-db.org>
@@ -187,4 +189,40 @@ public class SymbolTableTest {
 
         symbolTable.close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void concurrent_registration_returns_unique_ids() throws Exception {
+        final File dir = new File(tmpDir, "symbols-concurrent");
+        dir.mkdirs();
+        new File(dir, SymbolTable.getFileName()).delete();
+        final SymbolTable symbolTable = new SymbolTable(null, dir);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        final String name = "name-" + i;
+                        final short id = symbolTable.getSymbol(name);
+                        if (!name.equals(symbolTable.getName(id)))
+                            {error.set(name + " -> " + id + " -> " + symbolTable.getName(id));}
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        symbolTable.close();
+        assertNull(error.get());
+
+        final SymbolTable reloaded = new SymbolTable(null, dir);
+        for (int i = 0; i < 500; i++) {
+            assertEquals("name-" + i, reloaded.getName(reloaded.getSymbol("name-" + i)));
+        }
+        assertEquals(500, reloaded.getSymbol("name-new") - 1);
+        reloaded.close();
+    }
+}
@@ -552,6 +552,68 @@ public class RESTServiceTest {
         doStoredQuery(true, true);
     }
     
+    @Test
+    public void getBinaryRange() throws IOException {
+        final String data = "0123456789abcdefghijklmnopqrstuvwxyz";
+        doPut(data, "range.txt", 201);
+        final String uri = COLLECTION_URI + "/range.txt";
+
+        HttpURLConnection connect = getConnection(uri);
+        connect.setRequestProperty("Authorization", "Basic " + credentials);
+        connect.connect();
+        int r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 200, r);
+        assertEquals("bytes", connect.getHeaderField("Accept-Ranges"));
+        final String etag = connect.getHeaderField("ETag");
+        assertNotNull(etag);
+        assertEquals(data, readResponse(connect.getInputStream()).trim());
+
+        // conditional GET
+        connect = getConnection(uri);
+        connect.setRequestProperty("Authorization", "Basic " + credentials);
+        connect.setRequestProperty("If-None-Match", etag);
+        connect.connect();
+        r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 304, r);
+
+        // byte range
+        connect = getConnection(uri);
+        connect.setRequestProperty("Authorization", "Basic " + credentials);
+        connect.setRequestProperty("Range", "bytes=10-15");
+        connect.connect();
+        r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 206, r);
+        assertEquals("bytes 10-15/" + data.length(), connect.getHeaderField("Content-Range"));
+        assertEquals("abcdef", readResponse(connect.getInputStream()).trim());
+
+        // suffix range
+        connect = getConnection(uri);
+        connect.setRequestProperty("Authorization", "Basic " + credentials);
+        connect.setRequestProperty("Range", "bytes=-3");
+        connect.connect();
+        r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 206, r);
+        assertEquals("xyz", readResponse(connect.getInputStream()).trim());
+
+        // range beyond the end of the resource
+        connect = getConnection(uri);
+        connect.setRequestProperty("Authorization", "Basic " + credentials);
+        connect.setRequestProperty("Range", "bytes=100-");
+        connect.connect();
+        r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 416, r);
+
+        // the client's copy is outdated: send the complete resource
+        connect = getConnection(uri);
+        connect.setRequestProperty("Authorization", "Basic " + credentials);
+        connect.setRequestProperty("Range", "bytes=10-15");
+        connect.setRequestProperty("If-Range", "\"outdated\"");
+        connect.connect();
+        r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 200, r);
+        assertEquals(data, readResponse(connect.getInputStream()).trim());
+    }
+
     private void doPut(String data, String path, int responseCode) throws IOException {
         HttpURLConnection connect = getConnection(COLLECTION_URI + '/' + path);
         connect.setRequestProperty("Authorization", "Basic " + credentials);
@@ -26,12 +26,16 @@ import junit.textui.TestRunner;
 
 import org.exist.storage.btree.Value;
 import org.exist.storage.index.BFile;
+import org.exist.storage.io.VariableByteInput;
+import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.txn.TransactionManager;
 import org.exist.storage.txn.Txn;
 import org.exist.util.Configuration;
 import org.exist.util.FixedByteArray;
 
+import java.util.Arrays;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
@@ -110,6 +114,70 @@ public class BFileOverflowTest extends TestCase {
         }
     }
     
+    public void testStream() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        TransactionManager mgr = pool.getTransactionManager();
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            BFile collectionsDb = (BFile)((NativeBroker)broker).getStorage(NativeBroker.COLLECTIONS_DBX_ID);
+
+            // write a value spanning several overflow pages: a list of variable byte
+            // encoded ints, followed by a block of raw bytes
+            VariableByteOutputStream os = new VariableByteOutputStream();
+            for (int i = 0; i < 20000; i++) {
+                os.writeInt(i);
+            }
+            int intsLen = os.position();
+            byte[] block = new byte[10000];
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (byte) i;
+            }
+            os.write(block);
+            os.writeInt(12345);
+
+            Value key = new Value("stream".getBytes());
+            Txn txn = mgr.beginTransaction();
+            collectionsDb.put(txn, key, os.data(), true);
+            mgr.commit(txn);
+
+            // read sequentially
+            VariableByteInput is = collectionsDb.getAsStream(key);
+            assertNotNull(is);
+            assertTrue(is instanceof BFile.PageInputStream);
+            for (int i = 0; i < 20000; i++) {
+                assertEquals(i, is.readInt());
+            }
+            byte[] buf = new byte[block.length];
+            assertEquals(buf.length, is.read(buf, 0, buf.length));
+            assertTrue(Arrays.equals(block, buf));
+            assertEquals(12345, is.readInt());
+
+            // skip across pages
+            is = collectionsDb.getAsStream(key);
+            is.skipBytes(intsLen);
+            Arrays.fill(buf, (byte) 0);
+            assertEquals(buf.length, is.read(buf, 0, buf.length));
+            assertTrue(Arrays.equals(block, buf));
+            assertEquals(12345, is.readInt());
+
+            // copy the ints to another stream
+            is = collectionsDb.getAsStream(key);
+            VariableByteOutputStream copy = new VariableByteOutputStream();
+            is.copyTo(copy, 20000);
+            assertTrue(Arrays.equals(Arrays.copyOf(os.toByteArray(), intsLen), copy.toByteArray()));
+
+            txn = mgr.beginTransaction();
+            collectionsDb.remove(txn, key);
+            mgr.commit(txn);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        } finally {
+            pool.release(broker);
+        }
+    }
+
     protected void setUp() {
         try {
             Configuration config = new Configuration();
@@ -164,7 +164,7 @@ public class BTreeRecoverTest extends TestCase {
 //        	NodeId id = pool.getNodeFactory().createFromData(data[value.start() + 4], data, value.start() + 5);
 //            System.out.println(id + " -> " + pointer);
             count++;
-            return false;
+            return true;
         }
     }
 }
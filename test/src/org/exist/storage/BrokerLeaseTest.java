@@ -0,0 +1,162 @@
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.util.Configuration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BrokerLeaseTest {
+
+    private static BrokerPool pool;
+
+    @Test
+    public void handOverBetweenThreads() throws Exception {
+        final BrokerLease lease = pool.lease(pool.getSecurityManager().getSystemSubject(), -1);
+        assertEquals(1, pool.countLeasedBrokers());
+        assertNull(lease.getOwner());
+
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final Thread worker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    final DBBroker broker = lease.attach();
+                    // nested calls return the leased broker
+                    final DBBroker nested = pool.get(null);
+                    try {
+                        result.set(nested == broker && pool.getActiveBroker() == broker ? Boolean.TRUE : Boolean.FALSE);
+                    } finally {
+                        pool.release(nested);
+                    }
+                    lease.detach();
+                } catch (final Exception e) {
+                    result.set(e);
+                }
+            }
+        };
+        worker.start();
+        worker.join();
+        assertEquals(Boolean.TRUE, result.get());
+        assertNull(lease.getOwner());
+
+        assertSame(lease.getBroker(), lease.attach());
+        assertSame(Thread.currentThread(), lease.getOwner());
+        lease.close();
+        assertTrue(lease.isClosed());
+        assertEquals(0, pool.countLeasedBrokers());
+
+        // the broker is no longer bound to this thread
+        final DBBroker broker = pool.get(null);
+        try {
+            assertEquals(1, broker.getReferenceCount());
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    @Test
+    public void attachedOnlyOnce() throws Exception {
+        final BrokerLease lease = pool.lease(null, -1);
+        try {
+            lease.attach();
+            final AtomicReference<Exception> error = new AtomicReference<Exception>();
+            final Thread other = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        lease.attach();
+                    } catch (final EXistException e) {
+                        error.set(e);
+                    }
+                }
+            };
+            other.start();
+            other.join();
+            assertNotNull(error.get());
+        } finally {
+            lease.close();
+        }
+        try {
+            lease.attach();
+            fail("closed lease must not be attached");
+        } catch (final EXistException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        final List<BrokerLease> leases = new ArrayList<BrokerLease>();
+        try {
+            for (int i = 0; i < pool.getMax(); i++) {
+                leases.add(pool.lease(null, 1000));
+            }
+            final long start = System.currentTimeMillis();
+            try {
+                leases.add(pool.lease(null, 200));
+                fail("no broker should be available");
+            } catch (final EXistException e) {
+                assertTrue(System.currentTimeMillis() - start >= 200);
+            }
+        } finally {
+            for (final BrokerLease lease : leases) {
+                lease.close();
+            }
+        }
+        assertEquals(0, pool.countLeasedBrokers());
+        pool.lease(null, 0).close();
+    }
+
+    @Test
+    public void interruptedWhileWaiting() throws Exception {
+        final List<BrokerLease> leases = new ArrayList<BrokerLease>();
+        try {
+            for (int i = 0; i < pool.getMax(); i++) {
+                leases.add(pool.lease(null, 1000));
+            }
+            final AtomicReference<Object> result = new AtomicReference<Object>();
+            final Thread waiting = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        pool.release(pool.get(null));
+                        result.set(Boolean.FALSE);
+                    } catch (final EXistException e) {
+                        // the interrupt must not be lost
+                        result.set(Thread.currentThread().isInterrupted() ? e : Boolean.FALSE);
+                    }
+                }
+            };
+            waiting.start();
+            waiting.interrupt();
+            waiting.join(5000);
+            assertFalse(waiting.isAlive());
+            assertTrue(result.get() instanceof EXistException);
+        } finally {
+            for (final BrokerLease lease : leases) {
+                lease.close();
+            }
+        }
+        assertEquals(0, pool.countLeasedBrokers());
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        final Configuration config = new Configuration();
+        BrokerPool.configure(1, 3, config);
+        pool = BrokerPool.getInstance();
+    }
+
+    @AfterClass
+    public static void shutdownDB() {
+        BrokerPool.stopAll(false);
+        pool = null;
+    }
+}
@@ -0,0 +1,180 @@
+package org.exist.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Creates a full and an incremental raw data backup, restores them and
+ * compares the restored files with the database files.
+ */
+public class DataBackupTest {
+
+    private final static XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("test-databackup");
+
+    private static BrokerPool pool;
+    private static File backupDir;
+
+    @Test
+    public void incrementalBackup() throws Exception {
+        final DataBackup task = new DataBackup();
+        final Properties properties = new Properties();
+        properties.setProperty("output-dir", backupDir.getAbsolutePath());
+        properties.setProperty("incremental", "yes");
+        task.configure(pool.getConfiguration(), properties);
+
+        store(0, 20);
+        final File full = backup(task);
+        assertFalse(full.getName().endsWith("-inc.zip"));
+
+        store(20, 25);
+        final File increment = backup(task);
+        assertTrue(increment.getName().endsWith("-inc.zip"));
+        assertTrue(hasEntry(increment, "dom.dbx" + Paged.CHANGED_PAGES_SUFFIX));
+        assertFalse(hasEntry(increment, "dom.dbx"));
+        assertTrue(increment.length() < full.length());
+
+        final File restored = new File(backupDir, "restored");
+        DataBackup.restore(restored, new File[] { full, increment });
+
+        final File dataDir = new File((String) pool.getConfiguration().getProperty(BrokerPool.PROPERTY_DATA_DIR));
+        for (final String name : new String[] { "dom.dbx", "collections.dbx", "structure.dbx" }) {
+            assertTrue(name, Arrays.equals(FileUtils.readFileToByteArray(new File(dataDir, name)),
+                FileUtils.readFileToByteArray(new File(restored, name))));
+        }
+    }
+
+    @Test
+    public void fullBackupAfterFailure() throws Exception {
+        final File outputDir = new File(backupDir, "failing");
+        final DataBackup task = new DataBackup();
+        final Properties properties = new Properties();
+        properties.setProperty("output-dir", outputDir.getAbsolutePath());
+        properties.setProperty("incremental", "yes");
+        task.configure(pool.getConfiguration(), properties);
+
+        store(30, 35);
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            task.execute(broker);
+            // let the next backup fail
+            FileUtils.deleteDirectory(outputDir);
+            task.execute(broker);
+            assertFalse(outputDir.exists());
+
+            outputDir.mkdirs();
+            task.execute(broker);
+        } finally {
+            pool.release(broker);
+        }
+        final File[] files = outputDir.listFiles();
+        assertEquals(1, files.length);
+        assertFalse(files[0].getName().endsWith("-inc.zip"));
+    }
+
+    private File backup(DataBackup task) throws Exception {
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            broker.sync(Sync.MAJOR_SYNC);
+            task.execute(broker);
+        } finally {
+            pool.release(broker);
+        }
+        File last = null;
+        for (final File f : backupDir.listFiles()) {
+            if (f.getName().endsWith(".zip") && (last == null || f.lastModified() >= last.lastModified()))
+                {last = f;}
+        }
+        // make sure the next backup gets a different name
+        Thread.sleep(20);
+        return last;
+    }
+
+    private boolean hasEntry(File archive, String name) throws Exception {
+        final ZipFile zip = new ZipFile(archive);
+        try {
+            for (final Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                if (e.nextElement().getName().equals(name))
+                    {return true;}
+            }
+            return false;
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void store(int start, int end) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        DBBroker broker = null;
+        Txn transaction = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            transaction = transact.beginTransaction();
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            for (int i = start; i < end; i++) {
+                final StringBuilder xml = new StringBuilder("<doc n='" + i + "'>");
+                for (int j = 0; j < 50; j++) {
+                    xml.append("<p>Paragraph ").append(j).append("</p>");
+                }
+                xml.append("</doc>");
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc" + i + ".xml"), xml.toString());
+                collection.store(transaction, broker, info, xml.toString(), false);
+            }
+            transact.commit(transaction);
+        } catch (final Exception e) {
+            transact.abort(transaction);
+            throw e;
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        backupDir = new File(System.getProperty("java.io.tmpdir"), "exist-databackup");
+        FileUtils.deleteDirectory(backupDir);
+        BrokerPool.configure(1, 5, new Configuration());
+        pool = BrokerPool.getInstance();
+    }
+
+    @AfterClass
+    public static void shutdownDB() throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        DBBroker broker = null;
+        Txn transaction = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            transaction = transact.beginTransaction();
+            final Collection collection = broker.getCollection(TEST_COLLECTION_URI);
+            if (collection != null)
+                {broker.removeCollection(transaction, collection);}
+            transact.commit(transaction);
+        } finally {
+            pool.release(broker);
+        }
+        BrokerPool.stopAll(false);
+        pool = null;
+        FileUtils.deleteDirectory(backupDir);
+    }
+}
@@ -162,6 +162,61 @@ public class BTreeTest {
         System.out.println("------------------ testStrings: END -------------------------");
     }
 
+    @Test
+    public void cancelQuery() {
+        System.out.println("------------------ cancelQuery: START -------------------------");
+        BTree btree = null;
+        try {
+            btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file, 0.1);
+            btree.create((short) -1);
+
+            String prefixStr = "C";
+            for (int i = 1; i <= COUNT; i++) {
+                Value value = new Value(prefixStr + Integer.toString(i));
+                btree.addValue(value, i);
+            }
+            btree.flush();
+
+            // stop after a number of keys which spans several leaf pages
+            int limit = COUNT / 4;
+            System.out.println("Testing IndexQuery.TRUNC_RIGHT");
+            IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.query(query, new LimitCallback(limit));
+            assertEquals(limit, count);
+
+            System.out.println("Testing IndexQuery.GT");
+            query = new IndexQuery(IndexQuery.GT, new Value(prefixStr));
+            btree.query(query, new LimitCallback(limit));
+            assertEquals(limit, count);
+
+            System.out.println("Testing IndexQuery.RANGE");
+            query = new IndexQuery(IndexQuery.RANGE, new Value(prefixStr + "1"), new Value(prefixStr + "9"));
+            btree.query(query, new LimitCallback(limit));
+            assertEquals(limit, count);
+
+            System.out.println("Testing IndexQuery.NEQ");
+            query = new IndexQuery(IndexQuery.NEQ, new Value(prefixStr + "10"));
+            btree.query(query, new LimitCallback(1));
+            assertEquals(1, count);
+        } catch (DBException e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        } catch (TerminatedException e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        } finally {
+            if (btree != null)
+                try {
+                    btree.close();
+                } catch (DBException e) {
+                }
+        }
+        System.out.println("------------------ cancelQuery: END -------------------------");
+    }
+
     @Test
     public void longStrings() {
         // Test storage of long keys up to half of the page size (4k)
@@ -484,7 +539,7 @@ public class BTreeTest {
         
         public boolean indexInfo(Value value, long pointer) throws TerminatedException {
             count++;
-            return false;
+            return true;
         }
     }
 
@@ -500,7 +555,7 @@ public class BTreeTest {
 //            XMLString key = UTF8.decode(value.data(), value.start() + 4, value.getLength() - 4);
 //            System.out.println(prefix + " : " + key);
             count++;
-            return false;
+            return true;
         }
     }
 
@@ -515,7 +570,22 @@ public class BTreeTest {
 			XMLString key = UTF8.decode(value.data(), value.start(), value.getLength());
 //            System.out.println("\"" + key + "\": " + count);
             count++;
-            return false;
+            return true;
+        }
+    }
+
+    private final class LimitCallback implements BTreeCallback {
+
+        private final int limit;
+
+        public LimitCallback(int limit) {
+            this.limit = limit;
+            count = 0;
+        }
+
+        public boolean indexInfo(Value value, long pointer) throws TerminatedException {
+            count++;
+            return count < limit;
         }
     }
 
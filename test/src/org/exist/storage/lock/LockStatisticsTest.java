@@ -0,0 +1,75 @@
+package org.exist.storage.lock;
+
+import org.exist.util.LockException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LockStatisticsTest {
+
+    @Before
+    public void enable() {
+        LockStatistics.RESOURCE.reset();
+        LockStatistics.setEnabled(true);
+    }
+
+    @After
+    public void disable() {
+        LockStatistics.setEnabled(false);
+    }
+
+    @Test
+    public void contendedWriteLock() throws Exception {
+        final Lock lock = new MultiReadReentrantLock("test");
+        lock.acquire(Lock.WRITE_LOCK);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    lock.acquire(Lock.WRITE_LOCK);
+                    lock.release(Lock.WRITE_LOCK);
+                } catch (final LockException e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+        other.start();
+        started.await();
+        Thread.sleep(100);
+        lock.release(Lock.WRITE_LOCK);
+        other.join();
+
+        assertEquals(1, LockStatistics.RESOURCE.getWaits());
+        assertTrue(LockStatistics.RESOURCE.getMaxWaitTime() >= 50);
+        assertEquals(2, LockStatistics.RESOURCE.getExclusiveHolds());
+        assertTrue(LockStatistics.RESOURCE.getMaxExclusiveHoldTime() >= 50);
+        assertEquals(0, LockStatistics.RESOURCE.getDeadlocks());
+    }
+
+    @Test
+    public void uncontendedReadLock() throws Exception {
+        final Lock lock = new MultiReadReentrantLock("test");
+        lock.acquire(Lock.READ_LOCK);
+        lock.acquire(Lock.READ_LOCK);
+        lock.release(Lock.READ_LOCK);
+        lock.release(Lock.READ_LOCK);
+        assertEquals(0, LockStatistics.RESOURCE.getWaits());
+        assertEquals(0, LockStatistics.RESOURCE.getExclusiveHolds());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        LockStatistics.setEnabled(false);
+        final Lock lock = new MultiReadReentrantLock("test");
+        lock.acquire(Lock.WRITE_LOCK);
+        lock.release(Lock.WRITE_LOCK);
+        assertEquals(0, LockStatistics.RESOURCE.getExclusiveHolds());
+    }
+}
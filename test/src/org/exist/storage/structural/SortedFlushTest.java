@@ -0,0 +1,126 @@
+package org.exist.storage.structural;
+
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.DocumentImpl;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stores many documents in one transaction and checks that the structural index
+ * keys, which are sorted and written when each document is flushed, are visible
+ * as soon as the document is stored, to the storing broker as well as to other
+ * brokers, before and after the commit.
+ */
+public class SortedFlushTest {
+
+    private final static XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("test-sorted-flush");
+
+    private final static String COUNT_QUERY = "count(collection('" + TEST_COLLECTION_URI + "')//p)";
+
+    private static BrokerPool pool;
+
+    @Test
+    public void storeInOneTransaction() throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        DBBroker broker = null;
+        Txn transaction = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            transaction = transact.beginTransaction();
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            transact.commit(transaction);
+
+            transaction = transact.beginTransaction();
+            for (int i = 0; i < 30; i++) {
+                final String xml = "<doc n='" + i + "'><p>one</p><p>two</p></doc>";
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc" + i + ".xml"), xml);
+                collection.store(transaction, broker, info, xml, false);
+            }
+            // the keys must be visible to the transaction itself and to other brokers
+            assertEquals(60, count(broker));
+            assertEquals(60, countFromOtherBroker());
+            transact.commit(transaction);
+            assertEquals(60, count(broker));
+
+            transaction = transact.beginTransaction();
+            final DocumentImpl doc = collection.getDocument(broker, XmldbURI.create("doc0.xml"));
+            collection.removeXMLResource(transaction, broker, doc.getFileURI());
+            transact.commit(transaction);
+            assertEquals(58, count(broker));
+        } catch (final Exception e) {
+            transact.abort(transaction);
+            throw e;
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    private int countFromOtherBroker() throws Exception {
+        final int[] count = new int[] { -1 };
+        final Exception[] error = new Exception[1];
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                DBBroker broker = null;
+                try {
+                    broker = pool.get(pool.getSecurityManager().getSystemSubject());
+                    count[0] = count(broker);
+                } catch (final Exception e) {
+                    error[0] = e;
+                } finally {
+                    pool.release(broker);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        if (error[0] != null)
+            {throw error[0];}
+        return count[0];
+    }
+
+    private int count(DBBroker broker) throws Exception {
+        final XQuery xquery = broker.getXQueryService();
+        final Sequence result = xquery.execute(COUNT_QUERY, null, AccessContext.TEST);
+        return Integer.parseInt(result.itemAt(0).getStringValue());
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        BrokerPool.configure(1, 5, new Configuration());
+        pool = BrokerPool.getInstance();
+    }
+
+    @AfterClass
+    public static void shutdownDB() throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        DBBroker broker = null;
+        Txn transaction = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            transaction = transact.beginTransaction();
+            final Collection collection = broker.getCollection(TEST_COLLECTION_URI);
+            if (collection != null)
+                {broker.removeCollection(transaction, collection);}
+            transact.commit(transaction);
+        } finally {
+            pool.release(broker);
+        }
+        BrokerPool.stopAll(false);
+        pool = null;
+    }
+}
@@ -733,6 +733,40 @@ public class CachingFilterInputStreamTest {
         assertEquals(testData.length - 2, cfis.available());
     }
 
+
+    @Test
+    public void readBytes_twiceFromCache() throws IOException, InstantiationException, IllegalAccessException {
+
+        final String testString = "helloWorld";
+        final byte testData[] = testString.getBytes();
+
+        InputStream is = new ByteArrayInputStream(testData);
+
+        CachingFilterInputStream cfis = new CachingFilterInputStream(getNewCache(), is);
+
+        //mark the start of the stream
+        cfis.mark(Integer.MAX_VALUE);
+
+        //read the first byte, reset and read the whole stream, partly from the cache
+        assertEquals(testData[0], cfis.read());
+        cfis.reset();
+        byte result[] = new byte[testData.length];
+        assertEquals(testData.length, cfis.read(result));
+        assertArrayEquals(testData, result);
+
+        //reset and read the whole stream again from the cache
+        cfis.reset();
+        result = new byte[testData.length];
+        assertEquals(testData.length, cfis.read(result));
+        assertArrayEquals(testData, result);
+
+        //reset and read single bytes from the cache
+        cfis.reset();
+        assertEquals(testData[0], cfis.read());
+        assertEquals(testData[1], cfis.read());
+        cfis.reset();
+        assertEquals(testData[0], cfis.read());
+    }
     
 
     private byte[] subArray(byte data[], int len) {
@@ -0,0 +1,94 @@
+package org.exist.util.serializer;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SerializerPoolTest {
+
+    /**
+     * Make sure the pool doesn't keep more idle objects than allowed.
+     */
+    @Test
+    public void bounded() {
+        final SerializerPool pool = new SerializerPool(new SerializerObjectFactory(), 5, 1);
+        final Object serializers[] = new Object[20];
+        for (int i = 0; i < serializers.length; i++) {
+            serializers[i] = pool.borrowObject(SAXSerializer.class);
+        }
+        assertEquals(20, pool.getNumActive());
+        assertEquals(20, pool.getCreatedCount());
+        for (int i = 0; i < serializers.length; i++) {
+            pool.returnObject(serializers[i]);
+        }
+        assertEquals(0, pool.getNumActive());
+        assertEquals(5, pool.getNumIdle(SAXSerializer.class));
+        assertEquals(15, pool.getDiscardedCount());
+
+        final Object serializer = pool.borrowObject(SAXSerializer.class);
+        assertSame(serializers[0], serializer);
+        assertEquals(20, pool.getCreatedCount());
+        assertEquals(21, pool.getBorrowedCount());
+    }
+
+    @Test
+    public void keyedByClass() {
+        final SerializerPool pool = new SerializerPool(new SerializerObjectFactory(), 5, 1);
+        pool.returnObject(pool.borrowObject(SAXSerializer.class));
+        assertTrue(pool.borrowObject(DOMStreamer.class) instanceof DOMStreamer);
+        assertTrue(pool.borrowObject(SAXSerializer.class) instanceof SAXSerializer);
+    }
+
+    @Test
+    public void concurrentAccess() throws InterruptedException {
+        final SerializerPool pool = new SerializerPool(new SerializerObjectFactory(), 4, 1);
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            final Object serializer = pool.borrowObject(SAXSerializer.class);
+                            if (!(serializer instanceof SAXSerializer))
+                                {errors.incrementAndGet();}
+                            pool.returnObject(serializer);
+                        }
+                    } catch (final Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(0, errors.get());
+        assertEquals(0, pool.getNumActive());
+        assertTrue(pool.getNumIdle(SAXSerializer.class) <= 4);
+        assertEquals(8000, pool.getBorrowedCount());
+    }
+
+    @Test
+    public void clearDestroysIdleObjects() throws Exception {
+        final AtomicInteger destroyed = new AtomicInteger();
+        final SerializerPool pool = new SerializerPool(new SerializerObjectFactory() {
+            @Override
+            public void destroyObject(Object key, Object obj) throws Exception {
+                destroyed.incrementAndGet();
+            }
+        }, 5, 1);
+        final Object serializer = pool.borrowObject(SAXSerializer.class);
+        pool.returnObject(pool.borrowObject(DOMStreamer.class));
+        pool.returnObject(pool.borrowObject(SAXSerializer.class));
+        pool.clear();
+        assertEquals(2, destroyed.get());
+        assertEquals(0, pool.getNumIdle());
+        pool.returnObject(serializer);
+        assertEquals(1, pool.getNumIdle(SAXSerializer.class));
+    }
+}
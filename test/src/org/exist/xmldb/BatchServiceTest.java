@@ -0,0 +1,144 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2014 The eXist-db Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software Foundation
+ *  Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ *  $Id$
+ */
+package org.exist.xmldb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.Resource;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.BinaryResource;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+
+import static org.junit.Assert.*;
+import static org.exist.xmldb.XmldbLocalTests.*;
+
+public class BatchServiceTest {
+
+    private final static String TEST_COLLECTION = "testBatchService";
+
+    private Collection testCollection;
+
+    @Test
+    public void storeResources() throws Exception {
+        BatchService service = (BatchService) testCollection.getService("BatchService", "1.0");
+        service.setBatchSize(10);
+
+        List<Future<Resource>> futures = new ArrayList<Future<Resource>>();
+        for (int i = 0; i < 45; i++) {
+            XMLResource resource = (XMLResource) testCollection.createResource("doc" + i + ".xml", "XMLResource");
+            resource.setContent("<doc n=\"" + i + "\"/>");
+            futures.add(service.storeResource(resource));
+        }
+        BinaryResource binary = (BinaryResource) testCollection.createResource("data.bin", "BinaryResource");
+        binary.setContent(new byte[] { 1, 2, 3 });
+        futures.add(service.storeResource(binary));
+
+        service.flush();
+
+        for (Future<Resource> future : futures) {
+            assertTrue(future.isDone());
+            assertNotNull(future.get());
+        }
+        assertEquals(46, testCollection.getResourceCount());
+        XMLResource doc = (XMLResource) testCollection.getResource("doc44.xml");
+        assertNotNull(doc);
+        assertTrue(doc.getContent().toString().contains("n=\"44\""));
+    }
+
+    @Test
+    public void failedBatch() throws Exception {
+        BatchService service = (BatchService) testCollection.getService("BatchService", "1.0");
+        service.setBatchSize(3);
+
+        List<Future<Resource>> futures = new ArrayList<Future<Resource>>();
+        for (int i = 0; i < 3; i++) {
+            XMLResource resource = (XMLResource) testCollection.createResource("ok" + i + ".xml", "XMLResource");
+            resource.setContent("<ok/>");
+            futures.add(service.storeResource(resource));
+        }
+        XMLResource good = (XMLResource) testCollection.createResource("good.xml", "XMLResource");
+        good.setContent("<good/>");
+        futures.add(service.storeResource(good));
+        XMLResource bad = (XMLResource) testCollection.createResource("bad.xml", "XMLResource");
+        bad.setContent("<not-well-formed>");
+        futures.add(service.storeResource(bad));
+        XMLResource later = (XMLResource) testCollection.createResource("later.xml", "XMLResource");
+        later.setContent("<later/>");
+        futures.add(service.storeResource(later));
+
+        try {
+            service.flush();
+            fail("Storing a malformed document should fail");
+        } catch (XMLDBException e) {
+            // expected
+        }
+
+        // the second batch stopped at the malformed document, the ones before it are stored
+        assertNotNull(futures.get(0).get());
+        assertNotNull(futures.get(3).get());
+        for (int i = 4; i < 6; i++) {
+            try {
+                futures.get(i).get();
+                fail("Resources from the malformed document on should fail");
+            } catch (ExecutionException e) {
+                // expected
+            }
+        }
+        assertNotNull(testCollection.getResource("ok2.xml"));
+        assertNotNull(testCollection.getResource("good.xml"));
+        assertNull(testCollection.getResource("bad.xml"));
+        assertNull(testCollection.getResource("later.xml"));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // initialize driver
+        Class<?> cl = Class.forName(DRIVER);
+        Database database = (Database) cl.newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        Collection root = DatabaseManager.getCollection(ROOT_URI, ADMIN_UID, ADMIN_PWD);
+        CollectionManagementService service = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = service.createCollection(TEST_COLLECTION);
+        assertNotNull(testCollection);
+    }
+
+    @After
+    public void tearDown() throws XMLDBException {
+        Collection root = DatabaseManager.getCollection(ROOT_URI, ADMIN_UID, ADMIN_PWD);
+        CollectionManagementService service = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        service.removeCollection(TEST_COLLECTION);
+        DatabaseInstanceManager mgr = (DatabaseInstanceManager) root.getService("DatabaseInstanceManager", "1.0");
+        mgr.shutdown();
+    }
+}
@@ -0,0 +1,119 @@
+package org.exist.xquery;
+
+import org.exist.TestUtils;
+import org.exist.xmldb.DatabaseInstanceManager;
+import org.exist.xmldb.XmldbURI;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XQueryService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests general comparisons between two larger sequences, which are
+ * evaluated as hash joins.
+ */
+public class HashJoinTest {
+
+    private final static String TEST_COLLECTION_NAME = "test-hashjoin";
+
+    private static Collection testCollection;
+
+    @Test
+    public void joinStoredNodes() throws XMLDBException {
+        final ResourceSet result = query("count(//order[@cust = //customer/@id])");
+        assertEquals("50", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void joinStoredNodesNoMatch() throws XMLDBException {
+        final ResourceSet result = query("count(//order[@cust = //customer/@name])");
+        assertEquals("0", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void joinStringValues() throws XMLDBException {
+        ResourceSet result = query("(for $i in 1 to 20 return concat('a', $i)) = (for $i in 15 to 40 return concat('a', $i))");
+        assertEquals("true", result.getResource(0).getContent());
+        result = query("(for $i in 1 to 20 return concat('a', $i)) = (for $i in 21 to 40 return concat('a', $i))");
+        assertEquals("false", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void joinNumericValues() throws XMLDBException {
+        ResourceSet result = query("(1, 2.0, 3) = (for $i in 3 to 20 return xs:double($i))");
+        assertEquals("true", result.getResource(0).getContent());
+        result = query("(-0.0, 100) = (0, 1, 2, 3, 4, 5, 6, 7, 8, 9)");
+        assertEquals("true", result.getResource(0).getContent());
+        result = query("(xs:double('NaN'), 100) = (xs:double('NaN'), 1, 2, 3, 4, 5, 6, 7, 8, 9)");
+        assertEquals("false", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void joinUntypedAgainstNumbers() throws XMLDBException {
+        final ResourceSet result = query("(<a>7</a>, <a>7.0</a>) = (for $i in 5 to 20 return $i)");
+        assertEquals("true", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void joinWithCollation() throws XMLDBException {
+        final ResourceSet result = query(
+            "declare default collation 'http://exist-db.org/collation?lang=en-US&amp;strength=primary';" +
+            "('HELLO', 'world') = ('a', 'b', 'c', 'd', 'e', 'f', 'g', 'hello')");
+        assertEquals("true", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void emptyLeftOperand() throws XMLDBException {
+        // the right operand must not be evaluated if there is nothing to compare
+        final ResourceSet result = query("count(//order[@nosuch = error(xs:QName('local:right'), 'right operand evaluated')])");
+        assertEquals("0", result.getResource(0).getContent());
+    }
+
+    private ResourceSet query(String query) throws XMLDBException {
+        final XQueryService service = (XQueryService) testCollection.getService("XQueryService", "1.0");
+        return service.query(query);
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        final Class<?> cl = Class.forName("org.exist.xmldb.DatabaseImpl");
+        final Database database = (Database) cl.newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        final Collection root = DatabaseManager.getCollection(XmldbURI.LOCAL_DB, "admin", "");
+        final CollectionManagementService service = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = service.createCollection(TEST_COLLECTION_NAME);
+        assertNotNull(testCollection);
+
+        final StringBuilder data = new StringBuilder("<data>");
+        for (int i = 0; i < 100; i++) {
+            data.append("<customer id=\"c").append(i).append("\" name=\"n").append(i).append("\"/>");
+        }
+        for (int i = 0; i < 100; i++) {
+            data.append("<order cust=\"c").append(i * 2).append("\"/>");
+        }
+        data.append("</data>");
+        final XMLResource doc = (XMLResource) testCollection.createResource("orders.xml", "XMLResource");
+        doc.setContent(data.toString());
+        testCollection.storeResource(doc);
+    }
+
+    @AfterClass
+    public static void shutdownDB() throws Exception {
+        TestUtils.cleanupDB();
+        final DatabaseInstanceManager dim = (DatabaseInstanceManager) testCollection.getService("DatabaseInstanceManager", "1.0");
+        dim.shutdown();
+        testCollection = null;
+    }
+}
@@ -0,0 +1,111 @@
+package org.exist.xquery;
+
+import org.exist.TestUtils;
+import org.exist.xmldb.DatabaseInstanceManager;
+import org.exist.xmldb.XmldbURI;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XQueryService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests fn:count on paths which are counted from the structural index
+ * without loading the nodes.
+ */
+public class IndexCountTest {
+
+    private final static String TEST_COLLECTION_NAME = "test-indexcount";
+    private final static String COLLECTION = "collection('/db/" + TEST_COLLECTION_NAME + "')";
+
+    private static Collection testCollection;
+
+    @Test
+    public void countElements() throws XMLDBException {
+        assertCount("15", "count(" + COLLECTION + "//b)");
+        assertCount("6", "count(" + COLLECTION + "//a)");
+        assertCount("0", "count(" + COLLECTION + "//c)");
+        assertCount("3", "count(" + COLLECTION + "/descendant-or-self::root)");
+    }
+
+    @Test
+    public void countAttributes() throws XMLDBException {
+        assertCount("15", "count(" + COLLECTION + "//@n)");
+    }
+
+    @Test
+    public void countFromRoot() throws XMLDBException {
+        assertCount("15", "count(//b)");
+    }
+
+    @Test
+    public void notCountedFromIndex() throws XMLDBException {
+        assertCount("3", "count(" + COLLECTION + "//b[@n = 1])");
+        assertCount("3", "count(" + COLLECTION + "//a//a)");
+        assertCount("3", "count(" + COLLECTION + "//a/a)");
+    }
+
+    @Test
+    public void countFromInMemoryContext() throws XMLDBException {
+        // the root step always selects the stored documents, not the in-memory one
+        assertCount("15", "let $d := document { <r><b/></r> } return $d/count(//b)");
+        assertCount("15", "let $d := document { <r><b n='1'/></r> } return $d/count(//@n)");
+    }
+
+    @Test
+    public void countAfterUpdate() throws XMLDBException {
+        query("update insert <b n='6'/> into doc('/db/" + TEST_COLLECTION_NAME + "/doc0.xml')/root");
+        try {
+            assertCount("16", "count(" + COLLECTION + "//b)");
+        } finally {
+            query("update delete doc('/db/" + TEST_COLLECTION_NAME + "/doc0.xml')/root/b[@n = 6]");
+        }
+        assertCount("15", "count(" + COLLECTION + "//b)");
+    }
+
+    private void assertCount(String expected, String query) throws XMLDBException {
+        final ResourceSet result = query(query);
+        assertEquals(query, expected, result.getResource(0).getContent());
+    }
+
+    private ResourceSet query(String query) throws XMLDBException {
+        final XQueryService service = (XQueryService) testCollection.getService("XQueryService", "1.0");
+        return service.query(query);
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        final Class<?> cl = Class.forName("org.exist.xmldb.DatabaseImpl");
+        final Database database = (Database) cl.newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        final Collection root = DatabaseManager.getCollection(XmldbURI.LOCAL_DB, "admin", "");
+        final CollectionManagementService service = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = service.createCollection(TEST_COLLECTION_NAME);
+        assertNotNull(testCollection);
+
+        for (int i = 0; i < 3; i++) {
+            final XMLResource doc = (XMLResource) testCollection.createResource("doc" + i + ".xml", "XMLResource");
+            doc.setContent("<root><a><b n='1'/><a><b n='2'/><b n='3'/></a><b n='4'/></a><b n='5'/></root>");
+            testCollection.storeResource(doc);
+        }
+    }
+
+    @AfterClass
+    public static void shutdownDB() throws Exception {
+        TestUtils.cleanupDB();
+        final DatabaseInstanceManager dim = (DatabaseInstanceManager) testCollection.getService("DatabaseInstanceManager", "1.0");
+        dim.shutdown();
+        testCollection = null;
+    }
+}
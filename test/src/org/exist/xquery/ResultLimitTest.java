@@ -0,0 +1,118 @@
+package org.exist.xquery;
+
+import org.exist.TestUtils;
+import org.exist.xmldb.DatabaseInstanceManager;
+import org.exist.xmldb.XmldbURI;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XQueryService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests expressions which only need the first nodes of a path,
+ * like exists() or positional predicates, and let the last step
+ * stop the index scan early. Results are compared against the same
+ * path bound to a variable, which is always evaluated completely.
+ */
+public class ResultLimitTest {
+
+    private final static String TEST_COLLECTION_NAME = "test-resultlimit";
+
+    private static Collection testCollection;
+
+    @Test
+    public void positionalPredicate() throws XMLDBException {
+        for (int i = 1; i <= 12; i++) {
+            assertSame("(collection('/db/" + TEST_COLLECTION_NAME + "')//b)[" + i + "]",
+                "let $all := collection('/db/" + TEST_COLLECTION_NAME + "')//b return $all[" + i + "]");
+        }
+    }
+
+    @Test
+    public void nestedContext() throws XMLDBException {
+        for (int i = 1; i <= 12; i++) {
+            assertSame("(collection('/db/" + TEST_COLLECTION_NAME + "')//a//b)[" + i + "]",
+                "let $all := collection('/db/" + TEST_COLLECTION_NAME + "')//a//b return $all[" + i + "]");
+        }
+    }
+
+    @Test
+    public void subsequence() throws XMLDBException {
+        assertSame("subsequence(collection('/db/" + TEST_COLLECTION_NAME + "')//b, 3, 4)",
+            "let $all := collection('/db/" + TEST_COLLECTION_NAME + "')//b return subsequence($all, 3, 4)");
+        assertSame("subsequence(collection('/db/" + TEST_COLLECTION_NAME + "')//b, 7)",
+            "let $all := collection('/db/" + TEST_COLLECTION_NAME + "')//b return subsequence($all, 7)");
+    }
+
+    @Test
+    public void head() throws XMLDBException {
+        assertSame("head(collection('/db/" + TEST_COLLECTION_NAME + "')//a//b)",
+            "let $all := collection('/db/" + TEST_COLLECTION_NAME + "')//a//b return $all[1]");
+    }
+
+    @Test
+    public void existsAndEmpty() throws XMLDBException {
+        ResourceSet result = query("exists(collection('/db/" + TEST_COLLECTION_NAME + "')//b)");
+        assertEquals("true", result.getResource(0).getContent());
+        result = query("empty(collection('/db/" + TEST_COLLECTION_NAME + "')//c)");
+        assertEquals("true", result.getResource(0).getContent());
+        result = query("count(collection('/db/" + TEST_COLLECTION_NAME + "')//a[exists(.//b)])");
+        assertEquals("6", result.getResource(0).getContent());
+    }
+
+    private void assertSame(String query, String expected) throws XMLDBException {
+        final ResourceSet expectedResult = query(nodeIds(expected));
+        final ResourceSet result = query(nodeIds(query));
+        assertEquals(query, expectedResult.getSize(), result.getSize());
+        for (int i = 0; i < result.getSize(); i++) {
+            assertEquals(query, expectedResult.getResource(i).getContent(), result.getResource(i).getContent());
+        }
+    }
+
+    private String nodeIds(String query) {
+        return "xquery version '3.0'; for $n in (" + query + ") " +
+            "return concat(document-uri(root($n)), '#', util:node-id($n))";
+    }
+
+    private ResourceSet query(String query) throws XMLDBException {
+        final XQueryService service = (XQueryService) testCollection.getService("XQueryService", "1.0");
+        return service.query(query);
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        final Class<?> cl = Class.forName("org.exist.xmldb.DatabaseImpl");
+        final Database database = (Database) cl.newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        final Collection root = DatabaseManager.getCollection(XmldbURI.LOCAL_DB, "admin", "");
+        final CollectionManagementService service = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = service.createCollection(TEST_COLLECTION_NAME);
+        assertNotNull(testCollection);
+
+        for (int i = 0; i < 3; i++) {
+            final XMLResource doc = (XMLResource) testCollection.createResource("doc" + i + ".xml", "XMLResource");
+            doc.setContent("<root><a><b n='1'/><a><b n='2'/><b n='3'/></a><b n='4'/></a><b n='5'/></root>");
+            testCollection.storeResource(doc);
+        }
+    }
+
+    @AfterClass
+    public static void shutdownDB() throws Exception {
+        TestUtils.cleanupDB();
+        final DatabaseInstanceManager dim = (DatabaseInstanceManager) testCollection.getService("DatabaseInstanceManager", "1.0");
+        dim.shutdown();
+        testCollection = null;
+    }
+}
@@ -56,6 +56,31 @@ public class TransformTest extends TestCase {
     }
     
     
+    /**
+     * Tests that a cached stylesheet is recompiled after an imported
+     * stylesheet changed.
+     */
+    public void testImportUpdated() {
+		try {
+			String query = 
+				"import module namespace transform='http://exist-db.org/xquery/transform';\n" +
+				"transform:transform(<empty />, 'xmldb:exist:///db/"+TEST_COLLECTION_NAME+"/xsl1/1.xsl', ())";
+			String result = execQuery(query);
+			assertTrue(result, result.indexOf("<p>Template 3</p>") > -1);
+
+			Collection xsl3 = testCollection.getChildCollection("xsl3");
+			addXMLDocument(xsl3, "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='1.0'>" +
+				"<xsl:template name='template-3'><p>Template 3 updated</p></xsl:template>" +
+				"</xsl:stylesheet>", "3.xsl");
+
+			result = execQuery(query);
+			assertTrue(result, result.indexOf("<p>Template 3 updated</p>") > -1);
+		} catch (XMLDBException e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+    }
+    
     private String execQuery(String query) throws XMLDBException {
     	XQueryService service = (XQueryService) testCollection.getService("XQueryService", "1.0");
         service.setProperty("indent", "no");
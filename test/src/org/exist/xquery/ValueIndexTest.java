@@ -403,6 +403,45 @@ public class ValueIndexTest extends TestCase {
         }
     }
 
+    public void testRangeLookups() throws Exception {
+        String config =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <create path=\"//rt/a\" type=\"xs:integer\"/>" +
+            "       <create path=\"//rt/s\" type=\"xs:string\"/>" +
+            "   </index>" +
+            "</collection>";
+        try {
+            configureCollection(config);
+            StringBuilder xml = new StringBuilder("<rt>");
+            for (int i = 1; i <= 20; i++) {
+                xml.append("<a>").append(i).append("</a>");
+            }
+            for (int i = 1; i <= 9; i++) {
+                xml.append("<s>v").append(i).append("</s>");
+            }
+            xml.append("</rt>");
+            XMLResource resource = (XMLResource) testCollection.createResource("rt.xml", "XMLResource");
+            resource.setContent(xml.toString());
+            testCollection.storeResource(resource);
+
+            // range lookups must report every matching key, not just the first one
+            XPathQueryService service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+            queryResource(service, "rt.xml", "//a[. > 5]", 15);
+            queryResource(service, "rt.xml", "//a[. < 15]", 14);
+            queryResource(service, "rt.xml", "//a[. >= 10]", 11);
+            queryResource(service, "rt.xml", "//s[. >= 'v5']", 5);
+            queryResource(service, "rt.xml", "//s[. < 'v5']", 4);
+            queryResource(service, "rt.xml", "//a[. = (3, 7, 11)]", 3);
+            queryResource(service, "rt.xml", "declare namespace f='http://exist-db.org/xquery/test'; " +
+                "declare function f:key($key, $data) { $key }; " +
+                "util:index-keys(//a, 1, util:function(xs:QName('f:key'), 2), 100)", 20);
+        } catch (XMLDBException e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        }
+    }
+
     public void testIndexScan() {
         try {
             System.out.println("----- testIndexScan -----");
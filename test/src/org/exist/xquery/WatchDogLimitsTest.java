@@ -0,0 +1,124 @@
+package org.exist.xquery;
+
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ProcessMonitor;
+import org.exist.util.Configuration;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the resource limits enforced by {@link XQueryWatchDog}.
+ */
+public class WatchDogLimitsTest {
+
+    private final static String CONSTRUCT_QUERY =
+        "count(for $i in 1 to 2000 return <a><b>{$i}</b></a>)";
+
+    private static BrokerPool pool;
+
+    @Test
+    public void constructedNodesLimit() throws Exception {
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            final XQuery xquery = broker.getXQueryService();
+            final XQueryContext context = xquery.newContext(AccessContext.TEST);
+            final CompiledXQuery compiled = xquery.compile(context, CONSTRUCT_QUERY);
+            context.getWatchDog().setConstructedNodesLimit(1000);
+            try {
+                xquery.execute(compiled, null);
+                fail("Query should have been killed");
+            } catch (final TerminatedException.ResourceLimitException e) {
+                final ProcessMonitor.QueryHistory history = getHistory(context);
+                assertEquals(XQueryWatchDog.KillReason.CONSTRUCTED_NODES_LIMIT, history.getMostRecentKillReason());
+            }
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    @Test
+    public void limitsKeptAfterCatch() throws Exception {
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            final XQuery xquery = broker.getXQueryService();
+            final XQueryContext context = xquery.newContext(AccessContext.TEST);
+            final CompiledXQuery compiled = xquery.compile(context,
+                "count((for $i in 1 to 200 return <a><b>{$i}</b></a>, " +
+                "util:catch('*', error(), ()), " +
+                "for $i in 1 to 200 return <a><b>{$i}</b></a>))");
+            context.getWatchDog().setConstructedNodesLimit(1000);
+            try {
+                xquery.execute(compiled, null);
+                fail("Query should have been killed");
+            } catch (final TerminatedException.ResourceLimitException e) {
+                // the nodes constructed before util:catch still count
+            }
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    @Test
+    public void accounting() throws Exception {
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            final XQuery xquery = broker.getXQueryService();
+            final XQueryContext context = xquery.newContext(AccessContext.TEST);
+            final CompiledXQuery compiled = xquery.compile(context, CONSTRUCT_QUERY);
+            final Sequence result = xquery.execute(compiled, null);
+            assertEquals("2000", result.itemAt(0).getStringValue());
+            final ProcessMonitor.QueryHistory history = getHistory(context);
+            assertNull(history.getMostRecentKillReason());
+            assertTrue(history.getMostRecentConstructedNodes() >= 4000);
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    @Test
+    public void killedByUser() throws Exception {
+        DBBroker broker = null;
+        try {
+            broker = pool.get(pool.getSecurityManager().getSystemSubject());
+            final XQuery xquery = broker.getXQueryService();
+            final XQueryContext context = xquery.newContext(AccessContext.TEST);
+            context.getWatchDog().kill(0);
+            assertEquals(XQueryWatchDog.KillReason.KILLED, context.getWatchDog().getKillReason());
+            context.getWatchDog().reset();
+            assertNull(context.getWatchDog().getKillReason());
+        } finally {
+            pool.release(broker);
+        }
+    }
+
+    private ProcessMonitor.QueryHistory getHistory(XQueryContext context) {
+        final String key = context.getXacmlSource().getKey();
+        for (final ProcessMonitor.QueryHistory history : pool.getProcessMonitor().getRecentQueryHistory()) {
+            if (history.getSource().equals(key))
+                {return history;}
+        }
+        fail("No history for query " + key);
+        return null;
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        BrokerPool.configure(1, 5, new Configuration());
+        pool = BrokerPool.getInstance();
+    }
+
+    @AfterClass
+    public static void shutdownDB() {
+        BrokerPool.stopAll(false);
+        pool = null;
+    }
+}